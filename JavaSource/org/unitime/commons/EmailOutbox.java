@@ -0,0 +1,307 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.commons;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Persistent outbox of emails that are being delivered in the background.<br>
+ * When enabled (unitime.email.outbox.enabled), {@link JavaMailWrapper#send()} stores the email in the outbox folder
+ * (data folder/outbox) and returns. Delivery threads then send the queued emails in batches, each batch over one
+ * (pooled) SMTP connection. An email that cannot be sent is retried with an exponential backoff; after
+ * unitime.email.outbox.maxAttempts failed attempts it is moved to the outbox/failed folder. Emails that were not
+ * delivered before a shutdown remain in the outbox folder and are delivered after the next start.
+ *
+ * @author Tomas Muller
+ */
+public class EmailOutbox {
+	private static Log sLog = LogFactory.getLog(EmailOutbox.class);
+	private static EmailOutbox sInstance = null;
+
+	private Session iSession;
+	private File iFolder, iFailedFolder;
+	private DelayQueue<QueuedEmail> iQueue = new DelayQueue<QueuedEmail>();
+	private List<Worker> iWorkers = new ArrayList<Worker>();
+	private AtomicLong iSequence = new AtomicLong(0);
+	private long iStarted;
+
+	private AtomicLong iQueued = new AtomicLong(0), iDelivered = new AtomicLong(0), iRetried = new AtomicLong(0), iFailed = new AtomicLong(0);
+	private AtomicLong iBatches = new AtomicLong(0), iSendTime = new AtomicLong(0), iDeliveryTime = new AtomicLong(0);
+
+	private EmailOutbox(Session session) {
+		iSession = session;
+		iFolder = ApplicationProperties.getOutboxFolder();
+		iFailedFolder = new File(iFolder, "failed");
+		iStarted = System.currentTimeMillis();
+	}
+
+	public static boolean isEnabled() {
+		return ApplicationProperty.EmailOutboxEnabled.isTrue();
+	}
+
+	public static synchronized EmailOutbox getInstance() {
+		if (sInstance == null) {
+			sInstance = new EmailOutbox(JavaMailWrapper.getMailSession());
+			sInstance.start();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Start the outbox (if enabled), this also queues the emails that remained in the outbox folder
+	 */
+	public static void startOutbox() {
+		if (isEnabled()) getInstance();
+	}
+
+	/**
+	 * Stop the delivery threads, undelivered emails remain in the outbox folder
+	 */
+	public static synchronized void stopOutbox() {
+		if (sInstance != null) {
+			sInstance.stop();
+			sInstance = null;
+		}
+		SmtpConnectionPool.getInstance().closeAll();
+	}
+
+	protected void start() {
+		File[] files = iFolder.listFiles((dir, name) -> name.endsWith(".eml"));
+		if (files != null && files.length > 0) {
+			Arrays.sort(files);
+			for (File file: files)
+				iQueue.add(new QueuedEmail(file));
+			iQueued.addAndGet(files.length);
+			sLog.info("Email outbox: " + files.length + " undelivered emails queued.");
+		}
+		Integer nrThreads = ApplicationProperty.EmailOutboxThreads.intValue();
+		for (int i = 0; i < (nrThreads == null ? 2 : Math.max(1, nrThreads.intValue())); i++) {
+			Worker worker = new Worker(i + 1);
+			worker.start();
+			iWorkers.add(worker);
+		}
+	}
+
+	protected void stop() {
+		for (Worker worker: iWorkers)
+			worker.interrupt();
+		for (Worker worker: iWorkers) {
+			try {
+				worker.join(10000);
+			} catch (InterruptedException e) {}
+		}
+		iWorkers.clear();
+		sLog.info("Email outbox stopped: " + getInfo());
+	}
+
+	/**
+	 * Store the given email in the outbox, the email is delivered in the background.
+	 * The email must be complete, that is {@link MimeMessage#saveChanges()} must have been called.
+	 */
+	public void queue(MimeMessage message) throws MessagingException {
+		File file = new File(iFolder, System.currentTimeMillis() + "-" + iSequence.incrementAndGet() + ".eml");
+		try (OutputStream out = new FileOutputStream(file)) {
+			message.writeTo(out);
+		} catch (IOException e) {
+			file.delete();
+			throw new MessagingException("Failed to store the email in the outbox: " + e.getMessage(), e);
+		}
+		iQueued.incrementAndGet();
+		iQueue.add(new QueuedEmail(file));
+	}
+
+	protected int getBatchSize() {
+		Integer size = ApplicationProperty.EmailOutboxBatchSize.intValue();
+		return (size == null ? 50 : Math.max(1, size.intValue()));
+	}
+
+	protected int getMaxAttempts() {
+		Integer attempts = ApplicationProperty.EmailOutboxMaxAttempts.intValue();
+		return (attempts == null ? 5 : attempts.intValue());
+	}
+
+	protected long getRetryDelay(int attempt) {
+		Integer delay = ApplicationProperty.EmailOutboxRetryDelay.intValue();
+		return 1000l * (delay == null ? 60 : delay.intValue()) * (1l << Math.min(attempt - 1, 10));
+	}
+
+	/**
+	 * Send a batch of emails over one SMTP connection
+	 */
+	protected void deliver(List<QueuedEmail> batch) {
+		long t0 = System.currentTimeMillis();
+		int delivered = 0;
+		SmtpConnectionPool.Connection connection = null;
+		try {
+			for (QueuedEmail email: batch) {
+				MimeMessage message = null;
+				try (InputStream in = new FileInputStream(email.getFile())) {
+					message = new MimeMessage(iSession, in);
+				} catch (Exception e) {
+					sLog.error("Failed to read email " + email.getFile().getName() + " from the outbox: " + e.getMessage(), e);
+					failed(email);
+					continue;
+				}
+				try {
+					if (connection == null)
+						connection = SmtpConnectionPool.getInstance().borrow(iSession);
+					long s0 = System.currentTimeMillis();
+					connection.send(message);
+					long s1 = System.currentTimeMillis();
+					email.getFile().delete();
+					iDelivered.incrementAndGet();
+					iSendTime.addAndGet(s1 - s0);
+					iDeliveryTime.addAndGet(s1 - email.getCreated());
+					delivered ++;
+				} catch (MessagingException | RuntimeException e) {
+					// the connection may be broken, do not use it for the rest of the batch
+					SmtpConnectionPool.getInstance().release(connection, true);
+					connection = null;
+					retry(email, e);
+				}
+			}
+		} finally {
+			SmtpConnectionPool.getInstance().release(connection, false);
+			iBatches.incrementAndGet();
+		}
+		if (sLog.isDebugEnabled())
+			sLog.debug("Delivered " + delivered + " of " + batch.size() + " emails in " + (System.currentTimeMillis() - t0) + " ms.");
+	}
+
+	protected void retry(QueuedEmail email, Exception e) {
+		int attempt = email.incAttempts();
+		if (attempt >= getMaxAttempts()) {
+			sLog.error("Failed to send email " + email.getFile().getName() + " (attempt " + attempt + "): " + e.getMessage(), e);
+			failed(email);
+		} else {
+			long delay = getRetryDelay(attempt);
+			sLog.warn("Failed to send email " + email.getFile().getName() + " (attempt " + attempt + "): " + e.getMessage() + ", next attempt in " + (delay / 1000) + " seconds.");
+			email.setNextAttempt(System.currentTimeMillis() + delay);
+			iRetried.incrementAndGet();
+			iQueue.add(email);
+		}
+	}
+
+	protected void failed(QueuedEmail email) {
+		iFailed.incrementAndGet();
+		iFailedFolder.mkdirs();
+		if (!email.getFile().renameTo(new File(iFailedFolder, email.getFile().getName())))
+			email.getFile().delete();
+	}
+
+	/**
+	 * Outbox statistics: number of queued, delivered, retried, and failed emails, average send and delivery times, and throughput
+	 */
+	public Map<String, String> getInfo() {
+		DecimalFormat df = new DecimalFormat("0.00");
+		Map<String, String> info = new TreeMap<String, String>();
+		long delivered = iDelivered.get();
+		info.put("Queued", String.valueOf(iQueue.size()));
+		info.put("Delivered", String.valueOf(delivered));
+		info.put("Retried", String.valueOf(iRetried.get()));
+		info.put("Failed", String.valueOf(iFailed.get()));
+		info.put("Batches", String.valueOf(iBatches.get()));
+		info.put("Connections", SmtpConnectionPool.getInstance().getOpenedConnections() + " opened, " + SmtpConnectionPool.getInstance().getReusedConnections() + " reused");
+		if (delivered > 0) {
+			info.put("Send time", df.format(((double)iSendTime.get()) / delivered) + " ms avg");
+			info.put("Delivery time", df.format(iDeliveryTime.get() / 1000.0 / delivered) + " s avg");
+			long minutes = Math.max(1, (System.currentTimeMillis() - iStarted) / 60000);
+			info.put("Throughput", df.format(((double)delivered) / minutes) + " emails/min");
+		}
+		return info;
+	}
+
+	private static class QueuedEmail implements Delayed {
+		private File iFile;
+		private long iCreated, iNextAttempt;
+		private int iAttempts = 0;
+
+		QueuedEmail(File file) {
+			iFile = file;
+			iCreated = file.lastModified();
+			iNextAttempt = 0;
+		}
+
+		File getFile() { return iFile; }
+		long getCreated() { return iCreated; }
+		int incAttempts() { return ++iAttempts; }
+		void setNextAttempt(long nextAttempt) { iNextAttempt = nextAttempt; }
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(iNextAttempt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			QueuedEmail e = (QueuedEmail)o;
+			int cmp = Long.compare(iNextAttempt, e.iNextAttempt);
+			if (cmp != 0) return cmp;
+			return iFile.getName().compareTo(e.iFile.getName());
+		}
+	}
+
+	private class Worker extends Thread {
+		Worker(int index) {
+			super("EmailOutbox-" + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted()) {
+					List<QueuedEmail> batch = new ArrayList<QueuedEmail>();
+					batch.add(iQueue.take());
+					iQueue.drainTo(batch, getBatchSize() - 1);
+					try {
+						deliver(batch);
+					} catch (Exception e) {
+						sLog.error("Failed to deliver emails: " + e.getMessage(), e);
+					}
+				}
+			} catch (InterruptedException e) {}
+		}
+	}
+}
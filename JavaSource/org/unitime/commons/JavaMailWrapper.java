@@ -31,7 +31,6 @@ import jakarta.mail.BodyPart;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Multipart;
 import jakarta.mail.PasswordAuthentication;
-import jakarta.mail.Transport;
 import jakarta.mail.Message.RecipientType;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeBodyPart;
@@ -53,6 +52,12 @@ public class JavaMailWrapper extends Email {
 	protected Multipart iBody = null;
 	
 	public JavaMailWrapper() {
+		iMailSession = getMailSession();
+		iMail = new MimeMessage(iMailSession);
+		iBody = new MimeMultipart();
+	}
+	
+	public static jakarta.mail.Session getMailSession() {
         Properties p = ApplicationProperties.getProperties();
         if (p.getProperty("mail.smtp.host")==null && p.getProperty("tmtbl.smtp.host")!=null)
             p.setProperty("mail.smtp.host", p.getProperty("tmtbl.smtp.host"));
@@ -70,11 +75,10 @@ public class JavaMailWrapper extends Email {
             };
         }
 
-        iMailSession = jakarta.mail.Session.getDefaultInstance(p, a);
+        jakarta.mail.Session session = jakarta.mail.Session.getDefaultInstance(p, a);
         if ("true".equals(p.getProperty("mail.debug")))
-        	iMailSession.setDebug(true);
-        iMail = new MimeMessage(iMailSession);
-        iBody = new MimeMultipart();
+        	session.setDebug(true);
+        return session;
 	}
 	
 	@Override
@@ -153,7 +157,10 @@ public class JavaMailWrapper extends Email {
 	        iMail.setSentDate(new Date());
 	        iMail.setContent(iBody);
 	        iMail.saveChanges();
-	        Transport.send(iMail);
+	        if (EmailOutbox.isEnabled())
+	        	EmailOutbox.getInstance().queue(iMail);
+	        else
+	        	SmtpConnectionPool.getInstance().send(iMailSession, iMail);
 		} finally {
 			long t = System.currentTimeMillis() - t0;
 			if (t > 30000)
@@ -0,0 +1,204 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.commons;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Pool of open SMTP connections. Instead of opening a new connection for each email (as {@link Transport#send(Message)} does),
+ * a connection is returned to the pool after the email is sent and reused by the next email, as long as it is not idle for more
+ * than unitime.email.smtp.idleTimeout seconds.
+ *
+ * @author Tomas Muller
+ */
+public class SmtpConnectionPool {
+	private static Log sLog = LogFactory.getLog(SmtpConnectionPool.class);
+	private static SmtpConnectionPool sInstance = new SmtpConnectionPool();
+
+	private Deque<Connection> iIdle = new ArrayDeque<Connection>();
+	private AtomicLong iOpened = new AtomicLong(0), iReused = new AtomicLong(0);
+
+	private SmtpConnectionPool() {}
+
+	public static SmtpConnectionPool getInstance() { return sInstance; }
+
+	protected long getIdleTimeout() {
+		Integer timeout = ApplicationProperty.EmailSmtpConnectionIdleTimeout.intValue();
+		return 1000l * (timeout == null ? 60 : timeout.intValue());
+	}
+
+	protected int getMaxIdle() {
+		Integer size = ApplicationProperty.EmailSmtpConnectionPoolSize.intValue();
+		return (size == null ? 5 : size.intValue());
+	}
+
+	/**
+	 * Get an open connection: an idle connection of the same mail session is reused if available, a new connection is opened otherwise.
+	 * The connection must be returned by {@link SmtpConnectionPool#release(Connection, boolean)}.
+	 */
+	public Connection borrow(Session session) throws MessagingException {
+		long now = System.currentTimeMillis();
+		List<Connection> expired = new ArrayList<Connection>();
+		Connection connection = null;
+		synchronized (iIdle) {
+			for (Iterator<Connection> i = iIdle.descendingIterator(); i.hasNext(); ) {
+				Connection c = i.next();
+				if (c.isExpired(now)) {
+					i.remove(); expired.add(c);
+				} else if (connection == null && c.getSession() == session) {
+					i.remove(); connection = c;
+				}
+			}
+		}
+		for (Connection c: expired) c.close();
+		if (connection != null) {
+			if (connection.getTransport().isConnected()) {
+				connection.iReused = true;
+				iReused.incrementAndGet();
+				return connection;
+			}
+			connection.close();
+		}
+		Transport transport = session.getTransport();
+		transport.connect();
+		iOpened.incrementAndGet();
+		return new Connection(session, transport);
+	}
+
+	/**
+	 * Return the connection to the pool. Broken connections (e.g., after a failure) and connections exceeding the pool size are closed.
+	 */
+	public void release(Connection connection, boolean broken) {
+		if (connection == null) return;
+		if (broken || getIdleTimeout() <= 0) {
+			connection.close();
+			return;
+		}
+		connection.iLastUsed = System.currentTimeMillis();
+		connection.iTimeout = getIdleTimeout();
+		Connection closing = null;
+		synchronized (iIdle) {
+			iIdle.addLast(connection);
+			if (iIdle.size() > getMaxIdle())
+				closing = iIdle.pollFirst();
+		}
+		if (closing != null) closing.close();
+	}
+
+	/**
+	 * Send the given email using a pooled connection. If a reused connection fails before the email was handed off to the server
+	 * (see {@link SmtpConnectionPool#isBeforeHandoff(MessagingException)}), the email is sent once more using a new connection.
+	 * Other failures are not retried, as the server may have already accepted the email.
+	 */
+	public void send(Session session, Message message) throws MessagingException {
+		Connection connection = borrow(session);
+		boolean broken = true;
+		try {
+			connection.send(message);
+			broken = false;
+		} catch (MessagingException e) {
+			if (!connection.isReused() || !isBeforeHandoff(e)) throw e;
+			sLog.debug("Failed to send an email using a reused connection (" + e.getMessage() + "), trying again.");
+			connection.close();
+			connection = borrow(session);
+			connection.send(message);
+			broken = false;
+		} finally {
+			release(connection, broken);
+		}
+	}
+
+	/**
+	 * True if the failure happened before the email was handed off to the server, that is when the MAIL FROM command
+	 * failed because the connection was closed (no response) or with a transient (4xx) error, e.g., 421 service closing.
+	 */
+	protected boolean isBeforeHandoff(MessagingException e) {
+		if (e instanceof SMTPSendFailedException) {
+			SMTPSendFailedException f = (SMTPSendFailedException)e;
+			if (f.getCommand() == null || !f.getCommand().toUpperCase().startsWith("MAIL FROM")) return false;
+			return f.getReturnCode() < 0 || f.getReturnCode() / 100 == 4;
+		}
+		return false;
+	}
+
+	/**
+	 * Close all idle connections
+	 */
+	public void closeAll() {
+		List<Connection> closing = null;
+		synchronized (iIdle) {
+			closing = new ArrayList<Connection>(iIdle);
+			iIdle.clear();
+		}
+		for (Connection c: closing) c.close();
+		if (iOpened.get() > 0)
+			sLog.info("SMTP connections: " + iOpened.get() + " opened, " + iReused.get() + " reused.");
+	}
+
+	public long getOpenedConnections() { return iOpened.get(); }
+
+	public long getReusedConnections() { return iReused.get(); }
+
+	public static class Connection {
+		private Session iSession;
+		private Transport iTransport;
+		private long iLastUsed, iTimeout;
+		private boolean iReused = false;
+
+		private Connection(Session session, Transport transport) {
+			iSession = session; iTransport = transport;
+		}
+
+		public Session getSession() { return iSession; }
+		public Transport getTransport() { return iTransport; }
+		public boolean isReused() { return iReused; }
+
+		boolean isExpired(long now) {
+			return now - iLastUsed > iTimeout;
+		}
+
+		public void send(Message message) throws MessagingException {
+			iTransport.sendMessage(message, message.getAllRecipients());
+		}
+
+		void close() {
+			try {
+				iTransport.close();
+			} catch (MessagingException e) {
+				sLog.debug("Failed to close SMTP connection: " + e.getMessage());
+			}
+		}
+	}
+}
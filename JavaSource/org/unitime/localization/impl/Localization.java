@@ -28,13 +28,17 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
@@ -52,7 +56,7 @@ public class Localization {
 	private static Log sLog = LogFactory.getLog(Localization.class);
 	public static final String ROOT = "org.unitime.localization.messages.";
 	public static final String GWTROOT = "org.unitime.timetable.gwt.resources.";
-	private static Map<Class, Object> sBundles = new Hashtable<Class, Object>();
+	private static Map<Class, Object> sBundles = new ConcurrentHashMap<Class, Object>();
 	private static final Pattern sRtlLocalesRe = Pattern.compile(
 		    "^(ar|dv|he|iw|fa|nqo|ps|sd|ug|ur|yi|.*[-_](Arab|Hebr|Thaa|Nkoo|Tfng))" +
 		    "(?!.*[-_](Latn|Cyrl)($|-|_))($|-|_)");
@@ -117,53 +121,67 @@ public class Localization {
 	}
 	
 	public static <T> T create(Class<T> bundle) {
-		synchronized (sBundles) {
-			T ret = (T)sBundles.get(bundle);
-			if (ret == null) {
-				ret = (T)Proxy.newProxyInstance(Localization.class.getClassLoader(), new Class[] {bundle}, new Bundle(bundle));
-				sBundles.put(bundle, ret);
-			}
-			return ret;
-		}
+		return (T)sBundles.computeIfAbsent(bundle, b -> Proxy.newProxyInstance(Localization.class.getClassLoader(), new Class[] {b}, new Bundle(b)));
 	}
 	
+	/**
+	 * Message bundle proxy. Property files are loaded only once per locale and never changed afterwards.
+	 * For each (list of) locale(s), an immutable {@link Snapshot} is created with all the message values resolved,
+	 * including the conversions to the method return types (e.g., String[] or Map) for methods without arguments.
+	 * A method call is then just a lookup in a concurrent map, with no locking involved.
+	 */
 	public static class Bundle implements InvocationHandler {
-		private Map<String, Properties> iProperties = new Hashtable<String, Properties>();
+		private static final int MAX_LOCALES = 1000;
+		private Map<String, Map<String, String>> iProperties = new ConcurrentHashMap<String, Map<String, String>>();
+		private Map<String, Snapshot> iSnapshots = new ConcurrentHashMap<String, Snapshot>();
+		private Map<List<String>, Snapshot> iSnapshotsByChain = new ConcurrentHashMap<List<String>, Snapshot>();
 		private Class<?> iMessages = null;
 
 		public Bundle(Class<?> messages) {
 			iMessages = messages;
 		}
 		
-		private synchronized String getProperty(String locale, String name) {
-			Properties properties = iProperties.get(locale);
-			if (properties == null) {
-				properties = new Properties();
-				String resource = iMessages.getName().replace('.', '/') + (locale.isEmpty() ? "" : "_" + locale) + ".properties"; 
-				try {
-					InputStream is = Localization.class.getClassLoader().getResourceAsStream(resource);
+		private Map<String, String> getProperties(String locale) {
+			return iProperties.computeIfAbsent(locale, l -> {
+				Properties properties = new Properties();
+				String resource = iMessages.getName().replace('.', '/') + (l.isEmpty() ? "" : "_" + l) + ".properties"; 
+				try (InputStream is = Localization.class.getClassLoader().getResourceAsStream(resource)) {
 					if (is != null)
 						properties.load(is);
 				} catch (Exception e) {
-					sLog.warn("Failed to load message bundle " + iMessages.getName().substring(iMessages.getName().lastIndexOf('.') + 1) + " for " + locale + ": "  + e.getMessage(), e);
+					sLog.warn("Failed to load message bundle " + iMessages.getName().substring(iMessages.getName().lastIndexOf('.') + 1) + " for " + l + ": "  + e.getMessage(), e);
 				}
-				iProperties.put(locale, properties);
-			}
-			return properties.getProperty(name);
+				Map<String, String> map = new HashMap<String, String>();
+				for (String name: properties.stringPropertyNames())
+					map.put(name, properties.getProperty(name));
+				return map;
+			});
 		}
 		
-		private String getProperty(String name) {
-			for (String locale: getLocale().split(",")) {
+		/**
+		 * Locales to be checked for the given locale string (e.g., cs_CZ,en;q=0.8 gives cs_CZ, cs, en and the default bundle)
+		 */
+		private static List<String> getChain(String locales) {
+			Set<String> chain = new LinkedHashSet<String>();
+			for (String locale: locales.split(",")) {
 				if (locale.indexOf(';') >= 0) locale = locale.substring(0, locale.indexOf(';'));
-				String value = getProperty(locale.trim(), name);
-				if (value != null) return value;
-				if (locale.indexOf('_') >= 0) {
-					locale = locale.substring(0, locale.indexOf('_'));
-					value = getProperty(locale.trim(), name);
-					if (value != null) return value;
-				}
+				chain.add(locale.trim());
+				if (locale.indexOf('_') >= 0)
+					chain.add(locale.substring(0, locale.indexOf('_')).trim());
+			}
+			chain.add(""); // default message bundle
+			return new ArrayList<String>(chain);
+		}
+		
+		private Snapshot getSnapshot() {
+			String locale = getLocale();
+			Snapshot snapshot = iSnapshots.get(locale);
+			if (snapshot == null) {
+				snapshot = iSnapshotsByChain.computeIfAbsent(getChain(locale), c -> new Snapshot(c));
+				if (iSnapshots.size() >= MAX_LOCALES) iSnapshots.clear();
+				iSnapshots.put(locale, snapshot);
 			}
-			return getProperty("", name); // try default message bundle
+			return snapshot;
 		}
 		
 		private String fillArgumentsIn(String value, Object[] args, int firstIndex) {
@@ -191,37 +209,6 @@ public class Localization {
 			return map;
 		}
 		
-		private Object type(String value, Class returnType) {
-			if (value == null) return value;
-			if (String.class.equals(returnType))
-				return value;
-			
-			if (Boolean.class.equals(returnType) || boolean.class.equals(returnType))
-				return "true".equalsIgnoreCase(value);
-			if (Double.class.equals(returnType) || double.class.equals(returnType))
-				return Double.valueOf(value);
-			if (Float.class.equals(returnType) || float.class.equals(returnType))
-				return Float.valueOf(value);
-			if (Integer.class.equals(returnType) || int.class.equals(returnType))
-				return Integer.valueOf(value);
-
-			if (String[].class.equals(returnType))
-				return string2array(value);
-			
-			if (Map.class.equals(returnType)) {
-				Map<String, String> map = new HashMap<String, String>();
-				for (String key: string2array(value)) {
-					String val = getProperty(key.trim());
-					if (val != null) map.put(key.trim(), val);
-				}
-				if (map.isEmpty())
-					return array2map(string2array(value));
-				return map;
-			}
-
-			return value;
-		}
-		
 		private String[] fixStringArray(String[] value, String[] defaults) {
 			if (value != null && value.length < defaults.length) {
 				String[] fixed = Arrays.copyOf(value, defaults.length);
@@ -244,53 +231,157 @@ public class Localization {
 			return value;
 		}
 		
+		/**
+		 * Returned arrays and maps are shared by the snapshot, make a copy so that the caller cannot change them
+		 */
+		private Object copy(Object value) {
+			if (value instanceof String[])
+				return ((String[])value).clone();
+			if (value instanceof Map)
+				return new HashMap<String, String>((Map<String, String>)value);
+			return value;
+		}
+		
 		@Override
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Snapshot snapshot = getSnapshot();
 			if ("translateMessage".equals(method.getName()) && method.getParameterTypes().length >= 2) {
-				String value = (args[0] == null ? null : getProperty((String) args[0]));
+				String value = (args[0] == null ? null : snapshot.getProperty((String) args[0]));
 				return (value == null ? (String) args[1] : fillArgumentsIn(value, args, 2));
 			}
-			String value = getProperty(method.getName());
-			if (value != null) {
-				Object ret = type(fillArgumentsIn(value, args, 0), method.getReturnType());
-				if (String[].class.equals(method.getReturnType())) {
-					Constants.DefaultStringArrayValue dsa = method.getAnnotation(Constants.DefaultStringArrayValue.class);
-					if (dsa != null)
-						return fixStringArray((String[])ret, dsa.value());
+			Resolved resolved = snapshot.getResolved(method);
+			if (resolved == null) resolved = snapshot.resolve(method);
+			if (resolved.isConstant())
+				return copy(resolved.getValue());
+			return snapshot.evaluate(method, (String)resolved.getValue(), args);
+		}
+		
+		/**
+		 * Value of a message bundle method for a particular locale: either the final value (for methods with no arguments),
+		 * or the message template (for methods with arguments).
+		 */
+		private static class Resolved {
+			private Object iValue;
+			private boolean iConstant;
+			
+			Resolved(Object value, boolean constant) {
+				iValue = value; iConstant = constant;
+			}
+			
+			Object getValue() { return iValue; }
+			boolean isConstant() { return iConstant; }
+		}
+		
+		/**
+		 * Immutable message bundle for a list of locales, with all the bundle methods pre-resolved.
+		 */
+		private class Snapshot {
+			private List<Map<String, String>> iChain = new ArrayList<Map<String, String>>();
+			private Map<Method, Resolved> iMethods = new HashMap<Method, Resolved>();
+			
+			Snapshot(List<String> locales) {
+				for (String locale: locales)
+					iChain.add(getProperties(locale));
+				for (Method method: iMessages.getMethods()) {
+					try {
+						iMethods.put(method, resolve(method));
+					} catch (Exception e) {
+						// e.g., a value that cannot be converted to the return type -> will fail when the method is called
+					}
+				}
+			}
+			
+			String getProperty(String name) {
+				for (Map<String, String> properties: iChain) {
+					String value = properties.get(name);
+					if (value != null) return value;
 				}
-				if (Map.class.equals(method.getReturnType())) {
-					Constants.DefaultStringMapValue dsm = method.getAnnotation(Constants.DefaultStringMapValue.class);
-					if (dsm != null)
-						return fixStringMap((Map<String, String>)ret, array2map(dsm.value()));
+				return null;
+			}
+			
+			Resolved getResolved(Method method) {
+				return iMethods.get(method);
+			}
+			
+			Resolved resolve(Method method) {
+				if (method.getParameterTypes().length == 0)
+					return new Resolved(evaluate(method, getProperty(method.getName()), null), true);
+				return new Resolved(getProperty(method.getName()), false);
+			}
+			
+			private Object type(String value, Class returnType) {
+				if (value == null) return value;
+				if (String.class.equals(returnType))
+					return value;
+				
+				if (Boolean.class.equals(returnType) || boolean.class.equals(returnType))
+					return "true".equalsIgnoreCase(value);
+				if (Double.class.equals(returnType) || double.class.equals(returnType))
+					return Double.valueOf(value);
+				if (Float.class.equals(returnType) || float.class.equals(returnType))
+					return Float.valueOf(value);
+				if (Integer.class.equals(returnType) || int.class.equals(returnType))
+					return Integer.valueOf(value);
+
+				if (String[].class.equals(returnType))
+					return string2array(value);
+				
+				if (Map.class.equals(returnType)) {
+					Map<String, String> map = new HashMap<String, String>();
+					for (String key: string2array(value)) {
+						String val = getProperty(key.trim());
+						if (val != null) map.put(key.trim(), val);
+					}
+					if (map.isEmpty())
+						return array2map(string2array(value));
+					return map;
 				}
-				return ret;
+
+				return value;
 			}
-			Messages.DefaultMessage dm = method.getAnnotation(Messages.DefaultMessage.class);
-			if (dm != null)
-				return fillArgumentsIn(dm.value(), args, 0);
-			Constants.DefaultBooleanValue db = method.getAnnotation(Constants.DefaultBooleanValue.class);
-			if (db != null)
-				return db.value();
-			Constants.DefaultDoubleValue dd = method.getAnnotation(Constants.DefaultDoubleValue.class);
-			if (dd != null)
-				return dd.value();
-			Constants.DefaultFloatValue df = method.getAnnotation(Constants.DefaultFloatValue.class);
-			if (df != null)
-				return df.value();
-			Constants.DefaultIntValue di = method.getAnnotation(Constants.DefaultIntValue.class);
-			if (di != null)
-				return di.value();
-			Constants.DefaultStringValue ds = method.getAnnotation(Constants.DefaultStringValue.class);
-			if (ds != null)
-				return ds.value();
-			Constants.DefaultStringArrayValue dsa = method.getAnnotation(Constants.DefaultStringArrayValue.class);
-			if (dsa != null)
-				return dsa.value();
-			Constants.DefaultStringMapValue dsm = method.getAnnotation(Constants.DefaultStringMapValue.class);
-			if (dsm != null)
-				return array2map(dsm.value());
 			
-			return method.getName();
+			Object evaluate(Method method, String value, Object[] args) {
+				if (value != null) {
+					Object ret = type(fillArgumentsIn(value, args, 0), method.getReturnType());
+					if (String[].class.equals(method.getReturnType())) {
+						Constants.DefaultStringArrayValue dsa = method.getAnnotation(Constants.DefaultStringArrayValue.class);
+						if (dsa != null)
+							return fixStringArray((String[])ret, dsa.value());
+					}
+					if (Map.class.equals(method.getReturnType())) {
+						Constants.DefaultStringMapValue dsm = method.getAnnotation(Constants.DefaultStringMapValue.class);
+						if (dsm != null)
+							return fixStringMap((Map<String, String>)ret, array2map(dsm.value()));
+					}
+					return ret;
+				}
+				Messages.DefaultMessage dm = method.getAnnotation(Messages.DefaultMessage.class);
+				if (dm != null)
+					return fillArgumentsIn(dm.value(), args, 0);
+				Constants.DefaultBooleanValue db = method.getAnnotation(Constants.DefaultBooleanValue.class);
+				if (db != null)
+					return db.value();
+				Constants.DefaultDoubleValue dd = method.getAnnotation(Constants.DefaultDoubleValue.class);
+				if (dd != null)
+					return dd.value();
+				Constants.DefaultFloatValue df = method.getAnnotation(Constants.DefaultFloatValue.class);
+				if (df != null)
+					return df.value();
+				Constants.DefaultIntValue di = method.getAnnotation(Constants.DefaultIntValue.class);
+				if (di != null)
+					return di.value();
+				Constants.DefaultStringValue ds = method.getAnnotation(Constants.DefaultStringValue.class);
+				if (ds != null)
+					return ds.value();
+				Constants.DefaultStringArrayValue dsa = method.getAnnotation(Constants.DefaultStringArrayValue.class);
+				if (dsa != null)
+					return dsa.value();
+				Constants.DefaultStringMapValue dsm = method.getAnnotation(Constants.DefaultStringMapValue.class);
+				if (dsm != null)
+					return array2map(dsm.value());
+				
+				return method.getName();
+			}
 		}
 	}
 }
@@ -354,6 +354,12 @@ public class ApplicationProperties {
 		return dir;
 	}
 	
+	public static File getOutboxFolder() {
+		File dir = new File(getDataFolder(),"outbox");
+		dir.mkdir();
+		return dir;
+	}
+	
 	public static File getPassivationFolder() {
 		File dir = new File(getDataFolder(),"passivate");
 		dir.mkdir();
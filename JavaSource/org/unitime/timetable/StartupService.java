@@ -25,6 +25,7 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.unitime.commons.Debug;
+import org.unitime.commons.EmailOutbox;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.events.EventExpirationService;
 import org.unitime.timetable.model.ApplicationConfig;
@@ -33,6 +34,7 @@ import org.unitime.timetable.model.StudentSectioningPref;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.LogCleaner;
 import org.unitime.timetable.util.MessageLogAppender;
+import org.unitime.timetable.util.RequestStatistics;
 import org.unitime.timetable.util.RoomAvailability;
 import org.unitime.timetable.util.queue.LocalQueueProcessor;
 
@@ -79,6 +81,11 @@ public class StartupService implements InitializingBean, DisposableBean {
 			Debug.info(" - Starting Event Expiration Service ...");
 			EventExpirationService.getInstance().start();
 			
+			if (EmailOutbox.isEnabled()) {
+				Debug.info(" - Starting Email Outbox ...");
+				EmailOutbox.startOutbox();
+			}
+			
 			Debug.info("******* UniTime " + Constants.getVersion() +
 					" build on " + Constants.getReleaseDate() + " initialized successfully *******");
 
@@ -115,6 +122,11 @@ public class StartupService implements InitializingBean, DisposableBean {
 	         
 	         LocalQueueProcessor.stopProcessor();
 	         
+	         RequestStatistics.shutdown();
+	         
+	         Debug.info(" - Stopping Email Outbox ... ");
+	         EmailOutbox.stopOutbox();
+	         
 	         Debug.info(" - Removing Message Log Appender ... ");
 	         LoggerContext ctx = LoggerContext.getContext(false);
 	         Configuration config = ctx.getConfiguration();
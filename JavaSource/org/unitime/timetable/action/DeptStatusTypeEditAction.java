@@ -35,6 +35,7 @@ import org.unitime.localization.messages.CourseMessages;
 import org.unitime.timetable.form.DeptStatusTypeEditForm;
 import org.unitime.timetable.model.DepartmentStatusType;
 import org.unitime.timetable.model.dao.DepartmentStatusTypeDAO;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.security.rights.Right;
 
 /** 
@@ -108,6 +109,7 @@ public class DeptStatusTypeEditAction extends UniTimeAction<DeptStatusTypeEditFo
                 	form.saveOrUpdate(hibSession);
                 	
         			if (tx!=null) tx.commit();
+        			PermissionCache.invalidate();
         	    } catch (Exception e) {
         	    	if (tx!=null) tx.rollback();
         	    	throw e;
@@ -143,6 +145,7 @@ public class DeptStatusTypeEditAction extends UniTimeAction<DeptStatusTypeEditFo
             	form.delete(hibSession);
             	
             	if (tx != null) tx.commit();
+            	PermissionCache.invalidate();
     	    } catch (Exception e) {
     	    	if (tx!=null) tx.rollback();
     	    	throw e;
@@ -195,6 +198,7 @@ public class DeptStatusTypeEditAction extends UniTimeAction<DeptStatusTypeEditFo
                 }
                 
                 if (tx!=null) tx.commit();
+                PermissionCache.invalidate();
             } catch (Exception e) {
                 if (tx!=null) tx.rollback();
                 Debug.error(e);
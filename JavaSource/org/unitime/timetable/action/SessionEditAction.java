@@ -47,6 +47,7 @@ import org.unitime.timetable.model.dao.DatePatternDAO;
 import org.unitime.timetable.model.dao.InstructionalMethodDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao.StudentSectioningStatusDAO;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.Formats;
@@ -322,6 +323,7 @@ public class SessionEditAction extends UniTimeAction<SessionEditForm> {
             }
             
             tx.commit() ;
+            PermissionCache.invalidate();
         } catch (Exception e) {
             if (tx!=null) tx.rollback();
             throw e;
@@ -19,6 +19,8 @@
 */
 package org.unitime.timetable.action;
 
+import java.text.DecimalFormat;
+
 import org.apache.struts2.convention.annotation.Action;
 import org.apache.struts2.convention.annotation.Result;
 import org.apache.struts2.tiles.annotation.TilesDefinition;
@@ -26,6 +28,9 @@ import org.apache.struts2.tiles.annotation.TilesPutAttribute;
 import org.unitime.commons.web.WebTable;
 import org.unitime.timetable.form.BlankForm;
 import org.unitime.timetable.model.QueryLog;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLogger;
+import org.unitime.timetable.util.Formats;
+import org.unitime.timetable.util.RequestStatistics;
 import org.unitime.timetable.security.rights.Right;
 
 /** 
@@ -60,7 +65,37 @@ public class StatsAction extends UniTimeAction<BlankForm> {
 		return QueryLog.getChart(w, t);
 	}
 	
-	public String getQueryTable() {
-		return QueryLog.getTopQueries(7).printTable(WebTable.getOrder(sessionContext, "pageStats.ord"));
+	public RequestStatistics.Window[] getStatsWindows() {
+		return RequestStatistics.Window.values();
+	}
+	
+	public String getStatsTable(RequestStatistics.Window window) {
+		return RequestStatistics.getInstance().getTable(window).printTable(WebTable.getOrder(sessionContext, "pageStats.ord"));
+	}
+	
+	public String getSectioningLogTable() {
+		if (!OnlineSectioningLogger.hasInstance()) return null;
+		OnlineSectioningLogger logger = OnlineSectioningLogger.getInstance();
+		WebTable table = new WebTable(2, "Online Student Scheduling Log",
+				new String[] {"Name", "Value"},
+				new String[] {"left", "right"},
+				new boolean[] {true, true});
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		table.addLine(new String[] {"Queue Size", String.valueOf(logger.getQueueSize())}, null);
+		table.addLine(new String[] {"Recorded", String.valueOf(logger.getRecorded())}, null);
+		table.addLine(new String[] {"Persisted", String.valueOf(logger.getPersisted())}, null);
+		table.addLine(new String[] {"Dropped", String.valueOf(logger.getDropped())}, null);
+		table.addLine(new String[] {"Failed", String.valueOf(logger.getFailed())}, null);
+		if (logger.getSpillFile() != null) {
+			table.addLine(new String[] {"Spilled", String.valueOf(logger.getSpilled())}, null);
+			table.addLine(new String[] {"Replayed", String.valueOf(logger.getReplayed())}, null);
+		}
+		table.addLine(new String[] {"Flushes", String.valueOf(logger.getFlushes())}, null);
+		table.addLine(new String[] {"Average Flush Time [ms]", df.format(logger.getAverageFlushTime())}, null);
+		table.addLine(new String[] {"Maximal Flush Time [ms]", String.valueOf(logger.getMaxFlushTime())}, null);
+		table.addLine(new String[] {"Last Flush Time [ms]", String.valueOf(logger.getLastFlushTime())}, null);
+		if (logger.getLastFlush() != null)
+			table.addLine(new String[] {"Last Flush", Formats.getDateFormat(Formats.Pattern.DATE_TIME_STAMP).format(logger.getLastFlush())}, null);
+		return table.printTable();
 	}
 }
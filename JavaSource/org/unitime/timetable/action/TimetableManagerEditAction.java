@@ -53,6 +53,7 @@ import org.unitime.timetable.model.dao.RolesDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao.SolverGroupDAO;
 import org.unitime.timetable.model.dao.TimetableManagerDAO;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.util.IdValue;
 import org.unitime.timetable.util.LookupTables;
@@ -465,6 +466,7 @@ public class TimetableManagerEditAction extends UniTimeAction<TimetableManagerFo
                 null);
         
        	tx.commit();
+       	PermissionCache.invalidate();
 
        	form.setUniqueId(mgr.getUniqueId());
     }
@@ -705,6 +707,7 @@ public class TimetableManagerEditAction extends UniTimeAction<TimetableManagerFo
                 null);
 
         tx.commit();
+        PermissionCache.invalidate();
     }
 
     /**
@@ -745,6 +748,7 @@ public class TimetableManagerEditAction extends UniTimeAction<TimetableManagerFo
         hibSession.remove(mgr);
 
        	tx.commit();
+       	PermissionCache.invalidate();
     }
     
     public String getSession() {
@@ -23,12 +23,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
+import org.dom4j.io.STAXEventReader;
 import org.unitime.timetable.model.TimetableManager;
 
 /**
@@ -40,6 +46,7 @@ import org.unitime.timetable.model.TimetableManager;
 public abstract class BaseImport extends DataExchangeHelper {
     protected static Log sLog = LogFactory.getLog(BaseImport.class);
 	private TimetableManager iManager = null;
+	private STAXEventReader iStaxReader = new STAXEventReader();
 
     public BaseImport() {
         super();
@@ -72,6 +79,53 @@ public abstract class BaseImport extends DataExchangeHelper {
     
     public abstract void loadXml(Element rootElement) throws Exception;
     
+    /**
+     * True if the import is able to process the XML file as a stream, see {@link BaseImport#loadXml(XMLEventReader)}
+     */
+    public boolean isStreaming() {
+    	return false;
+    }
+    
+    /**
+     * Import XML file from the given stream reader (positioned before the root element).
+     * The default implementation reads the whole document and calls {@link BaseImport#loadXml(Element)}.
+     */
+    public void loadXml(XMLEventReader reader) throws Exception {
+    	Element root = iStaxReader.readElement(skipToElement(reader));
+    	DocumentHelper.createDocument(root);
+    	loadXml(root);
+    }
+    
+    private XMLEventReader skipToElement(XMLEventReader reader) throws XMLStreamException {
+    	while (reader.hasNext() && !reader.peek().isStartElement() && !reader.peek().isEndElement())
+    		reader.nextEvent();
+    	return reader;
+    }
+    
+    /**
+     * Read the root element of the stream, only with its attributes (the reader is moved after the root start tag)
+     */
+    protected Element readRootElement(XMLEventReader reader) throws XMLStreamException {
+    	skipToElement(reader);
+    	if (!reader.hasNext() || !reader.peek().isStartElement())
+    		throw new XMLStreamException("Given XML file has no root element.");
+    	return iStaxReader.createElement(reader.nextEvent().asStartElement());
+    }
+    
+    /**
+     * Read the next child element of the current element (including its content), null when the end of the current element is reached
+     */
+    protected Element readNextElement(XMLEventReader reader) throws XMLStreamException {
+    	skipToElement(reader);
+    	if (!reader.hasNext()) return null;
+    	XMLEvent event = reader.peek();
+    	if (event.isEndElement()) {
+    		reader.nextEvent();
+    		return null;
+    	}
+    	return iStaxReader.readElement(reader);
+    }
+    
     protected String getRequiredStringAttribute(Element element, String attributeName, String elementName) throws Exception{		
 		String attributeValue = element.attributeValue(attributeName);
 		if (attributeValue == null || attributeValue.trim().length() == 0){
@@ -19,12 +19,22 @@
 */
 package org.unitime.timetable.dataexchange;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Hashtable;
 import java.util.Properties;
 
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
+import org.dom4j.io.SAXReader;
 import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.Session;
 import org.unitime.timetable.model.TimetableManager;
@@ -40,6 +50,7 @@ public class DataExchangeHelper {
     protected org.hibernate.Transaction iTx = null;
     protected int iFlushIfNeededCounter = 0;
     protected static int sBatchSize = 100;
+    protected static int sRootLookAhead = 1024 * 1024;
     
     public static Hashtable<String,Class> sExportRegister;
     public static Hashtable<String,Class> sImportRegister;
@@ -274,6 +285,51 @@ public class DataExchangeHelper {
         imp.loadXml(document.getRootElement());
     }
     
+    /**
+     * Import XML file from the given stream. Imports that support streaming (see {@link BaseImport#isStreaming()})
+     * are given the stream, the whole document is read (using dom4j) otherwise.
+     */
+    public static void importDocument(InputStream input, String userId, Log log) throws Exception {
+    	BufferedInputStream buffered = new BufferedInputStream(input);
+    	buffered.mark(sRootLookAhead);
+    	String rootName = getRootElementName(buffered);
+    	try {
+    		buffered.reset();
+    	} catch (IOException e) {
+    		throw new Exception("Unable to find the root element of the given XML file: " + e.getMessage(), e);
+    	}
+        BaseImport imp = createImportBase(rootName);
+        imp.setLog(log);
+        if (userId != null)
+        	imp.setManager(TimetableManager.findByExternalId(userId));
+        if (imp.isStreaming()) {
+        	XMLInputFactory factory = XMLInputFactory.newInstance();
+        	factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        	XMLEventReader reader = factory.createXMLEventReader(buffered);
+        	try {
+        		imp.loadXml(reader);
+        	} finally {
+        		reader.close();
+        	}
+        } else {
+        	imp.loadXml((new SAXReader()).read(buffered).getRootElement());
+        }
+    }
+    
+    private static String getRootElementName(InputStream input) throws XMLStreamException {
+    	XMLInputFactory factory = XMLInputFactory.newInstance();
+    	factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    	XMLStreamReader reader = factory.createXMLStreamReader(input);
+    	try {
+    		while (reader.hasNext())
+    			if (reader.next() == XMLStreamConstants.START_ELEMENT)
+    				return reader.getLocalName();
+    		throw new XMLStreamException("Given XML file has no root element.");
+    	} finally {
+    		reader.close();
+    	}
+    }
+    
     public static Document exportDocument(String rootName, Session session, Properties parameters, Log log) throws Exception {
         BaseExport exp = createExportBase(rootName);
         exp.setLog(log);
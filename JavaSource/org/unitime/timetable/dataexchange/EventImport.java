@@ -21,8 +21,10 @@
 package org.unitime.timetable.dataexchange;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.dom4j.Element;
 import org.hibernate.FlushMode;
@@ -45,6 +47,7 @@ import org.unitime.timetable.model.Session;
 import org.unitime.timetable.model.SpecialEvent;
 import org.unitime.timetable.model.SponsoringOrganization;
 import org.unitime.timetable.util.CalendarUtils;
+import org.unitime.timetable.util.RoomAvailability;
 
 /**
  * @author Stephanie Schluttenhofer, Tomas Muller
@@ -61,6 +64,7 @@ public class EventImport extends EventRelatedImports {
 	private String academicInitiative = null;
 	
 	private ExternalUidLookup iLookup = null;
+	private Set<Long> iChangedLocations = new HashSet<Long>();
 
 	/**
 	 * 
@@ -135,6 +139,7 @@ public class EventImport extends EventRelatedImports {
 	        	updateChangeList(true);
 	        }
 	        commitTransaction();
+	        RoomAvailability.meetingsChanged(iChangedLocations);
 		} catch (Exception e) {
 			fatal("Exception: " + e.getMessage(), e);
 			rollbackTransaction();
@@ -300,6 +305,7 @@ public class EventImport extends EventRelatedImports {
 		if (meeting.getLocationPermanentId() == null){
 			throw(new Exception("Not Loading " + meetingElement.getName() + " Error:  meeting location not found - " + (buildingAbbv != null?buildingAbbv + (roomNumber != null?" " + roomNumber:""):(location != null?location:""))));			
 		}
+		iChangedLocations.add(meeting.getLocationPermanentId());
 
 		meeting.setClassCanOverride(classCanOverride);
 		
@@ -25,11 +25,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import javax.xml.stream.XMLEventReader;
+
 import org.dom4j.Element;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.ChangeLog;
@@ -44,12 +47,20 @@ import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentEnrollmentMessage;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.test.UpdateExamConflicts;
 
 /**
  * @author Tomas Muller, Stephanie Schluttenhofer
- */
-public class StudentEnrollmentImport extends BaseImport {
+ */public class StudentEnrollmentImport extends BaseImport {
+	private Map<String, Set<Class_>> iExtId2class;
+	private Map<String, Class_> iName2class;
+	private Map<Long, Class_> iId2class;
+	private Map<String, Set<CourseOffering>> iExtId2course;
+	private Map<String, CourseOffering> iName2course;
+	private Map<String, CourseOffering> iCExtId2course;
+	private Map<String, CourseOffering> iCName2course;
+	private Map<Long, Set<CourseOffering>> iClass2courses;
 
 	public StudentEnrollmentImport() {
 		super();
@@ -80,54 +91,8 @@ public class StudentEnrollmentImport extends BaseImport {
 	        
 	        if(session == null)
 	           	throw new Exception("No session found for the given campus, year, and term.");
-
-	    	HashMap<String, Set<Class_>> extId2class = new HashMap<String, Set<Class_>>();
-	    	HashMap<String, Class_> name2class = new HashMap<String, Class_>();
-	    	HashMap<Long, Class_> id2class = new HashMap<Long, Class_>();
-	    	HashMap<String, Set<CourseOffering>> extId2course = new HashMap<String, Set<CourseOffering>>();
-	    	HashMap<String, CourseOffering> name2course = new HashMap<String, CourseOffering>();
-	    	HashMap<String, CourseOffering> cextId2course = new HashMap<String, CourseOffering>();
-	    	HashMap<String, CourseOffering> cname2course = new HashMap<String, CourseOffering>();
-	    	HashMap<Long, Set<CourseOffering>> class2courses = new HashMap<Long, Set<CourseOffering>>();
-	    	
-	    	info("Loading classes...");
-	 		for (Object[] o: getHibSession().createQuery(
-	 				"select c, co from Class_ c inner join c.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings co where " +
-    				"c.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessionId", Object[].class)
-    				.setParameter("sessionId", session.getUniqueId()).list()) {
-	 			Class_ clazz = (Class_)o[0];
-	 			CourseOffering course = (CourseOffering)o[1];
-				String extId = clazz.getExternalId(course);
-				if (extId != null && !extId.isEmpty()) {
-					Set<Class_> sameExtIdClasses = extId2class.get(extId);
-					if (sameExtIdClasses == null) {
-						sameExtIdClasses = new HashSet<Class_>();
-						extId2class.put(extId, sameExtIdClasses);
-					}
-					sameExtIdClasses.add(clazz);
-				}
-				String name = course.getCourseName() + " " + clazz.getItypeDesc().trim() + " " + getClassSuffix(clazz);
-				name2class.put(name, clazz);
-				name2course.put(name, course);
-				id2class.put(clazz.getUniqueId(), clazz);
-				if (extId != null && !extId.isEmpty()) {
-					Set<CourseOffering> sameExtIdCourses = extId2course.get(extId);
-					if (sameExtIdCourses == null) {
-						sameExtIdCourses = new HashSet<CourseOffering>();
-						extId2course.put(extId, sameExtIdCourses);
-					}
-					sameExtIdCourses.add(course);
-				}
-				Set<CourseOffering> courses = class2courses.get(clazz.getUniqueId());
-				if (course.getExternalUniqueId() != null && !course.getExternalUniqueId().isEmpty())
-					cextId2course.put(course.getExternalUniqueId(), course);
-				cname2course.put(course.getCourseName(), course);
-				if (courses == null) {
-					courses = new HashSet<CourseOffering>();
-					class2courses.put(clazz.getUniqueId(), courses);
-				}
-				courses.add(course);
-			}
+	        
+	        loadClasses(session);
 	        
 	        if (created != null)
 				ChangeLog.addChange(getHibSession(), getManager(), session, session, created, ChangeLog.Source.DATA_IMPORT_STUDENT_ENROLLMENTS, ChangeLog.Operation.UPDATE, null, null);
@@ -153,261 +118,13 @@ public class StudentEnrollmentImport extends BaseImport {
 	            if (externalId == null) continue;
 	            while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
 	            
-	            boolean fixCourseDemands = false;
-	 	        
-            	Student student = students.remove(externalId);
-            	if (student == null) {
-            		student = new Student();
-	                student.setSession(session);
-		            student.setFirstName(studentElement.attributeValue("firstName", "Name"));
-		            student.setMiddleName(studentElement.attributeValue("middleName"));
-		            student.setLastName(studentElement.attributeValue("lastName", "Unknown"));
-		            student.setEmail(studentElement.attributeValue("email"));
-		            student.setExternalUniqueId(externalId);
-		            student.setFreeTimeCategory(0);
-		            student.setSchedulePreference(0);
-		            student.setClassEnrollments(new HashSet<StudentClassEnrollment>());
-		            student.setCourseDemands(new HashSet<CourseDemand>());
-            	}
-            	
-            	Hashtable<Pair, StudentClassEnrollment> enrollments = new Hashtable<Pair, StudentClassEnrollment>();
-            	for (StudentClassEnrollment enrollment: student.getClassEnrollments()) {
-            		enrollments.put(new Pair(enrollment.getCourseOffering().getUniqueId(), enrollment.getClazz().getUniqueId()), enrollment);
-            	}
-            	int nextPriority = 0;
-            	for (CourseDemand cd: student.getCourseDemands())
-            		if (!cd.isAlternative() && cd.getPriority() >= nextPriority)
-            			nextPriority = cd.getPriority() + 1;
-            	Set<CourseDemand> remaining = new HashSet<CourseDemand>(student.getCourseDemands());
-            	Map<CourseDemand, CourseOffering> courseAssignments = new HashMap<CourseDemand, CourseOffering>();
-            	
-            	List<Enrollment> selected = new ArrayList<Enrollment>();
-            	for (Iterator j = studentElement.elementIterator("class"); j.hasNext(); ) {
-            		Element classElement = (Element) j.next();
-            		
-            		Class_ clazz = null;
-            		CourseOffering course = null;
-            		Set<Class_> classes = null;
-            		Set<CourseOffering> courses = null;
-
-            		if (clazz == null && classElement.attributeValue("id") != null)
-            			clazz = id2class.get(Long.valueOf(classElement.attributeValue("id")));
-            		
-            		String classExternalId  = classElement.attributeValue("externalId");
-            		if (clazz == null && classExternalId != null) {
-            			classes = extId2class.get(classExternalId);
-            			courses = extId2course.get(classExternalId);
-            			if (classes == null) {
-                			clazz = name2class.get(classExternalId);
-                			course = name2course.get(classExternalId);
-            			} else {
-            				if (classes.size() == 1)
-            					clazz = classes.iterator().next();
-            				if (courses.size() == 1)
-            					course = courses.iterator().next();
-            			}
-            		}
-            		
-            		if (clazz == null && classElement.attributeValue("name") != null) {
-            			String className = classElement.attributeValue("name");
-            			clazz = name2class.get(className);
-            			course = name2course.get(className);
-            		}
-            		
-            		if (course == null && classElement.attributeValue("courseId") != null)
-            			course = cextId2course.get(classElement.attributeValue("courseId"));
-            		
-            		if (course == null) {
-                		String courseName = classElement.attributeValue("course");
-            			if (courseName != null) {
-            				course = cname2course.get(courseName);
-            			} else {
-                    		String subject = classElement.attributeValue("subject");
-                    		String courseNbr = classElement.attributeValue("courseNbr");
-                    		if (subject != null && courseNbr != null)
-                    			course = cname2course.get(subject + " " + courseNbr);
-                		}
-            		}
-            		
-            		if (course != null  && clazz == null) {
-                		String type = classElement.attributeValue("type");
-                		String suffix = classElement.attributeValue("suffix");
-                		if (type != null && suffix != null)
-                			clazz = name2class.get(course.getCourseName() + " " + type.trim() + " " + suffix);
-            		}
-            		
-            		if (clazz == null && classes == null) {
-            			warn("Class " + (classExternalId != null ? classExternalId : classElement.attributeValue("name",
-            					classElement.attributeValue("course", classElement.attributeValue("subject") + " " + classElement.attributeValue("courseNbr")) + " " +
-            					classElement.attributeValue("type") + " " + classElement.attributeValue("suffix"))) + " not found.");
-            			continue;
-            		}
-            		
-            		if (clazz != null) {
-            			Set<CourseOffering> coursesThisClass = class2courses.get(clazz.getUniqueId());
-            			if (course == null && courses != null)
-            				for (CourseOffering co: courses)
-                				if (co.isIsControl() && coursesThisClass.contains(co))
-                					{ course = co; break; }
-            			if (course == null && courses != null)
-            				for (CourseOffering co: courses)
-                				if (coursesThisClass.contains(co))
-                					{ course = co; break; }
-            			if (course == null || !coursesThisClass.contains(course)) {
-            				for (CourseOffering co: coursesThisClass)
-                				if (co.isIsControl())
-                					{ course = co; break; }
-            			}
-            			selected.add(new Enrollment(course, clazz));
-            		} else {
-            			classes: for (Class_ c: classes) {
-            				Set<CourseOffering> coursesThisClass = class2courses.get(c.getUniqueId());
-            				if (course != null) {
-            					if (coursesThisClass.contains(course))
-            						selected.add(new Enrollment(course, c));
-            				} else {
-            					for (CourseOffering co: courses) {
-            						if (coursesThisClass.contains(co) && co.isIsControl()) {
-            							selected.add(new Enrollment(co, c));
-            							continue classes;
-            						}
-            					}
-            					for (CourseOffering co: courses) {
-            						if (coursesThisClass.contains(co)) {
-            							selected.add(new Enrollment(co, c));
-            								continue classes;
-            						}
-            					}
-            				}
-            			}
-            		}
-            	}
-            	
-            	Set<Enrollment> imported = new HashSet<Enrollment>();
-            	for (Enrollment e: selected) {
-            		if (!imported.add(e)) continue; // skip duplicates
-            		Class_ clazz = e.getClazz();
-            		CourseOffering course = e.getCourse();
-            		StudentClassEnrollment enrollment = enrollments.remove(new Pair(course.getUniqueId(), clazz.getUniqueId()));
-            		if (enrollment == null) {
-                		enrollment = new StudentClassEnrollment();
-                		enrollment.setStudent(student);
-                		enrollment.setClazz(clazz);
-                		enrollment.setCourseOffering(course);
-                		enrollment.setTimestamp(ts);
-                		enrollment.setChangedBy(StudentClassEnrollment.SystemChange.IMPORT.toString());
-                		student.getClassEnrollments().add(enrollment);
-                		
-                		demands: for (CourseDemand d: student.getCourseDemands()) {
-                			for (CourseRequest r: d.getCourseRequests()) {
-                				if (r.getCourseOffering().equals(course)) {
-                					enrollment.setCourseRequest(r);
-                					break demands;
-                				}
-                			}
-                		}
-                		
-                		if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
-            		}
-            		
-            		if (enrollment.getCourseRequest() != null) {
-            			remaining.remove(enrollment.getCourseRequest().getCourseDemand());
-            			CourseOffering assigned = courseAssignments.get(enrollment.getCourseRequest().getCourseDemand());
-            			if (assigned == null) {
-                			courseAssignments.put(enrollment.getCourseRequest().getCourseDemand(), course);
-            			} else if (!course.equals(assigned)) {
-            				// course demand has been already removed -> need to split the course demand
-            				enrollment.getCourseRequest().getCourseDemand().getCourseRequests().remove(enrollment.getCourseRequest());
-            				CourseDemand cd = new CourseDemand();
-                			cd.setTimestamp(ts);
-                			cd.setCourseRequests(new HashSet<CourseRequest>());
-                			cd.setEnrollmentMessages(new HashSet<StudentEnrollmentMessage>());
-                			cd.setStudent(student);
-                			student.getCourseDemands().add(cd);
-                			cd.setAlternative(false);
-                			cd.setPriority(nextPriority++);
-                			cd.setWaitlist(false);
-                			cd.setNoSub(false);
-                			enrollment.getCourseRequest().setCourseDemand(cd);
-                			cd.getCourseRequests().add(enrollment.getCourseRequest());
-                			fixCourseDemands = true;
-                			if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
-            			}
-            			for (Iterator<StudentEnrollmentMessage> j = enrollment.getCourseRequest().getCourseDemand().getEnrollmentMessages().iterator(); j.hasNext(); ) {
-            				StudentEnrollmentMessage message = j.next();
-            				getHibSession().remove(message);
-            				j.remove();
-            			}
-            		} else {
-            			CourseDemand cd = new CourseDemand();
-    					cd.setTimestamp(ts);
-    					cd.setCourseRequests(new HashSet<CourseRequest>());
-    					cd.setEnrollmentMessages(new HashSet<StudentEnrollmentMessage>());
-    					cd.setStudent(student);
-    					student.getCourseDemands().add(cd);
-    					cd.setAlternative(false);
-    					cd.setPriority(nextPriority++);
-    					cd.setWaitlist(false);
-    					cd.setNoSub(false);
-    					CourseRequest cr = new CourseRequest();
-						cd.getCourseRequests().add(cr);
-						cr.setCourseDemand(cd);
-						cr.setCourseRequestOptions(new HashSet<CourseRequestOption>());
-						cr.setAllowOverlap(false);
-						cr.setCredit(0);
-						cr.setOrder(0);
-						cr.setCourseOffering(enrollment.getCourseOffering());
-						enrollment.setCourseRequest(cr);
-						cr.getClassEnrollments().add(enrollment);
-						fixCourseDemands = true;
-						if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
-            		}
-            	}
-            	
-            	if (!enrollments.isEmpty()) {
-            		for (StudentClassEnrollment enrollment: enrollments.values()) {
-            			student.getClassEnrollments().remove(enrollment);
-            			getHibSession().remove(enrollment);
-                		updatedStudents.add(student.getUniqueId());
-            		}
-            	}
-
-            	if (student.getUniqueId() == null) {
-            		createdStudents.add(student);
-            		getHibSession().persist(student);
-            	} else {
-            		getHibSession().merge(student);
-            	}
-            	
-            	if (fixCourseDemands) {
-            		// removed unused course demands (only when not in the registration mode)
-            		if (student.getSession().getStatusType() == null || !student.getSession().getStatusType().canPreRegisterStudents())
-                		for (CourseDemand cd: remaining) {
-                			if (cd.getFreeTime() != null)
-                				getHibSession().remove(cd.getFreeTime());
-                			for (CourseRequest cr: cd.getCourseRequests())
-                				getHibSession().remove(cr);
-                			student.getCourseDemands().remove(cd);
-                			getHibSession().remove(cd);
-                		}
-            		int priority = 0;
-            		for (CourseDemand cd: new TreeSet<CourseDemand>(student.getCourseDemands())) {
-            			cd.setPriority(priority++);
-            			getHibSession().merge(cd);
-            		}
-            	}
-
+	            importStudent(studentElement, externalId, students, session, ts, updatedStudents, createdStudents);
 	        }
  	        
 	        if (!incremental)
 	 	        for (Student student: students.values()) {
-	        		for (Iterator<StudentClassEnrollment> i = student.getClassEnrollments().iterator(); i.hasNext(); ) {
-	        			StudentClassEnrollment enrollment = i.next();
-	        			getHibSession().remove(enrollment);
-	        			i.remove();
-	     	        	updatedStudents.add(student.getUniqueId());
-	        		}
-	        		getHibSession().merge(student);
+	 	        	if (removeEnrollments(student))
+	 	        		updatedStudents.add(student.getUniqueId());
 	 	        }
  	        
         	getHibSession().flush();
@@ -425,45 +142,520 @@ public class StudentEnrollmentImport extends BaseImport {
 			throw e;
 		}
 		
-        if (session!=null && ApplicationProperty.DataExchangeUpdateStudentConflictsFinal.isTrue()) {
+		updateStudentConflicts(session.getUniqueId());
+        
+        /*
+        if (session != null && "true".equals(ApplicationProperties.getProperty("tmtbl.data.import.studentEnrl.class.updateEnrollments","true"))){
+        	org.hibernate.Session hibSession = new _RootDAO().createNewSession();
             try {
-                beginTransaction();
-                for (ExamType type: ExamType.findAllOfType(ExamType.sExamTypeFinal))
-                	new UpdateExamConflicts(this).update(session.getUniqueId(), type.getUniqueId(), getHibSession());
-                commitTransaction();
+                info("  Updating class enrollments...");
+                Class_.updateClassEnrollmentForSession(session, hibSession);
+                info("  Updating course offering enrollments...");
+                CourseOffering.updateCourseOfferingEnrollmentForSession(session, hibSession);
             } catch (Exception e) {
                 fatal("Exception: " + e.getMessage(), e);
-                rollbackTransaction();
+            } finally {
+            	hibSession.close();
             }
         }
+        */
+	}
+	
+	protected int getChunkSize() {
+		Integer chunkSize = ApplicationProperty.DataExchangeStudentImportChunkSize.intValue();
+		return (chunkSize == null ? 0 : chunkSize.intValue());
+	}
+	
+	@Override
+	public boolean isStreaming() {
+		return getChunkSize() > 0;
+	}
+	
+	/**
+	 * Streaming import: the students are read from the XML file and imported in chunks (see tmtbl.data.import.student.chunkSize),
+	 * only students of the chunk are loaded and each chunk is committed in its own transaction.
+	 */
+	@Override
+	public void loadXml(XMLEventReader reader) throws Exception {
+		if (!isStreaming()) {
+			super.loadXml(reader);
+			return;
+		}
+		int chunkSize = getChunkSize();
+		Element rootElement = readRootElement(reader);
+		if (!rootElement.getName().equalsIgnoreCase("studentEnrollments"))
+        	throw new Exception("Given XML file is not a Student Enrollments load file.");
+		
+		Long sessionId = null;
+		try {
+			String campus = rootElement.attributeValue("campus");
+			String year   = rootElement.attributeValue("year");
+			String term   = rootElement.attributeValue("term");
+			String created = rootElement.attributeValue("created");
+			boolean incremental = "true".equals(rootElement.attributeValue("incremental", "false"));
+			
+			beginTransaction();
+			
+			Session session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
+			if (session == null)
+				throw new Exception("No session found for the given campus, year, and term.");
+			sessionId = session.getUniqueId();
+			
+			loadClasses(session);
+			
+			if (created != null)
+				ChangeLog.addChange(getHibSession(), getManager(), session, session, created, ChangeLog.Source.DATA_IMPORT_STUDENT_ENROLLMENTS, ChangeLog.Operation.UPDATE, null, null);
+			
+			info("Importing enrollments (" + chunkSize + " students at a time)...");
+			Date ts = new Date();
+			Set<String> imported = new HashSet<String>();
+			List<Element> chunk = new ArrayList<Element>();
+			int students = 0, changed = 0;
+			Element studentElement = null;
+			do {
+				studentElement = readNextElement(reader);
+				if (studentElement != null && "student".equals(studentElement.getName()))
+					chunk.add(studentElement);
+				if (chunk.size() >= chunkSize || (studentElement == null && !chunk.isEmpty())) {
+					changed += importChunk(sessionId, chunk, imported, ts);
+					students += chunk.size();
+					chunk.clear();
+					info("  " + students + " students imported, " + changed + " changed");
+				}
+			} while (studentElement != null);
+			
+			if (!incremental) {
+				List<Long> studentIds = new ArrayList<Long>();
+				for (Object[] o: getHibSession().createQuery(
+						"select distinct e.student.uniqueId, e.student.externalUniqueId from StudentClassEnrollment e where " +
+						"e.student.session.uniqueId = :sessionId and e.student.externalUniqueId is not null", Object[].class)
+						.setParameter("sessionId", sessionId).list()) {
+					if (!imported.contains((String)o[1])) studentIds.add((Long)o[0]);
+				}
+				if (!studentIds.isEmpty())
+					info("Removing enrollments of " + studentIds.size() + " students that are not included in the file...");
+				for (int i = 0; i < studentIds.size(); i += chunkSize)
+					changed += removeEnrollments(sessionId, studentIds.subList(i, Math.min(i + chunkSize, studentIds.size())));
+			}
+			
+			info(changed + " students changed");
+			
+			commitTransaction();
+		} catch (Exception e) {
+			fatal("Exception: " + e.getMessage(), e);
+			rollbackTransaction();
+			throw e;
+		}
+		
+		updateStudentConflicts(sessionId);
+	}
+	
+	/**
+	 * Import the given students, flush and commit the changes
+	 * @return number of changed students
+	 */
+	protected int importChunk(Long sessionId, List<Element> studentElements, Set<String> imported, Date ts) throws Exception {
+		boolean trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
+		Session session = SessionDAO.getInstance().get(sessionId, getHibSession());
+		
+		Map<Element, String> externalIds = new LinkedHashMap<Element, String>();
+		for (Element studentElement: studentElements) {
+			String externalId = studentElement.attributeValue("externalId");
+			if (externalId == null) continue;
+			while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
+			externalIds.put(studentElement, externalId);
+		}
+		
+		Hashtable<String, Student> students = new Hashtable<String, Student>();
+		List<String> ids = new ArrayList<String>(new HashSet<String>(externalIds.values()));
+		for (int i = 0; i < ids.size(); i += 1000) {
+			for (Student student: getHibSession().createQuery(
+					"select distinct s from Student s " +
+					"left join fetch s.courseDemands as cd " +
+					"left join fetch cd.courseRequests as cr " +
+					"left join fetch s.classEnrollments as e " +
+					"where s.session.uniqueId=:sessionId and s.externalUniqueId in :externalIds", Student.class)
+					.setParameter("sessionId", sessionId)
+					.setParameterList("externalIds", ids.subList(i, Math.min(i + 1000, ids.size())), String.class).list()) {
+				students.put(student.getExternalUniqueId(), student);
+			}
+		}
+		
+		Set<Long> updatedStudents = new HashSet<Long>();
+		List<Student> createdStudents = new ArrayList<Student>();
+		for (Map.Entry<Element, String> e: externalIds.entrySet()) {
+			imported.add(e.getValue());
+			importStudent(e.getKey(), e.getValue(), students, session, ts, updatedStudents, createdStudents);
+		}
+		
+		getHibSession().flush();
+		for (Student s: createdStudents)
+			updatedStudents.add(s.getUniqueId());
+		if (!updatedStudents.isEmpty())
+			StudentSectioningQueue.studentChanged(getHibSession(), null, sessionId, updatedStudents);
+		if (!flush(true))
+			throw new Exception("Failed to save students " + ids + ".");
+		return updatedStudents.size();
+	}
+	
+	/**
+	 * Remove enrollments of the given students, flush and commit the changes
+	 * @return number of changed students
+	 */
+	protected int removeEnrollments(Long sessionId, List<Long> studentIds) throws Exception {
+		Set<Long> updatedStudents = new HashSet<Long>();
+		for (int i = 0; i < studentIds.size(); i += 1000) {
+			for (Student student: getHibSession().createQuery(
+					"select distinct s from Student s left join fetch s.classEnrollments as e where s.uniqueId in :studentIds", Student.class)
+					.setParameterList("studentIds", studentIds.subList(i, Math.min(i + 1000, studentIds.size())), Long.class).list()) {
+				if (removeEnrollments(student))
+					updatedStudents.add(student.getUniqueId());
+			}
+		}
+		getHibSession().flush();
+		if (!updatedStudents.isEmpty())
+			StudentSectioningQueue.studentChanged(getHibSession(), null, sessionId, updatedStudents);
+		if (!flush(true))
+			throw new Exception("Failed to remove enrollments of students " + studentIds + ".");
+		return updatedStudents.size();
+	}
+	
+	/**
+	 * Remove all class enrollments of the given student
+	 * @return true if the student had some enrollments
+	 */
+	protected boolean removeEnrollments(Student student) {
+		boolean changed = false;
+		for (Iterator<StudentClassEnrollment> i = student.getClassEnrollments().iterator(); i.hasNext(); ) {
+			StudentClassEnrollment enrollment = i.next();
+			getHibSession().remove(enrollment);
+			i.remove();
+			changed = true;
+		}
+		getHibSession().merge(student);
+		return changed;
+	}
+	
+	protected void loadClasses(Session session) {
+		iExtId2class = new HashMap<String, Set<Class_>>();
+		iName2class = new HashMap<String, Class_>();
+		iId2class = new HashMap<Long, Class_>();
+		iExtId2course = new HashMap<String, Set<CourseOffering>>();
+		iName2course = new HashMap<String, CourseOffering>();
+		iCExtId2course = new HashMap<String, CourseOffering>();
+		iCName2course = new HashMap<String, CourseOffering>();
+		iClass2courses = new HashMap<Long, Set<CourseOffering>>();
+		
+		info("Loading classes...");
+		for (Object[] o: getHibSession().createQuery(
+				"select c, co from Class_ c inner join c.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings co where " +
+				"c.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessionId", Object[].class)
+				.setParameter("sessionId", session.getUniqueId()).list()) {
+			Class_ clazz = (Class_)o[0];
+			CourseOffering course = (CourseOffering)o[1];
+			String extId = clazz.getExternalId(course);
+			if (extId != null && !extId.isEmpty()) {
+				Set<Class_> sameExtIdClasses = iExtId2class.get(extId);
+				if (sameExtIdClasses == null) {
+					sameExtIdClasses = new HashSet<Class_>();
+					iExtId2class.put(extId, sameExtIdClasses);
+				}
+				sameExtIdClasses.add(clazz);
+			}
+			String name = course.getCourseName() + " " + clazz.getItypeDesc().trim() + " " + getClassSuffix(clazz);
+			iName2class.put(name, clazz);
+			iName2course.put(name, course);
+			iId2class.put(clazz.getUniqueId(), clazz);
+			if (extId != null && !extId.isEmpty()) {
+				Set<CourseOffering> sameExtIdCourses = iExtId2course.get(extId);
+				if (sameExtIdCourses == null) {
+					sameExtIdCourses = new HashSet<CourseOffering>();
+					iExtId2course.put(extId, sameExtIdCourses);
+				}
+				sameExtIdCourses.add(course);
+			}
+			Set<CourseOffering> courses = iClass2courses.get(clazz.getUniqueId());
+			if (course.getExternalUniqueId() != null && !course.getExternalUniqueId().isEmpty())
+				iCExtId2course.put(course.getExternalUniqueId(), course);
+			iCName2course.put(course.getCourseName(), course);
+			if (courses == null) {
+				courses = new HashSet<CourseOffering>();
+				iClass2courses.put(clazz.getUniqueId(), courses);
+			}
+			courses.add(course);
+		}
+	}
+	
+	protected void importStudent(Element studentElement, String externalId, Map<String, Student> students, Session session, Date ts, Set<Long> updatedStudents, List<Student> createdStudents) {
+		boolean fixCourseDemands = false;
+
+		Student student = students.remove(externalId);
+		if (student == null) {
+			student = new Student();
+			student.setSession(session);
+			student.setFirstName(studentElement.attributeValue("firstName", "Name"));
+			student.setMiddleName(studentElement.attributeValue("middleName"));
+			student.setLastName(studentElement.attributeValue("lastName", "Unknown"));
+			student.setEmail(studentElement.attributeValue("email"));
+			student.setExternalUniqueId(externalId);
+			student.setFreeTimeCategory(0);
+			student.setSchedulePreference(0);
+			student.setClassEnrollments(new HashSet<StudentClassEnrollment>());
+			student.setCourseDemands(new HashSet<CourseDemand>());
+		}
+
+		Hashtable<Pair, StudentClassEnrollment> enrollments = new Hashtable<Pair, StudentClassEnrollment>();
+		for (StudentClassEnrollment enrollment: student.getClassEnrollments()) {
+			enrollments.put(new Pair(enrollment.getCourseOffering().getUniqueId(), enrollment.getClazz().getUniqueId()), enrollment);
+		}
+		int nextPriority = 0;
+		for (CourseDemand cd: student.getCourseDemands())
+			if (!cd.isAlternative() && cd.getPriority() >= nextPriority)
+				nextPriority = cd.getPriority() + 1;
+		Set<CourseDemand> remaining = new HashSet<CourseDemand>(student.getCourseDemands());
+		Map<CourseDemand, CourseOffering> courseAssignments = new HashMap<CourseDemand, CourseOffering>();
+
+		List<Enrollment> selected = new ArrayList<Enrollment>();
+		for (Iterator j = studentElement.elementIterator("class"); j.hasNext(); ) {
+			Element classElement = (Element) j.next();
+
+			Class_ clazz = null;
+			CourseOffering course = null;
+			Set<Class_> classes = null;
+			Set<CourseOffering> courses = null;
+
+			if (clazz == null && classElement.attributeValue("id") != null)
+				clazz = iId2class.get(Long.valueOf(classElement.attributeValue("id")));
+
+			String classExternalId  = classElement.attributeValue("externalId");
+			if (clazz == null && classExternalId != null) {
+				classes = iExtId2class.get(classExternalId);
+				courses = iExtId2course.get(classExternalId);
+				if (classes == null) {
+					clazz = iName2class.get(classExternalId);
+					course = iName2course.get(classExternalId);
+				} else {
+					if (classes.size() == 1)
+						clazz = classes.iterator().next();
+					if (courses.size() == 1)
+						course = courses.iterator().next();
+				}
+			}
+
+			if (clazz == null && classElement.attributeValue("name") != null) {
+				String className = classElement.attributeValue("name");
+				clazz = iName2class.get(className);
+				course = iName2course.get(className);
+			}
+
+			if (course == null && classElement.attributeValue("courseId") != null)
+				course = iCExtId2course.get(classElement.attributeValue("courseId"));
+
+			if (course == null) {
+				String courseName = classElement.attributeValue("course");
+				if (courseName != null) {
+					course = iCName2course.get(courseName);
+				} else {
+					String subject = classElement.attributeValue("subject");
+					String courseNbr = classElement.attributeValue("courseNbr");
+					if (subject != null && courseNbr != null)
+						course = iCName2course.get(subject + " " + courseNbr);
+				}
+			}
 
-        if (session!=null && ApplicationProperty.DataExchangeUpdateStudentConflictsMidterm.isTrue()) {
+			if (course != null  && clazz == null) {
+				String type = classElement.attributeValue("type");
+				String suffix = classElement.attributeValue("suffix");
+				if (type != null && suffix != null)
+					clazz = iName2class.get(course.getCourseName() + " " + type.trim() + " " + suffix);
+			}
+
+			if (clazz == null && classes == null) {
+				warn("Class " + (classExternalId != null ? classExternalId : classElement.attributeValue("name",
+						classElement.attributeValue("course", classElement.attributeValue("subject") + " " + classElement.attributeValue("courseNbr")) + " " +
+						classElement.attributeValue("type") + " " + classElement.attributeValue("suffix"))) + " not found.");
+				continue;
+			}
+
+			if (clazz != null) {
+				Set<CourseOffering> coursesThisClass = iClass2courses.get(clazz.getUniqueId());
+				if (course == null && courses != null)
+					for (CourseOffering co: courses)
+						if (co.isIsControl() && coursesThisClass.contains(co))
+							{ course = co; break; }
+				if (course == null && courses != null)
+					for (CourseOffering co: courses)
+						if (coursesThisClass.contains(co))
+							{ course = co; break; }
+				if (course == null || !coursesThisClass.contains(course)) {
+					for (CourseOffering co: coursesThisClass)
+						if (co.isIsControl())
+							{ course = co; break; }
+				}
+				selected.add(new Enrollment(course, clazz));
+			} else {
+				classes: for (Class_ c: classes) {
+					Set<CourseOffering> coursesThisClass = iClass2courses.get(c.getUniqueId());
+					if (course != null) {
+						if (coursesThisClass.contains(course))
+							selected.add(new Enrollment(course, c));
+					} else {
+						for (CourseOffering co: courses) {
+							if (coursesThisClass.contains(co) && co.isIsControl()) {
+								selected.add(new Enrollment(co, c));
+								continue classes;
+							}
+						}
+						for (CourseOffering co: courses) {
+							if (coursesThisClass.contains(co)) {
+								selected.add(new Enrollment(co, c));
+									continue classes;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		Set<Enrollment> imported = new HashSet<Enrollment>();
+		for (Enrollment e: selected) {
+			if (!imported.add(e)) continue; // skip duplicates
+			Class_ clazz = e.getClazz();
+			CourseOffering course = e.getCourse();
+			StudentClassEnrollment enrollment = enrollments.remove(new Pair(course.getUniqueId(), clazz.getUniqueId()));
+			if (enrollment == null) {
+				enrollment = new StudentClassEnrollment();
+				enrollment.setStudent(student);
+				enrollment.setClazz(clazz);
+				enrollment.setCourseOffering(course);
+				enrollment.setTimestamp(ts);
+				enrollment.setChangedBy(StudentClassEnrollment.SystemChange.IMPORT.toString());
+				student.getClassEnrollments().add(enrollment);
+
+				demands: for (CourseDemand d: student.getCourseDemands()) {
+					for (CourseRequest r: d.getCourseRequests()) {
+						if (r.getCourseOffering().equals(course)) {
+							enrollment.setCourseRequest(r);
+							break demands;
+						}
+					}
+				}
+
+				if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
+			}
+
+			if (enrollment.getCourseRequest() != null) {
+				remaining.remove(enrollment.getCourseRequest().getCourseDemand());
+				CourseOffering assigned = courseAssignments.get(enrollment.getCourseRequest().getCourseDemand());
+				if (assigned == null) {
+					courseAssignments.put(enrollment.getCourseRequest().getCourseDemand(), course);
+				} else if (!course.equals(assigned)) {
+					// course demand has been already removed -> need to split the course demand
+					enrollment.getCourseRequest().getCourseDemand().getCourseRequests().remove(enrollment.getCourseRequest());
+					CourseDemand cd = new CourseDemand();
+					cd.setTimestamp(ts);
+					cd.setCourseRequests(new HashSet<CourseRequest>());
+					cd.setEnrollmentMessages(new HashSet<StudentEnrollmentMessage>());
+					cd.setStudent(student);
+					student.getCourseDemands().add(cd);
+					cd.setAlternative(false);
+					cd.setPriority(nextPriority++);
+					cd.setWaitlist(false);
+					cd.setNoSub(false);
+					enrollment.getCourseRequest().setCourseDemand(cd);
+					cd.getCourseRequests().add(enrollment.getCourseRequest());
+					fixCourseDemands = true;
+					if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
+				}
+				for (Iterator<StudentEnrollmentMessage> j = enrollment.getCourseRequest().getCourseDemand().getEnrollmentMessages().iterator(); j.hasNext(); ) {
+					StudentEnrollmentMessage message = j.next();
+					getHibSession().remove(message);
+					j.remove();
+				}
+			} else {
+				CourseDemand cd = new CourseDemand();
+				cd.setTimestamp(ts);
+				cd.setCourseRequests(new HashSet<CourseRequest>());
+				cd.setEnrollmentMessages(new HashSet<StudentEnrollmentMessage>());
+				cd.setStudent(student);
+				student.getCourseDemands().add(cd);
+				cd.setAlternative(false);
+				cd.setPriority(nextPriority++);
+				cd.setWaitlist(false);
+				cd.setNoSub(false);
+				CourseRequest cr = new CourseRequest();
+				cd.getCourseRequests().add(cr);
+				cr.setCourseDemand(cd);
+				cr.setCourseRequestOptions(new HashSet<CourseRequestOption>());
+				cr.setAllowOverlap(false);
+				cr.setCredit(0);
+				cr.setOrder(0);
+				cr.setCourseOffering(enrollment.getCourseOffering());
+				enrollment.setCourseRequest(cr);
+				cr.getClassEnrollments().add(enrollment);
+				fixCourseDemands = true;
+				if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
+			}
+		}
+
+		if (!enrollments.isEmpty()) {
+			for (StudentClassEnrollment enrollment: enrollments.values()) {
+				student.getClassEnrollments().remove(enrollment);
+				getHibSession().remove(enrollment);
+				updatedStudents.add(student.getUniqueId());
+			}
+		}
+
+		if (student.getUniqueId() == null) {
+			createdStudents.add(student);
+			getHibSession().persist(student);
+		} else {
+			getHibSession().merge(student);
+		}
+
+		if (fixCourseDemands) {
+			// removed unused course demands (only when not in the registration mode)
+			if (student.getSession().getStatusType() == null || !student.getSession().getStatusType().canPreRegisterStudents())
+				for (CourseDemand cd: remaining) {
+					if (cd.getFreeTime() != null)
+						getHibSession().remove(cd.getFreeTime());
+					for (CourseRequest cr: cd.getCourseRequests())
+						getHibSession().remove(cr);
+					student.getCourseDemands().remove(cd);
+					getHibSession().remove(cd);
+				}
+			int priority = 0;
+			for (CourseDemand cd: new TreeSet<CourseDemand>(student.getCourseDemands())) {
+				cd.setPriority(priority++);
+				getHibSession().merge(cd);
+			}
+		}
+	}
+	
+	protected void updateStudentConflicts(Long sessionId) {
+        if (ApplicationProperty.DataExchangeUpdateStudentConflictsFinal.isTrue()) {
             try {
                 beginTransaction();
-                for (ExamType type: ExamType.findAllOfType(ExamType.sExamTypeMidterm))
-                	new UpdateExamConflicts(this).update(session.getUniqueId(), type.getUniqueId(), getHibSession());
+                for (ExamType type: ExamType.findAllOfType(ExamType.sExamTypeFinal))
+                	new UpdateExamConflicts(this).update(sessionId, type.getUniqueId(), getHibSession());
                 commitTransaction();
             } catch (Exception e) {
                 fatal("Exception: " + e.getMessage(), e);
                 rollbackTransaction();
             }
         }
-        
-        /*
-        if (session != null && "true".equals(ApplicationProperties.getProperty("tmtbl.data.import.studentEnrl.class.updateEnrollments","true"))){
-        	org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+
+        if (ApplicationProperty.DataExchangeUpdateStudentConflictsMidterm.isTrue()) {
             try {
-                info("  Updating class enrollments...");
-                Class_.updateClassEnrollmentForSession(session, hibSession);
-                info("  Updating course offering enrollments...");
-                CourseOffering.updateCourseOfferingEnrollmentForSession(session, hibSession);
+                beginTransaction();
+                for (ExamType type: ExamType.findAllOfType(ExamType.sExamTypeMidterm))
+                	new UpdateExamConflicts(this).update(sessionId, type.getUniqueId(), getHibSession());
+                commitTransaction();
             } catch (Exception e) {
                 fatal("Exception: " + e.getMessage(), e);
-            } finally {
-            	hibSession.close();
+                rollbackTransaction();
             }
         }
-        */
 	}
 	
 	public static class Pair {
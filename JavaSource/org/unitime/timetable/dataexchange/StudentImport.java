@@ -24,11 +24,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import javax.xml.stream.XMLEventReader;
+
 import org.cpsolver.ifs.util.ToolBox;
 import org.dom4j.Element;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -49,6 +52,7 @@ import org.unitime.timetable.model.StudentAreaClassificationMinor;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentGroup;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.model.dao.SessionDAO;
 
 /**
  * @author Tomas Muller, Timothy Almon
@@ -88,78 +92,7 @@ public class StudentImport extends BaseImport {
 	        	students.put(student.getExternalUniqueId(), student);
 	        }
 	        
-            Map<String, AcademicArea> abbv2area = new Hashtable<String, AcademicArea>();
-            for (AcademicArea area: getHibSession().createQuery(
-            		"from AcademicArea where session.uniqueId=:sessionId", AcademicArea.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	abbv2area.put(area.getAcademicAreaAbbreviation(), area);
-            }
-
-            Map<String, AcademicClassification> code2clasf = new Hashtable<String, AcademicClassification>();
-            for (AcademicClassification clasf: getHibSession().createQuery(
-            		"from AcademicClassification where session.uniqueId=:sessionId", AcademicClassification.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	code2clasf.put(clasf.getCode(), clasf);
-            }
-            
-            Map<String, PosMajor> code2major = new Hashtable<String, PosMajor>();
-            for (PosMajor major: getHibSession().createQuery(
-            		"from PosMajor where session.uniqueId=:sessionId", PosMajor.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: major.getAcademicAreas())
-            		code2major.put(area.getAcademicAreaAbbreviation() + ":" + major.getCode(), major);
-            }
-            
-            Map<String, PosMajorConcentration> code2concentration = new Hashtable<String, PosMajorConcentration>();
-            for (PosMajorConcentration conc: getHibSession().createQuery(
-            		"from PosMajorConcentration where major.session.uniqueId=:sessionId", PosMajorConcentration.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: conc.getMajor().getAcademicAreas())
-            		code2concentration.put(area.getAcademicAreaAbbreviation() + ":" + conc.getMajor().getCode() + ":" + conc.getCode(), conc);
-            }
-            
-            Map<String, Degree> code2degree = new Hashtable<String, Degree>();
-            for (Degree deg: getHibSession().createQuery(
-            		"from Degree where session.uniqueId=:sessionId", Degree.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	code2degree.put(deg.getReference(), deg);
-            }
-            
-            Map<String, Program> code2program = new Hashtable<String, Program>();
-            for (Program prog: getHibSession().createQuery(
-            		"from Program where session.uniqueId=:sessionId", Program.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	code2program.put(prog.getReference(), prog);
-            }
-            
-            Map<String, Campus> code2campus = new Hashtable<String, Campus>();
-            for (Campus camp: getHibSession().createQuery(
-            		"from Campus where session.uniqueId=:sessionId", Campus.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	code2campus.put(camp.getReference(), camp);
-            }
-            
-            Map<String, PosMinor> code2minor = new Hashtable<String, PosMinor>();
-            for (PosMinor minor: getHibSession().createQuery(
-            		"from PosMinor where session.uniqueId=:sessionId", PosMinor.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: minor.getAcademicAreas())
-            		code2minor.put(area.getAcademicAreaAbbreviation() + ":" + minor.getCode(), minor);
-            }
-
-            Map<String, StudentGroup> code2group = new Hashtable<String, StudentGroup>();
-            for (StudentGroup group: getHibSession().createQuery(
-            		"from StudentGroup where session.uniqueId=:sessionId", StudentGroup.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	code2group.put(group.getGroupAbbreviation(), group);
-            }
-            
-            Map<String, StudentAccomodation> code2accomodation = new Hashtable<String, StudentAccomodation>();
-            for (StudentAccomodation accomodation: getHibSession().createQuery(
-            		"from StudentAccomodation where session.uniqueId=:sessionId", StudentAccomodation.class)
-            		.setParameter("sessionId", session.getUniqueId()).list()) {
-            	code2accomodation.put(accomodation.getAbbreviation(), accomodation);
-            }
+            Codes codes = loadCodes(session.getUniqueId());
 	        
 	        Set<Long> updatedStudents = new HashSet<Long>();
 	        List<Student> createdStudents = new ArrayList<Student>();
@@ -171,8 +104,7 @@ public class StudentImport extends BaseImport {
 	            if (externalId == null) continue;
 	            while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
 
-	            importStudent(element, externalId, students, session, updatedStudents, createdStudents,
-	            		abbv2area, code2clasf, code2major, code2minor, code2group, code2accomodation, code2concentration, code2degree, code2program, code2campus);
+	            importStudent(element, externalId, students, session, updatedStudents, createdStudents, codes);
 	        }
 
 	        if (!incremental)
@@ -197,6 +129,161 @@ public class StudentImport extends BaseImport {
 		}
 	}
 	
+	protected int getChunkSize() {
+		Integer chunkSize = ApplicationProperty.DataExchangeStudentImportChunkSize.intValue();
+		return (chunkSize == null ? 0 : chunkSize.intValue());
+	}
+	
+	@Override
+	public boolean isStreaming() {
+		return getChunkSize() > 0;
+	}
+	
+	/**
+	 * Streaming import: the students are read from the XML file and imported in chunks (see tmtbl.data.import.student.chunkSize),
+	 * only students of the chunk are loaded and each chunk is committed in its own transaction.
+	 */
+	@Override
+	public void loadXml(XMLEventReader reader) throws Exception {
+		if (!isStreaming()) {
+			super.loadXml(reader);
+			return;
+		}
+		int chunkSize = getChunkSize();
+		Element rootElement = readRootElement(reader);
+		try {
+			String campus = rootElement.attributeValue("campus");
+			String year   = rootElement.attributeValue("year");
+			String term   = rootElement.attributeValue("term");
+			boolean incremental = "true".equals(rootElement.attributeValue("incremental", "false"));
+			
+			beginTransaction();
+			
+			Session session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
+			if (session == null)
+				throw new Exception("No session found for the given campus, year, and term.");
+			Long sessionId = session.getUniqueId();
+			
+			if (incremental) {
+				info("Incremental mode enabled: only included students will be updated.");
+			} else {
+				info("Incremental mode disabled: students not included in this file will be deleted.");
+			}
+			
+			info("Importing students (" + chunkSize + " students at a time)...");
+			Set<String> imported = new HashSet<String>();
+			List<Element> chunk = new ArrayList<Element>();
+			int students = 0, changed = 0;
+			Element element = null;
+			do {
+				element = readNextElement(reader);
+				if (element != null)
+					chunk.add(element);
+				if (chunk.size() >= chunkSize || (element == null && !chunk.isEmpty())) {
+					changed += importChunk(sessionId, chunk, imported);
+					students += chunk.size();
+					chunk.clear();
+					info("  " + students + " students imported, " + changed + " changed");
+				}
+			} while (element != null);
+			
+			if (!incremental) {
+				List<Long> studentIds = new ArrayList<Long>();
+				for (Object[] o: getHibSession().createQuery(
+						"select s.uniqueId, s.externalUniqueId from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId is not null", Object[].class)
+						.setParameter("sessionId", sessionId).list()) {
+					if (!imported.contains((String)o[1])) studentIds.add((Long)o[0]);
+				}
+				if (!studentIds.isEmpty())
+					info("Deleting " + studentIds.size() + " students that are not included in the file...");
+				for (int i = 0; i < studentIds.size(); i += chunkSize)
+					changed += deleteStudents(sessionId, studentIds.subList(i, Math.min(i + chunkSize, studentIds.size())));
+			}
+			
+			info(changed + " students changed");
+			
+			commitTransaction();
+		} catch (Exception e) {
+			fatal("Exception: " + e.getMessage(), e);
+			rollbackTransaction();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Import the given students, flush and commit the changes
+	 * @return number of changed students
+	 */
+	protected int importChunk(Long sessionId, List<Element> elements, Set<String> imported) throws Exception {
+		boolean trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
+		Session session = SessionDAO.getInstance().get(sessionId, getHibSession());
+		
+		Map<Element, String> externalIds = new LinkedHashMap<Element, String>();
+		for (Element element: elements) {
+			String externalId = element.attributeValue("externalId");
+			if (externalId == null) continue;
+			while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
+			externalIds.put(element, externalId);
+		}
+		
+		Hashtable<String, Student> students = new Hashtable<String, Student>();
+		List<String> ids = new ArrayList<String>(new HashSet<String>(externalIds.values()));
+		for (int i = 0; i < ids.size(); i += 1000) {
+			for (Student student: getHibSession().createQuery(
+					"from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId in :externalIds", Student.class)
+					.setParameter("sessionId", sessionId)
+					.setParameterList("externalIds", ids.subList(i, Math.min(i + 1000, ids.size())), String.class).list()) {
+				students.put(student.getExternalUniqueId(), student);
+			}
+		}
+		
+		// the session is cleared after each chunk, the codes need to be reloaded
+		Codes codes = loadCodes(sessionId);
+		
+		Set<Long> updatedStudents = new HashSet<Long>();
+		List<Student> createdStudents = new ArrayList<Student>();
+		for (Map.Entry<Element, String> e: externalIds.entrySet()) {
+			imported.add(e.getValue());
+			importStudent(e.getKey(), e.getValue(), students, session, updatedStudents, createdStudents, codes);
+		}
+		
+		getHibSession().flush();
+		for (Student s: createdStudents)
+			updatedStudents.add(s.getUniqueId());
+		if (!updatedStudents.isEmpty())
+			StudentSectioningQueue.studentChanged(getHibSession(), null, sessionId, updatedStudents);
+		if (!flush(true))
+			throw new Exception("Failed to save students " + ids + ".");
+		return updatedStudents.size();
+	}
+	
+	/**
+	 * Delete the given students, flush and commit the changes
+	 * @return number of deleted students
+	 */
+	protected int deleteStudents(Long sessionId, List<Long> studentIds) throws Exception {
+		Set<Long> updatedStudents = new HashSet<Long>();
+		for (int i = 0; i < studentIds.size(); i += 1000) {
+			for (Student student: getHibSession().createQuery(
+					"from Student s where s.uniqueId in :studentIds", Student.class)
+					.setParameterList("studentIds", studentIds.subList(i, Math.min(i + 1000, studentIds.size())), Long.class).list()) {
+				updatedStudents.add(student.getUniqueId());
+				getHibSession().remove(student);
+			}
+		}
+		getHibSession().flush();
+		if (!updatedStudents.isEmpty())
+			StudentSectioningQueue.studentChanged(getHibSession(), null, sessionId, updatedStudents);
+		if (!flush(true))
+			throw new Exception("Failed to delete students " + studentIds + ".");
+		return updatedStudents.size();
+	}
+	
+	protected Student importStudent(Element element, String externalId, Hashtable<String, Student> students, Session session, Set<Long> updatedStudents, List<Student> createdStudents, Codes codes) {
+		return importStudent(element, externalId, students, session, updatedStudents, createdStudents,
+				codes.iAbbv2area, codes.iCode2clasf, codes.iCode2major, codes.iCode2minor, codes.iCode2group, codes.iCode2accomodation, codes.iCode2concentration, codes.iCode2degree, codes.iCode2program, codes.iCode2campus);
+	}
+	
 	protected Student importStudent(Element element, String externalId, Hashtable<String, Student> students, Session session, Set<Long> updatedStudents, List<Student> createdStudents,
 			Map<String, AcademicArea> abbv2area, Map<String, AcademicClassification> code2clasf, Map<String, PosMajor> code2major, Map<String, PosMinor> code2minor,
 			Map<String, StudentGroup> code2group, Map<String, StudentAccomodation> code2accomodation, Map<String, PosMajorConcentration> code2conc,
@@ -621,6 +708,99 @@ public class StudentImport extends BaseImport {
     	}		
 	}
 	
+	/**
+	 * Load academic areas, classifications, majors, minors, etc. of the given academic session (used to lookup these by their codes)
+	 */
+	protected Codes loadCodes(Long sessionId) {
+		Codes codes = new Codes();
+		codes.iAbbv2area = new Hashtable<String, AcademicArea>();
+		for (AcademicArea area: getHibSession().createQuery(
+				"from AcademicArea where session.uniqueId=:sessionId", AcademicArea.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iAbbv2area.put(area.getAcademicAreaAbbreviation(), area);
+		}
+
+		codes.iCode2clasf = new Hashtable<String, AcademicClassification>();
+		for (AcademicClassification clasf: getHibSession().createQuery(
+				"from AcademicClassification where session.uniqueId=:sessionId", AcademicClassification.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iCode2clasf.put(clasf.getCode(), clasf);
+		}
+		
+		codes.iCode2major = new Hashtable<String, PosMajor>();
+		for (PosMajor major: getHibSession().createQuery(
+				"from PosMajor where session.uniqueId=:sessionId", PosMajor.class)
+				.setParameter("sessionId", sessionId).list()) {
+			for (AcademicArea area: major.getAcademicAreas())
+				codes.iCode2major.put(area.getAcademicAreaAbbreviation() + ":" + major.getCode(), major);
+		}
+		
+		codes.iCode2concentration = new Hashtable<String, PosMajorConcentration>();
+		for (PosMajorConcentration conc: getHibSession().createQuery(
+				"from PosMajorConcentration where major.session.uniqueId=:sessionId", PosMajorConcentration.class)
+				.setParameter("sessionId", sessionId).list()) {
+			for (AcademicArea area: conc.getMajor().getAcademicAreas())
+				codes.iCode2concentration.put(area.getAcademicAreaAbbreviation() + ":" + conc.getMajor().getCode() + ":" + conc.getCode(), conc);
+		}
+		
+		codes.iCode2degree = new Hashtable<String, Degree>();
+		for (Degree deg: getHibSession().createQuery(
+				"from Degree where session.uniqueId=:sessionId", Degree.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iCode2degree.put(deg.getReference(), deg);
+		}
+		
+		codes.iCode2program = new Hashtable<String, Program>();
+		for (Program prog: getHibSession().createQuery(
+				"from Program where session.uniqueId=:sessionId", Program.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iCode2program.put(prog.getReference(), prog);
+		}
+		
+		codes.iCode2campus = new Hashtable<String, Campus>();
+		for (Campus camp: getHibSession().createQuery(
+				"from Campus where session.uniqueId=:sessionId", Campus.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iCode2campus.put(camp.getReference(), camp);
+		}
+		
+		codes.iCode2minor = new Hashtable<String, PosMinor>();
+		for (PosMinor minor: getHibSession().createQuery(
+				"from PosMinor where session.uniqueId=:sessionId", PosMinor.class)
+				.setParameter("sessionId", sessionId).list()) {
+			for (AcademicArea area: minor.getAcademicAreas())
+				codes.iCode2minor.put(area.getAcademicAreaAbbreviation() + ":" + minor.getCode(), minor);
+		}
+
+		codes.iCode2group = new Hashtable<String, StudentGroup>();
+		for (StudentGroup group: getHibSession().createQuery(
+				"from StudentGroup where session.uniqueId=:sessionId", StudentGroup.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iCode2group.put(group.getGroupAbbreviation(), group);
+		}
+		
+		codes.iCode2accomodation = new Hashtable<String, StudentAccomodation>();
+		for (StudentAccomodation accomodation: getHibSession().createQuery(
+				"from StudentAccomodation where session.uniqueId=:sessionId", StudentAccomodation.class)
+				.setParameter("sessionId", sessionId).list()) {
+			codes.iCode2accomodation.put(accomodation.getAbbreviation(), accomodation);
+		}
+		return codes;
+	}
+	
+	protected static class Codes {
+		Map<String, AcademicArea> iAbbv2area;
+		Map<String, AcademicClassification> iCode2clasf;
+		Map<String, PosMajor> iCode2major;
+		Map<String, PosMajorConcentration> iCode2concentration;
+		Map<String, Degree> iCode2degree;
+		Map<String, Program> iCode2program;
+		Map<String, Campus> iCode2campus;
+		Map<String, PosMinor> iCode2minor;
+		Map<String, StudentGroup> iCode2group;
+		Map<String, StudentAccomodation> iCode2accomodation;
+	}
+	
 	protected boolean eq(String a, String b) {
 		return (a == null ? b == null : a.equals(b));
 	}
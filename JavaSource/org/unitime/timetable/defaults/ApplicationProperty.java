@@ -259,6 +259,16 @@ public enum ApplicationProperty {
 	@Description("Login: allow for password reset (when authentication fails)")
 	PasswordReset("unitime.password.reset"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Permissions: cache permission decisions within a single request")
+	PermissionCacheEnabled("unitime.permissions.cache.enabled"),
+
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Permissions: maximal number of permission decisions to be cached within a single request")
+	PermissionCacheSize("unitime.permissions.cache.size"),
+
 	@DefaultValue("high")
 	@Values({"high", "medium", "low"})
 	@Description("Main Page: obtrusiveness of the registration popup")
@@ -578,6 +588,11 @@ public enum ApplicationProperty {
 	@Description("Student Enrollment Import: update examination student conflicts for midterm exams")
 	DataExchangeUpdateStudentConflictsMidterm("tmtbl.data.import.studentEnrl.midtermExam.updateConflicts"),
 
+	@Type(Integer.class)
+	@DefaultValue("0")
+	@Description("Student Import, Student Enrollment Import: when set to a positive number, the XML file is streamed and the students are imported in chunks of the given size, each chunk in its own transaction (memory use does not depend on the number of students, but a failed import may be partially committed); 0 to import the whole file in a single transaction")
+	DataExchangeStudentImportChunkSize("tmtbl.data.import.student.chunkSize"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Time Patterns: set to true if used time patterns are to be editable during the initial data load (a session status that allows for roll forward)")
@@ -686,6 +701,29 @@ public enum ApplicationProperty {
 
 	@Description("Online Student Scheduling Log: besides of the database, also log the actions in the given file (if set)")
 	OnlineSchedulingLogFile("unitime.sectioning.log.file"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Online Student Scheduling Log: maximal number of seconds between two consecutive persists of the logged actions")
+	OnlineSchedulingLogFlushInterval("unitime.sectioning.log.flush.interval"),
+
+	@Type(Integer.class)
+	@DefaultValue("500")
+	@Description("Online Student Scheduling Log: persist the logged actions as soon as the given number of them is waiting (also the number of actions persisted in one transaction)")
+	OnlineSchedulingLogFlushSize("unitime.sectioning.log.flush.size"),
+
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Online Student Scheduling Log: JDBC batch size used when persisting the logged actions")
+	OnlineSchedulingLogBatchSize("unitime.sectioning.log.batch.size"),
+
+	@Description("Online Student Scheduling Log: when the limit on the number of records held in memory is reached (or the actions fail to persist), write the actions in the given file instead of dropping them; the file is replayed into the database once the logger catches up (if set)")
+	OnlineSchedulingLogSpillFile("unitime.sectioning.log.spill"),
+
+	@Type(Integer.class)
+	@DefaultValue("3")
+	@Description("Online Student Scheduling Log: number of consecutive failed attempts to replay a chunk of the spill file before the chunk is bisected and the actions that fail to persist are moved into the dead-letter file (spill file with the .failed suffix)")
+	OnlineSchedulingLogReplayAttempts("unitime.sectioning.log.replay.attempts"),
 	
 	@Type(Boolean.class)
 	@DefaultValue("true")
@@ -696,6 +734,10 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: override for the solver parameter %")
 	@Parameter("solver parameter")
 	OnlineSchedulingParameter("unitime.sectioning.config.%"),
+
+	@Type(Integer.class)
+	@Description("Online Student Scheduling: number of threads of the pool shared by the parallel branch & bound searches (used when the solver parameter Neighbour.BranchAndBoundParallelism is greater than one, defaults to the number of available processors)")
+	OnlineSchedulingBranchAndBoundPoolSize("unitime.sectioning.branchAndBound.poolSize"),
 	
 	@Type(Boolean.class)
 	@DefaultValue("false")
@@ -1326,6 +1368,25 @@ public enum ApplicationProperty {
 	@Description("Customization: student holds check provider (interface StudentHoldsCheckProvider)")
 	@Since(4.6)
 	CustomizationStudentHoldsCheck("unitime.custom.StudentHoldsCheckProvider"),
+
+	@Type(Integer.class)
+	@DefaultValue("30000")
+	@Description("Customization: connection timeout in milliseconds of the shared HTTP client used by the custom student scheduling providers (e.g., Banner XE, special registrations, degree plans)")
+	CustomHttpConnectTimeout("unitime.custom.http.connectTimeout"),
+
+	@Type(Integer.class)
+	@Description("Customization: maximal number of kept-alive HTTP connections per host of the shared HTTP client used by the custom student scheduling providers (sets the http.maxConnections system property, when not set)")
+	CustomHttpMaxConnections("unitime.custom.http.maxConnections"),
+
+	@Type(Integer.class)
+	@DefaultValue("5")
+	@Description("Customization: number of consecutive failures (server errors, timeouts, connection failures) of an HTTP endpoint after which the calls to the endpoint fail immediately (0 to disable the circuit breaker)")
+	CustomHttpCircuitBreakerFailures("unitime.custom.http.circuitBreaker.failures"),
+
+	@Type(Integer.class)
+	@DefaultValue("30")
+	@Description("Customization: number of seconds for which the calls to a failing HTTP endpoint fail immediately, before one call is let through to check whether the service has recovered")
+	CustomHttpCircuitBreakerDelay("unitime.custom.http.circuitBreaker.delay"),
 	
 	@Type(Boolean.class)
 	@DefaultValue("false")
@@ -1464,6 +1525,41 @@ public enum ApplicationProperty {
 	@Description("Email Configuration: enable SSL if needed. Other mail.smtp.ssl properties may need to be set")
 	EmailSmtpSSL("mail.smtp.ssl.enable"),
 
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Email Configuration: SMTP connections are kept open and reused for the given number of seconds after the last email was sent (0 to open a new connection for each email)")
+	EmailSmtpConnectionIdleTimeout("unitime.email.smtp.idleTimeout"),
+
+	@Type(Integer.class)
+	@DefaultValue("5")
+	@Description("Email Configuration: maximal number of idle SMTP connections that are kept open")
+	EmailSmtpConnectionPoolSize("unitime.email.smtp.poolSize"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Email Outbox: when enabled, emails are not sent by the calling thread but stored in the outbox (data folder/outbox) and delivered in the background with retries")
+	EmailOutboxEnabled("unitime.email.outbox.enabled"),
+
+	@Type(Integer.class)
+	@DefaultValue("2")
+	@Description("Email Outbox: number of delivery threads (each thread uses its own SMTP connection)")
+	EmailOutboxThreads("unitime.email.outbox.threads"),
+
+	@Type(Integer.class)
+	@DefaultValue("50")
+	@Description("Email Outbox: maximal number of emails sent over one SMTP connection in one batch")
+	EmailOutboxBatchSize("unitime.email.outbox.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("5")
+	@Description("Email Outbox: maximal number of delivery attempts, an email that cannot be delivered is moved to the data folder/outbox/failed")
+	EmailOutboxMaxAttempts("unitime.email.outbox.maxAttempts"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Email Outbox: delay in seconds before the first retry, the delay is doubled with each failed attempt")
+	EmailOutboxRetryDelay("unitime.email.outbox.retryDelay"),
+
 	@DefaultValue("noreply@unitime.org")
 	@Description("Email Configuration: sender email address")
 	EmailSenderAddress("unitime.email.sender"),
@@ -1660,6 +1756,11 @@ public enum ApplicationProperty {
 	@Description("Query Log: record request object/parameters as JSON message")
 	QueryLogJSON("unitime.query.log.json"),
 
+	@Type(Integer.class)
+	@DefaultValue("500")
+	@Description("Request Statistics: maximal number of pages / RPC requests that are tracked, the requests that do not fit are counted as other")
+	RequestStatisticsMaxSeries("unitime.stats.requests.maxSeries"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Classes: if there are two or more scheduling subparts in a parent-child relation with the same instructional type (e.g., Lec - Lec a - Lec b stacked underneath), inherit preferences and the date pattern from the parent subpart whenever possible")
@@ -1922,6 +2023,16 @@ public enum ApplicationProperty {
 	@Description("Solver: passivate solution after given number of minutes of inactivity (disable passivation by setting to zero)")
 	SolverPasivationTime("unitime.solver.passivation.time"),
 
+	@Values({"xml", "binary"})
+	@DefaultValue("xml")
+	@Description("Solver: format of the passivated solutions (xml: pretty-printed XML, binary: gzip-compressed binary encoding)")
+	SolverPassivationFormat("unitime.solver.passivation.format"),
+
+	@Values({"xml", "binary"})
+	@Description("Solver: format of the passivated solutions for the solver type % (course, exam, student, or instructor), defaults to unitime.solver.passivation.format")
+	@Parameter("solver type")
+	SolverPassivationFormatType("unitime.solver.passivation.format.%"),
+
 	@Type(Integer.class)
 	@DefaultValue("300")
 	@Description("Online Student Scheduling: sectioning queue load interval in seconds")
@@ -1932,6 +2043,16 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: sectioning queue update interval in seconds")
 	OnlineSchedulingQueueUpdateInterval("unitime.sectioning.queue.updateInterval"),
 
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Online Student Scheduling: the sectioning queue is re-read this many seconds before the time stamp of the last processed change, so that changes of transactions that committed late (with an older time stamp) are not missed")
+	OnlineSchedulingQueueTrailingWindow("unitime.sectioning.queue.trailingWindow"),
+
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Online Student Scheduling: notify the online sectioning servers over the cluster when a change is written into the sectioning queue (the queue is still checked every unitime.sectioning.queue.updateInterval seconds)")
+	OnlineSchedulingQueuePushNotifications("unitime.sectioning.queue.push"),
+
 	@Description("Online Student Scheduling: only academic sessions matching this year (regular expression) are loaded in")
 	OnlineSchedulingAcademicYear("unitime.enrollment.year"),
 
@@ -1948,9 +2069,24 @@ public enum ApplicationProperty {
 
 	@Type(Integer.class)
 	@DefaultValue("10")
-	@Description("Online Student Scheduling: asynchronous execution thread pool size")
+	@Description("Online Student Scheduling: asynchronous execution thread pool size (background actions), set to 0 to disable the asynchronous execution (all actions, including the interactive ones, are then executed synchronously)")
 	OnlineSchedulingServerAsyncPoolSize("unitime.enrollment.server.asyncPoolSize"),
 
+	@Type(Integer.class)
+	@DefaultValue("2")
+	@Description("Online Student Scheduling: asynchronous execution thread pool size for the actions that are not background (e.g., student notifications), these are not blocked by long-running background actions (only used when unitime.enrollment.server.asyncPoolSize is above zero)")
+	OnlineSchedulingServerAsyncInteractivePoolSize("unitime.enrollment.server.asyncInteractivePoolSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Online Student Scheduling: maximal number of queued asynchronous actions (of each priority), when the limit is reached the action is executed synchronously by the calling thread")
+	OnlineSchedulingServerAsyncQueueSize("unitime.enrollment.server.asyncQueueSize"),
+
+	@Type(String.class)
+	@DefaultValue("check-offering|reload-all|persist-expectations|instructor-email")
+	@Description("Online Student Scheduling: regular expression matching names of the asynchronous actions that are executed with background priority (can be also changed for an individual action using the [action name].AsyncPriority server configuration property)")
+	OnlineSchedulingServerAsyncBackgroundActions("unitime.enrollment.server.asyncBackgroundActions"),
+
 	@Type(Integer.class)
 	@DefaultValue("366")
 	@Description("Change Log: automatically remove records after the given number of days")
@@ -1975,6 +2111,21 @@ public enum ApplicationProperty {
 	@DefaultValue("14")
 	@Description("Online Scheduling Queue: automatically remove records after the given number of days")
 	LogCleanupOnlineSchedulingQueue("unitime.cleanup.sectioningQueue"),
+
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Log Cleanup: maximal number of records deleted in one transaction (records are deleted in batches by unique id ranges, each batch is committed separately; 0 to delete all the records in a single statement)")
+	LogCleanupBatchSize("unitime.cleanup.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Log Cleanup: pause in milliseconds between two batches of deleted records")
+	LogCleanupBatchPause("unitime.cleanup.batchPause"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Log Cleanup: archive the deleted records into compressed CSV files in the data folder/archive (only used when records are deleted in batches)")
+	LogCleanupArchive("unitime.cleanup.archive"),
 	
 	@Type(Integer.class)
 	@DefaultValue("92")
@@ -2099,6 +2250,11 @@ public enum ApplicationProperty {
 	@Description("Timetable Grid: max cell width (vertical layout)")
 	TimetableGridMaxCellWidthVertical("tmtbl.timeGrid.maxCellWidthVertical"),
 
+	@Type(Integer.class)
+	@DefaultValue("500")
+	@Description("Time Grid: maximal number of time preference images (as shown on the class and offering lists) that are kept in memory, 0 to disable the cache")
+	RequiredTimeTableImageCacheSize("tmtbl.timeGrid.imageCache.size"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Timetable Grid: Use class instructors instead of solution instructors (when set to true).")
@@ -35,6 +35,7 @@ import org.unitime.timetable.model.Event;
 import org.unitime.timetable.model.EventNote;
 import org.unitime.timetable.model.Meeting;
 import org.unitime.timetable.model.dao.EventDAO;
+import org.unitime.timetable.util.RoomAvailability;
 
 /**
  * @author Tomas Muller
@@ -76,6 +77,7 @@ public class EventExpirationService extends Thread {
 			Transaction tx = hibSession.beginTransaction();
 			try {
 				Date now = new Date();
+				Set<Long> changedLocations = new HashSet<Long>();
 				for (Event event: hibSession.createQuery(
 						"select distinct e from Event e inner join e.meetings m " +
 						"where e.expirationDate is not null and m.approvalStatus = 0 and e.expirationDate < :date",
@@ -89,6 +91,7 @@ public class EventExpirationService extends Thread {
 							meeting.setApprovalDate(now);
 							hibSession.merge(meeting);
 							affectedMeetings.add(meeting);
+							if (meeting.getLocationPermanentId() != null) changedLocations.add(meeting.getLocationPermanentId());
 							if (!affectedMeetingStr.isEmpty()) affectedMeetingStr += "<br>";
 							affectedMeetingStr += meeting.getTimeLabel() + (meeting.getLocation() == null ? "" : " " + meeting.getLocation().getLabel());
 			        	}
@@ -116,6 +119,8 @@ public class EventExpirationService extends Thread {
 				}
 				
 				tx.commit(); tx = null;
+				
+				RoomAvailability.meetingsChanged(changedLocations);
 			} catch (Exception e) {
 				if (tx != null) tx.rollback();
 				sLog.error("Failed to expire some events: " + e.getMessage(), e);
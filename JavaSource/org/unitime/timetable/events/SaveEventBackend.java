@@ -74,6 +74,7 @@ import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.util.CalendarUtils;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.Formats;
+import org.unitime.timetable.util.RoomAvailability;
 
 /**
  * @author Tomas Muller
@@ -140,8 +141,11 @@ public class SaveEventBackend extends EventAction<SaveEventRpcRequest, SaveOrApp
 			Date now = new Date();
 
 			Event event = null;
+			Set<Long> changedLocations = new HashSet<Long>();
 			if (request.getEvent().getId() != null) {
 				event = EventDAO.getInstance().get(request.getEvent().getId(), hibSession);
+				for (Meeting m: event.getMeetings())
+					if (m.getLocationPermanentId() != null) changedLocations.add(m.getLocationPermanentId());
 			} else {
 				switch (request.getEvent().getType()) {
 				case Special:
@@ -652,6 +656,9 @@ public class SaveEventBackend extends EventAction<SaveEventRpcRequest, SaveOrApp
 					}
 			}
 			
+			for (Meeting m: event.getMeetings())
+				if (m.getLocationPermanentId() != null) changedLocations.add(m.getLocationPermanentId());
+			
 			if (event.getUniqueId() == null) {
 				hibSession.persist(event);
 				response.setEvent(EventDetailBackend.getEventDetail(SessionDAO.getInstance().get(request.getSessionId(), hibSession), event, context));
@@ -666,6 +673,8 @@ public class SaveEventBackend extends EventAction<SaveEventRpcRequest, SaveOrApp
 			
 			tx.commit();
 			
+			RoomAvailability.meetingsChanged(changedLocations);
+			
 			new EventEmail(request, response).send(context);
 			
 			return response;
@@ -60,6 +60,7 @@ import org.unitime.timetable.export.PDFPrinter.A;
 import org.unitime.timetable.export.PDFPrinter.F;
 import org.unitime.timetable.util.Formats;
 import org.unitime.timetable.util.Formats.Format;
+import org.unitime.timetable.webutil.RequiredTimeTableImageCache;
 
 /**
  * @author Tomas Muller
@@ -392,10 +393,15 @@ public class XLSPrinter implements Printer {
 
         anchor.setAnchorType(AnchorType.MOVE_AND_RESIZE);
         
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		ImageIO.write(image, "PNG", bytes);
+        // time grids come from the image cache, use their already encoded PNG when available
+        byte[] png = RequiredTimeTableImageCache.getInstance().getPng(image);
+        if (png == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ImageIO.write(image, "PNG", bytes);
+            png = bytes.toByteArray();
+        }
 
-        int index = sheet.getWorkbook().addPicture(bytes.toByteArray(), HSSFWorkbook.PICTURE_TYPE_PNG);
+        int index = sheet.getWorkbook().addPicture(png, HSSFWorkbook.PICTURE_TYPE_PNG);
 
         HSSFPatriarch patriarch = sheet.createDrawingPatriarch();
         patriarch.createPicture(anchor, index);
@@ -37,6 +37,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 
 import org.apache.commons.logging.Log;
@@ -56,6 +57,7 @@ import org.unitime.timetable.security.UserContext;
 import org.unitime.timetable.security.context.AnonymousUserContext;
 import org.unitime.timetable.spring.gwt.GwtDispatcherServlet;
 import org.unitime.timetable.spring.gwt.GwtDispatcherServlet.GwtCallInfo;
+import org.unitime.timetable.util.RequestStatistics;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -196,6 +198,9 @@ public class QueryLogFilter implements Filter {
 				if (!ex.isEmpty())
 					q.setException(ex);
 			}
+			boolean notFound = (response instanceof HttpServletResponse && ((HttpServletResponse)response).getStatus() == HttpServletResponse.SC_NOT_FOUND);
+			if (r.getAttribute(RequestStatistics.RECORDED_ATTRIBUTE) == null)
+				RequestStatistics.getInstance().record(notFound ? RequestStatistics.OTHER : q.getUri(), q.getTimeSpent(), q.getException() != null);
 			if (!iExclude.contains(q.getUri()) || q.getException() != null) {
 				if (iSaver != null) iSaver.add(q);
 			}
@@ -29,6 +29,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -54,6 +55,7 @@ import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.context.HttpSessionContext;
 import org.unitime.timetable.security.evaluation.PermissionCheck;
 import org.unitime.timetable.util.Formats;
+import org.unitime.timetable.util.RequestStatistics;
 
 import com.google.gson.FieldNamingStrategy;
 import com.google.gson.Gson;
@@ -227,6 +229,9 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	
 	private <T extends GwtRpcResponse> void log(GwtRpcRequest<T> request, T response, Throwable exception, long time, SessionContext context, GwtRpcLogging logging) {
 		try {
+			RequestStatistics.getInstance().record("RPC:" + request.getClass().getSimpleName(), time, exception != null);
+			HttpServletRequest httpRequest = getThreadLocalRequest();
+			if (httpRequest != null) httpRequest.setAttribute(RequestStatistics.RECORDED_ATTRIBUTE, Boolean.TRUE);
 			if (iSaver == null) return;
 			if (logging != null) {
 				switch (logging.value()) {
@@ -19,10 +19,8 @@
 */
 package org.unitime.timetable.gwt.server;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 
-import javax.imageio.ImageIO;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -133,11 +131,23 @@ public class PatternServlet extends HttpServlet {
 				rtt.getModel().setPreferences(request.getParameter("p"));
 			boolean hc = ("1".equals(request.getParameter("hc")));
 			
+			// the image is identified by its content, the preferences are not always part of the URL (e.g., room availability)
+			// so the browser is allowed to keep the image, but it must be revalidated on each use
+			String etag = "\"" + rtt.getImageKey(vertical, hc) + "\"";
+			response.setHeader("ETag", etag);
+			response.setHeader("Cache-Control", "private, no-cache");
+			if (etag.equals(request.getHeader("If-None-Match"))) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			
 			response.setContentType("image/png");
 			response.setHeader( "Content-Disposition", "attachment; filename=\"pattern.png\"" );
-			BufferedImage image = rtt.createBufferedImage(vertical, hc);
-			if (image != null)
-				ImageIO.write(image, "PNG", response.getOutputStream());
+			byte[] png = rtt.createPngImage(vertical, hc);
+			if (png != null) {
+				response.setContentLength(png.length);
+				response.getOutputStream().write(png);
+			}
 		}
 	}
 
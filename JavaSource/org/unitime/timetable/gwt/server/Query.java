@@ -23,6 +23,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 /**
  * @author Tomas Muller
@@ -31,6 +34,7 @@ public class Query implements Serializable {
 	private static final long serialVersionUID = 1L;
 	
 	private Term iQuery = null;
+	private transient Map<TermCompiler<?>, Predicate<?>> iCompiled = null;
 	
 	public Query(String query) {
 		iQuery = parse(query == null ? "" : query.trim());
@@ -52,6 +56,34 @@ public class Query implements Serializable {
 		return ret;
 	}
 	
+	/**
+	 * Match using a predicate compiled by the given compiler. The predicate is compiled only once (for each compiler)
+	 * and then reused, which avoids parsing the terms again for each matched object.
+	 */
+	public <T extends TermMatcher> boolean match(T m, TermCompiler<T> compiler) {
+		return compile(compiler).test(m);
+	}
+	
+	/**
+	 * Compile the query into a predicate, the result is cached within the query for the given compiler.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends TermMatcher> Predicate<T> compile(TermCompiler<T> compiler) {
+		Map<TermCompiler<?>, Predicate<?>> compiled = iCompiled;
+		if (compiled == null) {
+			synchronized (this) {
+				if (iCompiled == null) iCompiled = new ConcurrentHashMap<TermCompiler<?>, Predicate<?>>();
+				compiled = iCompiled;
+			}
+		}
+		Predicate<T> predicate = (Predicate<T>)compiled.get(compiler);
+		if (predicate == null) {
+			predicate = iQuery.compile(compiler);
+			compiled.put(compiler, predicate);
+		}
+		return predicate;
+	}
+	
 	public String toString() {
 		return iQuery.toString();
 	}
@@ -176,6 +208,9 @@ public class Query implements Serializable {
 		public String toString(QueryFormatter f);
 		public boolean hasAttribute(String attribute);
 		public Boolean match(AmbigousTermMatcher m);
+		public default <T extends TermMatcher> Predicate<T> compile(TermCompiler<T> compiler) {
+			return m -> match(m);
+		}
 	}
 
 	public static abstract class CompositeTerm implements Term {
@@ -233,6 +268,19 @@ public class Query implements Serializable {
 		
 		public String getOp() { return "OR"; }
 		
+		@Override
+		public <T extends TermMatcher> Predicate<T> compile(TermCompiler<T> compiler) {
+			if (terms().isEmpty()) return m -> true;
+			if (terms().size() == 1) return terms().get(0).compile(compiler);
+			final List<Predicate<T>> predicates = new ArrayList<Predicate<T>>(terms().size());
+			for (Term t: terms()) predicates.add(t.compile(compiler));
+			return m -> {
+				for (Predicate<T> p: predicates)
+					if (p.test(m)) return true;
+				return false;
+			};
+		}
+		
 		public boolean match(TermMatcher m) {
 			if (terms().isEmpty()) return true;
 			for (Term t: terms())
@@ -259,6 +307,19 @@ public class Query implements Serializable {
 		
 		public String getOp() { return "AND"; }
 		
+		@Override
+		public <T extends TermMatcher> Predicate<T> compile(TermCompiler<T> compiler) {
+			if (terms().isEmpty()) return m -> true;
+			if (terms().size() == 1) return terms().get(0).compile(compiler);
+			final List<Predicate<T>> predicates = new ArrayList<Predicate<T>>(terms().size());
+			for (Term t: terms()) predicates.add(t.compile(compiler));
+			return m -> {
+				for (Predicate<T> p: predicates)
+					if (!p.test(m)) return false;
+				return true;
+			};
+		}
+		
 		public boolean match(TermMatcher m) {
 			for (Term t: terms())
 				if (!t.match(m)) return false;
@@ -297,6 +358,11 @@ public class Query implements Serializable {
 			return !r;
 		}
 		
+		@Override
+		public <T extends TermMatcher> Predicate<T> compile(TermCompiler<T> compiler) {
+			return iTerm.compile(compiler).negate();
+		}
+		
 		public String toString() { return "NOT " + iTerm.toString(); }
 		
 		public String toString(QueryFormatter f) { return "NOT " + iTerm.toString(f); }
@@ -331,6 +397,14 @@ public class Query implements Serializable {
 		public Boolean match(AmbigousTermMatcher m) {
 			return m.match(iAttr, iBody);
 		}
+		
+		@Override
+		public <T extends TermMatcher> Predicate<T> compile(TermCompiler<T> compiler) {
+			Predicate<T> predicate = compiler.compile(iAttr, iBody);
+			if (predicate != null) return predicate;
+			final String attr = iAttr, body = iBody;
+			return m -> m.match(attr, body);
+		}
 	}
 	
 	public static interface TermMatcher {
@@ -341,6 +415,15 @@ public class Query implements Serializable {
 		public Boolean match(String attr, String term);
 	}
 	
+	/**
+	 * Turns an attribute - term pair into a predicate that can be evaluated on the matcher of the given type without
+	 * parsing the term again. Implementations must not depend on the matched object, so that the same compiled predicate
+	 * can be used for all the objects. When null is returned, {@link TermMatcher#match(String, String)} is used instead.
+	 */
+	public static interface TermCompiler<T extends TermMatcher> {
+		public Predicate<T> compile(String attr, String term);
+	}
+	
 	public static interface QueryFormatter {
 		String format(String attr, String term);
 	}
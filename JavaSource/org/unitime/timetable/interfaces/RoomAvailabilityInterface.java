@@ -50,6 +50,14 @@ public interface RoomAvailabilityInterface {
         public Date getEndTime();
     }
     
+    /**
+     * Implemented by room availability services that can update their cached data incrementally
+     * when meetings in the given locations are created, changed, approved, or deleted.
+     */
+    public interface MeetingChangeListener {
+    	public void meetingsChanged(Collection<Long> locationPermanentIds);
+    }
+    
     public interface HasRoom extends Serializable {
     	public Long getLocationId();
     	public Long getPermanentId();
@@ -57,6 +57,7 @@ import org.unitime.timetable.onlinesectioning.updates.CheckOfferingAction;
 import org.unitime.timetable.onlinesectioning.updates.ReloadOfferingAction;
 import org.unitime.timetable.security.Qualifiable;
 import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.solver.service.SolverServerService;
 import org.unitime.timetable.spring.SpringApplicationContextHolder;
 import org.unitime.timetable.util.DateUtils;
@@ -710,6 +711,7 @@ public class Session extends BaseSession implements Comparable<Session>, Qualifi
 		if (getStatusType().canLockOfferings()) {
 			OnlineSectioningServer server = getInstance();
 			if (server != null) server.lockOffering(offeringId);
+			PermissionCache.invalidate();
 		}
 	}
 	
@@ -729,6 +731,7 @@ public class Session extends BaseSession implements Comparable<Session>, Qualifi
 						));
 				server.unlockOffering(offering.getUniqueId());
 			}
+			PermissionCache.invalidate();
 		}
         try {
 	        SessionFactory hibSessionFactory = SessionDAO.getInstance().getSession().getSessionFactory();
@@ -23,6 +23,8 @@ package org.unitime.timetable.model;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
@@ -34,8 +36,12 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.dom4j.Document;
@@ -46,9 +52,13 @@ import org.dom4j.io.OutputFormat;
 import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
 import org.hibernate.HibernateException;
+import org.hibernate.Transaction;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.base.BaseStudentSectioningQueue;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.solver.jgroups.SolverServer;
+import org.unitime.timetable.solver.jgroups.SolverServerImplementation;
 
 /**
  * @author Tomas Muller
@@ -58,6 +68,7 @@ import org.unitime.timetable.security.UserContext;
 @Table(name = "sectioning_queue")
 public class StudentSectioningQueue extends BaseStudentSectioningQueue implements Comparable<StudentSectioningQueue> {
 	private static final long serialVersionUID = 8492171207847794888L;
+	private static Map<Transaction, Set<Long>> sPendingNotifications = new IdentityHashMap<Transaction, Set<Long>>();
 
 	public StudentSectioningQueue() {
 		super();
@@ -155,6 +166,7 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 		}
 		q.setMessage(d);
 		hibSession.persist(q);
+		notifyServers(hibSession, sessionId);
 	}
 	
 	protected static void addItem(org.hibernate.Session hibSession, UserContext user, Long sessionId, Type type, Long... ids) {
@@ -174,6 +186,53 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 		}
 		q.setMessage(d);
 		hibSession.persist(q);
+		notifyServers(hibSession, sessionId);
+	}
+	
+	/**
+	 * Notify the online sectioning servers about the change once the current transaction is committed, so that the change
+	 * is processed right away instead of at the next periodic check of the queue. The queue remains the durable record of the change:
+	 * when the notification is lost (or disabled), the change is picked up by the next periodic check.
+	 * Notifications are coalesced: there is at most one notification per transaction and academic session, no matter how many
+	 * items have been added to the queue within the transaction.
+	 */
+	protected static void notifyServers(org.hibernate.Session hibSession, final Long sessionId) {
+		if (sessionId == null || !ApplicationProperty.OnlineSchedulingQueuePushNotifications.isTrue()) return;
+		final Transaction tx = hibSession.getTransaction();
+		if (tx != null && tx.isActive()) {
+			synchronized (sPendingNotifications) {
+				Set<Long> sessionIds = sPendingNotifications.get(tx);
+				if (sessionIds != null) {
+					sessionIds.add(sessionId);
+					return;
+				}
+				sessionIds = new HashSet<Long>();
+				sessionIds.add(sessionId);
+				sPendingNotifications.put(tx, sessionIds);
+			}
+			tx.registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {}
+				@Override
+				public void afterCompletion(int status) {
+					Set<Long> sessionIds = null;
+					synchronized (sPendingNotifications) {
+						sessionIds = sPendingNotifications.remove(tx);
+					}
+					if (status == Status.STATUS_COMMITTED && sessionIds != null)
+						for (Long id: sessionIds)
+							notifyServers(id);
+				}
+			});
+		} else {
+			notifyServers(sessionId);
+		}
+	}
+	
+	protected static void notifyServers(Long sessionId) {
+		SolverServer server = SolverServerImplementation.getInstance();
+		if (server != null)
+			server.studentSectioningQueueChanged(sessionId);
 	}
 	
 	@Transient
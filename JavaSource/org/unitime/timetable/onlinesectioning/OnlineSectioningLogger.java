@@ -19,28 +19,39 @@
 */
 package org.unitime.timetable.onlinesectioning;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.CacheMode;
+import org.hibernate.Transaction;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.StudentSectioningConstants;
 import org.unitime.timetable.gwt.server.DayCode;
 import org.unitime.timetable.model.Session;
-import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.dao.OnlineSectioningLogDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
-import org.unitime.timetable.model.dao.StudentDAO;
 
 /**
  * @author Tomas Muller
@@ -48,11 +59,24 @@ import org.unitime.timetable.model.dao.StudentDAO;
 public class OnlineSectioningLogger extends Thread {
 	private static Log sLog = LogFactory.getLog(OnlineSectioningLogger.class);
 	protected static StudentSectioningConstants CONST = Localization.create(StudentSectioningConstants.class);
-	private List<OnlineSectioningLog.Action> iActions = new Vector<OnlineSectioningLog.Action>();
+	private Queue<OnlineSectioningLog.Action> iActions = new ConcurrentLinkedQueue<OnlineSectioningLog.Action>();
+	private AtomicInteger iQueueSize = new AtomicInteger(0);
 	private boolean iActive = false;
 	private boolean iEnabled = false;
 	private int iLogLimit = -1;
+	private int iFlushSize = 500;
+	private int iBatchSize = 100;
+	private long iFlushInterval = 60000l;
 	private PrintWriter iOut = null;
+	private File iSpillFile = null;
+	private OutputStream iSpill = null;
+	private int iReplayAttempts = 3;
+	private int iReplayFailures = 0;
+	private int iReplayOutages = 0;
+	private long iNextReplay = 0;
+	
+	private AtomicLong iRecorded = new AtomicLong(0), iPersisted = new AtomicLong(0), iDropped = new AtomicLong(0), iSpilled = new AtomicLong(0), iReplayed = new AtomicLong(0), iFailed = new AtomicLong(0);
+	private AtomicLong iFlushes = new AtomicLong(0), iFlushTime = new AtomicLong(0), iMaxFlushTime = new AtomicLong(0), iLastFlushTime = new AtomicLong(0), iLastFlush = new AtomicLong(0);
 	
 	private static OnlineSectioningLogger sInstance = null;
 	
@@ -61,6 +85,10 @@ public class OnlineSectioningLogger extends Thread {
 		return sInstance;
 	}
 	
+	public static boolean hasInstance() {
+		return sInstance != null;
+	}
+	
 	public static void startLogger() {
 		if (sInstance == null) {
 			sInstance = new OnlineSectioningLogger();
@@ -84,26 +112,63 @@ public class OnlineSectioningLogger extends Thread {
 		setDaemon(true);
 		iEnabled = ApplicationProperty.OnlineSchedulingLoggingEnabled.isTrue(); 
 		iLogLimit = ApplicationProperty.OnlineSchedulingLogLimit.intValue();
+		iFlushSize = Math.max(1, ApplicationProperty.OnlineSchedulingLogFlushSize.intValue());
+		iBatchSize = Math.max(1, ApplicationProperty.OnlineSchedulingLogBatchSize.intValue());
+		iFlushInterval = 1000l * Math.max(1, ApplicationProperty.OnlineSchedulingLogFlushInterval.intValue());
 		try {
 			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null)
 				iOut = new PrintWriter(new FileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
 		} catch (IOException e) {
 			sLog.warn("Unable to create sectioning log: " + e.getMessage(), e);
 		}
+		if (ApplicationProperty.OnlineSchedulingLogSpillFile.value() != null)
+			iSpillFile = new File(ApplicationProperty.OnlineSchedulingLogSpillFile.value());
+		iReplayAttempts = Math.max(1, ApplicationProperty.OnlineSchedulingLogReplayAttempts.intValue());
 	}
 	
 	public boolean isEnabled() { return iEnabled; }
 	public void setEnabled(boolean enabled) { iEnabled = enabled; }
 	public boolean isActive() { return iActive; }
+	
+	/** Number of actions waiting to be persisted */
+	public int getQueueSize() { return iQueueSize.get(); }
+	/** Number of actions that have been recorded */
+	public long getRecorded() { return iRecorded.get(); }
+	/** Number of actions that have been persisted in the database */
+	public long getPersisted() { return iPersisted.get(); }
+	/** Number of actions that have been dropped (queue limit was reached and there is no spill file) */
+	public long getDropped() { return iDropped.get(); }
+	/** Number of actions that have been written into the spill file */
+	public long getSpilled() { return iSpilled.get(); }
+	/** Number of actions that have been replayed from the spill file */
+	public long getReplayed() { return iReplayed.get(); }
+	/** Number of actions that failed to persist */
+	public long getFailed() { return iFailed.get(); }
+	/** Number of flushes (transactions) */
+	public long getFlushes() { return iFlushes.get(); }
+	/** Average flush time in milliseconds */
+	public double getAverageFlushTime() { long flushes = iFlushes.get(); return flushes == 0 ? 0.0 : ((double)iFlushTime.get()) / flushes; }
+	/** Maximal flush time in milliseconds */
+	public long getMaxFlushTime() { return iMaxFlushTime.get(); }
+	/** Last flush time in milliseconds */
+	public long getLastFlushTime() { return iLastFlushTime.get(); }
+	/** Time stamp of the last flush */
+	public Date getLastFlush() { long ts = iLastFlush.get(); return ts == 0 ? null : new Date(ts); }
+	public File getSpillFile() { return iSpillFile; }
 
 	public void record(OnlineSectioningLog.Log log) {
 		if (log == null || !isEnabled() || !isActive()) return;
 		for (OnlineSectioningLog.Action action: log.getActionList()) {
 			if (action.hasStartTime() && action.hasStudent() && action.hasOperation() && action.hasSession() && ApplicationProperty.OnlineSchedulingLogOperation.isTrue(action.getOperation())
 				&& ApplicationProperty.OnlineSchedulingLogOperation.isTrue(action.getOperation() + "." + (action.hasResult() ? action.getResult().name() : "NULL"))) {
-				synchronized (iActions) {
-					if (iLogLimit <= 0 || iActions.size() < iLogLimit)
-						iActions.add(action);
+				iRecorded.incrementAndGet();
+				int size = iQueueSize.incrementAndGet();
+				if (iLogLimit <= 0 || size <= iLogLimit) {
+					iActions.offer(action);
+					if (size == iFlushSize) LockSupport.unpark(this);
+				} else {
+					iQueueSize.decrementAndGet();
+					spill(action);
 				}
 				if (iOut != null) {
 					synchronized (iOut) {
@@ -115,6 +180,312 @@ public class OnlineSectioningLogger extends Thread {
 		}
 	}
 	
+	/**
+	 * Write the action into the spill file (if configured), drop it otherwise
+	 */
+	protected void spill(OnlineSectioningLog.Action action) {
+		if (iSpillFile == null) {
+			if (iDropped.incrementAndGet() == 1)
+				sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages are being dropped.");
+			return;
+		}
+		synchronized (iSpillFile) {
+			try {
+				if (iSpill == null) {
+					iSpill = new BufferedOutputStream(new FileOutputStream(iSpillFile, true));
+					sLog.info("Writing unpersisted log messages into " + iSpillFile);
+				}
+				action.writeDelimitedTo(iSpill);
+				iSpill.flush();
+				iSpilled.incrementAndGet();
+			} catch (IOException e) {
+				iDropped.incrementAndGet();
+				sLog.warn("Failed to write log action into " + iSpillFile + ": " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Replay the content of the spill file into the database
+	 */
+	protected void replay() {
+		if (iSpillFile == null || System.currentTimeMillis() < iNextReplay) return;
+		File replay = new File(iSpillFile.getPath() + ".replay");
+		if (!replay.exists()) {
+			synchronized (iSpillFile) {
+				if (iSpill != null) {
+					try {
+						iSpill.close();
+					} catch (IOException e) {}
+					iSpill = null;
+				}
+				if (!iSpillFile.exists() || iSpillFile.length() == 0 || !iSpillFile.renameTo(replay)) return;
+			}
+		}
+		sLog.info("Replaying unpersisted log messages from " + replay);
+		List<OnlineSectioningLog.Action> actions = new ArrayList<OnlineSectioningLog.Action>();
+		boolean stopped = false;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(replay))) {
+			OnlineSectioningLog.Action action = null;
+			while ((action = OnlineSectioningLog.Action.parseDelimitedFrom(in)) != null) {
+				if (stopped) {
+					// replay stopped, move the remaining actions back into the spill file
+					spill(action);
+					continue;
+				}
+				actions.add(action);
+				if (actions.size() >= iFlushSize) {
+					stopped = !replay(actions);
+					actions.clear();
+				}
+			}
+		} catch (IOException e) {
+			// the rest of the file cannot be read (e.g., a truncated record after a crash), keep the file for inspection
+			File corrupted = new File(iSpillFile.getPath() + ".corrupted." + System.currentTimeMillis());
+			sLog.error("Failed to read log actions from " + replay + ": " + e.getMessage() + ", the file is kept as " + corrupted +
+					" (the actions that were read before the failure are replayed).", e);
+			if (!replay.renameTo(corrupted))
+				sLog.warn("Failed to rename " + replay + " to " + corrupted);
+			replay = null;
+		}
+		// the actions that were read but not yet replayed (also when the reading failed)
+		if (!actions.isEmpty() && !stopped)
+			replay(actions);
+		if (replay != null && !replay.delete())
+			sLog.warn("Failed to delete " + replay);
+	}
+	
+	/**
+	 * Replay a chunk of spilled actions. When the chunk fails to persist, it is written back into the spill file and the replay is stopped
+	 * (to be retried later). When the database is not available, the replay is postponed (with an exponential back-off).
+	 * Once the chunk has failed unitime.sectioning.log.replay.attempts times in a row while the database is available, the chunk is bisected
+	 * and the actions that fail to persist even on their own are moved into the dead-letter file (see {@link OnlineSectioningLogger#deadLetter(OnlineSectioningLog.Action)}).
+	 * @return false when the replay should be stopped
+	 */
+	protected boolean replay(List<OnlineSectioningLog.Action> actions) {
+		int persisted = persist(actions, false);
+		if (persisted >= 0) {
+			iReplayed.addAndGet(persisted);
+			iReplayFailures = 0;
+			iReplayOutages = 0;
+			return true;
+		}
+		if (!isDatabaseAvailable()) {
+			long delay = iFlushInterval * (1l << Math.min(iReplayOutages++, 5));
+			sLog.warn("Failed to replay " + actions.size() + " log actions: database is not available, next attempt in " + (delay / 1000) + " seconds.");
+			iNextReplay = System.currentTimeMillis() + delay;
+			for (OnlineSectioningLog.Action action: actions) spill(action);
+			return false;
+		}
+		iReplayOutages = 0;
+		if (++iReplayFailures < iReplayAttempts) {
+			sLog.warn("Failed to replay " + actions.size() + " log actions (attempt " + iReplayFailures + " of " + iReplayAttempts + ").");
+			for (OnlineSectioningLog.Action action: actions) spill(action);
+			return false;
+		}
+		sLog.warn("Failed to replay " + actions.size() + " log actions " + iReplayFailures + " times in a row, looking for the failing actions...");
+		iReplayFailures = 0;
+		bisect(actions);
+		return true;
+	}
+	
+	/**
+	 * Persist the two halves of a chunk that failed to persist separately, recursively, until the failing actions are found
+	 */
+	protected void bisect(List<OnlineSectioningLog.Action> actions) {
+		if (actions.size() <= 1) {
+			// make sure the action fails on its own and not because the database went down in the meantime
+			for (OnlineSectioningLog.Action action: actions) {
+				if (isDatabaseAvailable())
+					deadLetter(action);
+				else
+					spill(action);
+			}
+			return;
+		}
+		int half = actions.size() / 2;
+		for (List<OnlineSectioningLog.Action> part: Arrays.asList(actions.subList(0, half), actions.subList(half, actions.size()))) {
+			int persisted = persist(part, false);
+			if (persisted >= 0)
+				iReplayed.addAndGet(persisted);
+			else
+				bisect(part);
+		}
+	}
+	
+	/**
+	 * Check that the database is available by running a trivial query
+	 */
+	protected boolean isDatabaseAvailable() {
+		org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
+		try {
+			hibSession.createQuery("select count(s) from Session s", Long.class).uniqueResult();
+			return true;
+		} catch (Throwable t) {
+			sLog.debug("Database is not available: " + t.getMessage());
+			return false;
+		} finally {
+			hibSession.close();
+		}
+	}
+	
+	/**
+	 * Move an action that cannot be persisted into the dead-letter file (the spill file with the .failed suffix).
+	 * The file has the same format as the spill file, so it can be replayed by renaming it back once the problem is fixed.
+	 */
+	protected void deadLetter(OnlineSectioningLog.Action action) {
+		iFailed.incrementAndGet();
+		File failed = new File(iSpillFile.getPath() + ".failed");
+		sLog.error("Failed to persist " + action.getOperation() + " log action of student " + action.getStudent().getUniqueId() +
+				(action.hasStartTime() ? " from " + new Date(action.getStartTime()) : "") + ", the action is moved into " + failed);
+		synchronized (iSpillFile) {
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(failed, true))) {
+				action.writeDelimitedTo(out);
+			} catch (IOException e) {
+				sLog.warn("Failed to write log action into " + failed + ": " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Persist the given actions in one transaction, the actions are spilled when the transaction fails
+	 * @return number of persisted actions, -1 when the transaction failed
+	 */
+	protected int persist(List<OnlineSectioningLog.Action> actions) {
+		return persist(actions, true);
+	}
+	
+	/**
+	 * Persist the given actions in one transaction
+	 * @param spill when the transaction fails, write the actions into the spill file (or count them as failed when there is no spill file)
+	 * @return number of persisted actions, -1 when the transaction failed
+	 */
+	protected int persist(List<OnlineSectioningLog.Action> actions, boolean spill) {
+		long t0 = System.currentTimeMillis();
+		int persisted = 0;
+		org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
+		hibSession.setCacheMode(CacheMode.IGNORE);
+		hibSession.setJdbcBatchSize(iBatchSize);
+		Transaction tx = null;
+		try {
+			tx = hibSession.beginTransaction();
+			Map<Long, String> externalIds = new HashMap<Long, String>();
+			List<Long> studentIds = new ArrayList<Long>();
+			for (OnlineSectioningLog.Action q: actions)
+				if (!q.getStudent().hasExternalId() || q.getStudent().getExternalId().isEmpty())
+					studentIds.add(q.getStudent().getUniqueId());
+			for (int i = 0; i < studentIds.size(); i += 1000) {
+				for (Object[] o: hibSession.createQuery(
+						"select s.uniqueId, s.externalUniqueId from Student s where s.uniqueId in :studentIds", Object[].class)
+						.setParameterList("studentIds", studentIds.subList(i, Math.min(i + 1000, studentIds.size()))).list()) {
+					externalIds.put((Long)o[0], (String)o[1]);
+				}
+			}
+			Map<Long, Session> sessions = new HashMap<Long, Session>();
+			for (OnlineSectioningLog.Action q: actions) {
+				org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
+				log.setAction(q.toByteArray());
+				log.setOperation(q.getOperation());
+				String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
+				if (studentExternalId == null || studentExternalId.isEmpty()) {
+					studentExternalId = externalIds.get(q.getStudent().getUniqueId());
+					if (studentExternalId == null) continue;
+				}
+				log.setStudent(studentExternalId);
+				log.setTimeStamp(new Date(q.getStartTime()));
+				if (q.hasResult())
+					log.setResult(q.getResult().getNumber());
+				if (q.hasUser() && q.getUser().hasExternalId())
+					log.setUser(q.getUser().getExternalId());
+				if (q.hasCpuTime())
+					log.setCpuTime(q.getCpuTime());
+				if (q.hasStartTime() && q.hasEndTime())
+					log.setWallTime(q.getEndTime() - q.getStartTime());
+				if (q.hasApiGetTime())
+					log.setApiGetTime(q.getApiGetTime());
+				if (q.hasApiPostTime())
+					log.setApiPostTime(q.getApiPostTime());
+				if (q.hasApiException())
+					log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
+				try {
+					String message = getMessage(q);
+					if (message != null && !message.isEmpty())
+						log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
+				} catch (Exception e) {
+					if (!q.getMessageList().isEmpty()) {
+						String message = null; int level = 0;
+						for (OnlineSectioningLog.Message m: q.getMessageList()) {
+							if (message != null && !message.isEmpty() && (!m.hasLevel() || level > m.getLevel().getNumber())) continue;
+							if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
+							else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
+						}
+						if (message != null && !message.isEmpty())
+							log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
+					}
+				}
+				Long sessionId = q.getSession().getUniqueId();
+				Session session = sessions.get(sessionId);
+				if (session == null) {
+					session = SessionDAO.getInstance().get(sessionId, hibSession);
+					sessions.put(sessionId, session);
+				}
+				log.setSession(session);
+				hibSession.persist(log);
+				persisted ++;
+			}
+			hibSession.flush();
+			tx.commit();
+			iPersisted.addAndGet(persisted);
+		} catch (Throwable t) {
+			if (tx != null && tx.isActive()) tx.rollback();
+			if (spill)
+				sLog.warn("Failed to save " + actions.size() + " log actions: " + t.getMessage(), t);
+			else
+				sLog.debug("Failed to save " + actions.size() + " log actions: " + t.getMessage(), t);
+			persisted = -1;
+			if (spill) {
+				if (iSpillFile != null) {
+					for (OnlineSectioningLog.Action action: actions) spill(action);
+				} else {
+					iFailed.addAndGet(actions.size());
+				}
+			}
+		} finally {
+			hibSession.close();
+		}
+		long time = System.currentTimeMillis() - t0;
+		iFlushes.incrementAndGet();
+		iFlushTime.addAndGet(time);
+		iLastFlushTime.set(time);
+		iMaxFlushTime.accumulateAndGet(time, Math::max);
+		iLastFlush.set(System.currentTimeMillis());
+		return persisted;
+	}
+	
+	/**
+	 * Persist all the actions that are waiting in the queue, in chunks of up to the flush size
+	 * @return true if all the waiting actions have been persisted
+	 */
+	protected boolean flush() {
+		List<OnlineSectioningLog.Action> actionsToSave = new ArrayList<OnlineSectioningLog.Action>(Math.min(iFlushSize, Math.max(1, iQueueSize.get())));
+		OnlineSectioningLog.Action action = null;
+		boolean ok = true;
+		while ((action = iActions.poll()) != null) {
+			iQueueSize.decrementAndGet();
+			actionsToSave.add(action);
+			if (actionsToSave.size() >= iFlushSize) {
+				sLog.debug("Persisting " + actionsToSave.size() + " actions...");
+				if (persist(actionsToSave) < 0) ok = false;
+				actionsToSave.clear();
+			}
+		}
+		if (!actionsToSave.isEmpty()) {
+			sLog.debug("Persisting " + actionsToSave.size() + " actions...");
+			if (persist(actionsToSave) < 0) ok = false;
+		}
+		return ok;
+	}
+	
 	protected static String getRequestMessage(OnlineSectioningLog.Action action) {
 		String request = "";
 		int notAlt = 0, lastFT = -1;
@@ -249,84 +620,16 @@ public class OnlineSectioningLogger extends Thread {
 		try {
 			iActive = true;
 			while (true) {
-				try {
-					sleep(60000);
-				} catch (InterruptedException e) {
-				}
-				List<OnlineSectioningLog.Action> actionsToSave = null;
-				synchronized (iActions) {
-					if (!iActions.isEmpty()) {
-						actionsToSave = new ArrayList<OnlineSectioningLog.Action>(iActions);
-						iActions.clear();
-					}
+				long wakeUp = System.currentTimeMillis() + iFlushInterval;
+				while (iActive && iQueueSize.get() < iFlushSize && System.currentTimeMillis() < wakeUp) {
+					LockSupport.parkNanos(this, 1000000l * (wakeUp - System.currentTimeMillis()));
+					interrupted();
 				}
 				try {
-					if (actionsToSave != null) {
-						sLog.debug("Persisting " + actionsToSave.size() + " actions...");
-						if (iLogLimit > 0 && actionsToSave.size() >= iLogLimit)
-							sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages have been dropped.");
-						org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						try {
-							Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
-							for (OnlineSectioningLog.Action q: actionsToSave) {
-								org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
-								log.setAction(q.toByteArray());
-								log.setOperation(q.getOperation());
-								String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
-								if (studentExternalId == null || studentExternalId.isEmpty()) {
-									Student student = StudentDAO.getInstance().get(q.getStudent().getUniqueId(), hibSession);
-									if (student == null) continue;
-									studentExternalId = student.getExternalUniqueId();
-								}
-								log.setStudent(studentExternalId);
-								log.setTimeStamp(new Date(q.getStartTime()));
-								if (q.hasResult())
-									log.setResult(q.getResult().getNumber());
-								if (q.hasUser() && q.getUser().hasExternalId())
-									log.setUser(q.getUser().getExternalId());
-								if (q.hasCpuTime())
-									log.setCpuTime(q.getCpuTime());
-								if (q.hasStartTime() && q.hasEndTime())
-									log.setWallTime(q.getEndTime() - q.getStartTime());
-								if (q.hasApiGetTime())
-									log.setApiGetTime(q.getApiGetTime());
-								if (q.hasApiPostTime())
-									log.setApiPostTime(q.getApiPostTime());
-								if (q.hasApiException())
-									log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
-								try {
-									String message = getMessage(q);
-									if (message != null && !message.isEmpty())
-										log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
-								} catch (Exception e) {
-									if (!q.getMessageList().isEmpty()) {
-										String message = null; int level = 0;
-										for (OnlineSectioningLog.Message m: q.getMessageList()) {
-											if (message != null && !message.isEmpty() && (!m.hasLevel() || level > m.getLevel().getNumber())) continue;
-											if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
-											else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
-										}
-										if (message != null && !message.isEmpty())
-											log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
-									}
-								}
-								Long sessionId = q.getSession().getUniqueId();
-								Session session = sessions.get(sessionId);
-								if (session == null) {
-									session = SessionDAO.getInstance().get(sessionId, hibSession);
-									sessions.put(sessionId, session);
-								}
-								log.setSession(session);
-								hibSession.persist(log);
-							}
-							hibSession.flush();
-						} finally {
-							hibSession.close();
-						}
-					}
+					if (flush() && iQueueSize.get() < iFlushSize)
+						replay();
 				} catch (Throwable t) {
-					sLog.warn("Failed to save " + actionsToSave.size() + " log actions: " + t.getMessage(), t);
+					sLog.warn("Failed to save log actions: " + t.getMessage(), t);
 				}
 				if (!iActive) break;
 			}
@@ -335,7 +638,18 @@ public class OnlineSectioningLogger extends Thread {
 		} finally {
 			iActive = false;
 			if (iOut != null) { iOut.flush(); iOut.close(); }
+			if (iSpillFile != null) {
+				synchronized (iSpillFile) {
+					if (iSpill != null) {
+						try {
+							iSpill.close();
+						} catch (IOException e) {}
+						iSpill = null;
+					}
+				}
+			}
 		}
-		sLog.info("Online Sectioning Logger is down.");	}
+		sLog.info("Online Sectioning Logger is down.");
+	}
 
 }
@@ -75,6 +75,16 @@ public interface OnlineSectioningServer {
 	public XOffering getOffering(Long offeringId);
 	public Collection<XCourseRequest> getRequests(Long offeringId);
 	public XEnrollments getEnrollments(Long offeringId);
+	/** Number of students enrolled in the given section, configuration, course, or reservation of an offering (same as the respective {@link XEnrollments} count) */
+	public int countEnrollmentsForSection(Long offeringId, Long sectionId);
+	public int countEnrollmentsForConfig(Long offeringId, Long configId);
+	public int countEnrollmentsForCourse(Long offeringId, Long courseId);
+	public int countEnrollmentsForReservation(Long offeringId, Long reservationId);
+	/**
+	 * Version of the offering enrollments, changes whenever an enrollment of the offering is added or removed
+	 * @return -1 if the server does not keep track of the versions (data derived from the enrollments cannot be cached)
+	 */
+	public long getEnrollmentVersion(Long offeringId);
 	public XExpectations getExpectations(Long offeringId);
 	public Collection<Long> getInstructedOfferings(String instructorExternalId);
 	public Set<Long> getRequestedCourseIds(Long studentId);
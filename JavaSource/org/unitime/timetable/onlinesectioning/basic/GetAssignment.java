@@ -272,7 +272,8 @@ public class GetAssignment extends WaitlistedOnlineSectioningAction<ClassAssignm
 			for (XOffering offering: offerings) {
 				ClassAssignmentInterface.CourseAssignment ca = new ClassAssignmentInterface.CourseAssignment();
 		    	XCourse course = offering.getControllingCourse();
-				XEnrollments enrollments = server.getEnrollments(offering.getOfferingId());
+		    	// servers without an enrollment index (version -1) compute the enrollments of the offering only once
+				XEnrollments enrollments = (server.getEnrollmentVersion(offering.getOfferingId()) < 0 ? server.getEnrollments(offering.getOfferingId()) : null);
 				
 		    	if (server.isOfferingLocked(course.getOfferingId()))
 					ca.setLocked(true);
@@ -303,7 +304,7 @@ public class GetAssignment extends WaitlistedOnlineSectioningAction<ClassAssignm
 										a.setSection(section.getName(course.getCourseId()));
 										a.setExternalId(section.getExternalId(course.getCourseId()));
 										a.setCancelled(section.isCancelled());
-										a.setLimit(new int[] {enrollments.countEnrollmentsForSection(section.getSectionId()), section.getLimit()});
+										a.setLimit(new int[] {(enrollments != null ? enrollments.countEnrollmentsForSection(section.getSectionId()) : server.countEnrollmentsForSection(offering.getOfferingId(), section.getSectionId())), section.getLimit()});
 										if (section.getTime() != null) {
 											for (DayCode d : DayCode.toDayCodes(section.getTime().getDays()))
 												a.addDay(d.getIndex());
@@ -831,7 +832,7 @@ public class GetAssignment extends WaitlistedOnlineSectioningAction<ClassAssignm
 							if (subpart.getSections().size() > 1) { hasAlt = true; break; }
 						}
 					}
-					XEnrollments enrollments = server.getEnrollments(offering.getOfferingId());
+					XEnrollments enrollments = (server.getEnrollmentVersion(offering.getOfferingId()) < 0 ? server.getEnrollments(offering.getOfferingId()) : null);
 					for (XSection section: sections) {
 						stored.addSection(OnlineSectioningHelper.toProto(section, enrollment));
 						ClassAssignmentInterface.ClassAssignment a = ca.addClassAssignment();
@@ -843,7 +844,7 @@ public class GetAssignment extends WaitlistedOnlineSectioningAction<ClassAssignm
 						a.setSection(section.getName(course.getCourseId()));
 						a.setExternalId(section.getExternalId(course.getCourseId()));
 						a.setCancelled(section.isCancelled());
-						a.setLimit(new int[] {enrollments.countEnrollmentsForSection(section.getSectionId()), section.getLimit()});
+						a.setLimit(new int[] {(enrollments != null ? enrollments.countEnrollmentsForSection(section.getSectionId()) : server.countEnrollmentsForSection(offering.getOfferingId(), section.getSectionId())), section.getLimit()});
 						if (section.getTime() != null) {
 							for (DayCode d : DayCode.toDayCodes(section.getTime().getDays()))
 								a.addDay(d.getIndex());
@@ -944,7 +945,7 @@ public class GetAssignment extends WaitlistedOnlineSectioningAction<ClassAssignm
 				}
 				
 				if (messages != null) {
-					XEnrollments enrollments = server.getEnrollments(offering.getOfferingId());
+					XEnrollments enrollments = (server.getEnrollmentVersion(offering.getOfferingId()) < 0 ? server.getEnrollments(offering.getOfferingId()) : null);
 					f: for (EnrollmentFailure f: messages) {
 						XSection section = f.getSection();
 						if (!f.getCourse().getCourseId().equals(ca.getCourseId())) continue;
@@ -965,7 +966,7 @@ public class GetAssignment extends WaitlistedOnlineSectioningAction<ClassAssignm
 						a.setSection(section.getName(course.getCourseId()));
 						a.setExternalId(section.getExternalId(course.getCourseId()));
 						a.setCancelled(section.isCancelled());
-						a.setLimit(new int[] {enrollments.countEnrollmentsForSection(section.getSectionId()), section.getLimit()});
+						a.setLimit(new int[] {(enrollments != null ? enrollments.countEnrollmentsForSection(section.getSectionId()) : server.countEnrollmentsForSection(offering.getOfferingId(), section.getSectionId())), section.getLimit()});
 						if (section.getTime() != null) {
 							for (DayCode d : DayCode.toDayCodes(section.getTime().getDays()))
 								a.addDay(d.getIndex());
@@ -98,6 +98,7 @@ import org.unitime.timetable.util.DateUtils;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
 import org.unitime.timetable.onlinesectioning.model.XUniversalReservation;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
 
 /**
  * @author Tomas Muller
@@ -448,6 +449,10 @@ public class GetInfo implements OnlineSectioningAction<Map<String, String>>{
 		} finally {
 			lock.release();
 		}
+		if (server instanceof AbstractServer) {
+			Map<String, String> async = ((AbstractServer)server).getAsyncExecutorInfo();
+			if (async != null) info.putAll(async);
+		}
 		return info;		
 	}
 	
@@ -0,0 +1,258 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.custom;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.Protocol;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Shared HTTP client for the custom online sectioning providers (Banner XE, special registrations, degree plans, etc.).<br>
+ * Instead of each provider creating its own restlet {@link Client}, a provider gets a {@link PooledClient} by calling
+ * {@link HttpClientPool#getClient(String, String)} and uses it as the next restlet of its client resources. Providers with the
+ * same timeouts share one connector, so that the (kept-alive) connections to the external services are reused across the providers.
+ * For each endpoint (method, host, and path), the pool keeps latency statistics (periodically written into the log) and a circuit breaker:
+ * after unitime.custom.http.circuitBreaker.failures consecutive failures (server or connection errors) the calls to the endpoint fail
+ * immediately for unitime.custom.http.circuitBreaker.delay seconds; then one call is let through to check whether the service has recovered.
+ *
+ * @author Tomas Muller
+ */
+public class HttpClientPool {
+	private static Log sLog = LogFactory.getLog(HttpClientPool.class);
+	private static final long REPORT_INTERVAL = 600000;
+	private static HttpClientPool sInstance = new HttpClientPool();
+
+	private Map<String, SharedClient> iClients = new HashMap<String, SharedClient>();
+	private Map<String, Endpoint> iEndpoints = new ConcurrentHashMap<String, Endpoint>();
+	private long iLastReport = System.currentTimeMillis();
+
+	private HttpClientPool() {}
+
+	public static HttpClientPool getInstance() { return sInstance; }
+
+	protected String getConnectTimeout() {
+		Integer timeout = ApplicationProperty.CustomHttpConnectTimeout.intValue();
+		return String.valueOf(timeout == null ? 30000 : timeout.intValue());
+	}
+
+	protected int getCircuitBreakerFailures() {
+		Integer failures = ApplicationProperty.CustomHttpCircuitBreakerFailures.intValue();
+		return (failures == null ? 5 : failures.intValue());
+	}
+
+	protected long getCircuitBreakerDelay() {
+		Integer delay = ApplicationProperty.CustomHttpCircuitBreakerDelay.intValue();
+		return 1000l * (delay == null ? 30 : delay.intValue());
+	}
+
+	/**
+	 * Get a client for the given provider. The client must be stopped (see {@link PooledClient#stop()}) when the provider is disposed.
+	 * @param name provider name (used in the log)
+	 * @param readTimeout read timeout in milliseconds (null for the connector default)
+	 */
+	public synchronized PooledClient getClient(String name, String readTimeout) {
+		String connectTimeout = getConnectTimeout();
+		String key = readTimeout + ":" + connectTimeout;
+		SharedClient shared = iClients.get(key);
+		if (shared == null) {
+			Integer maxConnections = ApplicationProperty.CustomHttpMaxConnections.intValue();
+			if (maxConnections != null && System.getProperty("http.maxConnections") == null)
+				System.setProperty("http.maxConnections", maxConnections.toString());
+			List<Protocol> protocols = new ArrayList<Protocol>();
+			protocols.add(Protocol.HTTP);
+			protocols.add(Protocol.HTTPS);
+			Client client = new Client(protocols);
+			Context cx = new Context();
+			if (readTimeout != null)
+				cx.getParameters().add("readTimeout", readTimeout);
+			cx.getParameters().add("socketConnectTimeoutMs", connectTimeout);
+			client.setContext(cx);
+			shared = new SharedClient(key, client);
+			iClients.put(key, shared);
+		}
+		shared.iUsers ++;
+		return new PooledClient(name, shared);
+	}
+
+	protected synchronized void release(SharedClient shared) {
+		if (--shared.iUsers > 0) return;
+		iClients.remove(shared.iKey);
+		try {
+			shared.iClient.stop();
+		} catch (Exception e) {
+			sLog.error("Failed to stop HTTP client: " + e.getMessage(), e);
+		}
+	}
+
+	protected Endpoint getEndpoint(Request request) {
+		Reference ref = request.getResourceRef();
+		String key = request.getMethod() + " " + (ref == null ? "" : ref.getHostIdentifier() + ref.getPath());
+		return iEndpoints.computeIfAbsent(key, k -> new Endpoint(k));
+	}
+
+	/**
+	 * Endpoint statistics: number of calls, average and maximal time, number of errors, and the number of calls rejected by the circuit breaker
+	 */
+	public Map<String, String> getInfo() {
+		DecimalFormat df = new DecimalFormat("0.00");
+		Map<String, String> info = new TreeMap<String, String>();
+		for (Endpoint endpoint: iEndpoints.values()) {
+			synchronized (endpoint) {
+				if (endpoint.iCalls == 0 && endpoint.iRejected == 0) continue;
+				info.put(endpoint.iName, endpoint.iCalls + " calls" +
+						(endpoint.iCalls == 0 ? "" : ", avg " + df.format(((double)endpoint.iTotalTime) / endpoint.iCalls) + " ms, max " + endpoint.iMaxTime + " ms") +
+						", " + endpoint.iErrors + " errors" +
+						(endpoint.iRejected == 0 ? "" : ", " + endpoint.iRejected + " rejected") +
+						(endpoint.isOpen() ? ", circuit open" : ""));
+			}
+		}
+		return info;
+	}
+
+	protected void report() {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (now - iLastReport < REPORT_INTERVAL) return;
+			iLastReport = now;
+		}
+		Map<String, String> info = getInfo();
+		if (info.isEmpty() || !sLog.isInfoEnabled()) return;
+		StringBuffer sb = new StringBuffer("HTTP endpoints:");
+		for (Map.Entry<String, String> e: info.entrySet())
+			sb.append("\n  " + e.getKey() + ": " + e.getValue());
+		sLog.info(sb.toString());
+	}
+
+	protected static class SharedClient {
+		private String iKey;
+		private Client iClient;
+		private int iUsers = 0;
+
+		SharedClient(String key, Client client) {
+			iKey = key; iClient = client;
+		}
+	}
+
+	protected class Endpoint {
+		private String iName;
+		private long iCalls = 0, iErrors = 0, iRejected = 0, iTotalTime = 0, iMaxTime = 0;
+		private int iFailures = 0;
+		private long iOpenUntil = 0;
+
+		Endpoint(String name) { iName = name; }
+
+		synchronized boolean isOpen() {
+			return iOpenUntil > System.currentTimeMillis();
+		}
+
+		/**
+		 * Check the circuit breaker: when open, the call is rejected; after the delay, one call is let through
+		 */
+		synchronized boolean allow() {
+			if (iOpenUntil == 0) return true;
+			long now = System.currentTimeMillis();
+			if (now < iOpenUntil) {
+				iRejected ++;
+				return false;
+			}
+			iOpenUntil = now + getCircuitBreakerDelay();
+			return true;
+		}
+
+		synchronized void record(long time, boolean failed) {
+			iCalls ++; iTotalTime += time;
+			if (time > iMaxTime) iMaxTime = time;
+			if (!failed) {
+				if (iOpenUntil != 0)
+					sLog.info(iName + ": service is available again, circuit closed.");
+				iFailures = 0; iOpenUntil = 0;
+				return;
+			}
+			iErrors ++; iFailures ++;
+			int threshold = getCircuitBreakerFailures();
+			if (threshold > 0 && iFailures >= threshold) {
+				if (iOpenUntil == 0)
+					sLog.warn(iName + ": " + iFailures + " consecutive failures, circuit opened for " + (getCircuitBreakerDelay() / 1000) + " seconds.");
+				iOpenUntil = System.currentTimeMillis() + getCircuitBreakerDelay();
+			}
+		}
+	}
+
+	/**
+	 * Client restlet of a provider, to be used as the next restlet of a client resource (see {@link org.restlet.resource.ClientResource#setNext(org.restlet.Uniform)}).
+	 */
+	public class PooledClient extends Restlet {
+		private String iName;
+		private SharedClient iShared;
+
+		private PooledClient(String name, SharedClient shared) {
+			iName = name; iShared = shared;
+		}
+
+		public String getName() { return iName; }
+
+		@Override
+		public void handle(Request request, Response response) {
+			Endpoint endpoint = getEndpoint(request);
+			if (!endpoint.allow()) {
+				response.setStatus(new Status(Status.SERVER_ERROR_SERVICE_UNAVAILABLE, "Service " + endpoint.iName + " is not available, please try again later."));
+				return;
+			}
+			long t0 = System.currentTimeMillis();
+			boolean failed = true;
+			try {
+				iShared.iClient.handle(request, response);
+				Status status = response.getStatus();
+				failed = (status == null || status.isServerError() || status.isConnectorError());
+			} finally {
+				endpoint.record(System.currentTimeMillis() - t0, failed);
+				report();
+			}
+		}
+
+		/**
+		 * Return the client to the pool, the shared connector is stopped when it is no longer used
+		 */
+		@Override
+		public synchronized void stop() throws Exception {
+			if (iShared != null) {
+				release(iShared);
+				iShared = null;
+			}
+			super.stop();
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.custom.purdue;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cpsolver.ifs.util.Progress;
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
+
+/**
+ * Bounded pool of threads processing a batch of items, each item making one or more calls to an external HTTP service
+ * (e.g., one student being enrolled in Banner XE).<br>
+ * The number of items processed at the same time adapts to the service: it is halved whenever an item fails with a transient error
+ * (a server error, a timeout, or a connection failure, see {@link BatchRequestExecutor#isTransient(Throwable)}), and it is increased
+ * by one after a series of successful calls, up to the number of threads. An item that failed with a transient error is retried
+ * after a delay that doubles with each attempt. The throughput, latency, and retry statistics are periodically reported in the solver log.
+ *
+ * @author Tomas Muller
+ */
+public class BatchRequestExecutor<T> {
+	private static final long REPORT_INTERVAL = 60000;
+	private String iName;
+	private Progress iProgress;
+	private Long iSessionId;
+	private int iMaxThreads, iMaxAttempts;
+	private long iRetryDelay;
+
+	private DelayQueue<Item> iQueue = new DelayQueue<Item>();
+	private AtomicInteger iPending = new AtomicInteger(0);
+	private boolean iStop = false;
+	private int iLimit, iActive = 0, iSuccessStreak = 0;
+
+	private long iStart, iLastReport;
+	private AtomicLong iProcessed = new AtomicLong(0), iRetries = new AtomicLong(0), iFailures = new AtomicLong(0), iTransientFailures = new AtomicLong(0);
+	private List<Long> iLatencies = new ArrayList<Long>();
+
+	/**
+	 * @param name name of the executor (used for thread names and in the log)
+	 * @param progress solver progress (incremented once per item)
+	 * @param sessionId academic session, set on the worker threads (see {@link ApplicationProperties#setSessionId(Long)})
+	 * @param maxThreads maximal number of items processed at the same time
+	 * @param maxAttempts maximal number of attempts for an item that fails with a transient error
+	 * @param retryDelay delay before the first retry in milliseconds
+	 */
+	public BatchRequestExecutor(String name, Progress progress, Long sessionId, int maxThreads, int maxAttempts, long retryDelay) {
+		iName = name;
+		iProgress = progress;
+		iSessionId = sessionId;
+		iMaxThreads = Math.max(1, maxThreads);
+		iMaxAttempts = Math.max(1, maxAttempts);
+		iRetryDelay = retryDelay;
+		iLimit = iMaxThreads;
+	}
+
+	/**
+	 * Process the given items, the method returns when all the items have been processed (or when the executor was stopped)
+	 * @return false if the processing was stopped (see {@link BatchRequestExecutor#stop()}) or interrupted
+	 */
+	public boolean execute(Collection<T> items, Task<T> task) {
+		iStart = System.currentTimeMillis(); iLastReport = iStart;
+		iPending.set(items.size());
+		long order = 0;
+		for (T item: items)
+			iQueue.add(new Item(item, order++));
+		List<Worker> workers = new ArrayList<Worker>();
+		for (int i = 0; i < Math.min(iMaxThreads, items.size()); i++)
+			workers.add(new Worker(i, task));
+		for (Worker worker: workers) worker.start();
+		boolean interrupted = false;
+		for (Worker worker: workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				interrupted = true; stop();
+				try { worker.join(); } catch (InterruptedException x) {}
+			}
+		}
+		report(true);
+		return !interrupted && !isStopped();
+	}
+
+	/**
+	 * Stop the processing, items that are being processed are finished, remaining items are not processed
+	 */
+	public synchronized void stop() {
+		iStop = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isStopped() {
+		return iStop;
+	}
+
+	/**
+	 * Transient errors are server errors (5xx), timeouts, and connection failures (checked on the whole chain of causes)
+	 */
+	public boolean isTransient(Throwable t) {
+		while (t != null) {
+			if (t instanceof ResourceException) {
+				Status status = ((ResourceException)t).getStatus();
+				if (status != null && (status.isServerError() || status.isConnectorError())) return true;
+			}
+			if (t instanceof InterruptedIOException || t instanceof ConnectException || t instanceof SocketException) return true;
+			t = t.getCause();
+		}
+		return false;
+	}
+
+	protected synchronized boolean acquire() {
+		while (!iStop && iActive >= iLimit) {
+			try {
+				wait(1000);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		if (iStop) return false;
+		iActive ++;
+		return true;
+	}
+
+	protected synchronized void release(boolean success) {
+		iActive --;
+		if (success) {
+			if (++iSuccessStreak >= iLimit && iLimit < iMaxThreads) {
+				iLimit ++; iSuccessStreak = 0;
+			}
+		} else {
+			iSuccessStreak = 0;
+			if (iLimit > 1) {
+				iLimit = Math.max(1, iLimit / 2);
+				iProgress.info(iName + ": transient failure detected, concurrency reduced to " + iLimit + ".");
+			}
+		}
+		notifyAll();
+	}
+
+	protected synchronized int getLimit() {
+		return iLimit;
+	}
+
+	protected void finished(Item item, long time, boolean failed) {
+		iProcessed.incrementAndGet();
+		if (failed) iFailures.incrementAndGet();
+		synchronized (iLatencies) {
+			iLatencies.add(time);
+		}
+		iProgress.incProgress();
+		if (iPending.decrementAndGet() == 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+		report(false);
+	}
+
+	protected void report(boolean last) {
+		long now = System.currentTimeMillis();
+		long[] latencies = null;
+		synchronized (iLatencies) {
+			if (!last && now - iLastReport < REPORT_INTERVAL) return;
+			iLastReport = now;
+			latencies = new long[iLatencies.size()];
+			for (int i = 0; i < latencies.length; i++)
+				latencies[i] = iLatencies.get(i);
+		}
+		if (latencies.length == 0) return;
+		Arrays.sort(latencies);
+		long total = 0;
+		for (long l: latencies) total += l;
+		DecimalFormat df = new DecimalFormat("#,##0.0");
+		double minutes = Math.max(1, now - iStart) / 60000.0;
+		iProgress.info(iName + ": " + iProcessed.get() + " processed" + (last ? "" : ", " + iPending.get() + " remaining") +
+				" (" + df.format(iProcessed.get() / minutes) + "/min, avg " + df.format(((double)total) / latencies.length) + " ms" +
+				", p50 " + latencies[latencies.length / 2] + " ms, p95 " + latencies[Math.min(latencies.length - 1, (int)Math.ceil(0.95 * latencies.length) - 1)] + " ms" +
+				", max " + latencies[latencies.length - 1] + " ms" +
+				", " + iRetries.get() + " retries, " + iTransientFailures.get() + " transient failures, " + iFailures.get() + " errors" +
+				", concurrency " + getLimit() + " of " + iMaxThreads + ")");
+	}
+
+	public interface Task<T> {
+		/**
+		 * Process the given item
+		 * @param item item to process
+		 * @param canRetry true if the item will be retried when the call fails with a transient error
+		 * @return true if the item was processed (or failed permanently, the failure already being recorded), false if the item has failed
+		 * with a transient error that has not been recorded (only when canRetry is true) and should be retried
+		 * @throws Exception an exception is considered a permanent failure (it is logged)
+		 */
+		public boolean execute(T item, boolean canRetry) throws Exception;
+	}
+
+	private class Item implements Delayed {
+		private T iItem;
+		private long iOrder, iNextAttempt = 0;
+		private int iAttempt = 1;
+
+		Item(T item, long order) {
+			iItem = item; iOrder = order;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(iNextAttempt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			@SuppressWarnings("unchecked")
+			Item i = (Item)o;
+			int cmp = Long.compare(iNextAttempt, i.iNextAttempt);
+			if (cmp != 0) return cmp;
+			return Long.compare(iOrder, i.iOrder);
+		}
+	}
+
+	private class Worker extends Thread {
+		private Task<T> iTask;
+
+		Worker(int index, Task<T> task) {
+			setName(iName + "-" + (1 + index));
+			setDaemon(true);
+			iTask = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				iProgress.debug(getName() + " has started.");
+				if (iSessionId != null)
+					ApplicationProperties.setSessionId(iSessionId);
+				while (iPending.get() > 0 && !isStopped()) {
+					Item item = iQueue.poll(500, TimeUnit.MILLISECONDS);
+					if (item == null) continue;
+					if (!acquire()) {
+						iQueue.add(item);
+						break;
+					}
+					boolean canRetry = item.iAttempt < iMaxAttempts;
+					long t0 = System.currentTimeMillis();
+					boolean success = false;
+					try {
+						success = iTask.execute(item.iItem, canRetry);
+					} catch (Exception e) {
+						iProgress.error(getName() + " failed: " + e.getMessage(), e);
+						success = true;
+						finished(item, System.currentTimeMillis() - t0, true);
+						continue;
+					} finally {
+						release(success);
+					}
+					long time = System.currentTimeMillis() - t0;
+					if (success) {
+						finished(item, time, false);
+					} else {
+						iTransientFailures.incrementAndGet();
+						iRetries.incrementAndGet();
+						item.iNextAttempt = System.currentTimeMillis() + iRetryDelay * (1l << Math.min(item.iAttempt - 1, 10));
+						item.iAttempt ++;
+						iQueue.add(item);
+					}
+				}
+				iProgress.debug(getName() + " has " + (isStopped() ? "stopped" : "finished") + ".");
+			} catch (InterruptedException e) {
+				iProgress.debug(getName() + " has been interrupted.");
+			} catch (Exception e) {
+				iProgress.error(getName() + " has failed: " + e.getMessage(), e);
+			} finally {
+				ApplicationProperties.setSessionId(null);
+				HibernateUtil.closeCurrentThreadSessions();
+			}
+		}
+	}
+}
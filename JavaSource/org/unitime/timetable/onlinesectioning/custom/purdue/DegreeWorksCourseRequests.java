@@ -40,11 +40,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.cpsolver.ifs.heuristics.RouletteWheelSelection;
-import org.restlet.Client;
-import org.restlet.Context;
 import org.restlet.data.ChallengeScheme;
 import org.restlet.data.MediaType;
-import org.restlet.data.Protocol;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
 import org.unitime.localization.impl.Localization;
@@ -70,6 +67,8 @@ import org.unitime.timetable.onlinesectioning.custom.CriticalCoursesProvider;
 import org.unitime.timetable.onlinesectioning.custom.CustomCourseLookupHolder;
 import org.unitime.timetable.onlinesectioning.custom.DegreePlansProvider;
 import org.unitime.timetable.onlinesectioning.custom.ExternalTermProvider;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool.PooledClient;
 import org.unitime.timetable.onlinesectioning.custom.purdue.XEInterface.PlaceHolder;
 import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
 import org.unitime.timetable.onlinesectioning.model.XAreaClassificationMajor;
@@ -92,17 +91,11 @@ public class DegreeWorksCourseRequests implements CourseRequestsProvider, Degree
 	private static Log sLog = LogFactory.getLog(DegreeWorksCourseRequests.class);
 	private static StudentSectioningConstants CONST = Localization.create(StudentSectioningConstants.class);
 
-	private Client iClient;
+	private PooledClient iClient;
 	private ExternalTermProvider iExternalTermProvider;
 	
 	public DegreeWorksCourseRequests() {
-		List<Protocol> protocols = new ArrayList<Protocol>();
-		protocols.add(Protocol.HTTP);
-		protocols.add(Protocol.HTTPS);
-		iClient = new Client(protocols);
-		Context cx = new Context();
-		cx.getParameters().add("readTimeout", getDegreeWorksApiReadTimeout());
-		iClient.setContext(cx);
+		iClient = HttpClientPool.getInstance().getClient(getClass().getSimpleName(), getDegreeWorksApiReadTimeout());
 		try {
 			String clazz = ApplicationProperty.CustomizationExternalTerm.value();
 			if (clazz == null || clazz.isEmpty())
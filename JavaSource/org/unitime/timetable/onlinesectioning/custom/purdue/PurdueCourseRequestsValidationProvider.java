@@ -65,10 +65,7 @@ import org.cpsolver.studentsct.reservation.Reservation;
 import org.cpsolver.studentsct.reservation.Restriction;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.restlet.Client;
-import org.restlet.Context;
 import org.restlet.data.MediaType;
-import org.restlet.data.Protocol;
 import org.restlet.resource.ClientResource;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
@@ -110,6 +107,8 @@ import org.unitime.timetable.onlinesectioning.basic.GetInfo;
 import org.unitime.timetable.onlinesectioning.custom.AdvisorCourseRequestsValidationProvider;
 import org.unitime.timetable.onlinesectioning.custom.CourseRequestsValidationProvider;
 import org.unitime.timetable.onlinesectioning.custom.ExternalTermProvider;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool.PooledClient;
 import org.unitime.timetable.onlinesectioning.custom.purdue.SpecialRegistrationInterface.ApiMode;
 import org.unitime.timetable.onlinesectioning.custom.purdue.SpecialRegistrationInterface.Change;
 import org.unitime.timetable.onlinesectioning.custom.purdue.SpecialRegistrationInterface.ChangeError;
@@ -178,17 +177,11 @@ public class PurdueCourseRequestsValidationProvider implements CourseRequestsVal
 	protected static final StudentSectioningConstants CONSTANTS = Localization.create(StudentSectioningConstants.class);
 	protected static Format<Number> sCreditFormat = Formats.getNumberFormat("0.##");
 	
-	private Client iClient;
+	private PooledClient iClient;
 	private ExternalTermProvider iExternalTermProvider;
 	
 	public PurdueCourseRequestsValidationProvider() {
-		List<Protocol> protocols = new ArrayList<Protocol>();
-		protocols.add(Protocol.HTTP);
-		protocols.add(Protocol.HTTPS);
-		iClient = new Client(protocols);
-		Context cx = new Context();
-		cx.getParameters().add("readTimeout", getSpecialRegistrationApiReadTimeout());
-		iClient.setContext(cx);
+		iClient = HttpClientPool.getInstance().getClient(getClass().getSimpleName(), getSpecialRegistrationApiReadTimeout());
 		try {
 			String clazz = ApplicationProperty.CustomizationExternalTerm.value();
 			if (clazz == null || clazz.isEmpty())
@@ -41,11 +41,8 @@ import org.apache.commons.logging.LogFactory;
 import org.cpsolver.coursett.model.Placement;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.restlet.Client;
-import org.restlet.Context;
 import org.restlet.data.ChallengeScheme;
 import org.restlet.data.MediaType;
-import org.restlet.data.Protocol;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
 import org.unitime.localization.impl.Localization;
@@ -110,6 +107,8 @@ import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.custom.Customization;
 import org.unitime.timetable.onlinesectioning.custom.ExternalTermProvider;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool.PooledClient;
 import org.unitime.timetable.onlinesectioning.custom.SpecialRegistrationDashboardUrlProvider;
 import org.unitime.timetable.onlinesectioning.custom.SpecialRegistrationProvider;
 import org.unitime.timetable.onlinesectioning.custom.StudentEnrollmentProvider.EnrollmentRequest;
@@ -181,18 +180,12 @@ public class PurdueSpecialRegistrationProvider implements SpecialRegistrationPro
 	private static Log sLog = LogFactory.getLog(PurdueSpecialRegistrationProvider.class);
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
 
-	private Client iClient;
+	private PooledClient iClient;
 	private ExternalTermProvider iExternalTermProvider;
 	private ExternalClassLookupInterface iExternalClassLookup;
 	
 	public PurdueSpecialRegistrationProvider() {
-		List<Protocol> protocols = new ArrayList<Protocol>();
-		protocols.add(Protocol.HTTP);
-		protocols.add(Protocol.HTTPS);
-		iClient = new Client(protocols);
-		Context cx = new Context();
-		cx.getParameters().add("readTimeout", getSpecialRegistrationApiReadTimeout());
-		iClient.setContext(cx);
+		iClient = HttpClientPool.getInstance().getClient(getClass().getSimpleName(), getSpecialRegistrationApiReadTimeout());
 		try {
 			String clazz = ApplicationProperty.CustomizationExternalTerm.value();
 			if (clazz == null || clazz.isEmpty())
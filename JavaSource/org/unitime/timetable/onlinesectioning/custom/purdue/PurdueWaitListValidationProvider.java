@@ -48,10 +48,7 @@ import org.cpsolver.studentsct.model.Section;
 import org.cpsolver.studentsct.model.Subpart;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.restlet.Client;
-import org.restlet.Context;
 import org.restlet.data.MediaType;
-import org.restlet.data.Protocol;
 import org.restlet.resource.ClientResource;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
@@ -82,6 +79,8 @@ import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Action.Builder;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.custom.ExternalTermProvider;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool.PooledClient;
 import org.unitime.timetable.onlinesectioning.custom.WaitListValidationProvider;
 import org.unitime.timetable.onlinesectioning.custom.purdue.SpecialRegistrationInterface.ApiMode;
 import org.unitime.timetable.onlinesectioning.custom.purdue.SpecialRegistrationInterface.Change;
@@ -139,17 +138,11 @@ public class PurdueWaitListValidationProvider implements WaitListValidationProvi
 	protected static final StudentSectioningConstants CONSTANTS = Localization.create(StudentSectioningConstants.class);
 	protected static Format<Number> sCreditFormat = Formats.getNumberFormat("0.##");
 
-	private Client iClient;
+	private PooledClient iClient;
 	private ExternalTermProvider iExternalTermProvider;
 
 	public PurdueWaitListValidationProvider() {
-		List<Protocol> protocols = new ArrayList<Protocol>();
-		protocols.add(Protocol.HTTP);
-		protocols.add(Protocol.HTTPS);
-		iClient = new Client(protocols);
-		Context cx = new Context();
-		cx.getParameters().add("readTimeout", getSpecialRegistrationApiReadTimeout());
-		iClient.setContext(cx);
+		iClient = HttpClientPool.getInstance().getClient(getClass().getSimpleName(), getSpecialRegistrationApiReadTimeout());
 		try {
 			String clazz = ApplicationProperty.CustomizationExternalTerm.value();
 			if (clazz == null || clazz.isEmpty())
@@ -68,7 +68,6 @@ import org.restlet.data.MediaType;
 import org.restlet.data.Protocol;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
-import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.server.Query;
@@ -129,7 +128,11 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
 	private boolean iAutoOverrides = false;
 	private Set<String> iAllowedOverrides = new HashSet<String>();
 	private int iNrThreads = 1;
+	private int iMaxAttempts = 3;
+	private long iRetryDelay = 1000;
 	private boolean iCanContinue = true;
+	private Gson iGson = null;
+	private BatchRequestExecutor<Student> iExecutor = null;
 	private boolean iTimeConflictsIgnoreBreakTimes = false;
 	private boolean iAutoTimeOverrides = false;
 	private boolean iAutoLCOverrides = false;
@@ -180,6 +183,8 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
 		iAutoLCOverrides = solver.getProperties().getPropertyBoolean("Save.XE.AutoLCOverrides", false);
 		iTimeConflictsIgnoreBreakTimes = solver.getProperties().getPropertyBoolean("Save.XE.TimeConflictsIgnoreBreakTimes", false);
 		iNrThreads = solver.getProperties().getPropertyInt("Save.XE.NrSaveThreads", 10);
+		iMaxAttempts = solver.getProperties().getPropertyInt("Save.XE.MaxAttempts", 3);
+		iRetryDelay = solver.getProperties().getPropertyLong("Save.XE.RetryDelay", 1000l);
 		iCSV = new InMemoryReport("XE", "Last XE Enrollment Results (" + Formats.getDateFormat(Formats.Pattern.DATE_TIME_STAMP_SHORT).format(new Date()) + ")");
 		((StudentSolver)solver).setReport(iCSV);
 		
@@ -199,6 +204,9 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
 		iClient = new Client(protocols);
 		Context cx = new Context();
 		cx.getParameters().add("readTimeout", ApplicationProperties.getProperty("banner.xe.readTimeout", "60000"));
+		// keep the connections open for all the save threads (when supported by the client connector)
+		cx.getParameters().add("maxConnectionsPerHost", String.valueOf(Math.max(2, iNrThreads)));
+		cx.getParameters().add("maxTotalConnections", String.valueOf(Math.max(2, iNrThreads)));
 		iClient.setContext(cx);
 		iCSV.setHeader(new CSVField[] {
 				new CSVField("PUID"),
@@ -309,25 +317,28 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
 	            saveStudent(student);
 	        }
 		} else {
-			List<Worker> workers = new ArrayList<Worker>();
-			Iterator<Student> studentsIterator = students.iterator();
-			for (int i = 0; i < iNrThreads; i++)
-				workers.add(new Worker(i, studentsIterator));
-			for (Worker worker: workers) worker.start();
-			for (Worker worker: workers) {
-				try {
-					worker.join();
-				} catch (InterruptedException e) {
-					iCanContinue = false;
-					try { worker.join(); } catch (InterruptedException x) {}
+			iExecutor = new BatchRequestExecutor<Student>("XESaver", iProgress, iSession.getUniqueId(), iNrThreads, iMaxAttempts, iRetryDelay);
+			iCanContinue = iExecutor.execute(students, new BatchRequestExecutor.Task<Student>() {
+				@Override
+				public boolean execute(Student student, boolean canRetry) {
+					return saveStudent(student, canRetry);
 				}
-			}
+			});
 			if (!iCanContinue)
 				throw new RuntimeException("The save was interrupted.");
 		}
 	}
 	
 	protected void saveStudent(Student student) {
+		saveStudent(student, false);
+	}
+	
+	/**
+	 * Enroll the given student
+	 * @param canRetry when true and the enrollment failed with a transient error (e.g., Banner XE is overloaded), the failure is not recorded
+	 * @return false if the enrollment failed with a transient error and it should be retried
+	 */
+	protected boolean saveStudent(Student student, boolean canRetry) {
 		long c0 = OnlineSectioningHelper.getCpuTime();
 		OnlineSectioningLog.Action.Builder action = OnlineSectioningLog.Action.newBuilder();
 		action.setOperation("batch-enroll");
@@ -360,6 +371,10 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
         try {
         	enroll(student, getCrns(student), getLCCrns(student), action, csv);
         } catch (Exception e) {
+        	if (canRetry && iExecutor != null && iExecutor.isTransient(e)) {
+        		iProgress.info("[" + student.getExternalId() + "] Enrollment failed: " + e.getMessage() + ", will retry.");
+        		return false;
+        	}
         	if (e instanceof SectioningException) {
 				if (e.getCause() == null) {
 					iProgress.info("Enrollment failed: " + e.getMessage());
@@ -415,6 +430,7 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
             iUpdatedStudents.add(new XStudent(student, getAssignment()));
 		}
         OnlineSectioningLogger.getInstance().record(OnlineSectioningLog.Log.newBuilder().addAction(action).build());
+        return true;
 	}
 	
 	protected Set<String> getCrns(Student student) {
@@ -505,7 +521,8 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
 		return crns;
 	}
 	
-	protected Gson getGson() {
+	protected synchronized Gson getGson() {
+		if (iGson != null) return iGson;
 		GsonBuilder builder = new GsonBuilder()
 		.registerTypeAdapter(DateTime.class, new JsonSerializer<DateTime>() {
 			@Override
@@ -519,7 +536,8 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
 				return new DateTime(json.getAsJsonPrimitive().getAsString(), DateTimeZone.UTC);
 			}
 		});
-		return builder.create();
+		iGson = builder.create();
+		return iGson;
 	}
 	
 	protected void enroll(Student student, Set<String> crns, Set<String> lcCrns, OnlineSectioningLog.Action.Builder action, List<CSVField[]> csv) throws IOException {
@@ -1109,42 +1127,6 @@ public class XEBatchSolverSaver extends StudentSectioningSaver {
     	iProgress.incProgress();
     }
 	
-	protected class Worker extends Thread {
-		private Iterator<Student> iStudents;
-		
-		public Worker(int index, Iterator<Student> students) {
-			setName("XESaver-" + (1 + index));
-			iStudents = students;
-		}
-		
-		@Override
-	    public void run() {
-			try {
-				iProgress.debug(getName() + " has started.");
-				ApplicationProperties.setSessionId(iSession.getUniqueId());
-				while (true) {
-					Student student = null;
-					synchronized (iStudents) {
-						if (!iCanContinue) {
-							iProgress.debug(getName() + " has stopped.");
-							return;
-						}
-						if (!iStudents.hasNext()) break;
-						student = iStudents.next();
-						iProgress.incProgress();
-					}
-					saveStudent(student);
-				}
-				iProgress.debug(getName() + " has finished.");
-			} catch (Exception e) {
-				iProgress.error(getName() + " has failed: " + e.getMessage(), e);
-			} finally {
-				ApplicationProperties.setSessionId(null);
-				HibernateUtil.closeCurrentThreadSessions();
-			}
-		}
-	}
-	
 	public static class StudentMatcher implements TermMatcher {
 		private Student iStudent;
 		private AcademicSessionInfo iSession;
@@ -35,11 +35,8 @@ import org.apache.commons.logging.LogFactory;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.restlet.Client;
-import org.restlet.Context;
 import org.restlet.data.ChallengeScheme;
 import org.restlet.data.MediaType;
-import org.restlet.data.Protocol;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
 import org.unitime.localization.impl.Localization;
@@ -58,6 +55,8 @@ import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.custom.ExternalTermProvider;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool;
+import org.unitime.timetable.onlinesectioning.custom.HttpClientPool.PooledClient;
 import org.unitime.timetable.onlinesectioning.custom.StudentEnrollmentProvider;
 import org.unitime.timetable.onlinesectioning.custom.purdue.XEInterface.CourseReferenceNumber;
 import org.unitime.timetable.onlinesectioning.custom.purdue.XEInterface.RegisterAction;
@@ -90,17 +89,11 @@ public class XEStudentEnrollment implements StudentEnrollmentProvider {
 	private static StudentSectioningMessages MESSAGES = Localization.create(StudentSectioningMessages.class);
 	protected static Format<Number> sCreditFormat = Formats.getNumberFormat("0.##");
 	
-	private Client iClient;
+	private PooledClient iClient;
 	private ExternalTermProvider iExternalTermProvider;
 	
 	public XEStudentEnrollment() {
-		List<Protocol> protocols = new ArrayList<Protocol>();
-		protocols.add(Protocol.HTTP);
-		protocols.add(Protocol.HTTPS);
-		iClient = new Client(protocols);
-		Context cx = new Context();
-		cx.getParameters().add("readTimeout", getBannerReadTimeout());
-		iClient.setContext(cx);
+		iClient = HttpClientPool.getInstance().getClient(getClass().getSimpleName(), getBannerReadTimeout());
 		try {
 			String clazz = ApplicationProperty.CustomizationExternalTerm.value();
 			if (clazz == null || clazz.isEmpty())
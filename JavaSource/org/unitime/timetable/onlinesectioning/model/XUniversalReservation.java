@@ -107,7 +107,7 @@ public class XUniversalReservation extends XReservation {
     @Override
     public boolean isApplicable(XStudent student, XCourseId course) {
     	return getFilter() != null && !getFilter().isEmpty() && getStudentQuery().match(
-    			new StudentMatcher(student, null, null, false)
+    			new StudentMatcher(student, null, null, false), StudentMatcher.COMPILER
     			);
     }
     
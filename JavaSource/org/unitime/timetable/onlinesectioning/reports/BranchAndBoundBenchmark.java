@@ -0,0 +1,202 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.reports;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.unitime.timetable.gwt.shared.CourseRequestInterface;
+import org.unitime.timetable.gwt.shared.CourseRequestInterface.FreeTime;
+import org.unitime.timetable.gwt.shared.CourseRequestInterface.RequestedCourse;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Action;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Enrollment;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Entity;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Request;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Time;
+import org.unitime.timetable.onlinesectioning.server.DatabaseServer;
+import org.unitime.timetable.onlinesectioning.solver.FindAssignmentAction;
+
+/**
+ * Replays the logged Scheduling Assistant requests (section operation) using the sequential and the parallel branch &amp; bound
+ * (see {@link org.unitime.timetable.onlinesectioning.solver.ParallelBranchAndBoundSelection}) and compares the time and the
+ * value of the computed schedules. The course and free time requests of each logged action are replayed against the current data
+ * of the academic session (using the database server), the number of threads of the parallel search is given by the parallelism
+ * system property (defaults to the number of available processors). Only the time spent in the selection is compared, the time needed
+ * to load the student and the requested courses into the model is reported separately.
+ *
+ * @author Tomas Muller
+ */
+public class BranchAndBoundBenchmark implements OnlineSectioningReport.Report {
+	private OnlineSectioningServer iServer = null;
+	private org.hibernate.Session iHibSession = null;
+	private Entity iUser = Entity.newBuilder().setExternalId("BENCHMARK").setName("Branch & Bound Benchmark").setType(Entity.EntityType.MANAGER).build();
+	private int iParallelism = Integer.parseInt(System.getProperty("parallelism", String.valueOf(Runtime.getRuntime().availableProcessors())));
+	private long iReplayed = 0;
+
+	@Override
+	public String getYear() {
+		return System.getProperty("year", "2012");
+	}
+
+	@Override
+	public String getTerm() {
+		return System.getProperty("term", "Fall");
+	}
+
+	@Override
+	public String getCampus() {
+		return System.getProperty("campus", "PWL");
+	}
+
+	@Override
+	public File getReportFolder() {
+		return new File(System.getProperty("user.home", "~"));
+	}
+
+	@Override
+	public String[] getOperations() {
+		return new String[] { "section" };
+	}
+
+	@Override
+	public String[] getExcludeUsers() {
+		return System.getProperty("exclude", "TEST").split(",");
+	}
+
+	@Override
+	public String getLastTimeStamp() {
+		return System.getProperty("before", null);
+	}
+
+	protected OnlineSectioningServer getServer() {
+		if (iServer == null) {
+			iHibSession = new _RootDAO().createNewSession();
+			Session session = Session.getSessionUsingInitiativeYearTerm(getCampus(), getYear(), getTerm(), iHibSession);
+			iServer = new DatabaseServer(new AcademicSessionInfo(session), false);
+		}
+		return iServer;
+	}
+
+	protected CourseRequestInterface getRequest(Action action) {
+		CourseRequestInterface request = new CourseRequestInterface();
+		request.setSessionId(getServer().getAcademicSession().getUniqueId());
+		if (action.hasStudent() && action.getStudent().hasUniqueId())
+			request.setStudentId(action.getStudent().getUniqueId());
+		for (Request r: action.getRequestList()) {
+			CourseRequestInterface.Request rq = new CourseRequestInterface.Request();
+			if (r.getFreeTimeCount() > 0) {
+				List<FreeTime> freeTimes = new ArrayList<FreeTime>();
+				for (Time t: r.getFreeTimeList()) {
+					FreeTime ft = new FreeTime();
+					for (int day = 0; day < 7; day++)
+						if ((t.getDays() & (1 << (6 - day))) != 0) ft.addDay(day);
+					ft.setStart(t.getStart());
+					ft.setLength(t.getLength());
+					freeTimes.add(ft);
+				}
+				rq.addRequestedCourse(new RequestedCourse(freeTimes));
+			} else {
+				for (Entity course: r.getCourseList())
+					rq.addRequestedCourse(new RequestedCourse(course.getUniqueId(), course.getName()));
+			}
+			if (!rq.hasRequestedCourse()) continue;
+			if (r.getAlternative())
+				request.getAlternatives().add(rq);
+			else
+				request.getCourses().add(rq);
+		}
+		return request;
+	}
+
+	/**
+	 * Compute a schedule for the given request using the given number of threads
+	 * @return selection time in milliseconds, the value of the computed schedule, and model load time in milliseconds (null if no schedule was computed)
+	 */
+	protected double[] replay(CourseRequestInterface request, int parallelism) {
+		getServer().getConfig().setProperty("Neighbour.BranchAndBoundParallelism", String.valueOf(parallelism));
+		OnlineSectioningHelper helper = new OnlineSectioningHelper(iHibSession, iUser);
+		FindAssignmentAction action = getServer().createAction(FindAssignmentAction.class).forRequest(request);
+		helper.addAction(action, getServer().getAcademicSession());
+		try {
+			action.execute(getServer(), helper);
+		} catch (Exception e) {
+			OnlineSectioningReport.sLog.warn("Failed to replay request of student " + request.getStudentId() + ": " + e.getMessage());
+			return null;
+		}
+		for (Enrollment enrollment: helper.getAction().getEnrollmentList())
+			if (enrollment.getType() == Enrollment.EnrollmentType.COMPUTED && enrollment.hasValue())
+				return new double[] { action.getSelectionTime(), enrollment.getValue(), action.getModelTime() };
+		return null;
+	}
+
+	@Override
+	public void process(OnlineSectioningReport report, String student, List<Action> actions) {
+		for (Action action: actions) {
+			if (action.getRequestCount() == 0) continue;
+			CourseRequestInterface request = getRequest(action);
+			// alternate the order of the two runs, so that neither of them is favored by the caches
+			boolean sequentialFirst = (iReplayed++ % 2 == 0);
+			double[] sequential = null, parallel = null;
+			if (sequentialFirst) sequential = replay(request, 1);
+			parallel = replay(request, iParallelism);
+			if (!sequentialFirst) sequential = replay(request, 1);
+			if (sequential == null || parallel == null) {
+				report.inc("Errors", 1);
+				continue;
+			}
+			report.inc("Sequential Time [ms]", sequential[0]);
+			report.inc("Parallel Time [ms]", parallel[0]);
+			report.inc("Sequential Load Time [ms]", sequential[2]);
+			report.inc("Parallel Load Time [ms]", parallel[2]);
+			report.inc("Sequential Value", sequential[1]);
+			report.inc("Parallel Value", parallel[1]);
+			report.inc("Parallel Better", parallel[1] > sequential[1] + 1e-6 ? 1 : 0);
+			report.inc("Parallel Worse", parallel[1] < sequential[1] - 1e-6 ? 1 : 0);
+			report.inc("Speedup", sequential[0] / Math.max(0.001, parallel[0]));
+			report.inc("Students", student, "Sequential Time [ms]", sequential[0]);
+			report.inc("Students", student, "Parallel Time [ms]", parallel[0]);
+			report.inc("Students", student, "Value Difference", parallel[1] - sequential[1]);
+		}
+
+		long done = Math.round(report.inc("Replayed Students", 1.0));
+		if ((done % 100) == 0) {
+			OnlineSectioningReport.sLog.info("---- after " + done + " students");
+			for (String name: new TreeSet<String>(report.iCounters.keySet())) {
+				OnlineSectioningReport.sLog.info(name + ": " + report.iCounters.get(name));
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			new OnlineSectioningReport(new BranchAndBoundBenchmark()).run();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+}
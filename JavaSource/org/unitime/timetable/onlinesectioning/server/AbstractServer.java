@@ -33,7 +33,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -47,7 +46,6 @@ import org.cpsolver.studentsct.online.expectations.AvoidUnbalancedWhenNoExpectat
 import org.cpsolver.studentsct.online.expectations.OverExpectedCriterion;
 import org.cpsolver.studentsct.online.selection.StudentSchedulingAssistantWeights;
 import org.hibernate.CacheMode;
-import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -97,7 +95,6 @@ import org.unitime.timetable.onlinesectioning.updates.PersistExpectedSpacesActio
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.DateUtils;
-import org.unitime.timetable.util.Formats;
 import org.unitime.timetable.util.MemoryCounter;
 
 /**
@@ -112,8 +109,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	protected XSchedulingRules iRules = null;
 	private OnlineSectioningActionFactory iActionFactory = null;
 	
-	protected List<AsyncExecutor> iExecutors = new ArrayList<AsyncExecutor>();
-	private Queue<Runnable> iExecutorQueue = new LinkedList<Runnable>();
+	protected AsyncExecutor iExecutor = null;
 	private HashSet<CacheElement<Long>> iOfferingsToPersistExpectedSpaces = new HashSet<CacheElement<Long>>();
 	private static ThreadLocal<LinkedList<OnlineSectioningHelper>> sHelper = new ThreadLocal<LinkedList<OnlineSectioningHelper>>();
 	protected Map<String, Object> iProperties = new HashMap<String, Object>();
@@ -146,9 +142,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			AcademicSessionInfo academicSession = new AcademicSessionInfo(session);
 			iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + academicSession.toCompactString() + "]");
 			iProperties.put("AcademicSession", academicSession);
-			int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
-			for (int i = 0; i < asncPoolSize; i++)
-				new AsyncExecutor(academicSession, 1 + i).start();
+			iExecutor = createAsyncExecutor(academicSession);
 		} finally {
 			hibSession.close();
 		}
@@ -175,11 +169,45 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 		iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + session.toCompactString() + "]");
 		iProperties.put("AcademicSession", session);
-		if (allowAsyncCalls) {
-			int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
-			for (int i = 0; i < asncPoolSize; i++)
-				new AsyncExecutor(session, 1 + i).start();
-		}
+		if (allowAsyncCalls)
+			iExecutor = createAsyncExecutor(session);
+	}
+	
+	protected AsyncExecutor createAsyncExecutor(AcademicSessionInfo session) {
+		Integer backgroundPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
+		// asyncPoolSize=0 disables the asynchronous execution (all actions are executed synchronously)
+		if (backgroundPoolSize == null || backgroundPoolSize.intValue() <= 0) return null;
+		Integer interactivePoolSize = ApplicationProperty.OnlineSchedulingServerAsyncInteractivePoolSize.intValue();
+		Integer queueSize = ApplicationProperty.OnlineSchedulingServerAsyncQueueSize.intValue();
+		AsyncExecutor executor = new AsyncExecutor(session, iLog,
+				interactivePoolSize == null ? 0 : interactivePoolSize.intValue(),
+				backgroundPoolSize.intValue(),
+				queueSize == null ? 0 : queueSize.intValue());
+		return executor.isActive() ? executor : null;
+	}
+	
+	/**
+	 * Priority of an asynchronously executed action, can be set using [action name].AsyncPriority configuration property
+	 * (Interactive or Background), defaults to Background for the actions matching the unitime.enrollment.server.asyncBackgroundActions regular expression.
+	 */
+	protected AsyncExecutor.Priority getAsyncPriority(OnlineSectioningAction<?> action) {
+		String priority = getConfig().getProperty(action.name() + ".AsyncPriority");
+		if (priority != null) {
+			for (AsyncExecutor.Priority p: AsyncExecutor.Priority.values())
+				if (p.name().equalsIgnoreCase(priority)) return p;
+		}
+		String background = ApplicationProperty.OnlineSchedulingServerAsyncBackgroundActions.value();
+		if (background != null && !background.isEmpty() && action.name().matches(background))
+			return AsyncExecutor.Priority.Background;
+		return AsyncExecutor.Priority.Interactive;
+	}
+	
+	/**
+	 * Current state of the asynchronous execution (queue lengths, queue and run times of the actions), null when there is no asynchronous execution
+	 */
+	public Map<String, String> getAsyncExecutorInfo() {
+		AsyncExecutor executor = iExecutor;
+		return executor == null ? null : executor.getInfo();
 	}
 	
 	protected void load(OnlineSectioningServerContext context) throws SectioningException {
@@ -473,17 +501,9 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	
 	@Override
 	public <E> void execute(final OnlineSectioningAction<E> action, final OnlineSectioningLog.Entity user, final ServerCallback<E> callback) throws SectioningException {
-		if (iExecutors == null || iExecutors.isEmpty()) {
-			try {
-				callback.onSuccess(execute(action, user));
-			} catch (Throwable t) {
-				callback.onFailure(t);
-			}
-			return;
-		}
 		final String locale = Localization.getLocale();
-		synchronized (iExecutorQueue) {
-			iExecutorQueue.offer(new Runnable() {
+		AsyncExecutor executor = iExecutor;
+		if (executor != null && executor.execute(action.name(), getAsyncPriority(action), new Runnable() {
 				@Override
 				public void run() {
 					Localization.setLocale(locale);
@@ -498,50 +518,12 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 				public String toString() {
 					return action.name();
 				}
-			});
-			iExecutorQueue.notify();
-		}
-	}
-	
-	public class AsyncExecutor extends Thread {
-		private boolean iStop = false;
-		private int iId;
-		
-		public AsyncExecutor(AcademicSessionInfo session, int id) {
-			iId = id;
-			setName("AsyncExecutor[" + session + "-" + id + "]");
-			setDaemon(true);
-			iExecutors.add(this);
-		}
-		
-		public void run() {
-			try {
-				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
-				Runnable job;
-				while (!iStop) {
-					synchronized (iExecutorQueue) {
-						job = iExecutorQueue.poll();
-						if (job == null) {
-							try {
-								iLog.debug("Executor " + iId + " is waiting for a new job...");
-								iExecutorQueue.wait();
-							} catch (InterruptedException e) {}
-							continue;
-						}		
-					}
-					job.run();
-					if (HibernateUtil.closeCurrentThreadSessions())
-						iLog.debug("Job " + job + " did not close current-thread hibernate session.");
-				}
-				iLog.info("Executor " + iId + " stopped.");
-			} finally {
-				ApplicationProperties.setSessionId(null);
-				Localization.removeLocale();
-				Formats.removeFormats();
-				iExecutors.remove(this);
-			}
+			})) return;
+		try {
+			callback.onSuccess(execute(action, user));
+		} catch (Throwable t) {
+			callback.onFailure(t);
 		}
-		
 	}
 	
 	@Override
@@ -551,12 +533,9 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			iLog.info("There are " + offeringIds.size() + " offerings that need expected spaces persisted.");
 			execute(createAction(PersistExpectedSpacesAction.class).forOfferings(offeringIds), getSystemUser());
 		}
-		if (iExecutors != null) {
-			for (AsyncExecutor ex: iExecutors)
-				ex.iStop = true;
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.notifyAll();
-			}
+		if (iExecutor != null) {
+			iExecutor.shutdown();
+			iExecutor = null;
 		}
 	}
 
@@ -754,6 +733,31 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		return new XEnrollments(offeringId, getRequests(offeringId));
 	}
 
+	@Override
+	public int countEnrollmentsForSection(Long offeringId, Long sectionId) {
+		return getEnrollments(offeringId).countEnrollmentsForSection(sectionId);
+	}
+
+	@Override
+	public int countEnrollmentsForConfig(Long offeringId, Long configId) {
+		return getEnrollments(offeringId).countEnrollmentsForConfig(configId);
+	}
+
+	@Override
+	public int countEnrollmentsForCourse(Long offeringId, Long courseId) {
+		return getEnrollments(offeringId).countEnrollmentsForCourse(courseId);
+	}
+
+	@Override
+	public int countEnrollmentsForReservation(Long offeringId, Long reservationId) {
+		return getEnrollments(offeringId).countEnrollmentsForReservation(reservationId);
+	}
+
+	@Override
+	public long getEnrollmentVersion(Long offeringId) {
+		return -1;
+	}
+
 	@Override
 	public <E> E getProperty(String name, E defaultValue) {
 		E ret = (E)iProperties.get(name);
@@ -848,12 +852,13 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 				XEnrollment e = cr.getEnrollment();
 				if (e != null) {
 					XOffering offering = getOffering(e.getOfferingId());
-					XEnrollments enrl = getEnrollments(e.getOfferingId());
+					// servers without an enrollment index (version -1) compute the enrollments of the offering only once
+					XEnrollments enrl = (getEnrollmentVersion(e.getOfferingId()) < 0 ? getEnrollments(e.getOfferingId()) : null);
 					for (XSection section: offering.getSections(e)) {
 						XClassEnrollment ce = new XClassEnrollment(e, section);
 						if (section.getParentId() != null)
 							ce.setParentSectionName(offering.getSection(section.getParentId()).getName(e.getCourseId()));
-						if (enrl != null) ce.setEnrollment(enrl.countEnrollmentsForSection(section.getSectionId()));
+						ce.setEnrollment(enrl != null ? enrl.countEnrollmentsForSection(section.getSectionId()) : countEnrollmentsForSection(e.getOfferingId(), section.getSectionId()));
 						XSubpart subpart = offering.getSubpart(section.getSubpartId());
 						ce.setCredit(subpart.getCredit(e.getCourseId()));
 						Float creditOverride = section.getCreditOverride(e.getCourseId());
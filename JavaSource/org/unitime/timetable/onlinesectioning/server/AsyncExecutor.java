@@ -0,0 +1,219 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
+import org.unitime.timetable.util.Formats;
+
+/**
+ * Asynchronous execution of the online student scheduling server actions.<br>
+ * There are two thread pools, one for the {@link Priority#Interactive} actions (e.g., student notifications) and one for
+ * the {@link Priority#Background} actions (e.g., offering checks, reload of all data), so that a burst of long-running
+ * background actions cannot delay the interactive ones. Each pool has a bounded queue; when the queue is full, the action
+ * is executed by the calling thread (the same way as when there is no asynchronous execution).<br>
+ * Queue and run times are recorded for each action, see {@link AsyncExecutor#getInfo()}.
+ *
+ * @author Tomas Muller
+ */
+public class AsyncExecutor {
+	private Log iLog;
+	private AcademicSessionInfo iSession;
+	private Map<Priority, ThreadPoolExecutor> iPools = new TreeMap<Priority, ThreadPoolExecutor>();
+	private Map<String, ActionStats> iStats = new ConcurrentHashMap<String, ActionStats>();
+	private AtomicLong iRejected = new AtomicLong(0);
+
+	public static enum Priority {
+		Interactive,
+		Background,
+	}
+
+	public AsyncExecutor(AcademicSessionInfo session, Log log, int interactivePoolSize, int backgroundPoolSize, int queueSize) {
+		iSession = session;
+		iLog = log;
+		if (interactivePoolSize > 0)
+			iPools.put(Priority.Interactive, createPool(Priority.Interactive, interactivePoolSize, queueSize));
+		if (backgroundPoolSize > 0)
+			iPools.put(Priority.Background, createPool(Priority.Background, backgroundPoolSize, queueSize));
+	}
+
+	protected ThreadPoolExecutor createPool(final Priority priority, int poolSize, int queueSize) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 0l, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(queueSize <= 0 ? Integer.MAX_VALUE : queueSize),
+				new ThreadFactory() {
+					private AtomicInteger iId = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r);
+						thread.setName("AsyncExecutor[" + iSession + "-" + (priority == Priority.Background ? "" : priority.name() + "-") + iId.incrementAndGet() + "]");
+						thread.setDaemon(true);
+						return thread;
+					}
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+		return pool;
+	}
+
+	/**
+	 * True if there is at least one thread pool available
+	 */
+	public boolean isActive() {
+		for (ThreadPoolExecutor pool: iPools.values())
+			if (!pool.isShutdown()) return true;
+		return false;
+	}
+
+	/**
+	 * Queue the given job. If there is no pool of the given priority, the other pool is used.
+	 * @return false if the job cannot be queued (the queue is full), the caller is expected to execute the job synchronously
+	 */
+	public boolean execute(String name, Priority priority, Runnable job) {
+		ThreadPoolExecutor pool = iPools.get(priority);
+		if (pool == null)
+			for (ThreadPoolExecutor p: iPools.values()) { pool = p; break; }
+		if (pool == null) return false;
+		if (pool.isShutdown()) {
+			iLog.warn("Executor is stopped, job " + name + " was not executed.");
+			return true;
+		}
+		try {
+			pool.execute(new Job(name, priority, job));
+			return true;
+		} catch (RejectedExecutionException e) {
+			if (pool.isShutdown()) {
+				iLog.warn("Executor is stopped, job " + name + " was not executed.");
+				return true;
+			}
+			iRejected.incrementAndGet();
+			iLog.warn("Queue of " + priority.name().toLowerCase() + " jobs is full, job " + name + " will be executed synchronously.");
+			return false;
+		}
+	}
+
+	/**
+	 * Stop the executor: the jobs that are being executed are allowed to finish, the queued jobs are dropped.
+	 */
+	public void shutdown() {
+		for (Map.Entry<Priority, ThreadPoolExecutor> e: iPools.entrySet()) {
+			int dropped = e.getValue().getQueue().size();
+			e.getValue().shutdown();
+			e.getValue().getQueue().clear();
+			iLog.info("Executor of " + e.getKey().name().toLowerCase() + " jobs stopped" + (dropped > 0 ? ", " + dropped + " queued jobs dropped." : "."));
+		}
+	}
+
+	/**
+	 * Current state of the executor: queue lengths and active threads of each priority, and the queue and run times of each action.
+	 */
+	public Map<String, String> getInfo() {
+		Map<String, String> info = new TreeMap<String, String>();
+		for (Map.Entry<Priority, ThreadPoolExecutor> e: iPools.entrySet()) {
+			ThreadPoolExecutor pool = e.getValue();
+			info.put("Async " + e.getKey().name().toLowerCase() + " jobs",
+					pool.getActiveCount() + " running, " + pool.getQueue().size() + " queued, " + pool.getCompletedTaskCount() + " completed (" + pool.getPoolSize() + " threads)");
+		}
+		if (iRejected.get() > 0)
+			info.put("Async jobs executed synchronously", String.valueOf(iRejected.get()));
+		DecimalFormat df = new DecimalFormat("0.0");
+		for (Map.Entry<String, ActionStats> e: iStats.entrySet())
+			info.put("Async job " + e.getKey(), e.getValue().toString(df));
+		return info;
+	}
+
+	protected ActionStats getStats(String name) {
+		ActionStats stats = iStats.get(name);
+		if (stats == null) {
+			stats = new ActionStats();
+			ActionStats old = iStats.putIfAbsent(name, stats);
+			if (old != null) stats = old;
+		}
+		return stats;
+	}
+
+	private class Job implements Runnable {
+		private String iName;
+		private Priority iPriority;
+		private Runnable iJob;
+		private long iCreated;
+
+		Job(String name, Priority priority, Runnable job) {
+			iName = name; iPriority = priority; iJob = job;
+			iCreated = System.currentTimeMillis();
+		}
+
+		@Override
+		public void run() {
+			long t0 = System.currentTimeMillis();
+			try {
+				ApplicationProperties.setSessionId(iSession.getUniqueId());
+				iJob.run();
+				if (HibernateUtil.closeCurrentThreadSessions())
+					iLog.debug("Job " + iName + " did not close current-thread hibernate session.");
+			} finally {
+				ApplicationProperties.setSessionId(null);
+				Localization.removeLocale();
+				Formats.removeFormats();
+				long t1 = System.currentTimeMillis();
+				getStats(iName).record(t0 - iCreated, t1 - t0);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return iName + " (" + iPriority.name().toLowerCase() + ")";
+		}
+	}
+
+	private static class ActionStats {
+		private AtomicLong iCount = new AtomicLong(0);
+		private AtomicLong iQueueTime = new AtomicLong(0), iMaxQueueTime = new AtomicLong(0);
+		private AtomicLong iRunTime = new AtomicLong(0), iMaxRunTime = new AtomicLong(0);
+
+		void record(long queueTime, long runTime) {
+			iCount.incrementAndGet();
+			iQueueTime.addAndGet(queueTime);
+			iRunTime.addAndGet(runTime);
+			iMaxQueueTime.accumulateAndGet(queueTime, Math::max);
+			iMaxRunTime.accumulateAndGet(runTime, Math::max);
+		}
+
+		String toString(DecimalFormat df) {
+			long count = iCount.get();
+			if (count == 0) return "0";
+			return count + "x, queue " + df.format(iQueueTime.get() / 1000.0 / count) + "s avg, " + df.format(iMaxQueueTime.get() / 1000.0) + "s max" +
+					", run " + df.format(iRunTime.get() / 1000.0 / count) + "s avg, " + df.format(iMaxRunTime.get() / 1000.0) + "s max";
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+
+/**
+ * Prefix index over course names, course numbers and titles. Each course is registered
+ * under the first few characters of every string that {@link XCourseId#matchCourseName(String)}
+ * or {@link XCourseId#matchTitle(String)} can match the beginning of, so that a course lookup
+ * only needs to verify the courses that share the query's prefix instead of all the courses.
+ * The index is not thread-safe, it is expected to be guarded by the server's read / write lock.
+ *
+ * @author Tomas Muller
+ */
+public class CourseIndex {
+	private int iPrefixLength;
+	private Map<String, Set<XCourseId>> iIndex = new HashMap<String, Set<XCourseId>>();
+
+	public CourseIndex(int prefixLength) {
+		iPrefixLength = prefixLength;
+	}
+
+	public CourseIndex() {
+		this(3);
+	}
+
+	/**
+	 * Register course in the index
+	 */
+	public void add(XCourseId course) {
+		for (String key: keys(course)) {
+			Set<XCourseId> courses = iIndex.get(key);
+			if (courses == null) {
+				courses = new HashSet<XCourseId>();
+				iIndex.put(key, courses);
+			}
+			courses.add(course);
+		}
+	}
+
+	/**
+	 * Unregister course from the index, the course must have the same name and title as when it was added
+	 */
+	public void remove(XCourseId course) {
+		for (String key: keys(course)) {
+			Set<XCourseId> courses = iIndex.get(key);
+			if (courses != null) {
+				courses.remove(course);
+				if (courses.isEmpty()) iIndex.remove(key);
+			}
+		}
+	}
+
+	public void clear() {
+		iIndex.clear();
+	}
+
+	/**
+	 * Returns true if the given query can be answered by the index. This is not the case for an empty
+	 * query or for a query starting with a white space (which can match a course title in the middle of a word gap).
+	 */
+	public boolean canLookup(String queryInLowerCase) {
+		return queryInLowerCase != null && !queryInLowerCase.isEmpty() && !Character.isWhitespace(queryInLowerCase.charAt(0));
+	}
+
+	/**
+	 * Returns all courses that may match the given query. The returned courses still need to be
+	 * checked using {@link XCourseId#matchCourseName(String)} or {@link XCourseId#matchTitle(String)}.
+	 * Only to be used when {@link CourseIndex#canLookup(String)} returns true.
+	 */
+	public Collection<XCourseId> lookup(String queryInLowerCase) {
+		Set<XCourseId> courses = iIndex.get(queryInLowerCase.length() <= iPrefixLength ? queryInLowerCase : queryInLowerCase.substring(0, iPrefixLength));
+		return (courses == null ? Collections.<XCourseId>emptySet() : courses);
+	}
+
+	public int size() {
+		return iIndex.size();
+	}
+
+	protected Set<String> keys(XCourseId course) {
+		Set<String> keys = new HashSet<String>();
+		String courseName = course.getCourseName().toLowerCase();
+		addPrefixes(keys, courseName);
+		if (course.getCourseNumber() != null)
+			addPrefixes(keys, course.getCourseNumber().toLowerCase());
+		if (courseName.indexOf('-') >= 0)
+			addPrefixes(keys, courseName.substring(courseName.lastIndexOf('-') + 1).trim());
+		if (course.getTitle() != null) {
+			String title = course.getTitle().toLowerCase();
+			addPrefixes(keys, courseName + " " + title);
+			addPrefixes(keys, courseName + " - " + title);
+			addPrefixes(keys, title);
+			for (int idx = title.indexOf(' '); idx >= 0; idx = title.indexOf(' ', idx + 1))
+				addPrefixes(keys, title.substring(idx + 1));
+		}
+		return keys;
+	}
+
+	private void addPrefixes(Set<String> keys, String text) {
+		for (int i = 1; i <= Math.min(iPrefixLength, text.length()); i++)
+			keys.add(text.substring(0, i));
+	}
+}
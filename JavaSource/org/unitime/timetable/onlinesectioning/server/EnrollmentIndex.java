@@ -0,0 +1,187 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+
+/**
+ * Per-offering enrollment counts, kept up to date as course requests are added to and removed from an offering,
+ * so that the number of students enrolled in a section, configuration, course, or reservation can be retrieved
+ * without building {@link XEnrollments} from all the requests of the offering.<br>
+ * The index remembers the enrollment each request was registered with (not the request's current enrollment),
+ * so that a request is always removed with the same enrollment it was added with, even when the request has been changed in the meantime.
+ * Each offering also has a version that changes whenever an enrollment of the offering is added or removed (or the offering is changed,
+ * see {@link EnrollmentIndex#touch(Long)}), so that data derived from the offering enrollments can be cached.
+ * The index is not thread-safe, it is expected to be guarded by the server's read / write lock.
+ *
+ * @author Tomas Muller
+ */
+public class EnrollmentIndex {
+	private Map<Long, OfferingIndex> iOfferings = new HashMap<Long, OfferingIndex>();
+	private Map<Long, Long> iVersions = new HashMap<Long, Long>();
+	private long iVersion = 0;
+
+	/**
+	 * Register course request of the given offering, only requests enrolled in the offering are counted
+	 */
+	public void add(Long offeringId, XCourseRequest request) {
+		XEnrollment enrollment = request.getEnrollment();
+		if (enrollment == null || !offeringId.equals(enrollment.getOfferingId())) {
+			remove(offeringId, request);
+			return;
+		}
+		OfferingIndex index = iOfferings.get(offeringId);
+		if (index == null) {
+			index = new OfferingIndex();
+			iOfferings.put(offeringId, index);
+		}
+		index.add(request, enrollment);
+		touch(offeringId);
+	}
+
+	/**
+	 * Unregister course request of the given offering
+	 */
+	public void remove(Long offeringId, XCourseRequest request) {
+		OfferingIndex index = iOfferings.get(offeringId);
+		if (index != null && index.remove(request)) {
+			if (index.isEmpty()) iOfferings.remove(offeringId);
+			touch(offeringId);
+		}
+	}
+
+	/**
+	 * Change the version of the given offering (e.g., when the offering has been updated)
+	 */
+	public void touch(Long offeringId) {
+		iVersions.put(offeringId, ++iVersion);
+	}
+
+	/**
+	 * Current version of the given offering, the versions are never reused (not even after the index is cleared)
+	 */
+	public long getVersion(Long offeringId) {
+		Long version = iVersions.get(offeringId);
+		return (version == null ? 0l : version.longValue());
+	}
+
+	public void clear() {
+		iOfferings.clear();
+		iVersions.clear();
+	}
+
+	public int countEnrollments(Long offeringId) {
+		OfferingIndex index = iOfferings.get(offeringId);
+		return (index == null ? 0 : index.iEnrollments.size());
+	}
+
+	public int countEnrollmentsForSection(Long offeringId, Long sectionId) {
+		OfferingIndex index = iOfferings.get(offeringId);
+		return (index == null ? 0 : index.iSections.count(sectionId));
+	}
+
+	public int countEnrollmentsForConfig(Long offeringId, Long configId) {
+		OfferingIndex index = iOfferings.get(offeringId);
+		return (index == null ? 0 : index.iConfigs.count(configId));
+	}
+
+	public int countEnrollmentsForCourse(Long offeringId, Long courseId) {
+		OfferingIndex index = iOfferings.get(offeringId);
+		return (index == null ? 0 : index.iCourses.count(courseId));
+	}
+
+	public int countEnrollmentsForReservation(Long offeringId, Long reservationId) {
+		OfferingIndex index = iOfferings.get(offeringId);
+		return (index == null ? 0 : index.iReservations.count(reservationId));
+	}
+
+	private static class Entry {
+		private Long iConfigId, iCourseId, iReservationId;
+		private Long[] iSectionIds;
+
+		Entry(XEnrollment enrollment) {
+			iConfigId = enrollment.getConfigId();
+			iCourseId = enrollment.getCourseId();
+			iReservationId = (enrollment.getReservation() == null ? null : enrollment.getReservation().getReservationId());
+			iSectionIds = enrollment.getSectionIds().toArray(new Long[enrollment.getSectionIds().size()]);
+		}
+	}
+
+	private static class Counter {
+		private Map<Long, int[]> iCounts = new HashMap<Long, int[]>();
+
+		void inc(Long id) {
+			if (id == null) return;
+			int[] count = iCounts.get(id);
+			if (count == null)
+				iCounts.put(id, new int[] {1});
+			else
+				count[0] ++;
+		}
+
+		void dec(Long id) {
+			if (id == null) return;
+			int[] count = iCounts.get(id);
+			if (count != null && --count[0] <= 0)
+				iCounts.remove(id);
+		}
+
+		int count(Long id) {
+			int[] count = iCounts.get(id);
+			return (count == null ? 0 : count[0]);
+		}
+	}
+
+	private static class OfferingIndex {
+		private Map<XCourseRequest, Entry> iEnrollments = new HashMap<XCourseRequest, Entry>();
+		private Counter iSections = new Counter(), iConfigs = new Counter(), iCourses = new Counter(), iReservations = new Counter();
+
+		void add(XCourseRequest request, XEnrollment enrollment) {
+			remove(request);
+			Entry entry = new Entry(enrollment);
+			iEnrollments.put(request, entry);
+			iConfigs.inc(entry.iConfigId);
+			iCourses.inc(entry.iCourseId);
+			iReservations.inc(entry.iReservationId);
+			for (Long sectionId: entry.iSectionIds)
+				iSections.inc(sectionId);
+		}
+
+		boolean remove(XCourseRequest request) {
+			Entry entry = iEnrollments.remove(request);
+			if (entry == null) return false;
+			iConfigs.dec(entry.iConfigId);
+			iCourses.dec(entry.iCourseId);
+			iReservations.dec(entry.iReservationId);
+			for (Long sectionId: entry.iSectionIds)
+				iSections.dec(sectionId);
+			return true;
+		}
+
+		boolean isEmpty() {
+			return iEnrollments.isEmpty();
+		}
+	}
+}
@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.onlinesectioning.server;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
@@ -28,6 +29,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.cpsolver.ifs.util.ToolBox;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
 import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
@@ -47,18 +49,39 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 public class InMemoryServer extends AbstractLockingServer {
 	private Hashtable<Long, XCourseId> iCourseForId = new Hashtable<Long, XCourseId>();
 	private Hashtable<String, TreeSet<XCourseId>> iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+	private CourseIndex iCourseIndex = new CourseIndex();
 	
 	private Hashtable<Long, XStudent> iStudentTable = new Hashtable<Long, XStudent>();
 	private Hashtable<String, XStudent> iStudentExtTable = new Hashtable<String, XStudent>();
 	private Hashtable<Long, XOffering> iOfferingTable = new Hashtable<Long, XOffering>();
 	private Hashtable<Long, List<XCourseRequest>> iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
+	private EnrollmentIndex iEnrollmentIndex = new EnrollmentIndex();
 	private Hashtable<Long, XExpectations> iExpectations = new Hashtable<Long, XExpectations>();
 	private Hashtable<String, Set<Long>> iInstructedOfferings = new Hashtable<String, Set<Long>>();
+	private MemoryUsage iMemoryUsage;
 	
 	public InMemoryServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
 	}
 	
+	/**
+	 * Memory usage accounting, created lazily as the data can be loaded during the construction of the server
+	 */
+	protected synchronized MemoryUsage getMemoryUsage() {
+		if (iMemoryUsage == null) iMemoryUsage = new MemoryUsage();
+		return iMemoryUsage;
+	}
+	
+	@Override
+	public long getMemUsage() {
+		MemoryUsage usage = getMemoryUsage();
+		long total = usage.getTotal();
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		Runtime rt = Runtime.getRuntime();
+		iLog.info("Total Allocated " + df.format(total / 1024.0) + " kB (of " + df.format((rt.totalMemory() - rt.freeMemory()) / 1048576.0) + " MB), details: " + ToolBox.dict2string(usage.getInfo(), 2));
+		return total;
+	}
+	
 	@Override
 	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
 		return findCourses(query, limit, matcher, new CourseComparator(query));
@@ -71,11 +94,12 @@ public class InMemoryServer extends AbstractLockingServer {
 		try {
 			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, cmp);
 			String queryInLowerCase = query.toLowerCase();
-			for (XCourseId c : iCourseForId.values()) {
+			Collection<XCourseId> candidates = (iCourseIndex.canLookup(queryInLowerCase) ? iCourseIndex.lookup(queryInLowerCase) : iCourseForId.values());
+			for (XCourseId c : candidates) {
 				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
 			}
 			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
-				for (XCourseId c : iCourseForId.values()) {
+				for (XCourseId c : candidates) {
 					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
 				}
 			}
@@ -183,6 +207,56 @@ public class InMemoryServer extends AbstractLockingServer {
 		}		
 	}
 
+	@Override
+	public int countEnrollmentsForSection(Long offeringId, Long sectionId) {
+		Lock lock = readLock();
+		try {
+			return iEnrollmentIndex.countEnrollmentsForSection(offeringId, sectionId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public int countEnrollmentsForConfig(Long offeringId, Long configId) {
+		Lock lock = readLock();
+		try {
+			return iEnrollmentIndex.countEnrollmentsForConfig(offeringId, configId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public int countEnrollmentsForCourse(Long offeringId, Long courseId) {
+		Lock lock = readLock();
+		try {
+			return iEnrollmentIndex.countEnrollmentsForCourse(offeringId, courseId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public int countEnrollmentsForReservation(Long offeringId, Long reservationId) {
+		Lock lock = readLock();
+		try {
+			return iEnrollmentIndex.countEnrollmentsForReservation(offeringId, reservationId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public long getEnrollmentVersion(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			return iEnrollmentIndex.getVersion(offeringId);
+		} finally {
+			lock.release();
+		}
+	}
+
 	@Override
 	public XExpectations getExpectations(Long offeringId) {
 		Lock lock = readLock();
@@ -198,7 +272,8 @@ public class InMemoryServer extends AbstractLockingServer {
 	public void update(XExpectations expectations) {
 		Lock lock = writeLock();
 		try {
-			iExpectations.put(expectations.getOfferingId(), expectations);
+			XExpectations oldExpectations = iExpectations.put(expectations.getOfferingId(), expectations);
+			getMemoryUsage().update("expectations", oldExpectations, expectations);
 		} finally {
 			lock.release();
 		}
@@ -210,6 +285,7 @@ public class InMemoryServer extends AbstractLockingServer {
 		try {
 			XStudent oldStudent = iStudentTable.remove(student.getStudentId());
 			if (oldStudent != null) {
+				getMemoryUsage().remove("students", oldStudent);
 				if (oldStudent.getExternalId() != null && !oldStudent.getExternalId().isEmpty())
 					iStudentExtTable.remove(student.getExternalId());
 				for (XRequest request: oldStudent.getRequests())
@@ -217,6 +293,7 @@ public class InMemoryServer extends AbstractLockingServer {
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
 							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 							if (requests != null) requests.remove(request);
+							iEnrollmentIndex.remove(course.getOfferingId(), (XCourseRequest)request);
 						}
 			}
 		} finally {
@@ -229,6 +306,7 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			XStudent oldStudent = iStudentTable.put(student.getStudentId(), student);
+			getMemoryUsage().update("students", oldStudent, student);
 			if (oldStudent != null && oldStudent.getExternalId() != null && !oldStudent.getExternalId().isEmpty() && !oldStudent.getExternalId().equals(student.getExternalId()))
 				iStudentExtTable.remove(oldStudent.getExternalId());
 			if (student.getExternalId() != null && !student.getExternalId().isEmpty())
@@ -240,6 +318,7 @@ public class InMemoryServer extends AbstractLockingServer {
 							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
 								List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 								if (requests != null) requests.remove(request);
+								iEnrollmentIndex.remove(course.getOfferingId(), (XCourseRequest)request);
 							}
 				}
 				for (XRequest request: student.getRequests())
@@ -253,6 +332,7 @@ public class InMemoryServer extends AbstractLockingServer {
 								iOfferingRequests.put(course.getOfferingId(), requests);
 							}
 							requests.add((XCourseRequest)request);
+							iEnrollmentIndex.add(course.getOfferingId(), (XCourseRequest)request);
 						}
 					}
 			}
@@ -270,7 +350,8 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			for (XCourse course: offering.getCourses()) {
-				iCourseForId.remove(course.getCourseId());
+				XCourseId oldCourse = iCourseForId.remove(course.getCourseId());
+				if (oldCourse != null) iCourseIndex.remove(oldCourse);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses != null) {
 					courses.remove(course);
@@ -280,9 +361,10 @@ public class InMemoryServer extends AbstractLockingServer {
 						iCourseForName.remove(course.getCourseNameInLowerCase());
 				}
 			}
-			iOfferingTable.remove(offering.getOfferingId());
+			getMemoryUsage().remove("offerings", iOfferingTable.remove(offering.getOfferingId()));
+			iEnrollmentIndex.touch(offering.getOfferingId());
 			if (removeExpectations)
-				iExpectations.remove(offering.getOfferingId());
+				getMemoryUsage().remove("expectations", iExpectations.remove(offering.getOfferingId()));
 			for (String externalId: offering.getInstructorExternalIds()) {
 				Set<Long> offeringIds = iInstructedOfferings.get(externalId);
 				if (offeringIds != null) offeringIds.remove(offering.getOfferingId());
@@ -301,8 +383,12 @@ public class InMemoryServer extends AbstractLockingServer {
 				remove(oldOffering, false);
 			
 			iOfferingTable.put(offering.getOfferingId(), offering);
+			getMemoryUsage().add("offerings", offering);
+			iEnrollmentIndex.touch(offering.getOfferingId());
 			for (XCourse course: offering.getCourses()) {
-				iCourseForId.put(course.getCourseId(), course);
+				XCourseId oldCourse = iCourseForId.put(course.getCourseId(), course);
+				if (oldCourse != null) iCourseIndex.remove(oldCourse);
+				iCourseIndex.add(course);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses == null) {
 					courses = new TreeSet<XCourseId>();
@@ -347,6 +433,10 @@ public class InMemoryServer extends AbstractLockingServer {
 				iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
 			else
 				iOfferingRequests.clear();
+			if (iEnrollmentIndex == null)
+				iEnrollmentIndex = new EnrollmentIndex();
+			else
+				iEnrollmentIndex.clear();
 			if (iExpectations == null)
 				iExpectations = new Hashtable<Long, XExpectations>();
 			else
@@ -359,10 +449,15 @@ public class InMemoryServer extends AbstractLockingServer {
 				iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
 			else
 				iCourseForName.clear();
+			if (iCourseIndex == null)
+				iCourseIndex = new CourseIndex();
+			else
+				iCourseIndex.clear();
 			if (iInstructedOfferings == null)
 				iInstructedOfferings = new Hashtable<String, Set<Long>>();
 			else
 				iInstructedOfferings.clear();
+			getMemoryUsage().clear();
 		} finally {
 			lock.release();
 		}
@@ -375,6 +470,8 @@ public class InMemoryServer extends AbstractLockingServer {
 			iStudentTable.clear();
 			iStudentExtTable.clear();
 			iOfferingRequests.clear();
+			iEnrollmentIndex.clear();
+			getMemoryUsage().clear("students");
 		} finally {
 			lock.release();
 		}
@@ -393,6 +490,7 @@ public class InMemoryServer extends AbstractLockingServer {
 					for (XCourseId course: cr.getCourseIds()) {
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests != null) requests.remove(cr);
+						iEnrollmentIndex.remove(course.getOfferingId(), cr);
 					}
 
 					// assign
@@ -407,6 +505,7 @@ public class InMemoryServer extends AbstractLockingServer {
 							iOfferingRequests.put(course.getOfferingId(), requests);
 						}
 						requests.add(cr);
+						iEnrollmentIndex.add(course.getOfferingId(), cr);
 					}
 					
 					return cr;
@@ -431,6 +530,7 @@ public class InMemoryServer extends AbstractLockingServer {
 					for (XCourseId course: cr.getCourseIds()) {
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests != null) requests.remove(cr);
+						iEnrollmentIndex.remove(course.getOfferingId(), cr);
 					}
 
 					// assign
@@ -447,6 +547,7 @@ public class InMemoryServer extends AbstractLockingServer {
 							iOfferingRequests.put(course.getOfferingId(), requests);
 						}
 						requests.add(cr);
+						iEnrollmentIndex.add(course.getOfferingId(), cr);
 					}
 					
 					return cr;
@@ -0,0 +1,169 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.unitime.timetable.util.MemoryCounter;
+
+/**
+ * Incremental memory accounting of the in-memory server data.<br>
+ * The server reports each object that is added, replaced, or removed from one of its collections. The number of objects is
+ * kept for each collection, together with the average object size. The average size is computed by {@link MemoryCounter}
+ * on a sample of the objects (the first few objects of each collection and then every {@link MemoryUsage#SAMPLE_RATE}-th
+ * added or updated object), so that the total memory usage is available in constant time without walking the whole object graph.
+ *
+ * @author Tomas Muller
+ */
+public class MemoryUsage {
+	private static final int INITIAL_SAMPLES = 20;
+	private static final int SAMPLE_RATE = 500;
+	private Map<String, Usage> iUsage = new ConcurrentHashMap<String, Usage>();
+
+	protected Usage getUsage(String collection) {
+		Usage usage = iUsage.get(collection);
+		if (usage == null) {
+			usage = new Usage();
+			Usage old = iUsage.putIfAbsent(collection, usage);
+			if (old != null) usage = old;
+		}
+		return usage;
+	}
+
+	/**
+	 * An object was added to the given collection
+	 */
+	public void add(String collection, Object object) {
+		if (object == null) return;
+		getUsage(collection).add(object);
+	}
+
+	/**
+	 * An object of the given collection was replaced by a new one (old object can be null)
+	 */
+	public void update(String collection, Object oldObject, Object newObject) {
+		if (oldObject == null) {
+			add(collection, newObject);
+		} else if (newObject == null) {
+			remove(collection, oldObject);
+		} else {
+			getUsage(collection).sample(newObject);
+		}
+	}
+
+	/**
+	 * An object was removed from the given collection
+	 */
+	public void remove(String collection, Object object) {
+		if (object == null) return;
+		getUsage(collection).remove();
+	}
+
+	/**
+	 * All objects of the given collection were removed
+	 */
+	public void clear(String collection) {
+		Usage usage = iUsage.get(collection);
+		if (usage != null) usage.clear();
+	}
+
+	/**
+	 * All objects were removed
+	 */
+	public void clear() {
+		for (Usage usage: iUsage.values())
+			usage.clear();
+	}
+
+	/**
+	 * Estimated memory usage of all the collections (in bytes)
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (Usage usage: iUsage.values())
+			total += usage.getSize();
+		return total;
+	}
+
+	/**
+	 * Estimated memory usage of the given collection (in bytes)
+	 */
+	public long getSize(String collection) {
+		Usage usage = iUsage.get(collection);
+		return (usage == null ? 0 : usage.getSize());
+	}
+
+	/**
+	 * Memory usage breakdown by collection
+	 */
+	public Map<String, String> getInfo() {
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		Map<String, String> info = new TreeMap<String, String>();
+		for (Map.Entry<String, Usage> e: iUsage.entrySet()) {
+			Usage usage = e.getValue();
+			info.put(e.getKey(), df.format(usage.getSize() / 1024.0) + " kB (" + usage.getCount() + " records, " + df.format(usage.getAverage() / 1024.0) + " kB avg)");
+		}
+		return info;
+	}
+
+	protected static class Usage {
+		private AtomicLong iCount = new AtomicLong(0);
+		private AtomicLong iChanges = new AtomicLong(0);
+		private long iSamples = 0, iSampledBytes = 0;
+
+		void add(Object object) {
+			iCount.incrementAndGet();
+			sample(object);
+		}
+
+		void remove() {
+			if (iCount.decrementAndGet() < 0) iCount.set(0);
+		}
+
+		void sample(Object object) {
+			long changes = iChanges.incrementAndGet();
+			if (changes > INITIAL_SAMPLES && (changes % SAMPLE_RATE) != 0) return;
+			long size = new MemoryCounter().estimate(object);
+			synchronized (this) {
+				iSamples ++; iSampledBytes += size;
+			}
+		}
+
+		void clear() {
+			iCount.set(0);
+		}
+
+		long getCount() {
+			return iCount.get();
+		}
+
+		synchronized double getAverage() {
+			return (iSamples == 0 ? 0.0 : ((double)iSampledBytes) / iSamples);
+		}
+
+		long getSize() {
+			return Math.round(getCount() * getAverage());
+		}
+	}
+}
@@ -224,7 +224,7 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 								if (ci != null) {
 									XOffering x = server.getOffering(ci.getOfferingId());
 									if (x != null) {
-										cr.getCourses().add(clone(x, server.getEnrollments(x.getOfferingId()), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter, helper));
+										cr.getCourses().add(clone(OfferingTemplate.getTemplate(server, x), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter, helper));
 										distributions.addAll(x.getDistributions());
 									}
 								}
@@ -421,7 +421,7 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 		double maxOverExpected = -1.0;
 		if (avoidOverExpected && !(model.getOverExpectedCriterion() instanceof NeverOverExpected)) {
 			long x0 = System.currentTimeMillis();
-			MultiCriteriaBranchAndBoundSelection selection = new MultiCriteriaBranchAndBoundSelection(model.getProperties());
+			MultiCriteriaBranchAndBoundSelection selection = new ParallelBranchAndBoundSelection(model.getProperties());
 			selection.setModel(model);
 			selection.setPreferredSections(preferredSectionsForCourse);
 			selection.setRequiredSections(requiredSectionsForCourse);
@@ -132,6 +132,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 	private Collection<ClassAssignmentInterface.ClassAssignment> iAssignment;
 	private Collection<ClassAssignmentInterface.ClassAssignment> iSpecialRegistration;
 	private boolean iCanRequirePreferences = true;
+	private long iModelTime = 0, iSelectionTime = 0;
 	
 	public FindAssignmentAction forRequest(CourseRequestInterface request) {
 		iRequest = request;
@@ -166,10 +167,15 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 	}
 	
 	public boolean isCanRequirePreferences() { return iCanRequirePreferences; }
+	
+	/** Time spent on loading the student and the requested courses into the model (in milliseconds), available after execution */
+	public double getModelTime() { return iModelTime / 1e6; }
+	/** Time spent in the branch &amp; bound selection (in milliseconds), available after execution */
+	public double getSelectionTime() { return iSelectionTime / 1e6; }
 
 	@Override
 	public List<ClassAssignmentInterface> execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
-		long t0 = System.currentTimeMillis();
+		long t0 = System.currentTimeMillis(), m0 = System.nanoTime();
 		OverExpectedCriterion overExpected = server.getOverExpectedCriterion();
 		if ((getRequest().areSpaceConflictsAllowed() || getRequest().areTimeConflictsAllowed() || getRequest().areLinkedConflictsAllowed() || getSpecialRegistration() != null) && server.getConfig().getPropertyBoolean("OverExpected.MinimizeConflicts", false)) {
 			overExpected = new MinimizeConflicts(server.getConfig(), overExpected);
@@ -264,7 +270,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 								if (ci != null) {
 									XOffering x = server.getOffering(ci.getOfferingId());
 									if (x != null) {
-										cr.getCourses().add(clone(x, server.getEnrollments(x.getOfferingId()), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter, helper));
+										cr.getCourses().add(clone(OfferingTemplate.getTemplate(server, x), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter, helper));
 										distributions.addAll(x.getDistributions());
 									}
 								}
@@ -517,6 +523,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				action.addRequest(OnlineSectioningHelper.toProto(e.next())); 
 		}
 		long t1 = System.currentTimeMillis();
+		iModelTime = System.nanoTime() - m0;
 		
 		boolean avoidOverExpected = server.getAcademicSession().isSectioningEnabled();
 		if (avoidOverExpected && helper.getUser() != null && helper.getUser().hasType() && helper.getUser().getType() != OnlineSectioningLog.Entity.EntityType.STUDENT)
@@ -531,7 +538,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				maxOverExpected = selectedPenalty;
 			} else {
 				long x0 = System.currentTimeMillis();
-				MultiCriteriaBranchAndBoundSelection selection = new MultiCriteriaBranchAndBoundSelection(model.getProperties());
+				MultiCriteriaBranchAndBoundSelection selection = new ParallelBranchAndBoundSelection(model.getProperties());
 				selection.setModel(model);
 				selection.setPreferredSections(preferredSectionsForCourse);
 				selection.setRequiredSections(requiredSectionsForCourse);
@@ -555,7 +562,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		
 		OnlineSectioningSelection selection = null;
 		if (server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true)) {
-			selection = new MultiCriteriaBranchAndBoundSelection(server.getConfig());
+			selection = new ParallelBranchAndBoundSelection(server.getConfig());
 		} else {
 			selection = new SuggestionSelection(server.getConfig());
 		}
@@ -567,6 +574,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		selection.setRequiredUnassinged(requiredUnassigned);
 		if (maxOverExpected >= 0.0) selection.setMaxOverExpected(maxOverExpected);
 		
+		long s0 = System.nanoTime();
 		BranchBoundNeighbour neighbour = selection.select(assignment, student);
 		boolean assigned = false;
 		if (neighbour != null)
@@ -577,6 +585,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 			selection.setRequiredFreeTimes(new HashSet<FreeTimeRequest>());
 			neighbour = selection.select(assignment, student);
 		}
+		iSelectionTime = System.nanoTime() - s0;
 		
 		if (neighbour == null && student.getRequests().isEmpty())
 			neighbour = new BranchBoundNeighbour(student, 0, new Enrollment[] {});
@@ -584,7 +593,9 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 
 		helper.debug("Using " + (server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true) ? "multi-criteria ": "") +
 				(server.getConfig().getPropertyBoolean("StudentWeights.PriorityWeighting", true) ? "priority" : "equal") + " weighting model" +
-				" with " + server.getConfig().getPropertyInt("Neighbour.BranchAndBoundTimeout", 1000) +" ms time limit.");
+				" with " + server.getConfig().getPropertyInt("Neighbour.BranchAndBoundTimeout", 1000) +" ms time limit" +
+				(selection instanceof ParallelBranchAndBoundSelection && ((ParallelBranchAndBoundSelection)selection).getNrSubtrees() > 0 ?
+						" (" + ((ParallelBranchAndBoundSelection)selection).getNrSubtrees() + " sub-trees explored by up to " + ((ParallelBranchAndBoundSelection)selection).getParallelism() + " threads)" : "") + ".");
 
         neighbour.assign(assignment, 0);
         helper.debug("Solution: " + ToolBox.dict2string(model.getInfo(assignment), 2));
@@ -630,8 +641,14 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		return rets;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static Course clone(XOffering offering, XEnrollments enrollments, Long courseId, long studentId, XStudent originalStudent, Map<Long, Section> sections, OnlineSectioningServer server, StudentSectioningModel model, boolean hasAssignment, boolean checkDeadlines, Integer currentDateIndex, boolean onlineOnlyFilter, OnlineSectioningHelper helper) {
+		return clone(new OfferingTemplate(offering, enrollments, -1), courseId, studentId, originalStudent, sections, server, model, hasAssignment, checkDeadlines, currentDateIndex, onlineOnlyFilter, helper);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static Course clone(OfferingTemplate template, Long courseId, long studentId, XStudent originalStudent, Map<Long, Section> sections, OnlineSectioningServer server, StudentSectioningModel model, boolean hasAssignment, boolean checkDeadlines, Integer currentDateIndex, boolean onlineOnlyFilter, OnlineSectioningHelper helper) {
+		XOffering offering = template.getOffering();
+		XEnrollment studentCourseEnrollment = template.getEnrollmentForCourse(courseId, studentId);
 		Offering clonedOffering = new Offering(offering.getOfferingId(), offering.getName());
 		clonedOffering.setModel(model);
 		XExpectations expectations = server.getExpectations(offering.getOfferingId());
@@ -639,11 +656,9 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		int courseLimit = course.getLimit();
 		boolean courseEnrolled = false;
 		if (courseLimit >= 0) {
-			courseLimit -= enrollments.countEnrollmentsForCourse(courseId);
+			courseLimit -= template.countEnrollmentsForCourse(courseId);
 			if (courseLimit < 0) courseLimit = 0;
-			for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId)) {
-				if (enrollment.getStudentId().equals(studentId)) { courseLimit++; courseEnrolled = true; break; }
-			}
+			if (studentCourseEnrollment != null) { courseLimit++; courseEnrolled = true; }
 		}
 		Course clonedCourse = new Course(courseId, course.getSubjectArea(), course.getCourseNumber(), clonedOffering, courseLimit, course.getProjected());
 		clonedCourse.setNote(course.getNote());
@@ -657,11 +672,9 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		Hashtable<Long, Subpart> subparts = new Hashtable<Long, Subpart>();
 		for (XConfig config: offering.getConfigs()) {
 			int configLimit = config.getLimit();
-			int configEnrl = enrollments.countEnrollmentsForConfig(config.getConfigId());
+			int configEnrl = template.countEnrollmentsForConfig(config.getConfigId());
 			boolean configStudent = false;
-			if (studentId >= 0)
-				for (XEnrollment enrollment: enrollments.getEnrollmentsForConfig(config.getConfigId()))
-					if (enrollment.getStudentId().equals(studentId)) { configEnrl--; configStudent = true; break; }
+			if (studentId >= 0 && template.isEnrolledInConfig(config.getConfigId(), studentId)) { configEnrl--; configStudent = true; }
 			if (configLimit >= 0) {
 				// limited configuration, deduct enrollments
 				configLimit -= configEnrl;
@@ -684,11 +697,9 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				subparts.put(subpart.getSubpartId(), clonedSubpart);
 				for (XSection section: subpart.getSections()) {
 					int limit = section.getLimit();
-					int enrl = enrollments.countEnrollmentsForSection(section.getSectionId());
+					int enrl = template.countEnrollmentsForSection(section.getSectionId());
 					boolean student = false;
-					if (studentId >= 0)
-						for (XEnrollment enrollment: enrollments.getEnrollmentsForSection(section.getSectionId()))
-							if (enrollment.getStudentId().equals(studentId)) { enrl--; student = true; break; }
+					if (studentId >= 0 && template.isEnrolledInSection(section.getSectionId(), studentId)) { enrl--; student = true; }
 					if (limit >= 0) {
 						// limited section, deduct enrollments
 						limit -= enrl;
@@ -720,11 +731,8 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 						clonedSection.setEnabled(false);
 					if (section.getTime() != null && currentDateIndex != null && !(server instanceof StudentSolver))
 						clonedSection.setPast(section.getTime().isPast(currentDateIndex, server.getAcademicSession()));
-					for (XDistribution distribution: offering.getDistributions())
-						if (distribution.getDistributionType() == XDistributionType.IngoreConflicts && distribution.hasSection(section.getSectionId()))
-							for (Long id: distribution.getSectionIds())
-								if (!id.equals(section.getSectionId()))
-									clonedSection.addIgnoreConflictWith(id);
+					for (Long id: template.getIgnoreConflictWith(section.getSectionId()))
+						clonedSection.addIgnoreConflictWith(id);
 			        if (limit > 0) {
 			        	double available = Math.round(clonedSection.getSpaceExpected() - limit);
 						clonedSection.setPenalty(available / section.getLimit());
@@ -737,11 +745,9 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		for (XReservation reservation: offering.getReservations()) {
 			int reservationLimit = (int)Math.round(reservation.getLimit());
 			if (reservationLimit >= 0) {
-				reservationLimit -= enrollments.countEnrollmentsForReservation(reservation.getReservationId());
+				reservationLimit -= template.countEnrollmentsForReservation(reservation.getReservationId());
 				if (reservationLimit < 0) reservationLimit = 0;
-				for (XEnrollment enrollment: enrollments.getEnrollmentsForReservation(reservation.getReservationId())) {
-					if (enrollment.getStudentId().equals(studentId)) { reservationLimit++; break; }
-				}
+				if (template.isEnrolledInReservation(reservation.getReservationId(), studentId)) reservationLimit++;
 				if (reservationLimit <= 0 && !(reservation.mustBeUsed() && !reservation.isExpired())) continue;
 			}
 			boolean applicable = originalStudent != null && reservation.isApplicable(originalStudent, course);
@@ -749,8 +755,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				applicable = ((XCourseReservation)reservation).getCourseId().equals(courseId);
 			if (reservation instanceof XDummyReservation) {
 				// Ignore by reservation only flag (dummy reservation) when the student is already enrolled in the course
-				for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId))
-					if (enrollment.getStudentId().equals(studentId)) { applicable = true; break; }
+				if (studentCourseEnrollment != null) applicable = true;
 			}
 			if (applicable && reservation.mustBeUsed() && (reservation.isOverride() || !reservation.isExpired())) hasMustUse = true;
 			if (!applicable && reservation.isExpired()) continue;
@@ -888,25 +893,18 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 			}
 		}
 		// There are reservations >> allow user to keep the current enrollment by providing a dummy reservation for it
-		if ((clonedOffering.hasReservations() || needLinkOverride) && hasAssignment)
-			for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId))
-				if (enrollment.getStudentId().equals(studentId)) {
-					Reservation clonedReservation = new OnlineReservation(XReservationType.Dummy.ordinal(), -2l, clonedOffering, 1000, false, 1, true, hasMustUse, false, true, true);
-					clonedReservation.addConfig(configs.get(enrollment.getConfigId()));
-					for (Long sectionId: enrollment.getSectionIds())
-						clonedReservation.addSection(sections.get(sectionId));
-					clonedReservation.setBreakLinkedSections(needLinkOverride);
-					break;
-				}
-		if (clonedOffering.hasRestrictions() && hasAssignment) {
-			for (XEnrollment enrollment: enrollments.getEnrollmentsForCourse(courseId))
-				if (enrollment.getStudentId().equals(studentId)) {
-					IndividualRestriction clonnerRestriction = new IndividualRestriction(-2l, clonedOffering, studentId);
-					clonnerRestriction.addConfig(configs.get(enrollment.getConfigId()));
-					for (Long sectionId: enrollment.getSectionIds())
-						clonnerRestriction.addSection(sections.get(sectionId));
-					break;
-				}
+		if ((clonedOffering.hasReservations() || needLinkOverride) && hasAssignment && studentCourseEnrollment != null) {
+			Reservation clonedReservation = new OnlineReservation(XReservationType.Dummy.ordinal(), -2l, clonedOffering, 1000, false, 1, true, hasMustUse, false, true, true);
+			clonedReservation.addConfig(configs.get(studentCourseEnrollment.getConfigId()));
+			for (Long sectionId: studentCourseEnrollment.getSectionIds())
+				clonedReservation.addSection(sections.get(sectionId));
+			clonedReservation.setBreakLinkedSections(needLinkOverride);
+		}
+		if (clonedOffering.hasRestrictions() && hasAssignment && studentCourseEnrollment != null) {
+			IndividualRestriction clonnerRestriction = new IndividualRestriction(-2l, clonedOffering, studentId);
+			clonnerRestriction.addConfig(configs.get(studentCourseEnrollment.getConfigId()));
+			for (Long sectionId: studentCourseEnrollment.getSectionIds())
+				clonnerRestriction.addSection(sections.get(sectionId));
 		}
 		return clonedCourse;
 	}
@@ -942,7 +940,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 					XOffering offering = null;
 					if (courseInfo != null) offering = server.getOffering(courseInfo.getOfferingId());
 					if (offering != null) {
-						Course course = clone(offering, server.getEnrollments(offering.getOfferingId()), courseInfo.getCourseId(), student.getId(), originalStudent, classTable, server, model, hasAssignment, checkDeadline, currentDateIndex, onlineOnlyFilter, helper);
+						Course course = clone(OfferingTemplate.getTemplate(server, offering), courseInfo.getCourseId(), student.getId(), originalStudent, classTable, server, model, hasAssignment, checkDeadline, currentDateIndex, onlineOnlyFilter, helper);
 						cr.add(course);
 						if (rc.hasSelectedIntructionalMethods()) {
 							for (Config config: course.getOffering().getConfigs()) {
@@ -1302,7 +1300,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 				XOffering offering = server.getOffering(course.getOffering().getId());
 				ca.setCanWaitList(offering.isWaitList());
 				ca.setTitle(offering.getCourse(course.getId()).getTitle());
-				XEnrollments enrl = server.getEnrollments(offering.getOfferingId());
+				XEnrollments enrl = (server.getEnrollmentVersion(offering.getOfferingId()) < 0 ? server.getEnrollments(offering.getOfferingId()) : null);
 				for (Iterator<Section> i = sections.iterator(); i.hasNext();) {
 					Section section = (Section)i.next();
 					ClassAssignmentInterface.ClassAssignment a = ca.addClassAssignment();
@@ -1313,7 +1311,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 					a.setExternalId(offering.getSection(section.getId()).getExternalId(course.getId()));
 					a.setClassNumber(section.getName(-1l));
 					a.setCancelled(section.isCancelled());
-					a.setLimit(new int[] {enrl.countEnrollmentsForSection(section.getId()), offering.getSection(section.getId()).getLimit()});
+					a.setLimit(new int[] {(enrl != null ? enrl.countEnrollmentsForSection(section.getId()) : server.countEnrollmentsForSection(offering.getOfferingId(), section.getId())), offering.getSection(section.getId()).getLimit()});
 					if (section.getLimit() == 0) a.setOverlapNote(MSG.sectionIsFull());
 					if (section.getTime() != null) {
 						for (DayCode d : DayCode.toDayCodes(section.getTime().getDayCode()))
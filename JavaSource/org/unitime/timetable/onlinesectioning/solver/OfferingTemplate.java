@@ -0,0 +1,227 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.solver;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.model.XConfig;
+import org.unitime.timetable.onlinesectioning.model.XCourse;
+import org.unitime.timetable.onlinesectioning.model.XDistribution;
+import org.unitime.timetable.onlinesectioning.model.XDistributionType;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XReservation;
+import org.unitime.timetable.onlinesectioning.model.XSection;
+import org.unitime.timetable.onlinesectioning.model.XSubpart;
+
+/**
+ * Student independent part of an offering that is needed to build the offering in a student sectioning model
+ * (see {@link FindAssignmentAction}, {@link ComputeSuggestionsAction}):
+ * the enrollment counts of the courses, configurations, sections, and reservations, the enrollments of each student, and the
+ * sections with which a section can overlap (ignore conflicts distributions).<br>
+ * Templates are immutable and they are cached on the server (see {@link OfferingTemplate#getTemplate(OnlineSectioningServer, XOffering)}),
+ * a template is rebuilt only when the offering or its enrollments have changed (see {@link OnlineSectioningServer#getEnrollmentVersion(Long)}).
+ * The cached templates are shared by all the requests, each request builds its own model objects from them.
+ *
+ * @author Tomas Muller
+ */
+public class OfferingTemplate {
+	private static Log sLog = LogFactory.getLog(OfferingTemplate.class);
+	private static final String CACHE_PROPERTY = "OfferingTemplateCache";
+	private static final long REPORT_INTERVAL = 600000;
+
+	private XOffering iOffering;
+	private long iVersion;
+	private Map<Long, Integer> iCourseEnrl = new HashMap<Long, Integer>(), iConfigEnrl = new HashMap<Long, Integer>(), iSectionEnrl = new HashMap<Long, Integer>(), iReservationEnrl = new HashMap<Long, Integer>();
+	private Map<Long, List<XEnrollment>> iStudentEnrl = new HashMap<Long, List<XEnrollment>>();
+	private Map<Long, List<Long>> iIgnoreConflicts = new HashMap<Long, List<Long>>();
+
+	/**
+	 * Create a template of the given offering
+	 * @param offering offering
+	 * @param enrollments current enrollments of the offering
+	 * @param version enrollment version (-1 when not known)
+	 */
+	public OfferingTemplate(XOffering offering, XEnrollments enrollments, long version) {
+		iOffering = offering;
+		iVersion = version;
+		for (XEnrollment enrollment: enrollments.getEnrollments()) {
+			List<XEnrollment> enrl = iStudentEnrl.get(enrollment.getStudentId());
+			if (enrl == null) {
+				enrl = new ArrayList<XEnrollment>(1);
+				iStudentEnrl.put(enrollment.getStudentId(), enrl);
+			}
+			enrl.add(enrollment);
+		}
+		for (XCourse course: offering.getCourses())
+			iCourseEnrl.put(course.getCourseId(), enrollments.countEnrollmentsForCourse(course.getCourseId()));
+		for (XConfig config: offering.getConfigs()) {
+			iConfigEnrl.put(config.getConfigId(), enrollments.countEnrollmentsForConfig(config.getConfigId()));
+			for (XSubpart subpart: config.getSubparts())
+				for (XSection section: subpart.getSections()) {
+					iSectionEnrl.put(section.getSectionId(), enrollments.countEnrollmentsForSection(section.getSectionId()));
+					List<Long> ignoreConflicts = null;
+					for (XDistribution distribution: offering.getDistributions())
+						if (distribution.getDistributionType() == XDistributionType.IngoreConflicts && distribution.hasSection(section.getSectionId()))
+							for (Long id: distribution.getSectionIds())
+								if (!id.equals(section.getSectionId())) {
+									if (ignoreConflicts == null) ignoreConflicts = new ArrayList<Long>();
+									ignoreConflicts.add(id);
+								}
+					if (ignoreConflicts != null)
+						iIgnoreConflicts.put(section.getSectionId(), ignoreConflicts);
+				}
+		}
+		for (XReservation reservation: offering.getReservations())
+			iReservationEnrl.put(reservation.getReservationId(), enrollments.countEnrollmentsForReservation(reservation.getReservationId()));
+	}
+
+	public XOffering getOffering() { return iOffering; }
+	public long getVersion() { return iVersion; }
+
+	private static int count(Map<Long, Integer> counts, Long id) {
+		Integer count = counts.get(id);
+		return (count == null ? 0 : count.intValue());
+	}
+
+	public int countEnrollmentsForCourse(Long courseId) { return count(iCourseEnrl, courseId); }
+	public int countEnrollmentsForConfig(Long configId) { return count(iConfigEnrl, configId); }
+	public int countEnrollmentsForSection(Long sectionId) { return count(iSectionEnrl, sectionId); }
+	public int countEnrollmentsForReservation(Long reservationId) { return count(iReservationEnrl, reservationId); }
+
+	/**
+	 * Enrollments of the given student in the offering (typically none or one)
+	 */
+	public List<XEnrollment> getEnrollments(long studentId) {
+		List<XEnrollment> enrollments = iStudentEnrl.get(studentId);
+		return (enrollments == null ? Collections.emptyList() : enrollments);
+	}
+
+	/**
+	 * Enrollment of the given student in the given course, null if the student is not enrolled in the course
+	 */
+	public XEnrollment getEnrollmentForCourse(Long courseId, long studentId) {
+		for (XEnrollment enrollment: getEnrollments(studentId))
+			if (enrollment.getCourseId().equals(courseId)) return enrollment;
+		return null;
+	}
+
+	public boolean isEnrolledInConfig(Long configId, long studentId) {
+		for (XEnrollment enrollment: getEnrollments(studentId))
+			if (enrollment.getConfigId().equals(configId)) return true;
+		return false;
+	}
+
+	public boolean isEnrolledInSection(Long sectionId, long studentId) {
+		for (XEnrollment enrollment: getEnrollments(studentId))
+			if (enrollment.getSectionIds().contains(sectionId)) return true;
+		return false;
+	}
+
+	public boolean isEnrolledInReservation(Long reservationId, long studentId) {
+		for (XEnrollment enrollment: getEnrollments(studentId))
+			if (enrollment.getReservation() != null && enrollment.getReservation().getReservationId().equals(reservationId)) return true;
+		return false;
+	}
+
+	/**
+	 * Sections of the offering with which the given section is allowed to overlap
+	 */
+	public List<Long> getIgnoreConflictWith(Long sectionId) {
+		List<Long> ids = iIgnoreConflicts.get(sectionId);
+		return (ids == null ? Collections.emptyList() : ids);
+	}
+
+	/**
+	 * Return a template of the given offering, a cached one is used when the offering and its enrollments have not changed since the template was created
+	 */
+	public static OfferingTemplate getTemplate(OnlineSectioningServer server, XOffering offering) {
+		long version = server.getEnrollmentVersion(offering.getOfferingId());
+		if (version < 0)
+			return new OfferingTemplate(offering, server.getEnrollments(offering.getOfferingId()), version);
+		Cache cache = null;
+		synchronized (server) {
+			cache = server.getProperty(CACHE_PROPERTY, null);
+			if (cache == null) {
+				cache = new Cache();
+				server.setProperty(CACHE_PROPERTY, cache);
+			}
+		}
+		return cache.get(server, offering, version);
+	}
+
+	protected static class Cache {
+		private Map<Long, OfferingTemplate> iTemplates = new ConcurrentHashMap<Long, OfferingTemplate>();
+		private AtomicLong iHits = new AtomicLong(0), iMisses = new AtomicLong(0), iBuildTime = new AtomicLong(0);
+		private volatile long iLastReport = System.currentTimeMillis();
+
+		OfferingTemplate get(OnlineSectioningServer server, XOffering offering, long version) {
+			OfferingTemplate template = iTemplates.get(offering.getOfferingId());
+			if (template != null && template.getOffering() == offering && template.getVersion() == version) {
+				iHits.incrementAndGet();
+				report();
+				return template;
+			}
+			long t0 = System.nanoTime();
+			template = new OfferingTemplate(offering, server.getEnrollments(offering.getOfferingId()), version);
+			long time = System.nanoTime() - t0;
+			iMisses.incrementAndGet();
+			iBuildTime.addAndGet(time);
+			iTemplates.put(offering.getOfferingId(), template);
+			if (sLog.isDebugEnabled())
+				sLog.debug("Template of " + offering.getName() + " (version " + version + ") created in " + new DecimalFormat("0.00").format(time / 1000000.0) + " ms.");
+			report();
+			return template;
+		}
+
+		String getInfo() {
+			long hits = iHits.get(), misses = iMisses.get();
+			DecimalFormat df = new DecimalFormat("0.00");
+			return iTemplates.size() + " templates, " + hits + " hits, " + misses + " misses" +
+					(hits + misses == 0 ? "" : " (" + df.format(100.0 * hits / (hits + misses)) + "% hit rate)") +
+					(misses == 0 ? "" : ", avg build time " + df.format(iBuildTime.get() / 1000000.0 / misses) + " ms");
+		}
+
+		/**
+		 * Log the cache statistics, at most once in the report interval (called on both cache hits and misses)
+		 */
+		void report() {
+			long now = System.currentTimeMillis();
+			if (now - iLastReport < REPORT_INTERVAL) return;
+			synchronized (this) {
+				if (now - iLastReport < REPORT_INTERVAL) return;
+				iLastReport = now;
+			}
+			if (sLog.isInfoEnabled())
+				sLog.info("Offering templates: " + getInfo());
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.ifs.util.JProf;
+import org.cpsolver.studentsct.heuristics.selection.BranchBoundSelection.BranchBoundNeighbour;
+import org.cpsolver.studentsct.model.Config;
+import org.cpsolver.studentsct.model.Course;
+import org.cpsolver.studentsct.model.CourseRequest;
+import org.cpsolver.studentsct.model.Enrollment;
+import org.cpsolver.studentsct.model.FreeTimeRequest;
+import org.cpsolver.studentsct.model.Offering;
+import org.cpsolver.studentsct.model.Request;
+import org.cpsolver.studentsct.model.RequestGroup;
+import org.cpsolver.studentsct.model.Section;
+import org.cpsolver.studentsct.model.Subpart;
+import org.cpsolver.studentsct.online.selection.MultiCriteriaBranchAndBoundSelection;
+import org.cpsolver.studentsct.reservation.Reservation;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Multi-criteria branch &amp; bound selection that can explore the search tree using multiple threads.<br>
+ * When the solver parameter Neighbour.BranchAndBoundParallelism is greater than one, the search tree is first expanded
+ * (breadth-first, up to the level that gives at least four sub-trees per thread) and the sub-trees are then explored by up
+ * to Neighbour.BranchAndBoundParallelism tasks of a shared fork-join pool (the size of the pool is given by
+ * unitime.sectioning.branchAndBound.poolSize and defaults to the number of available processors).
+ * All the tasks share the best schedule found so far, which is used to bound the search of the other tasks, and the
+ * assignment of the caller (all its assignment contexts are created before the search is forked, see
+ * {@link ParallelBranchAndBoundSelection#createAssignmentContexts()}).
+ * The time limit (Neighbour.BranchAndBoundTimeout) applies to the whole search. Otherwise, the selection behaves exactly as
+ * {@link MultiCriteriaBranchAndBoundSelection}.
+ *
+ * @author Tomas Muller
+ */
+public class ParallelBranchAndBoundSelection extends MultiCriteriaBranchAndBoundSelection {
+	private static ForkJoinPool sPool = null;
+	private DataProperties iConfig;
+	private int iParallelism = 1;
+	private int iNrSubtrees = 0;
+
+	private Hashtable<CourseRequest, Set<Section>> iPreferredSectionsCopy = null;
+	private Hashtable<CourseRequest, Set<Section>> iRequiredSectionsCopy = null;
+	private Set<FreeTimeRequest> iRequiredFreeTimesCopy = null;
+	private Set<CourseRequest> iRequiredUnassignedCopy = null;
+	private double iMaxOverExpectedCopy = -1.0;
+
+	private Map<CourseRequest, List<Enrollment>> iSelectedValues = null;
+	private Incumbent iIncumbent = null;
+	private long iSeenVersion = -1;
+	private int iSplitIndex = -1;
+	private List<Subtree> iSubtrees = null;
+
+	public ParallelBranchAndBoundSelection(DataProperties config) {
+		super(config);
+		iConfig = config;
+		iParallelism = config.getPropertyInt("Neighbour.BranchAndBoundParallelism", 1);
+	}
+
+	/**
+	 * Worker selection, exploring the sub-trees of the parent selection
+	 */
+	private ParallelBranchAndBoundSelection(ParallelBranchAndBoundSelection parent) {
+		super(parent.iConfig);
+		iConfig = parent.iConfig;
+		setModel(parent.iModel);
+		setPreferredSections(parent.iPreferredSectionsCopy);
+		setRequiredSections(parent.iRequiredSectionsCopy);
+		setRequiredFreeTimes(parent.iRequiredFreeTimesCopy);
+		setRequiredUnassinged(parent.iRequiredUnassignedCopy);
+		setMaxOverExpected(parent.iMaxOverExpectedCopy);
+		setTimeout(parent.iTimeout);
+		iStudent = parent.iStudent;
+		iComparator = parent.iComparator;
+		iAssignment = parent.iAssignment;
+		iT0 = parent.iT0;
+		iValues = parent.iValues;
+		iSelectedValues = parent.iSelectedValues;
+		iIncumbent = parent.iIncumbent;
+		iCurrentAssignment = new Enrollment[parent.iCurrentAssignment.length];
+		iTimeoutReached = false;
+	}
+
+	protected static synchronized ForkJoinPool getPool() {
+		if (sPool == null) {
+			Integer size = ApplicationProperty.OnlineSchedulingBranchAndBoundPoolSize.intValue();
+			sPool = new ForkJoinPool(size == null || size <= 0 ? Runtime.getRuntime().availableProcessors() : size);
+		}
+		return sPool;
+	}
+
+	/** Maximal number of threads used by a single search */
+	public int getParallelism() { return iParallelism; }
+	public void setParallelism(int parallelism) { iParallelism = parallelism; }
+
+	/** Number of sub-trees explored in parallel during the last search (0 when the search was sequential) */
+	public int getNrSubtrees() { return iNrSubtrees; }
+
+	@Override
+	public void setPreferredSections(Hashtable<CourseRequest, Set<Section>> preferredSections) {
+		super.setPreferredSections(preferredSections);
+		iPreferredSectionsCopy = preferredSections;
+	}
+
+	@Override
+	public void setRequiredSections(Hashtable<CourseRequest, Set<Section>> requiredSections) {
+		super.setRequiredSections(requiredSections);
+		iRequiredSectionsCopy = requiredSections;
+	}
+
+	@Override
+	public void setRequiredFreeTimes(Set<FreeTimeRequest> requiredFreeTimes) {
+		super.setRequiredFreeTimes(requiredFreeTimes);
+		iRequiredFreeTimesCopy = requiredFreeTimes;
+	}
+
+	@Override
+	public void setRequiredUnassinged(Set<CourseRequest> requiredUnassignedRequests) {
+		super.setRequiredUnassinged(requiredUnassignedRequests);
+		iRequiredUnassignedCopy = requiredUnassignedRequests;
+	}
+
+	@Override
+	public void setMaxOverExpected(double maxOverExpected) {
+		super.setMaxOverExpected(maxOverExpected);
+		iMaxOverExpectedCopy = maxOverExpected;
+	}
+
+	@Override
+	public BranchBoundNeighbour select() {
+		iNrSubtrees = 0;
+		if (iParallelism <= 1 || iStudent.getRequests().size() <= 1)
+			return super.select();
+
+		iT0 = JProf.currentTimeMillis();
+		iTimeoutReached = false;
+		iCurrentAssignment = new Enrollment[iStudent.getRequests().size()];
+		iBestAssignment = null;
+
+		int i = 0;
+		for (Request r : iStudent.getRequests())
+			iCurrentAssignment[i++] = iAssignment.getValue(r);
+		saveBest();
+		for (int j = 0; j < iCurrentAssignment.length; j++)
+			iCurrentAssignment[j] = null;
+
+		// create all the assignment contexts upfront, the workers only read them
+		createAssignmentContexts();
+
+		// compute all the values upfront, the workers only read them
+		iValues = new HashMap<CourseRequest, List<Enrollment>>();
+		iSelectedValues = new HashMap<CourseRequest, List<Enrollment>>();
+		for (Request r : iStudent.getRequests()) {
+			if (r instanceof CourseRequest) {
+				CourseRequest courseRequest = (CourseRequest) r;
+				if (!courseRequest.getSelectedChoices().isEmpty())
+					iSelectedValues.put(courseRequest, courseRequest.getSelectedEnrollments(iAssignment, true));
+				iValues.put(courseRequest, values(courseRequest));
+			}
+		}
+
+		iIncumbent = new Incumbent(iBestAssignment);
+		iSeenVersion = iIncumbent.getVersion();
+		try {
+			// expand the search tree until there are enough sub-trees to keep the threads busy
+			List<Subtree> subtrees = new ArrayList<Subtree>();
+			for (iSplitIndex = 1; iSplitIndex < iCurrentAssignment.length; iSplitIndex++) {
+				subtrees.clear();
+				iSubtrees = subtrees;
+				backTrack(0);
+				if (iTimeoutReached || subtrees.size() >= 4 * iParallelism) break;
+			}
+			iSubtrees = null;
+			iNrSubtrees = subtrees.size();
+			if (!iTimeoutReached && !subtrees.isEmpty())
+				search(subtrees);
+			iBestAssignment = iIncumbent.getBest();
+		} finally {
+			iIncumbent = null;
+			iSelectedValues = null;
+		}
+
+		iT1 = JProf.currentTimeMillis();
+		if (iBestAssignment == null)
+			return null;
+
+		return new BranchBoundNeighbour(iStudent, iComparator.getTotalWeight(iAssignment, iBestAssignment),
+				iBestAssignment);
+	}
+
+	/**
+	 * Create assignment contexts of all the courses, request groups, configurations, sections, and reservations
+	 * of the student's course requests (and of the model). The workers share the assignment of the caller, whose
+	 * contexts are created lazily and are not thread-safe, so they must all exist before the search is forked.
+	 */
+	protected void createAssignmentContexts() {
+		for (Request r : iStudent.getRequests()) {
+			if (!(r instanceof CourseRequest)) continue;
+			CourseRequest courseRequest = (CourseRequest) r;
+			for (RequestGroup group: courseRequest.getRequestGroups())
+				group.getContext(iAssignment);
+			for (Course course: courseRequest.getCourses()) {
+				course.getContext(iAssignment);
+				for (RequestGroup group: course.getRequestGroups())
+					group.getContext(iAssignment);
+				Offering offering = course.getOffering();
+				for (Config config: offering.getConfigs()) {
+					config.getContext(iAssignment);
+					for (Subpart subpart: config.getSubparts())
+						for (Section section: subpart.getSections())
+							section.getContext(iAssignment);
+				}
+				for (Reservation reservation: offering.getReservations())
+					reservation.getContext(iAssignment);
+			}
+		}
+		iModel.createAssignmentContexts(iAssignment, false);
+	}
+
+	/**
+	 * Explore the given sub-trees using up to {@link ParallelBranchAndBoundSelection#getParallelism()} tasks
+	 */
+	protected void search(List<Subtree> subtrees) {
+		Queue<Subtree> queue = new ConcurrentLinkedQueue<Subtree>(subtrees);
+		List<ParallelBranchAndBoundSelection> workers = new ArrayList<ParallelBranchAndBoundSelection>();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (int i = 0; i < Math.min(iParallelism, subtrees.size()); i++) {
+			final ParallelBranchAndBoundSelection worker = new ParallelBranchAndBoundSelection(this);
+			workers.add(worker);
+			tasks.add(getPool().submit(new Runnable() {
+				@Override
+				public void run() {
+					worker.explore(queue);
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task: tasks)
+			task.join();
+		for (ParallelBranchAndBoundSelection worker: workers)
+			if (worker.iTimeoutReached) iTimeoutReached = true;
+	}
+
+	protected void explore(Queue<Subtree> queue) {
+		Subtree subtree = null;
+		while (!iTimeoutReached && (subtree = queue.poll()) != null) {
+			System.arraycopy(subtree.iAssignment, 0, iCurrentAssignment, 0, iCurrentAssignment.length);
+			backTrack(subtree.iIndex);
+		}
+	}
+
+	@Override
+	public void saveBest() {
+		super.saveBest();
+		if (iIncumbent != null)
+			iIncumbent.offer(iBestAssignment);
+	}
+
+	/** branch &amp; bound search, same as {@link MultiCriteriaBranchAndBoundSelection#backTrack(int)} but using the shared best schedule */
+	@Override
+	public void backTrack(int idx) {
+		if (iIncumbent == null) {
+			super.backTrack(idx);
+			return;
+		}
+		if (iTimeout > 0 && (JProf.currentTimeMillis() - iT0) > iTimeout) {
+			iTimeoutReached = true;
+			return;
+		}
+		long version = iIncumbent.getVersion();
+		if (version != iSeenVersion) {
+			iBestAssignment = iIncumbent.getBest();
+			iSeenVersion = version;
+		}
+		if (idx == iCurrentAssignment.length) {
+			if (iBestAssignment == null || iComparator.compare(iAssignment, iCurrentAssignment, iBestAssignment) < 0)
+				saveBest();
+			return;
+		} else if (iBestAssignment != null
+				&& !iComparator.canImprove(iAssignment, idx, iCurrentAssignment, iBestAssignment)) {
+			return;
+		}
+		if (iSubtrees != null && idx == iSplitIndex) {
+			iSubtrees.add(new Subtree(iCurrentAssignment.clone(), idx));
+			return;
+		}
+
+		Request request = iStudent.getRequests().get(idx);
+		if (!canAssign(request, idx)) {
+			backTrack(idx + 1);
+			return;
+		}
+
+		List<Enrollment> values = null;
+		if (request instanceof CourseRequest) {
+			CourseRequest courseRequest = (CourseRequest) request;
+			values = iSelectedValues.get(courseRequest);
+			if (values != null && !values.isEmpty()) {
+				boolean hasNoConflictValue = false;
+				for (Enrollment enrollment : values) {
+					if (inConflict(idx, enrollment))
+						continue;
+					hasNoConflictValue = true;
+					iCurrentAssignment[idx] = enrollment;
+					backTrack(idx + 1);
+					iCurrentAssignment[idx] = null;
+				}
+				if (hasNoConflictValue && iBranchWhenSelectedHasNoConflict)
+					return;
+			}
+			values = iValues.get(courseRequest);
+		} else {
+			values = request.computeEnrollments(iAssignment);
+		}
+
+		boolean hasNoConflictValue = false;
+		for (Enrollment enrollment : values) {
+			if (inConflict(idx, enrollment))
+				continue;
+			hasNoConflictValue = true;
+			iCurrentAssignment[idx] = enrollment;
+			backTrack(idx + 1);
+			iCurrentAssignment[idx] = null;
+		}
+
+		if (canLeaveUnassigned(request) || (!hasNoConflictValue && request instanceof CourseRequest))
+			backTrack(idx + 1);
+	}
+
+	/**
+	 * Partial schedule (requests 0 .. index - 1 are decided) that is the root of a sub-tree to explore
+	 */
+	protected static class Subtree {
+		private Enrollment[] iAssignment;
+		private int iIndex;
+
+		Subtree(Enrollment[] assignment, int index) {
+			iAssignment = assignment; iIndex = index;
+		}
+	}
+
+	/**
+	 * Best schedule found so far, shared by all the threads of a search
+	 */
+	protected class Incumbent {
+		private Enrollment[] iBest;
+		private volatile long iVersion = 0;
+
+		Incumbent(Enrollment[] best) {
+			iBest = (best == null ? null : best.clone());
+		}
+
+		long getVersion() { return iVersion; }
+
+		synchronized Enrollment[] getBest() {
+			return (iBest == null ? null : iBest.clone());
+		}
+
+		synchronized void offer(Enrollment[] candidate) {
+			if (iBest == null || iComparator.compare(iAssignment, candidate, iBest) < 0) {
+				iBest = candidate.clone();
+				iVersion ++;
+			}
+		}
+	}
+}
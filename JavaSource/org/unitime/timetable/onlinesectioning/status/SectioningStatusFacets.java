@@ -0,0 +1,522 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcRequest;
+import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcResponse;
+import org.unitime.timetable.gwt.shared.EventInterface.FilterRpcResponse.Entity;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.model.StudentGroupType;
+import org.unitime.timetable.model.StudentSectioningStatus;
+import org.unitime.timetable.model.dao.SessionDAO;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.model.XAreaClassificationMajor;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XOverride;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
+
+/**
+ * In-memory computation of the student scheduling dashboard filter facets.<br>
+ * When the online student scheduling server is loaded in memory, the filter counts of {@link SectioningStatusFilterAction#load(OnlineSectioningServer, OnlineSectioningHelper)}
+ * are computed in a single pass over the {@link XStudent} data instead of a separate database query for each facet.
+ * This is only possible when the filter uses the student-level options only (areas, majors, groups, statuses, etc.),
+ * see {@link SectioningStatusFacets#isApplicable(FilterRpcRequest, OnlineSectioningServer, Collection)}.
+ * The counts follow the semantics of the corresponding database queries: each facet is counted with all the other
+ * filter options applied, and the academic area, classification, major, etc. conditions must be met by the same
+ * area-classification-major combination of a student.
+ *
+ * @author Tomas Muller
+ */
+public class SectioningStatusFacets {
+	private static final List<String> sRowOptions = Arrays.asList("area", "classification", "degree", "program", "campus", "major", "concentration");
+	private static final List<String> sStudentOptions = Arrays.asList("group", "accommodation", "status", "advisor", "mode");
+	private static final Set<String> sIgnoredOptions = new HashSet<String>(Arrays.asList("online", "user", "role", "approval"));
+
+	private FilterRpcRequest iRequest;
+	private List<String> iOptions = new ArrayList<String>();
+	private Map<String, String> iGroupTypes = new HashMap<String, String>();
+	private Map<String, String> iGroupTypeLabels = new HashMap<String, String>();
+	private Map<String, Pattern> iPatterns = new HashMap<String, Pattern>();
+	private Counts iCounts = null;
+
+	public SectioningStatusFacets(FilterRpcRequest request, Collection<StudentGroupType> groupTypes) {
+		iRequest = request;
+		iOptions.addAll(sRowOptions);
+		iOptions.addAll(sStudentOptions);
+		for (StudentGroupType type: groupTypes) {
+			String option = type.getReference().replace(' ', '_');
+			iGroupTypes.put(option, type.getReference());
+			if (type.getLabel() != null)
+				iGroupTypeLabels.put(option, type.getLabel());
+			iOptions.add(option);
+		}
+		if (iRequest.hasOptions())
+			for (Set<String> values: iRequest.getOptions().values())
+				for (String value: values)
+					if (value != null && value.indexOf('%') >= 0)
+						iPatterns.put(value, Pattern.compile(toRegExp(value), Pattern.CASE_INSENSITIVE));
+	}
+
+	/**
+	 * In-memory facets can be used for an in-memory server, when all the filter options can be evaluated on the {@link XStudent} data.
+	 * Filters using the course-level options (course, lookup, credit, assignment, consent, override, etc.), minors, student name,
+	 * or the advisor-related modes (My Students, etc.) are evaluated using the database.
+	 */
+	public static boolean isApplicable(FilterRpcRequest request, OnlineSectioningServer server, Collection<StudentGroupType> groupTypes) {
+		if (!(server instanceof InMemoryServer)) return false;
+		if (sRowOptions.size() + sStudentOptions.size() + groupTypes.size() >= 64) return false;
+		if (!request.hasOptions()) return true;
+		Set<String> types = new HashSet<String>();
+		for (StudentGroupType type: groupTypes)
+			types.add(type.getReference().replace(' ', '_'));
+		for (Map.Entry<String, Set<String>> option: request.getOptions().entrySet()) {
+			if (option.getValue() == null || option.getValue().isEmpty()) continue;
+			if (sIgnoredOptions.contains(option.getKey())) continue;
+			if ("mode".equals(option.getKey())) {
+				String mode = request.getOption("mode");
+				if ("Advised".equals(mode) || "Not Advised".equals(mode)) continue;
+				return false;
+			}
+			if (!sRowOptions.contains(option.getKey()) && !sStudentOptions.contains(option.getKey()) && !types.contains(option.getKey()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compute all the counts in one pass over the given students (in parallel)
+	 */
+	public SectioningStatusFacets compute(Collection<? extends XStudent> students) {
+		iCounts = students.parallelStream().collect(() -> new Counts(), (c, s) -> c.add(s), (a, b) -> a.merge(b));
+		return this;
+	}
+
+	private static String toRegExp(String like) {
+		StringBuffer regexp = new StringBuffer();
+		StringBuffer literal = new StringBuffer();
+		for (char ch: like.toCharArray()) {
+			if (ch == '%' || ch == '_') {
+				if (literal.length() > 0) { regexp.append(Pattern.quote(literal.toString())); literal.setLength(0); }
+				regexp.append(ch == '%' ? ".*" : ".");
+			} else {
+				literal.append(ch);
+			}
+		}
+		if (literal.length() > 0) regexp.append(Pattern.quote(literal.toString()));
+		return regexp.toString();
+	}
+
+	private boolean match(String option, String value) {
+		if (value == null) return false;
+		for (String v: iRequest.getOptions(option)) {
+			Pattern p = iPatterns.get(v);
+			if (p == null ? v.equals(value) : p.matcher(value).matches()) return true;
+		}
+		return false;
+	}
+
+	private long mask(String... options) {
+		long mask = 0;
+		for (String option: options) {
+			int index = iOptions.indexOf(option);
+			if (index >= 0) mask |= (1l << index);
+		}
+		return mask;
+	}
+
+	private boolean matchRow(String option, XAreaClassificationMajor acm) {
+		if (acm == null) return false;
+		if ("area".equals(option)) return match(option, acm.getArea());
+		if ("classification".equals(option)) return match(option, acm.getClassification());
+		if ("degree".equals(option)) return match(option, acm.getDegree());
+		if ("program".equals(option)) return match(option, acm.getProgram());
+		if ("campus".equals(option)) return match(option, acm.getCampus());
+		if ("major".equals(option)) return match(option, acm.getMajor());
+		if ("concentration".equals(option)) return match(option, acm.getConcentration());
+		return true;
+	}
+
+	private boolean matchStudent(String option, XStudent student) {
+		if ("group".equals(option)) {
+			for (XStudent.XGroup group: student.getGroups())
+				if (match(option, group.getAbbreviation())) return true;
+			return false;
+		}
+		if ("accommodation".equals(option)) {
+			for (XStudent.XGroup acc: student.getAccomodations())
+				if (match(option, acc.getAbbreviation())) return true;
+			return false;
+		}
+		if ("status".equals(option)) {
+			if (student.getStatus() == null) return iRequest.getOptions(option).contains("Not Set");
+			return match(option, student.getStatus());
+		}
+		if ("advisor".equals(option)) {
+			String advisor = iRequest.getOption(option);
+			for (XStudent.XAdvisor a: student.getAdvisors())
+				if (advisor.equals(a.getExternalId())) return true;
+			return false;
+		}
+		if ("mode".equals(option)) {
+			if ("Advised".equals(iRequest.getOption(option))) return student.hasAdvisorRequests();
+			if ("Not Advised".equals(iRequest.getOption(option))) return !student.hasAdvisorRequests();
+			return true;
+		}
+		String type = iGroupTypes.get(option);
+		if (type != null) {
+			boolean like = false;
+			for (String v: iRequest.getOptions(option))
+				if (iPatterns.containsKey(v)) { like = true; break; }
+			for (XStudent.XGroup group: student.getGroups())
+				if ((!like || (group.getType() != null && group.getType().replace(' ', '_').equalsIgnoreCase(option))) && match(option, group.getAbbreviation())) return true;
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean hasRow(long[] rowFails, long exclude) {
+		for (long rowFail: rowFails)
+			if ((rowFail & ~exclude) == 0) return true;
+		return false;
+	}
+
+	/**
+	 * Facet counts of a part of the students, counts of two parts can be merged together
+	 */
+	private class Counts {
+		private Map<String, Map<String, Integer>> iValues = new HashMap<String, Map<String, Integer>>();
+		private Map<String, Map<String, String>> iLabels = new HashMap<String, Map<String, String>>();
+		private Map<Integer, Integer> iCritical = new HashMap<Integer, Integer>();
+		private Map<Integer, Integer> iOverrides = new HashMap<Integer, Integer>();
+		private int iDefaultStatus = 0, iAdvised = 0, iNotAdvised = 0;
+
+		private void inc(Map<Integer, Integer> counts, Integer key, int count) {
+			Integer value = counts.get(key);
+			counts.put(key, count + (value == null ? 0 : value.intValue()));
+		}
+
+		private void inc(String facet, Map<String, String> values) {
+			if (values.isEmpty()) return;
+			Map<String, Integer> counts = iValues.get(facet);
+			Map<String, String> labels = iLabels.get(facet);
+			if (counts == null) {
+				counts = new HashMap<String, Integer>(); iValues.put(facet, counts);
+				labels = new HashMap<String, String>(); iLabels.put(facet, labels);
+			}
+			for (Map.Entry<String, String> e: values.entrySet()) {
+				Integer count = counts.get(e.getKey());
+				counts.put(e.getKey(), 1 + (count == null ? 0 : count.intValue()));
+				if (!labels.containsKey(e.getKey())) labels.put(e.getKey(), e.getValue());
+			}
+		}
+
+		private void add(XStudent student) {
+			long studentFail = 0;
+			for (int i = sRowOptions.size(); i < iOptions.size(); i++) {
+				String option = iOptions.get(i);
+				if (iRequest.hasOptions(option) && !matchStudent(option, student)) studentFail |= (1l << i);
+			}
+			List<XAreaClassificationMajor> rows = student.getMajors();
+			long[] rowFails = new long[rows.isEmpty() ? 1 : rows.size()];
+			for (int r = 0; r < rowFails.length; r++) {
+				XAreaClassificationMajor acm = (rows.isEmpty() ? null : rows.get(r));
+				for (int i = 0; i < sRowOptions.size(); i++) {
+					String option = iOptions.get(i);
+					if (iRequest.hasOptions(option) && !matchRow(option, acm)) rowFails[r] |= (1l << i);
+				}
+			}
+
+			// academic areas (of majors and minors)
+			long exclude = mask("area", "major", "concentration");
+			if ((studentFail & ~exclude) == 0) {
+				Map<String, String> areas = new HashMap<String, String>();
+				for (int r = 0; r < rows.size(); r++)
+					if ((rowFails[r] & ~exclude) == 0) areas.put(rows.get(r).getArea(), rows.get(r).getAreaLabel());
+				inc("area", areas);
+				if (hasRow(rowFails, exclude)) {
+					Map<String, String> minorAreas = new HashMap<String, String>();
+					for (XAreaClassificationMajor acm: student.getMinors())
+						minorAreas.put(acm.getArea(), acm.getAreaLabel());
+					inc("area-minor", minorAreas);
+				}
+			}
+
+			// majors of the selected academic areas
+			if (iRequest.hasOptions("area")) {
+				exclude = mask("major", "concentration");
+				if ((studentFail & ~exclude) == 0) {
+					Map<String, String> majors = new HashMap<String, String>();
+					for (int r = 0; r < rows.size(); r++)
+						if ((rowFails[r] & ~exclude) == 0 && iRequest.getOptions("area").contains(rows.get(r).getArea()))
+							majors.put(rows.get(r).getMajor(), rows.get(r).getMajorLabel());
+					inc("major", majors);
+				}
+
+				exclude = mask("minor", "classification", "area");
+				if ((studentFail & ~exclude) == 0 && hasRow(rowFails, exclude)) {
+					Map<String, String> minors = new HashMap<String, String>();
+					for (XAreaClassificationMajor acm: student.getMinors())
+						if (iRequest.getOptions("area").contains(acm.getArea()))
+							minors.put(acm.getMajor(), acm.getMajorLabel());
+					inc("minor", minors);
+				}
+			}
+
+			// concentrations of the selected majors
+			if (iRequest.hasOptions("major")) {
+				exclude = mask("concentration");
+				if ((studentFail & ~exclude) == 0) {
+					Map<String, String> concentrations = new HashMap<String, String>();
+					for (int r = 0; r < rows.size(); r++) {
+						XAreaClassificationMajor acm = rows.get(r);
+						if ((rowFails[r] & ~exclude) == 0 && acm.getConcentration() != null && iRequest.getOptions("major").contains(acm.getMajor()) &&
+							(!iRequest.hasOptions("area") || iRequest.getOptions("area").contains(acm.getArea())))
+							concentrations.put(acm.getConcentration(), acm.getConcentrationLabel());
+					}
+					inc("concentration", concentrations);
+				}
+			}
+
+			// classifications, degrees, programs, and campuses
+			for (String option: new String[] {"classification", "degree", "program", "campus"}) {
+				exclude = mask(option);
+				if ((studentFail & ~exclude) != 0) continue;
+				Map<String, String> values = new HashMap<String, String>();
+				for (int r = 0; r < rows.size(); r++) {
+					if ((rowFails[r] & ~exclude) != 0) continue;
+					XAreaClassificationMajor acm = rows.get(r);
+					if ("classification".equals(option) && acm.getClassification() != null)
+						values.put(acm.getClassification(), acm.getClassificationLabel());
+					else if ("degree".equals(option) && acm.getDegree() != null)
+						values.put(acm.getDegree(), acm.getDegreeLabel());
+					else if ("program".equals(option) && acm.getProgram() != null)
+						values.put(acm.getProgram(), acm.getProgramLabel());
+					else if ("campus".equals(option) && acm.getCampus() != null)
+						values.put(acm.getCampus(), acm.getCampusLabel());
+				}
+				inc(option, values);
+			}
+
+			// student groups
+			exclude = mask("group");
+			if ((studentFail & ~exclude) == 0 && hasRow(rowFails, exclude)) {
+				Map<String, String> groups = new HashMap<String, String>();
+				for (XStudent.XGroup group: student.getGroups())
+					if (group.getType() == null) groups.put(group.getAbbreviation(), group.getTitle());
+				inc("group", groups);
+			}
+			for (Map.Entry<String, String> type: iGroupTypes.entrySet()) {
+				exclude = mask(type.getKey());
+				if ((studentFail & ~exclude) == 0 && hasRow(rowFails, exclude)) {
+					Map<String, String> groups = new HashMap<String, String>();
+					for (XStudent.XGroup group: student.getGroups())
+						if (type.getValue().equals(group.getType())) groups.put(group.getAbbreviation(), group.getTitle());
+					inc(type.getKey(), groups);
+				}
+			}
+
+			// accommodations
+			exclude = mask("accommodation");
+			if ((studentFail & ~exclude) == 0 && hasRow(rowFails, exclude)) {
+				Map<String, String> accommodations = new HashMap<String, String>();
+				for (XStudent.XGroup acc: student.getAccomodations())
+					accommodations.put(acc.getAbbreviation(), acc.getTitle());
+				inc("accommodation", accommodations);
+			}
+
+			// student statuses
+			exclude = mask("status");
+			if ((studentFail & ~exclude) == 0 && hasRow(rowFails, exclude)) {
+				if (student.getStatus() == null)
+					iDefaultStatus ++;
+				else
+					inc("status", Collections.singletonMap(student.getStatus(), student.getStatus()));
+			}
+
+			// advised / not advised
+			exclude = mask("mode");
+			if ((studentFail & ~exclude) == 0 && hasRow(rowFails, exclude)) {
+				if (student.hasAdvisorRequests()) iAdvised ++; else iNotAdvised ++;
+			}
+
+			// critical course requests and overrides
+			if (studentFail == 0 && hasRow(rowFails, 0)) {
+				if (student.getMaxCreditOverride() != null && student.getMaxCreditOverride().getStatus() != null)
+					inc(iOverrides, student.getMaxCreditOverride().getStatus(), 1);
+				for (XRequest request: student.getRequests()) {
+					if (!(request instanceof XCourseRequest)) continue;
+					XCourseRequest cr = (XCourseRequest)request;
+					inc(iCritical, cr.getCritical(), 1);
+					if (cr.getOverrides() != null)
+						for (XOverride override: cr.getOverrides().values())
+							if (override.getStatus() != null) inc(iOverrides, override.getStatus(), 1);
+				}
+			}
+		}
+
+		private Counts merge(Counts counts) {
+			for (Map.Entry<String, Map<String, Integer>> facet: counts.iValues.entrySet()) {
+				Map<String, Integer> values = iValues.get(facet.getKey());
+				Map<String, String> labels = iLabels.get(facet.getKey());
+				if (values == null) {
+					iValues.put(facet.getKey(), facet.getValue());
+					iLabels.put(facet.getKey(), counts.iLabels.get(facet.getKey()));
+					continue;
+				}
+				for (Map.Entry<String, Integer> e: facet.getValue().entrySet()) {
+					Integer count = values.get(e.getKey());
+					values.put(e.getKey(), e.getValue() + (count == null ? 0 : count.intValue()));
+					if (!labels.containsKey(e.getKey())) labels.put(e.getKey(), counts.iLabels.get(facet.getKey()).get(e.getKey()));
+				}
+			}
+			for (Map.Entry<Integer, Integer> e: counts.iCritical.entrySet())
+				inc(iCritical, e.getKey(), e.getValue());
+			for (Map.Entry<Integer, Integer> e: counts.iOverrides.entrySet())
+				inc(iOverrides, e.getKey(), e.getValue());
+			iDefaultStatus += counts.iDefaultStatus;
+			iAdvised += counts.iAdvised;
+			iNotAdvised += counts.iNotAdvised;
+			return this;
+		}
+	}
+
+	/**
+	 * Facet values, ordered by the value and the label
+	 */
+	protected List<Entity> getEntities(String facet) {
+		List<Entity> entities = new ArrayList<Entity>();
+		Map<String, Integer> counts = iCounts.iValues.get(facet);
+		if (counts == null) return entities;
+		Map<String, String> labels = iCounts.iLabels.get(facet);
+		long id = 1;
+		for (Map.Entry<String, Integer> e: new TreeMap<String, Integer>(counts).entrySet()) {
+			String label = labels.get(e.getKey());
+			Entity entity = new Entity(id++, e.getKey(), label == null ? e.getKey() : label);
+			entity.setCount(e.getValue());
+			entities.add(entity);
+		}
+		return entities;
+	}
+
+	/**
+	 * Fill in the student-level facets (the in-memory counterpart of {@link SectioningStatusFilterAction#addStudentFacets(FilterRpcResponse, SectioningStatusFilterAction.StudentQuery, OnlineSectioningServer, OnlineSectioningHelper)})
+	 */
+	public void addStudentFacets(FilterRpcResponse response, OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		Map<String, Entity> areas = new HashMap<String, Entity>();
+		for (Entity area: getEntities("area"))
+			areas.put(area.getAbbreviation(), area);
+		for (Entity area: getEntities("area-minor")) {
+			Entity a = areas.get(area.getAbbreviation());
+			if (a == null)
+				areas.put(area.getAbbreviation(), area);
+			else
+				a.setCount(a.getCount() + area.getCount());
+		}
+		long id = 1;
+		for (Entity area: new TreeMap<String, Entity>(areas).values())
+			area.setUniqueId(id++);
+		response.add("area", new TreeSet<Entity>(areas.values()));
+
+		if (iRequest.hasOptions("area"))
+			response.add("major", getEntities("major"));
+		if (iRequest.hasOptions("major"))
+			response.add("concentration", getEntities("concentration"));
+		if (iRequest.hasOptions("area"))
+			response.add("minor", getEntities("minor"));
+		response.add("classification", getEntities("classification"));
+		response.add("degree", getEntities("degree"));
+		response.add("program", getEntities("program"));
+
+		List<Entity> campuses = getEntities("campus");
+		if (campuses.size() == 1 && campuses.get(0).getAbbreviation().equals(server.getAcademicSession().getCampus())) campuses.clear();
+		response.add("campus", campuses);
+
+		response.add("group", getEntities("group"));
+		for (String type: iGroupTypes.keySet()) {
+			response.add(type, getEntities(type));
+			if (iGroupTypeLabels.containsKey(type))
+				response.setTypeLabel(type, iGroupTypeLabels.get(type));
+		}
+
+		response.add("accommodation", getEntities("accommodation"));
+
+		List<Entity> states = new ArrayList<Entity>();
+		if (iCounts.iDefaultStatus > 0) {
+			Session session = SessionDAO.getInstance().get(server.getAcademicSession().getUniqueId(), helper.getHibSession());
+			Entity s;
+			if (session.getDefaultSectioningStatus() == null) {
+				s = new Entity(0l, "Not Set", "No Restrictions (Default)");
+			} else {
+				s = new Entity(session.getDefaultSectioningStatus().getUniqueId(), "Not Set", session.getDefaultSectioningStatus().getReference() + " (Default)", "hint", session.getDefaultSectioningStatus().getLabel());
+			}
+			s.setCount(iCounts.iDefaultStatus);
+			states.add(s);
+		}
+		Map<String, Integer> statusCounts = iCounts.iValues.get("status");
+		if (statusCounts != null) {
+			Map<String, StudentSectioningStatus> statuses = new HashMap<String, StudentSectioningStatus>();
+			for (StudentSectioningStatus status: StudentSectioningStatus.findAll(helper.getHibSession(), server.getAcademicSession().getUniqueId()))
+				statuses.put(status.getReference(), status);
+			long sid = -1;
+			for (Map.Entry<String, Integer> e: new TreeMap<String, Integer>(statusCounts).entrySet()) {
+				StudentSectioningStatus status = statuses.get(e.getKey());
+				Entity s = new Entity(status == null ? sid-- : status.getUniqueId(), e.getKey(), e.getKey(), "hint", status == null ? e.getKey() : status.getLabel());
+				s.setCount(e.getValue());
+				states.add(s);
+			}
+		}
+		if (states.size() > 1)
+			response.add("status", states);
+	}
+
+	/**
+	 * Number of course requests of the matching students by their (effective) critical value
+	 */
+	public Map<Integer, Integer> getCriticalCounts() {
+		return iCounts.iCritical;
+	}
+
+	/**
+	 * Number of student and course request overrides of the matching students by their status
+	 */
+	public Map<Integer, Integer> getOverrideCounts() {
+		return iCounts.iOverrides;
+	}
+
+	public int getAdvised() { return iCounts.iAdvised; }
+
+	public int getNotAdvised() { return iCounts.iNotAdvised; }
+}
@@ -67,6 +67,7 @@ import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.server.DatabaseServer;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
 import org.unitime.timetable.solver.studentsct.StudentSolver;
 import org.unitime.timetable.util.Constants;
 
@@ -105,6 +106,248 @@ public class SectioningStatusFilterAction implements OnlineSectioningAction<Filt
 		StudentQuery query = getQuery(iRequest, server, helper);
 		CourseQuery courseQuery = getCourseQuery(iRequest, server, helper);
 		
+		List<StudentGroupType> groupTypes = StudentGroupTypeDAO.getInstance().findAll(helper.getHibSession());
+		SectioningStatusFacets facets = null;
+		if (SectioningStatusFacets.isApplicable(iRequest, server, groupTypes))
+			facets = new SectioningStatusFacets(iRequest, groupTypes).compute(((InMemoryServer)server).findStudents(null));
+		
+		if (facets != null)
+			facets.addStudentFacets(response, server, helper);
+		else
+			addStudentFacets(response, query, groupTypes, server, helper);
+
+		Map<Integer, Integer> crit2count = (facets != null ? facets.getCriticalCounts() : getCriticalCounts(courseQuery, helper));
+		
+		List<Entity> assignment = new ArrayList<Entity>();
+		assignment.add(new Entity(0l, "Assigned", CONSTANTS.assignmentType()[0], "translated-value", CONSTANTS.assignmentType()[0]));
+		assignment.add(new Entity(1l, "Reserved", CONSTANTS.assignmentType()[1], "translated-value", CONSTANTS.assignmentType()[1]));
+		assignment.add(new Entity(2l, "Not Assigned", CONSTANTS.assignmentType()[2], "translated-value", CONSTANTS.assignmentType()[2]));
+		if (crit2count.containsKey(CourseDemand.Critical.CRITICAL.ordinal())) {
+			if (CONSTANTS.assignmentType().length > 4)
+				assignment.add(new Entity(4l, "Critical", CONSTANTS.assignmentType()[4], "translated-value", CONSTANTS.assignmentType()[4]));
+			else
+				assignment.add(new Entity(4l, "Critical", "Critical"));
+			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.CRITICAL.ordinal()));
+			if (CONSTANTS.assignmentType().length > 5)
+				assignment.add(new Entity(5l, "Assigned Critical", CONSTANTS.assignmentType()[5], "translated-value", CONSTANTS.assignmentType()[5]));
+			else
+				assignment.add(new Entity(5l, "Assigned Critical", "Assigned Critical"));
+			if (CONSTANTS.assignmentType().length > 6)
+				assignment.add(new Entity(6l, "Not Assigned Critical", CONSTANTS.assignmentType()[6], "translated-value", CONSTANTS.assignmentType()[6]));
+			else
+				assignment.add(new Entity(6l, "Not Assigned Critical", "Not Assigned Critical"));
+		}
+		if (crit2count.containsKey(CourseDemand.Critical.VITAL.ordinal())) {
+			if (CONSTANTS.assignmentType().length > 13)
+				assignment.add(new Entity(13l, "Vital", CONSTANTS.assignmentType()[13], "translated-value", CONSTANTS.assignmentType()[13]));
+			else
+				assignment.add(new Entity(13l, "Vital", "Vital"));
+			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.VITAL.ordinal()));
+			if (CONSTANTS.assignmentType().length > 14)
+				assignment.add(new Entity(14l, "Assigned Vital", CONSTANTS.assignmentType()[14], "translated-value", CONSTANTS.assignmentType()[14]));
+			else
+				assignment.add(new Entity(14l, "Assigned Vital", "Assigned Vital"));
+			if (CONSTANTS.assignmentType().length > 15)
+				assignment.add(new Entity(15l, "Not Assigned Vital", CONSTANTS.assignmentType()[15], "translated-value", CONSTANTS.assignmentType()[15]));
+			else
+				assignment.add(new Entity(15l, "Not Assigned Vital", "Not Assigned Vital"));
+		}
+		if (crit2count.containsKey(CourseDemand.Critical.IMPORTANT.ordinal())) {
+			if (CONSTANTS.assignmentType().length > 7)
+				assignment.add(new Entity(7l, "Important", CONSTANTS.assignmentType()[7], "translated-value", CONSTANTS.assignmentType()[7]));
+			else
+				assignment.add(new Entity(7l, "Important", "Important"));
+			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.IMPORTANT.ordinal()));
+			if (CONSTANTS.assignmentType().length > 8)
+				assignment.add(new Entity(8l, "Assigned Important", CONSTANTS.assignmentType()[8], "translated-value", CONSTANTS.assignmentType()[8]));
+			else
+				assignment.add(new Entity(8l, "Assigned Important", "Assigned Important"));
+			if (CONSTANTS.assignmentType().length > 9)
+				assignment.add(new Entity(9l, "Not Assigned Important", CONSTANTS.assignmentType()[9], "translated-value", CONSTANTS.assignmentType()[9]));
+			else
+				assignment.add(new Entity(9l, "Not Assigned Important", "Not Assigned Important"));
+		}
+		if (CONSTANTS.assignmentType().length > 10)
+			assignment.add(new Entity(10l, "No-Substitutes", CONSTANTS.assignmentType()[10], "translated-value", CONSTANTS.assignmentType()[10]));
+		else
+			assignment.add(new Entity(10l, "No-Substitutes", "No-Substitutes"));
+		if (CONSTANTS.assignmentType().length > 11)
+			assignment.add(new Entity(11l, "Assigned No-Subs", CONSTANTS.assignmentType()[11], "translated-value", CONSTANTS.assignmentType()[11]));
+		else
+			assignment.add(new Entity(11l, "Assigned No-Subs", "Assigned No-Subs"));
+		if (CONSTANTS.assignmentType().length > 12)
+			assignment.add(new Entity(12l, "Not Assigned No-Subs", CONSTANTS.assignmentType()[12], "translated-value", CONSTANTS.assignmentType()[12]));
+		else
+			assignment.add(new Entity(12l, "Not Assigned No-Subs", "Not Assigned No-Subs"));
+		if (server instanceof StudentSolver && "LC".equals(server.getConfig().getProperty("Load.LCRequestPriority"))) {
+			if (CONSTANTS.assignmentType().length > 16)
+				assignment.add(new Entity(16l, "LC", CONSTANTS.assignmentType()[16], "translated-value", CONSTANTS.assignmentType()[16]));
+			else
+				assignment.add(new Entity(16l, "LC", "LC"));
+			if (CONSTANTS.assignmentType().length > 17)
+				assignment.add(new Entity(17l, "Assigned LC", CONSTANTS.assignmentType()[17], "translated-value", CONSTANTS.assignmentType()[17]));
+			else
+				assignment.add(new Entity(17l, "Assigned LC", "Assigned LC"));
+			if (CONSTANTS.assignmentType().length > 18)
+				assignment.add(new Entity(18l, "Not Assigned LC", CONSTANTS.assignmentType()[18], "translated-value", CONSTANTS.assignmentType()[18]));
+			else
+				assignment.add(new Entity(18l, "Not Assigned LC", "Not Assigned LC"));
+		} else if (crit2count.containsKey(CourseDemand.Critical.LC.ordinal())) {
+			if (CONSTANTS.assignmentType().length > 16)
+				assignment.add(new Entity(16l, "LC", CONSTANTS.assignmentType()[16], "translated-value", CONSTANTS.assignmentType()[16]));
+			else
+				assignment.add(new Entity(16l, "LC", "LC"));
+			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.LC.ordinal()));
+			if (CONSTANTS.assignmentType().length > 17)
+				assignment.add(new Entity(17l, "Assigned LC", CONSTANTS.assignmentType()[17], "translated-value", CONSTANTS.assignmentType()[17]));
+			else
+				assignment.add(new Entity(17l, "Assigned LC", "Assigned LC"));
+			if (CONSTANTS.assignmentType().length > 18)
+				assignment.add(new Entity(18l, "Not Assigned LC", CONSTANTS.assignmentType()[18], "translated-value", CONSTANTS.assignmentType()[18]));
+			else
+				assignment.add(new Entity(18l, "Not Assigned LC", "Not Assigned LC"));
+		}
+		if (server instanceof StudentSolver) {
+			String visitingStudentsFilter = server.getConfig().getProperty("Load.VisitingStudentFilter");
+			if (visitingStudentsFilter != null && !visitingStudentsFilter.isEmpty()) {
+				if (CONSTANTS.assignmentType().length > 19)
+					assignment.add(new Entity(19l, "Visiting F2F", CONSTANTS.assignmentType()[19], "translated-value", CONSTANTS.assignmentType()[19]));
+				else
+					assignment.add(new Entity(19l, "Visiting F2F", "Visiting F2F"));
+				if (CONSTANTS.assignmentType().length > 20)
+					assignment.add(new Entity(20l, "Assigned Visiting F2F", CONSTANTS.assignmentType()[20], "translated-value", CONSTANTS.assignmentType()[20]));
+				else
+					assignment.add(new Entity(20l, "Assigned Visiting F2F", "Assigned Visiting F2F"));
+				if (CONSTANTS.assignmentType().length > 21)
+					assignment.add(new Entity(21l, "Not Assigned Visiting F2F", CONSTANTS.assignmentType()[21], "translated-value", CONSTANTS.assignmentType()[21]));
+				else
+					assignment.add(new Entity(21l, "Not Assigned Visiting F2F", "Not Assigned Visiting F2F"));
+			}
+		}
+		if (!(server instanceof StudentSolver))
+			assignment.add(new Entity(3l, "Wait-Listed", CONSTANTS.assignmentType()[3], "translated-value", CONSTANTS.assignmentType()[3]));
+		response.add("assignment", assignment);
+		
+		List<Entity> consent = new ArrayList<Entity>();
+		consent.add(new Entity(-1l, "Consent", CONSTANTS.consentTypeAbbv()[0], "translated-value", CONSTANTS.consentTypeAbbv()[0]));
+		for (OfferingConsentType type: OfferingConsentType.getConsentTypeList())
+			consent.add(new Entity(type.getUniqueId(), type.getAbbv(), type.getLabel()));
+		consent.add(new Entity(-2l, "No Consent", CONSTANTS.consentTypeAbbv()[1], "translated-value", CONSTANTS.consentTypeAbbv()[1]));
+		consent.add(new Entity(-3l, "Waiting", CONSTANTS.consentTypeAbbv()[2], "translated-value", CONSTANTS.consentTypeAbbv()[2]));
+		consent.add(new Entity(-4l, "Approved", CONSTANTS.consentTypeAbbv()[3], "translated-value", CONSTANTS.consentTypeAbbv()[3]));
+		consent.add(new Entity(-5l, "To Do", CONSTANTS.consentTypeAbbv()[4], "translated-value", CONSTANTS.consentTypeAbbv()[4]));
+		response.add("consent", consent);
+		
+		if ("true".equals(iRequest.getOption("online"))) {
+			List<Entity> overrides = new ArrayList<Entity>();
+			for (CourseRequest.CourseRequestOverrideStatus status: CourseRequest.CourseRequestOverrideStatus.values()) {
+				try {
+					overrides.add(new Entity(Long.valueOf(-1 - status.ordinal()), Constants.toInitialCase(status.name()), CONSTANTS.overrideType()[status.ordinal()], "translated-value", CONSTANTS.overrideType()[status.ordinal()])); 
+				} catch (ArrayIndexOutOfBoundsException e) {}
+			}
+			if (facets != null) {
+				for (Map.Entry<Integer, Integer> o: facets.getOverrideCounts().entrySet()) {
+					Entity e = overrides.get(o.getKey());
+					e.setCount(o.getValue());
+				}
+			} else {
+				if (!iRequest.hasOptions("assignment"))
+					for (Object[] o: (List<Object[]>)query.select("s.overrideStatus, count(distinct s)").where("s.overrideStatus is not null").order("s.overrideStatus").group("s.overrideStatus").exclude("credit").exclude("override").query(helper.getHibSession()).list()) {
+						Entity e = overrides.get((Integer)o[0]);
+						e.setCount(((Number)o[1]).intValue());
+					}
+				for (Object[] o: (List<Object[]>)courseQuery.select("cr.overrideStatus, count(distinct cr)").where("cr.overrideStatus is not null").order("cr.overrideStatus").group("cr.overrideStatus").exclude("credit").exclude("override").query(helper.getHibSession()).list()) {
+					Entity e = overrides.get((Integer)o[0]);
+					e.setCount(e.getCount() + ((Number)o[1]).intValue());
+				}
+			}
+			for (Iterator<Entity> i = overrides.iterator(); i.hasNext(); )
+				if (i.next().getCount() == 0) i.remove();
+			if (!overrides.isEmpty()) {
+				Entity none = new Entity(Long.valueOf(-100), "none", CONSTANTS.noOverride(), "translated-value", CONSTANTS.noOverride());
+				// none.setCount(((Number)query.select("count(distinct xcr)").where("xcr.overrideStatus is null").from("inner join s.courseDemands xcd inner join xcd.courseRequests xcr").exclude("override").query(helper.getHibSession()).uniqueResult()).intValue());
+				overrides.add(none);
+				response.add("override", overrides);
+			}
+		}
+		
+		
+		List<Entity> modes = new ArrayList<Entity>();
+		if (iRequest.hasOption("role")) {
+			int myStudents = ((Number)query.select("count(distinct s)")
+					.where("s.uniqueId in (select ads.uniqueId from Advisor adv inner join adv.students ads where adv.externalUniqueId = :Xuser and adv.role.reference = :Xrole and adv.session.uniqueId = s.session.uniqueId)")
+					.set("Xuser", iRequest.getOption("user")).set("Xrole", iRequest.getOption("role"))
+					.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue();
+			if (myStudents > 0) {
+				Entity myE = new Entity(-1l, "My Students", MESSAGES.modeMyStudents(), "translated-value", MESSAGES.modeMyStudents());
+				myE.setCount(myStudents);
+				modes.add(myE);
+				if (ApplicationProperty.StudentSchedulingFilterSkipAdvisedCounts.isTrue()) {
+					modes.add(new Entity(-1l, "My Advised", MESSAGES.modeMyStudentsAdvised(), "translated-value", MESSAGES.modeMyStudentsAdvised()));
+					modes.add(new Entity(-1l, "My Not Advised", MESSAGES.modeMyStudentsNotAdvised(), "translated-value", MESSAGES.modeMyStudentsNotAdvised()));
+				} else {
+					int myAdvised = ((Number)query.select("count(distinct s)")
+							.where("s.uniqueId in (select ads.uniqueId from Advisor adv inner join adv.students ads where adv.externalUniqueId = :Xuser and adv.role.reference = :Xrole and adv.session.uniqueId = s.session.uniqueId) and s.advisorCourseRequests is not empty")
+							.set("Xuser", iRequest.getOption("user")).set("Xrole", iRequest.getOption("role"))
+							.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue();
+					if (myAdvised > 0) {
+						Entity myA = new Entity(-1l, "My Advised", MESSAGES.modeMyStudentsAdvised(), "translated-value", MESSAGES.modeMyStudentsAdvised());
+						myA.setCount(myAdvised);
+						modes.add(myA);
+					}
+					if (myAdvised < myStudents) {
+						Entity myA = new Entity(-1l, "My Not Advised", MESSAGES.modeMyStudentsNotAdvised(), "translated-value", MESSAGES.modeMyStudentsNotAdvised());
+						myA.setCount(myStudents - myAdvised);
+						modes.add(myA);
+					}
+				}
+			}
+		}
+		
+		if (ApplicationProperty.StudentSchedulingFilterSkipAdvisedCounts.isTrue()) {
+			modes.add(new Entity(-1l, "Advised", MESSAGES.modeAdvised(), "translated-value", MESSAGES.modeAdvised()));
+			modes.add(new Entity(-1l, "Not Advised", MESSAGES.modeNotAdvised(), "translated-value", MESSAGES.modeNotAdvised()));
+		} else {
+			int advised = (facets != null ? facets.getAdvised() : ((Number)query.select("count(distinct s)")
+					.where("s.advisorCourseRequests is not empty")
+					.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue());
+			if (advised > 0) {
+				Entity adv = new Entity(-1l, "Advised", MESSAGES.modeAdvised(), "translated-value", MESSAGES.modeAdvised());
+				adv.setCount(advised);
+				modes.add(adv);
+				int notAdvised = (facets != null ? facets.getNotAdvised() : ((Number)query.select("count(distinct s)")
+						.where("s.advisorCourseRequests is empty")
+						.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue());
+				if (notAdvised > 0) {
+					Entity notAdv = new Entity(-1l, "Not Advised", MESSAGES.modeNotAdvised(), "translated-value", MESSAGES.modeNotAdvised());
+					notAdv.setCount(notAdvised);
+					modes.add(notAdv);
+				}
+			}
+		}
+		if (!modes.isEmpty())
+			response.add("mode", modes);		
+
+		List<Entity> preferences = new ArrayList<Entity>();
+		preferences.add(new Entity(0l, "Any Preference", MESSAGES.termAnyPreference(), "translated-value", MESSAGES.termAnyPreference()));
+		preferences.add(new Entity(1l, "Met Preference", MESSAGES.termMetPreference(), "translated-value", MESSAGES.termMetPreference()));
+		preferences.add(new Entity(2l, "Unmet Preference", MESSAGES.termUnmetPreference(), "translated-value", MESSAGES.termUnmetPreference()));
+		response.add("prefer", preferences);
+		
+		List<Entity> requires = new ArrayList<Entity>();
+		requires.add(new Entity(0l, "Any Requirement", MESSAGES.termAnyRequirement(), "translated-value", MESSAGES.termAnyRequirement()));
+		requires.add(new Entity(1l, "Met Requirement", MESSAGES.termMetRequirement(), "translated-value", MESSAGES.termMetRequirement()));
+		requires.add(new Entity(2l, "Unmet Requirement", MESSAGES.termUnmetRequirement(), "translated-value", MESSAGES.termUnmetRequirement()));
+		response.add("require", requires);
+		
+		List<Entity> instructionalMethods = new ArrayList<Entity>();
+		for (InstructionalMethod im: InstructionalMethod.findAll())
+			instructionalMethods.add(new Entity(im.getUniqueId(), im.getReference(), im.getLabel()));
+		response.add("im", instructionalMethods);
+		
+		return response;
+	}
+	protected void addStudentFacets(FilterRpcResponse response, StudentQuery query, List<StudentGroupType> groupTypes, OnlineSectioningServer server, OnlineSectioningHelper helper) {
 		Map<Long, Entity> areas = new HashMap<Long, Entity>();
 		for (Object[] o: (List<Object[]>)query.select("aac.academicArea.uniqueId, aac.academicArea.academicAreaAbbreviation, aac.academicArea.title, count(distinct s.uniqueId)")
 				.order("aac.academicArea.academicAreaAbbreviation, aac.academicArea.title").group("aac.academicArea.uniqueId, aac.academicArea.academicAreaAbbreviation, aac.academicArea.title")
@@ -285,7 +528,7 @@ public class SectioningStatusFilterAction implements OnlineSectioningAction<Filt
 		}
 		response.add("group", groups);
 		
-		for (StudentGroupType type: StudentGroupTypeDAO.getInstance().findAll(helper.getHibSession())) {
+		for (StudentGroupType type: groupTypes) {
 			List<Entity> groupsOfThisType = new ArrayList<Entity>();
 			for (Object[] o: (List<Object[]>)query.select("gt.uniqueId, gt.groupAbbreviation, gt.groupName, count(distinct s)")
 					.from("inner join s.groups gt").where("gt.type.uniqueId = :groupTypeId")
@@ -344,237 +587,18 @@ public class SectioningStatusFilterAction implements OnlineSectioningAction<Filt
 		}
 		if (states.size() > 1)
 			response.add("status", states);
-
-		Map<Integer, Integer> crit2count = new HashMap<Integer, Integer>();
+	}
+	
+	protected Map<Integer, Integer> getCriticalCounts(CourseQuery courseQuery, OnlineSectioningHelper helper) {
+		Map<Integer, Integer> ret = new HashMap<Integer, Integer>();
 		for (Object[] o: (List<Object[]>)courseQuery.select("cd.critical, count(distinct cd)").where("cd.critical is not null and cd.criticalOverride is null").order("cd.critical").group("cd.critical").exclude("assignment").query(helper.getHibSession()).list()) {
-			crit2count.put((Integer)o[0],((Number)o[1]).intValue());
+			ret.put((Integer)o[0],((Number)o[1]).intValue());
 		}
 		for (Object[] o: (List<Object[]>)courseQuery.select("cd.criticalOverride, count(distinct cd)").where("cd.criticalOverride is not null").order("cd.criticalOverride").group("cd.criticalOverride").exclude("assignment").query(helper.getHibSession()).list()) {
-			Integer pref = crit2count.get((Integer)o[0]);
-			crit2count.put((Integer)o[0],((Number)o[1]).intValue() + (pref == null ? 0 : pref.intValue()));
-		}
-		
-		List<Entity> assignment = new ArrayList<Entity>();
-		assignment.add(new Entity(0l, "Assigned", CONSTANTS.assignmentType()[0], "translated-value", CONSTANTS.assignmentType()[0]));
-		assignment.add(new Entity(1l, "Reserved", CONSTANTS.assignmentType()[1], "translated-value", CONSTANTS.assignmentType()[1]));
-		assignment.add(new Entity(2l, "Not Assigned", CONSTANTS.assignmentType()[2], "translated-value", CONSTANTS.assignmentType()[2]));
-		if (crit2count.containsKey(CourseDemand.Critical.CRITICAL.ordinal())) {
-			if (CONSTANTS.assignmentType().length > 4)
-				assignment.add(new Entity(4l, "Critical", CONSTANTS.assignmentType()[4], "translated-value", CONSTANTS.assignmentType()[4]));
-			else
-				assignment.add(new Entity(4l, "Critical", "Critical"));
-			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.CRITICAL.ordinal()));
-			if (CONSTANTS.assignmentType().length > 5)
-				assignment.add(new Entity(5l, "Assigned Critical", CONSTANTS.assignmentType()[5], "translated-value", CONSTANTS.assignmentType()[5]));
-			else
-				assignment.add(new Entity(5l, "Assigned Critical", "Assigned Critical"));
-			if (CONSTANTS.assignmentType().length > 6)
-				assignment.add(new Entity(6l, "Not Assigned Critical", CONSTANTS.assignmentType()[6], "translated-value", CONSTANTS.assignmentType()[6]));
-			else
-				assignment.add(new Entity(6l, "Not Assigned Critical", "Not Assigned Critical"));
-		}
-		if (crit2count.containsKey(CourseDemand.Critical.VITAL.ordinal())) {
-			if (CONSTANTS.assignmentType().length > 13)
-				assignment.add(new Entity(13l, "Vital", CONSTANTS.assignmentType()[13], "translated-value", CONSTANTS.assignmentType()[13]));
-			else
-				assignment.add(new Entity(13l, "Vital", "Vital"));
-			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.VITAL.ordinal()));
-			if (CONSTANTS.assignmentType().length > 14)
-				assignment.add(new Entity(14l, "Assigned Vital", CONSTANTS.assignmentType()[14], "translated-value", CONSTANTS.assignmentType()[14]));
-			else
-				assignment.add(new Entity(14l, "Assigned Vital", "Assigned Vital"));
-			if (CONSTANTS.assignmentType().length > 15)
-				assignment.add(new Entity(15l, "Not Assigned Vital", CONSTANTS.assignmentType()[15], "translated-value", CONSTANTS.assignmentType()[15]));
-			else
-				assignment.add(new Entity(15l, "Not Assigned Vital", "Not Assigned Vital"));
-		}
-		if (crit2count.containsKey(CourseDemand.Critical.IMPORTANT.ordinal())) {
-			if (CONSTANTS.assignmentType().length > 7)
-				assignment.add(new Entity(7l, "Important", CONSTANTS.assignmentType()[7], "translated-value", CONSTANTS.assignmentType()[7]));
-			else
-				assignment.add(new Entity(7l, "Important", "Important"));
-			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.IMPORTANT.ordinal()));
-			if (CONSTANTS.assignmentType().length > 8)
-				assignment.add(new Entity(8l, "Assigned Important", CONSTANTS.assignmentType()[8], "translated-value", CONSTANTS.assignmentType()[8]));
-			else
-				assignment.add(new Entity(8l, "Assigned Important", "Assigned Important"));
-			if (CONSTANTS.assignmentType().length > 9)
-				assignment.add(new Entity(9l, "Not Assigned Important", CONSTANTS.assignmentType()[9], "translated-value", CONSTANTS.assignmentType()[9]));
-			else
-				assignment.add(new Entity(9l, "Not Assigned Important", "Not Assigned Important"));
-		}
-		if (CONSTANTS.assignmentType().length > 10)
-			assignment.add(new Entity(10l, "No-Substitutes", CONSTANTS.assignmentType()[10], "translated-value", CONSTANTS.assignmentType()[10]));
-		else
-			assignment.add(new Entity(10l, "No-Substitutes", "No-Substitutes"));
-		if (CONSTANTS.assignmentType().length > 11)
-			assignment.add(new Entity(11l, "Assigned No-Subs", CONSTANTS.assignmentType()[11], "translated-value", CONSTANTS.assignmentType()[11]));
-		else
-			assignment.add(new Entity(11l, "Assigned No-Subs", "Assigned No-Subs"));
-		if (CONSTANTS.assignmentType().length > 12)
-			assignment.add(new Entity(12l, "Not Assigned No-Subs", CONSTANTS.assignmentType()[12], "translated-value", CONSTANTS.assignmentType()[12]));
-		else
-			assignment.add(new Entity(12l, "Not Assigned No-Subs", "Not Assigned No-Subs"));
-		if (server instanceof StudentSolver && "LC".equals(server.getConfig().getProperty("Load.LCRequestPriority"))) {
-			if (CONSTANTS.assignmentType().length > 16)
-				assignment.add(new Entity(16l, "LC", CONSTANTS.assignmentType()[16], "translated-value", CONSTANTS.assignmentType()[16]));
-			else
-				assignment.add(new Entity(16l, "LC", "LC"));
-			if (CONSTANTS.assignmentType().length > 17)
-				assignment.add(new Entity(17l, "Assigned LC", CONSTANTS.assignmentType()[17], "translated-value", CONSTANTS.assignmentType()[17]));
-			else
-				assignment.add(new Entity(17l, "Assigned LC", "Assigned LC"));
-			if (CONSTANTS.assignmentType().length > 18)
-				assignment.add(new Entity(18l, "Not Assigned LC", CONSTANTS.assignmentType()[18], "translated-value", CONSTANTS.assignmentType()[18]));
-			else
-				assignment.add(new Entity(18l, "Not Assigned LC", "Not Assigned LC"));
-		} else if (crit2count.containsKey(CourseDemand.Critical.LC.ordinal())) {
-			if (CONSTANTS.assignmentType().length > 16)
-				assignment.add(new Entity(16l, "LC", CONSTANTS.assignmentType()[16], "translated-value", CONSTANTS.assignmentType()[16]));
-			else
-				assignment.add(new Entity(16l, "LC", "LC"));
-			assignment.get(assignment.size() - 1).setCount(crit2count.get(CourseDemand.Critical.LC.ordinal()));
-			if (CONSTANTS.assignmentType().length > 17)
-				assignment.add(new Entity(17l, "Assigned LC", CONSTANTS.assignmentType()[17], "translated-value", CONSTANTS.assignmentType()[17]));
-			else
-				assignment.add(new Entity(17l, "Assigned LC", "Assigned LC"));
-			if (CONSTANTS.assignmentType().length > 18)
-				assignment.add(new Entity(18l, "Not Assigned LC", CONSTANTS.assignmentType()[18], "translated-value", CONSTANTS.assignmentType()[18]));
-			else
-				assignment.add(new Entity(18l, "Not Assigned LC", "Not Assigned LC"));
-		}
-		if (server instanceof StudentSolver) {
-			String visitingStudentsFilter = server.getConfig().getProperty("Load.VisitingStudentFilter");
-			if (visitingStudentsFilter != null && !visitingStudentsFilter.isEmpty()) {
-				if (CONSTANTS.assignmentType().length > 19)
-					assignment.add(new Entity(19l, "Visiting F2F", CONSTANTS.assignmentType()[19], "translated-value", CONSTANTS.assignmentType()[19]));
-				else
-					assignment.add(new Entity(19l, "Visiting F2F", "Visiting F2F"));
-				if (CONSTANTS.assignmentType().length > 20)
-					assignment.add(new Entity(20l, "Assigned Visiting F2F", CONSTANTS.assignmentType()[20], "translated-value", CONSTANTS.assignmentType()[20]));
-				else
-					assignment.add(new Entity(20l, "Assigned Visiting F2F", "Assigned Visiting F2F"));
-				if (CONSTANTS.assignmentType().length > 21)
-					assignment.add(new Entity(21l, "Not Assigned Visiting F2F", CONSTANTS.assignmentType()[21], "translated-value", CONSTANTS.assignmentType()[21]));
-				else
-					assignment.add(new Entity(21l, "Not Assigned Visiting F2F", "Not Assigned Visiting F2F"));
-			}
+			Integer pref = ret.get((Integer)o[0]);
+			ret.put((Integer)o[0],((Number)o[1]).intValue() + (pref == null ? 0 : pref.intValue()));
 		}
-		if (!(server instanceof StudentSolver))
-			assignment.add(new Entity(3l, "Wait-Listed", CONSTANTS.assignmentType()[3], "translated-value", CONSTANTS.assignmentType()[3]));
-		response.add("assignment", assignment);
-		
-		List<Entity> consent = new ArrayList<Entity>();
-		consent.add(new Entity(-1l, "Consent", CONSTANTS.consentTypeAbbv()[0], "translated-value", CONSTANTS.consentTypeAbbv()[0]));
-		for (OfferingConsentType type: OfferingConsentType.getConsentTypeList())
-			consent.add(new Entity(type.getUniqueId(), type.getAbbv(), type.getLabel()));
-		consent.add(new Entity(-2l, "No Consent", CONSTANTS.consentTypeAbbv()[1], "translated-value", CONSTANTS.consentTypeAbbv()[1]));
-		consent.add(new Entity(-3l, "Waiting", CONSTANTS.consentTypeAbbv()[2], "translated-value", CONSTANTS.consentTypeAbbv()[2]));
-		consent.add(new Entity(-4l, "Approved", CONSTANTS.consentTypeAbbv()[3], "translated-value", CONSTANTS.consentTypeAbbv()[3]));
-		consent.add(new Entity(-5l, "To Do", CONSTANTS.consentTypeAbbv()[4], "translated-value", CONSTANTS.consentTypeAbbv()[4]));
-		response.add("consent", consent);
-		
-		if ("true".equals(iRequest.getOption("online"))) {
-			List<Entity> overrides = new ArrayList<Entity>();
-			for (CourseRequest.CourseRequestOverrideStatus status: CourseRequest.CourseRequestOverrideStatus.values()) {
-				try {
-					overrides.add(new Entity(Long.valueOf(-1 - status.ordinal()), Constants.toInitialCase(status.name()), CONSTANTS.overrideType()[status.ordinal()], "translated-value", CONSTANTS.overrideType()[status.ordinal()])); 
-				} catch (ArrayIndexOutOfBoundsException e) {}
-			}
-			if (!iRequest.hasOptions("assignment"))
-				for (Object[] o: (List<Object[]>)query.select("s.overrideStatus, count(distinct s)").where("s.overrideStatus is not null").order("s.overrideStatus").group("s.overrideStatus").exclude("credit").exclude("override").query(helper.getHibSession()).list()) {
-					Entity e = overrides.get((Integer)o[0]);
-					e.setCount(((Number)o[1]).intValue());
-				}
-			for (Object[] o: (List<Object[]>)courseQuery.select("cr.overrideStatus, count(distinct cr)").where("cr.overrideStatus is not null").order("cr.overrideStatus").group("cr.overrideStatus").exclude("credit").exclude("override").query(helper.getHibSession()).list()) {
-				Entity e = overrides.get((Integer)o[0]);
-				e.setCount(e.getCount() + ((Number)o[1]).intValue());
-			}
-			for (Iterator<Entity> i = overrides.iterator(); i.hasNext(); )
-				if (i.next().getCount() == 0) i.remove();
-			if (!overrides.isEmpty()) {
-				Entity none = new Entity(Long.valueOf(-100), "none", CONSTANTS.noOverride(), "translated-value", CONSTANTS.noOverride());
-				// none.setCount(((Number)query.select("count(distinct xcr)").where("xcr.overrideStatus is null").from("inner join s.courseDemands xcd inner join xcd.courseRequests xcr").exclude("override").query(helper.getHibSession()).uniqueResult()).intValue());
-				overrides.add(none);
-				response.add("override", overrides);
-			}
-		}
-		
-		
-		List<Entity> modes = new ArrayList<Entity>();
-		if (iRequest.hasOption("role")) {
-			int myStudents = ((Number)query.select("count(distinct s)")
-					.where("s.uniqueId in (select ads.uniqueId from Advisor adv inner join adv.students ads where adv.externalUniqueId = :Xuser and adv.role.reference = :Xrole and adv.session.uniqueId = s.session.uniqueId)")
-					.set("Xuser", iRequest.getOption("user")).set("Xrole", iRequest.getOption("role"))
-					.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue();
-			if (myStudents > 0) {
-				Entity myE = new Entity(-1l, "My Students", MESSAGES.modeMyStudents(), "translated-value", MESSAGES.modeMyStudents());
-				myE.setCount(myStudents);
-				modes.add(myE);
-				if (ApplicationProperty.StudentSchedulingFilterSkipAdvisedCounts.isTrue()) {
-					modes.add(new Entity(-1l, "My Advised", MESSAGES.modeMyStudentsAdvised(), "translated-value", MESSAGES.modeMyStudentsAdvised()));
-					modes.add(new Entity(-1l, "My Not Advised", MESSAGES.modeMyStudentsNotAdvised(), "translated-value", MESSAGES.modeMyStudentsNotAdvised()));
-				} else {
-					int myAdvised = ((Number)query.select("count(distinct s)")
-							.where("s.uniqueId in (select ads.uniqueId from Advisor adv inner join adv.students ads where adv.externalUniqueId = :Xuser and adv.role.reference = :Xrole and adv.session.uniqueId = s.session.uniqueId) and s.advisorCourseRequests is not empty")
-							.set("Xuser", iRequest.getOption("user")).set("Xrole", iRequest.getOption("role"))
-							.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue();
-					if (myAdvised > 0) {
-						Entity myA = new Entity(-1l, "My Advised", MESSAGES.modeMyStudentsAdvised(), "translated-value", MESSAGES.modeMyStudentsAdvised());
-						myA.setCount(myAdvised);
-						modes.add(myA);
-					}
-					if (myAdvised < myStudents) {
-						Entity myA = new Entity(-1l, "My Not Advised", MESSAGES.modeMyStudentsNotAdvised(), "translated-value", MESSAGES.modeMyStudentsNotAdvised());
-						myA.setCount(myStudents - myAdvised);
-						modes.add(myA);
-					}
-				}
-			}
-		}
-		
-		if (ApplicationProperty.StudentSchedulingFilterSkipAdvisedCounts.isTrue()) {
-			modes.add(new Entity(-1l, "Advised", MESSAGES.modeAdvised(), "translated-value", MESSAGES.modeAdvised()));
-			modes.add(new Entity(-1l, "Not Advised", MESSAGES.modeNotAdvised(), "translated-value", MESSAGES.modeNotAdvised()));
-		} else {
-			int advised = ((Number)query.select("count(distinct s)")
-					.where("s.advisorCourseRequests is not empty")
-					.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue();
-			if (advised > 0) {
-				Entity adv = new Entity(-1l, "Advised", MESSAGES.modeAdvised(), "translated-value", MESSAGES.modeAdvised());
-				adv.setCount(advised);
-				modes.add(adv);
-				int notAdvised = ((Number)query.select("count(distinct s)")
-						.where("s.advisorCourseRequests is empty")
-						.exclude("mode").exclude("credit").query(helper.getHibSession()).uniqueResult()).intValue();
-				if (notAdvised > 0) {
-					Entity notAdv = new Entity(-1l, "Not Advised", MESSAGES.modeNotAdvised(), "translated-value", MESSAGES.modeNotAdvised());
-					notAdv.setCount(notAdvised);
-					modes.add(notAdv);
-				}
-			}
-		}
-		if (!modes.isEmpty())
-			response.add("mode", modes);		
-
-		List<Entity> preferences = new ArrayList<Entity>();
-		preferences.add(new Entity(0l, "Any Preference", MESSAGES.termAnyPreference(), "translated-value", MESSAGES.termAnyPreference()));
-		preferences.add(new Entity(1l, "Met Preference", MESSAGES.termMetPreference(), "translated-value", MESSAGES.termMetPreference()));
-		preferences.add(new Entity(2l, "Unmet Preference", MESSAGES.termUnmetPreference(), "translated-value", MESSAGES.termUnmetPreference()));
-		response.add("prefer", preferences);
-		
-		List<Entity> requires = new ArrayList<Entity>();
-		requires.add(new Entity(0l, "Any Requirement", MESSAGES.termAnyRequirement(), "translated-value", MESSAGES.termAnyRequirement()));
-		requires.add(new Entity(1l, "Met Requirement", MESSAGES.termMetRequirement(), "translated-value", MESSAGES.termMetRequirement()));
-		requires.add(new Entity(2l, "Unmet Requirement", MESSAGES.termUnmetRequirement(), "translated-value", MESSAGES.termUnmetRequirement()));
-		response.add("require", requires);
-		
-		List<Entity> instructionalMethods = new ArrayList<Entity>();
-		for (InstructionalMethod im: InstructionalMethod.findAll())
-			instructionalMethods.add(new Entity(im.getUniqueId(), im.getReference(), im.getLabel()));
-		response.add("im", instructionalMethods);
-		
-		return response;
+		return ret;
 	}
 	
 	public FilterRpcResponse suggestions(OnlineSectioningServer server, OnlineSectioningHelper helper) {
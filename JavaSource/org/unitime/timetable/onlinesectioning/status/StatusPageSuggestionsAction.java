@@ -30,6 +30,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,7 +42,9 @@ import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.StudentSectioningConstants;
 import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
 import org.unitime.timetable.gwt.server.DayCode;
+import org.unitime.timetable.gwt.server.Query;
 import org.unitime.timetable.gwt.server.Query.AmbigousTermMatcher;
+import org.unitime.timetable.gwt.server.Query.TermCompiler;
 import org.unitime.timetable.gwt.server.Query.TermMatcher;
 import org.unitime.timetable.gwt.shared.PersonInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
@@ -1672,90 +1676,223 @@ public class StatusPageSuggestionsAction implements OnlineSectioningAction<List<
 		public String status() {  return (iStudent == null || iStudent.getStatus() == null ? iDefaultStatus : iStudent.getStatus()); }
 		public OnlineSectioningServer server() { return iServer; }
 		
+		public boolean isMyStudent() { return iMyStudent; }
+		
 		@Override
 		public boolean match(String attr, String term) {
-			if (attr == null && term.isEmpty()) return true;
-			if ("limit".equals(attr)) return true;
-			if ("area".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getArea(), term)) return true;
-				for (XAreaClassificationMajor acm: student().getMinors())
-					if (like(acm.getArea(), term)) return true;
-			} else if ("clasf".equals(attr) || "classification".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getClassification(), term)) return true;
-			} else if ("major".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getMajor(), term)) return true;
-			} else if ("concentration".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getConcentration(), term)) return true;
-			} else if ("degree".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getDegree(), term)) return true;
-			} else if ("program".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getProgram(), term)) return true;
-			} else if ("campus".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMajors())
-					if (like(acm.getCampus(), term)) return true;
-			} else if ("primary-area".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getArea(), term)) return true;
-			} else if ("primary-clasf".equals(attr) || "primary-classification".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getClassification(), term)) return true;
-			} else if ("primary-major".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getMajor(), term)) return true;
-			} else if ("primary-concentration".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getConcentration(), term)) return true;
-			} else if ("primary-degree".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getDegree(), term)) return true;
-			} else if ("primary-program".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getProgram(), term)) return true;
-			} else if ("primary-campus".equals(attr)) {
-				XAreaClassificationMajor acm = student().getPrimaryMajor();
-				if (acm != null && like(acm.getCampus(), term)) return true;
-			} else if ("minor".equals(attr)) {
-				for (XAreaClassificationMajor acm: student().getMinors())
-					if (like(acm.getMajor(), term)) return true;
-			} else if ("group".equals(attr)) {
-				for (XStudent.XGroup group: student().getGroups())
-					if (like(group.getAbbreviation(), term)) return true;
-			} else if ("accommodation".equals(attr)) {
-				for (XStudent.XGroup acc: student().getAccomodations())
-					if (like(acc.getAbbreviation(), term)) return true;
-			} else if  ("student".equals(attr)) {
-				return has(student().getName(), term) || eq(student().getExternalId(), term) || eq(student().getName(), term);
-			} else if  ("advisor".equals(attr)) {
-				for (XStudent.XAdvisor a: student().getAdvisors())
-					if (eq(a.getExternalId(), term)) return true;
+			return COMPILER.compile(attr, term).test(this);
+		}
+		
+		/**
+		 * Compiles the filter terms into predicates: the attribute is resolved, the like patterns are compiled and the
+		 * numeric ranges are parsed only once, see {@link Query#match(TermMatcher, TermCompiler)}.
+		 */
+		public static final TermCompiler<StudentMatcher> COMPILER = new TermCompiler<StudentMatcher>() {
+			@Override
+			public Predicate<StudentMatcher> compile(String attr, String term) {
+				if (attr == null && term.isEmpty()) return m -> true;
+				if ("limit".equals(attr)) return m -> true;
+				if ("area".equals(attr)) {
+					final Predicate<String> like = like(term);
+					return m -> {
+						for (XAreaClassificationMajor acm: m.student().getMajors())
+							if (like.test(acm.getArea())) return true;
+						for (XAreaClassificationMajor acm: m.student().getMinors())
+							if (like.test(acm.getArea())) return true;
+						return false;
+					};
+				} else if ("clasf".equals(attr) || "classification".equals(attr)) {
+					return anyMajor(XAreaClassificationMajor::getClassification, like(term));
+				} else if ("major".equals(attr)) {
+					return anyMajor(XAreaClassificationMajor::getMajor, like(term));
+				} else if ("concentration".equals(attr)) {
+					return anyMajor(XAreaClassificationMajor::getConcentration, like(term));
+				} else if ("degree".equals(attr)) {
+					return anyMajor(XAreaClassificationMajor::getDegree, like(term));
+				} else if ("program".equals(attr)) {
+					return anyMajor(XAreaClassificationMajor::getProgram, like(term));
+				} else if ("campus".equals(attr)) {
+					return anyMajor(XAreaClassificationMajor::getCampus, like(term));
+				} else if ("primary-area".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getArea, like(term));
+				} else if ("primary-clasf".equals(attr) || "primary-classification".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getClassification, like(term));
+				} else if ("primary-major".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getMajor, like(term));
+				} else if ("primary-concentration".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getConcentration, like(term));
+				} else if ("primary-degree".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getDegree, like(term));
+				} else if ("primary-program".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getProgram, like(term));
+				} else if ("primary-campus".equals(attr)) {
+					return primaryMajor(XAreaClassificationMajor::getCampus, like(term));
+				} else if ("minor".equals(attr)) {
+					final Predicate<String> like = like(term);
+					return m -> {
+						for (XAreaClassificationMajor acm: m.student().getMinors())
+							if (like.test(acm.getMajor())) return true;
+						return false;
+					};
+				} else if ("group".equals(attr)) {
+					final Predicate<String> like = like(term);
+					return m -> {
+						for (XStudent.XGroup group: m.student().getGroups())
+							if (like.test(group.getAbbreviation())) return true;
+						return false;
+					};
+				} else if ("accommodation".equals(attr)) {
+					final Predicate<String> like = like(term);
+					return m -> {
+						for (XStudent.XGroup acc: m.student().getAccomodations())
+							if (like.test(acc.getAbbreviation())) return true;
+						return false;
+					};
+				} else if  ("student".equals(attr)) {
+					return m -> has(m.student().getName(), term) || eq(m.student().getExternalId(), term) || eq(m.student().getName(), term);
+				} else if  ("advisor".equals(attr)) {
+					return m -> {
+						for (XStudent.XAdvisor a: m.student().getAdvisors())
+							if (eq(a.getExternalId(), term)) return true;
+						return false;
+					};
+				} else if ("registered".equals(attr)) {
+					final boolean registered = !(eq("true", term) || eq("1",term));
+					return m -> registered;
+				} else if ("status".equals(attr)) {
+					if ("default".equalsIgnoreCase(term) || "Not Set".equalsIgnoreCase(term))
+						return m -> m.student().getStatus() == null;
+					final Predicate<String> like = like(term);
+					return m -> like.test(m.status());
+				} else if ("credit".equals(attr)) {
+					return compileCredit(term);
+				} else if ("overlap".equals(attr)) {
+					return compileOverlap(term);
+				} else if ("override".equals(attr)) {
+					if ("null".equalsIgnoreCase(term) || "None".equalsIgnoreCase(term)) {
+						return m -> {
+							for (XRequest request: m.student().getRequests()) {
+								if (request instanceof XCourseRequest) {
+									XCourseRequest cr = (XCourseRequest)request;
+									for (XCourseId course: cr.getCourseIds()) {
+										XOverride o = cr.getOverride(course);
+										if (o == null) return true;
+									}
+								}
+							}
+							return false;
+						};
+					}
+					CourseRequestOverrideStatus status = null;
+					for (CourseRequestOverrideStatus s: CourseRequestOverrideStatus.values()) {
+						if (s.name().equalsIgnoreCase(term)) { status = s; break; }
+					}
+					if (status == null) return m -> false;
+					final int ordinal = status.ordinal();
+					return m -> {
+						if (m.student().getMaxCreditOverride() != null && m.student().getMaxCreditOverride().getStatus() == ordinal) return true;
+						for (XRequest request: m.student().getRequests()) {
+							if (request instanceof XCourseRequest) {
+								XCourseRequest cr = (XCourseRequest)request;
+								for (XCourseId course: cr.getCourseIds()) {
+									XOverride o = cr.getOverride(course);
+									if (o != null && o.getStatus() == ordinal) return true;
+								}
+							}
+						}
+						return false;
+					};
+				} else if ("mode".equals(attr)) {
+					if (eq("My Students", term)) {
+						return m -> m.isMyStudent();
+					}
+					if (eq("My Advised", term)) {
+						return m -> m.isMyStudent() && m.student().hasAdvisorRequests();
+					}
+					if (eq("My Not Advised", term)) {
+						return m -> m.isMyStudent() && !m.student().hasAdvisorRequests();
+					}
+					if (eq("Advised", term)) {
+						return m -> m.student().hasAdvisorRequests();
+					}
+					if (eq("Not Advised", term)) {
+						return m -> !m.student().hasAdvisorRequests();
+					}
+					return m -> true;
+				} else if ("btb".equals(attr)) {
+					final BackToBackPreference btb;
+					if ("prefer".equalsIgnoreCase(term) || "preferred".equalsIgnoreCase(term))
+						btb = BackToBackPreference.BTB_PREFERRED;
+					else if ("disc".equalsIgnoreCase(term) || "discouraged".equalsIgnoreCase(term))
+						btb = BackToBackPreference.BTB_DISCOURAGED;
+					else
+						btb = BackToBackPreference.NO_PREFERENCE;
+					return m -> m.student().getBackToBackPreference() == btb;
+				} else if ("online".equals(attr)) {
+					final ModalityPreference online;
+					if ("prefer".equalsIgnoreCase(term) || "preferred".equalsIgnoreCase(term))
+						online = ModalityPreference.ONLINE_PREFERRED;
+					else if ("require".equalsIgnoreCase(term) || "required".equalsIgnoreCase(term))
+						online = ModalityPreference.ONLINE_REQUIRED;
+					else if ("disc".equalsIgnoreCase(term) || "discouraged".equalsIgnoreCase(term))
+						online = ModalityPreference.ONILNE_DISCOURAGED;
+					else if ("no".equalsIgnoreCase(term) || "no-preference".equalsIgnoreCase(term))
+						online = ModalityPreference.NO_PREFERENCE;
+					else
+						return m -> false;
+					return m -> m.student().getModalityPreference() == online;
+				} else if (attr != null) {
+					final String type = attr.replace('_', ' ');
+					final Predicate<String> like = like(term);
+					return m -> {
+						for (XStudent.XGroup group: m.student().getGroups())
+							if (eq(group.getType(), type) && like.test(group.getAbbreviation())) return true;
+						return false;
+					};
+				}
+				return m -> false;
+			}
+		};
+		
+		private static Predicate<StudentMatcher> anyMajor(final Function<XAreaClassificationMajor, String> property, final Predicate<String> like) {
+			return m -> {
+				for (XAreaClassificationMajor acm: m.student().getMajors())
+					if (like.test(property.apply(acm))) return true;
 				return false;
-			} else if ("registered".equals(attr)) {
-				if (eq("true", term) || eq("1",term))
-					return false;
-				else
-					return true;
-			} else if ("status".equals(attr)) {
-				if ("default".equalsIgnoreCase(term) || "Not Set".equalsIgnoreCase(term))
-					return student().getStatus() == null;
-				return like(status(), term);
-			} else if ("credit".equals(attr)) {
-				float min = 0, max = Float.MAX_VALUE;
-				Credit prefix = Credit.eq;
-				String number = term;
-				if (number.startsWith("<=")) { prefix = Credit.le; number = number.substring(2); }
-				else if (number.startsWith(">=")) { prefix =Credit.ge; number = number.substring(2); }
-				else if (number.startsWith("<")) { prefix = Credit.lt; number = number.substring(1); }
-				else if (number.startsWith(">")) { prefix = Credit.gt; number = number.substring(1); }
-				else if (number.startsWith("=")) { prefix = Credit.eq; number = number.substring(1); }
-				String im = null;
-				try {
-					float a = Float.parseFloat(number);
+			};
+		}
+		
+		private static Predicate<StudentMatcher> primaryMajor(final Function<XAreaClassificationMajor, String> property, final Predicate<String> like) {
+			return m -> {
+				XAreaClassificationMajor acm = m.student().getPrimaryMajor();
+				return acm != null && like.test(property.apply(acm));
+			};
+		}
+		
+		private static Predicate<StudentMatcher> compileCredit(String term) {
+			float min = 0, max = Float.MAX_VALUE;
+			Credit prefix = Credit.eq;
+			String number = term;
+			if (number.startsWith("<=")) { prefix = Credit.le; number = number.substring(2); }
+			else if (number.startsWith(">=")) { prefix =Credit.ge; number = number.substring(2); }
+			else if (number.startsWith("<")) { prefix = Credit.lt; number = number.substring(1); }
+			else if (number.startsWith(">")) { prefix = Credit.gt; number = number.substring(1); }
+			else if (number.startsWith("=")) { prefix = Credit.eq; number = number.substring(1); }
+			String im = null;
+			try {
+				float a = Float.parseFloat(number);
+				switch (prefix) {
+					case eq: min = max = a; break; // = a
+					case le: max = a; break; // <= a
+					case ge: min = a; break; // >= a
+					case lt: max = a - 1; break; // < a
+					case gt: min = a + 1; break; // > a
+				}
+			} catch (NumberFormatException e) {
+				Matcher m = Pattern.compile("([0-9]+\\.?[0-9]*)([^0-9\\.].*)").matcher(number);
+				if (m.matches()) {
+					float a = Float.parseFloat(m.group(1));
+					im = m.group(2).trim();
 					switch (prefix) {
 						case eq: min = max = a; break; // = a
 						case le: max = a; break; // <= a
@@ -1763,90 +1900,86 @@ public class StatusPageSuggestionsAction implements OnlineSectioningAction<List<
 						case lt: max = a - 1; break; // < a
 						case gt: min = a + 1; break; // > a
 					}
+				}
+			}
+			if (term.contains("..")) {
+				try {
+					String a = term.substring(0, term.indexOf('.'));
+					String b = term.substring(term.indexOf("..") + 2);
+					min = Float.parseFloat(a); max = Float.parseFloat(b);
 				} catch (NumberFormatException e) {
-					Matcher m = Pattern.compile("([0-9]+\\.?[0-9]*)([^0-9\\.].*)").matcher(number);
+					Matcher m = Pattern.compile("([0-9]+\\.?[0-9]*)\\.\\.([0-9]+\\.?[0-9]*)([^0-9].*)").matcher(term);
 					if (m.matches()) {
-						float a = Float.parseFloat(m.group(1));
-						im = m.group(2).trim();
-						switch (prefix) {
-							case eq: min = max = a; break; // = a
-							case le: max = a; break; // <= a
-							case ge: min = a; break; // >= a
-							case lt: max = a - 1; break; // < a
-							case gt: min = a + 1; break; // > a
-						}
-					}
-				}
-				if (term.contains("..")) {
-					try {
-						String a = term.substring(0, term.indexOf('.'));
-						String b = term.substring(term.indexOf("..") + 2);
-						min = Float.parseFloat(a); max = Float.parseFloat(b);
-					} catch (NumberFormatException e) {
-						Matcher m = Pattern.compile("([0-9]+\\.?[0-9]*)\\.\\.([0-9]+\\.?[0-9]*)([^0-9].*)").matcher(term);
-						if (m.matches()) {
-							min = Float.parseFloat(m.group(1));
-							max = Float.parseFloat(m.group(2));
-							im = m.group(3).trim();
-						}
+						min = Float.parseFloat(m.group(1));
+						max = Float.parseFloat(m.group(2));
+						im = m.group(3).trim();
 					}
 				}
+			}
+			final float fMin = min, fMax = max;
+			final String fIm = im;
+			return m -> {
 				float credit = 0;
-				for (XRequest r: student().getRequests()) {
+				for (XRequest r: m.student().getRequests()) {
 					if (r instanceof XCourseRequest) {
 						XCourseRequest cr = (XCourseRequest)r;
 						if (cr.getEnrollment() == null) continue;
-						XOffering o = (server() == null ? null : server().getOffering(cr.getEnrollment().getOfferingId()));
+						XOffering o = (m.server() == null ? null : m.server().getOffering(cr.getEnrollment().getOfferingId()));
 						XConfig g = (o == null ? null : o.getConfig(cr.getEnrollment().getConfigId()));
 						if (g != null) {
-							if ("!".equals(im) && g.getInstructionalMethod() != null && !g.getInstructionalMethod().getReference().equals(iServer.getAcademicSession().getDefaultInstructionalMethod())) continue;
-							if (im != null && !"!".equals(im) && (g.getInstructionalMethod() == null || !im.equalsIgnoreCase(g.getInstructionalMethod().getReference()))) continue;
+							if ("!".equals(fIm) && g.getInstructionalMethod() != null && !g.getInstructionalMethod().getReference().equals(m.server().getAcademicSession().getDefaultInstructionalMethod())) continue;
+							if (fIm != null && !"!".equals(fIm) && (g.getInstructionalMethod() == null || !fIm.equalsIgnoreCase(g.getInstructionalMethod().getReference()))) continue;
 							for (XSubpart xs: g.getSubparts())
 								credit += xs.getCreditValue(cr.getEnrollment().getCourseId());
 						}
 					}
 				}
-				return min <= credit && credit <= max;
-			} else if ("overlap".equals(attr)) {
-				int min = 0, max = Integer.MAX_VALUE;
-				Credit prefix = Credit.eq;
-				String number = term;
-				if (number.startsWith("<=")) { prefix = Credit.le; number = number.substring(2); }
-				else if (number.startsWith(">=")) { prefix =Credit.ge; number = number.substring(2); }
-				else if (number.startsWith("<")) { prefix = Credit.lt; number = number.substring(1); }
-				else if (number.startsWith(">")) { prefix = Credit.gt; number = number.substring(1); }
-				else if (number.startsWith("=")) { prefix = Credit.eq; number = number.substring(1); }
+				return fMin <= credit && credit <= fMax;
+			};
+		}
+		
+		private static Predicate<StudentMatcher> compileOverlap(String term) {
+			int min = 0, max = Integer.MAX_VALUE;
+			Credit prefix = Credit.eq;
+			String number = term;
+			if (number.startsWith("<=")) { prefix = Credit.le; number = number.substring(2); }
+			else if (number.startsWith(">=")) { prefix =Credit.ge; number = number.substring(2); }
+			else if (number.startsWith("<")) { prefix = Credit.lt; number = number.substring(1); }
+			else if (number.startsWith(">")) { prefix = Credit.gt; number = number.substring(1); }
+			else if (number.startsWith("=")) { prefix = Credit.eq; number = number.substring(1); }
+			try {
+				int a = Integer.parseInt(number);
+				switch (prefix) {
+					case eq: min = max = a; break; // = a
+					case le: max = a; break; // <= a
+					case ge: min = a; break; // >= a
+					case lt: max = a - 1; break; // < a
+					case gt: min = a + 1; break; // > a
+				}
+			} catch (NumberFormatException e) {}
+			if (term.contains("..")) {
 				try {
-					int a = Integer.parseInt(number);
-					switch (prefix) {
-						case eq: min = max = a; break; // = a
-						case le: max = a; break; // <= a
-						case ge: min = a; break; // >= a
-						case lt: max = a - 1; break; // < a
-						case gt: min = a + 1; break; // > a
-					}
+					String a = term.substring(0, term.indexOf('.'));
+					String b = term.substring(term.indexOf("..") + 2);
+					min = Integer.parseInt(a); max = Integer.parseInt(b);
 				} catch (NumberFormatException e) {}
-				if (term.contains("..")) {
-					try {
-						String a = term.substring(0, term.indexOf('.'));
-						String b = term.substring(term.indexOf("..") + 2);
-						min = Integer.parseInt(a); max = Integer.parseInt(b);
-					} catch (NumberFormatException e) {}
-				}
+			}
+			final int fMin = min, fMax = max;
+			return m -> {
 				int share = 0;
-				for (XRequest r: student().getRequests()) {
+				for (XRequest r: m.student().getRequests()) {
 					if (r instanceof XCourseRequest) {
 						XCourseRequest cr = (XCourseRequest)r;
 						if (cr.getEnrollment() == null) continue;
-						XOffering o = (server() == null ? null : server().getOffering(cr.getEnrollment().getOfferingId()));
+						XOffering o = (m.server() == null ? null : m.server().getOffering(cr.getEnrollment().getOfferingId()));
 						if (o != null)
 							for (XSection section: o.getSections(cr.getEnrollment())) {
 								if (section.getTime() == null) continue;
-								for (XRequest q: student().getRequests()) {
+								for (XRequest q: m.student().getRequests()) {
 									if (q instanceof XCourseRequest) {
 										XEnrollment otherEnrollment = ((XCourseRequest)q).getEnrollment();
 										if (otherEnrollment == null) continue;
-										XOffering otherOffering = server().getOffering(otherEnrollment.getOfferingId());
+										XOffering otherOffering = m.server().getOffering(otherEnrollment.getOfferingId());
 										for (XSection otherSection: otherOffering.getSections(otherEnrollment)) {
 											if (otherSection.equals(section) || otherSection.getTime() == null) continue;
 											if (section.getTime().hasIntersection(otherSection.getTime()) && !section.isToIgnoreStudentConflictsWith(o.getDistributions(), otherSection.getSectionId()) && section.getSectionId() < otherSection.getSectionId()) {
@@ -1858,92 +1991,25 @@ public class StatusPageSuggestionsAction implements OnlineSectioningAction<List<
 							}
 					}
 				}
-				return min <= share && share <= max;
-			} else if ("override".equals(attr)) {
-				if ("null".equalsIgnoreCase(term) || "None".equalsIgnoreCase(term)) {
-					for (XRequest request: student().getRequests()) {
-						if (request instanceof XCourseRequest) {
-							XCourseRequest cr = (XCourseRequest)request;
-							for (XCourseId course: cr.getCourseIds()) {
-								XOverride o = cr.getOverride(course);
-								if (o == null) return true;
-							}
-						}
-					}
-					return false;
-				}
-				CourseRequestOverrideStatus status = null;
-				for (CourseRequestOverrideStatus s: CourseRequestOverrideStatus.values()) {
-					if (s.name().equalsIgnoreCase(term)) { status = s; break; }
-				}
-				if (status == null) return false;
-				if (student().getMaxCreditOverride() != null && student().getMaxCreditOverride().getStatus() == status.ordinal()) return true;
-				for (XRequest request: student().getRequests()) {
-					if (request instanceof XCourseRequest) {
-						XCourseRequest cr = (XCourseRequest)request;
-						for (XCourseId course: cr.getCourseIds()) {
-							XOverride o = cr.getOverride(course);
-							if (o != null && o.getStatus() == status.ordinal()) return true;
-						}
-					}
-				}
-				return false;
-				
-			} else if ("mode".equals(attr)) {
-				if (eq("My Students", term)) {
-					return iMyStudent;
-				}
-				if (eq("My Advised", term)) {
-					return iMyStudent && student().hasAdvisorRequests();
-				}
-				if (eq("My Not Advised", term)) {
-					return iMyStudent && !student().hasAdvisorRequests();
-				}
-				if (eq("Advised", term)) {
-					return student().hasAdvisorRequests();
-				}
-				if (eq("Not Advised", term)) {
-					return !student().hasAdvisorRequests();
-				}
-				return true;
-			} else if ("btb".equals(attr)) {
-				if ("prefer".equalsIgnoreCase(term) || "preferred".equalsIgnoreCase(term))
-					return student().getBackToBackPreference() == BackToBackPreference.BTB_PREFERRED;
-				else if ("disc".equalsIgnoreCase(term) || "discouraged".equalsIgnoreCase(term))
-					return student().getBackToBackPreference() == BackToBackPreference.BTB_DISCOURAGED;
-				else
-					return student().getBackToBackPreference() == BackToBackPreference.NO_PREFERENCE;
-			} else if ("online".equals(attr)) {
-				if ("prefer".equalsIgnoreCase(term) || "preferred".equalsIgnoreCase(term))
-					return student().getModalityPreference() == ModalityPreference.ONLINE_PREFERRED;
-				else if ("require".equalsIgnoreCase(term) || "required".equalsIgnoreCase(term))
-					return student().getModalityPreference() == ModalityPreference.ONLINE_REQUIRED;
-				else if ("disc".equalsIgnoreCase(term) || "discouraged".equalsIgnoreCase(term))
-					return student().getModalityPreference() == ModalityPreference.ONILNE_DISCOURAGED;
-				else if ("no".equalsIgnoreCase(term) || "no-preference".equalsIgnoreCase(term))
-					return student().getModalityPreference() == ModalityPreference.NO_PREFERENCE;
-			} else if (attr != null) {
-				for (XStudent.XGroup group: student().getGroups())
-					if (eq(group.getType(), attr.replace('_', ' ')) && like(group.getAbbreviation(), term)) return true;
-			}
-			return false;
+				return fMin <= share && share <= fMax;
+			};
 		}
 		
-		private boolean eq(String name, String term) {
+		private static boolean eq(String name, String term) {
 			if (name == null) return false;
 			return name.equalsIgnoreCase(term);
 		}
 		
-		private boolean like(String name, String term) {
-			if (name == null) return false;
+		private static Predicate<String> like(String term) {
 			if (term.indexOf('%') >= 0) {
-				return name.matches("(?i)" + term.replaceAll("%", ".*"));
+				final Pattern pattern = Pattern.compile("(?i)" + term.replaceAll("%", ".*"));
+				return name -> name != null && pattern.matcher(name).matches();
 			} else {
-				return name.equalsIgnoreCase(term);
+				return name -> name != null && name.equalsIgnoreCase(term);
 			}
 		}
 
-		private boolean has(String name, String term) {
+		private static boolean has(String name, String term) {
 			if (name == null) return false;
 			if (eq(name, term)) return true;
 			for (String t: name.split(" |,"))
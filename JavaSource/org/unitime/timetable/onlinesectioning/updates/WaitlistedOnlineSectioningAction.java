@@ -206,7 +206,7 @@ public abstract class WaitlistedOnlineSectioningAction<T> implements OnlineSecti
         	if (priority == StudentPriority.Normal) break;
         	Query query = iPriorityStudentQuery.get(priority);
         	String groupRef = iPriorityStudentGroupReference.get(priority);
-        	if (query != null && query.match(new StatusPageSuggestionsAction.StudentMatcher(student, server.getAcademicSession().getDefaultSectioningStatus(), server, false))) {
+        	if (query != null && query.match(new StatusPageSuggestionsAction.StudentMatcher(student, server.getAcademicSession().getDefaultSectioningStatus(), server, false), StatusPageSuggestionsAction.StudentMatcher.COMPILER)) {
             	return priority;
         	} else if (groupRef != null) {
         		for (XGroup g: student.getGroups()) {
@@ -20,7 +20,6 @@
 package org.unitime.timetable.reports.pointintimedata;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import org.hibernate.Session;
 import org.unitime.timetable.model.Department;
@@ -74,7 +73,7 @@ public class AllWSCHByDepartment extends WSCHByDepartment {
 
 	@Override
 	public void createWeeklyStudentContactHoursByDepartmentReportFor(PointInTimeData pointInTimeData, Session hibSession) {
-		HashSet<Long> processedClasses = new HashSet<Long>();
+		PointInTimeDataCube cube = PointInTimeDataCube.getInstance(pointInTimeData, hibSession);
 		for(Department d : pointInTimeData.getSession().getDepartments()) {
 			if (!d.getSubjectAreas().isEmpty()) {
 				float deptTotalWsch = 0;
@@ -84,20 +83,13 @@ public class AllWSCHByDepartment extends WSCHByDepartment {
 				float deptTotalNotOrgWsch = 0;
 				float deptTotalNotOrgWch = 0;
 					
-				for (Long pioUid : findAllPitInstructionalOfferingUniqueIdsForDepartment(pointInTimeData, d.getUniqueId(), hibSession)) {
-					for(PitClass pc : findAllPitClassesForPitInstructionalOfferingId(pointInTimeData, pioUid, hibSession)) {
-						if (processedClasses.contains(pc.getUniqueId())){
-							continue;
-						}
-						processedClasses.add(pc.getUniqueId());
-						
-						deptTotalWch += weeklyClassHours(pc);
-						deptTotalWsch += weeklyStudentClassHours(pc);
-						deptTotalOrgWsch += pc.getOrganizedWeeklyStudentClassHours(getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
-						deptTotalOrgWch += pc.getOrganizedWeeklyClassHours(getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
-						deptTotalNotOrgWsch += pc.getNotOrganizedWeeklyStudentClassHours(getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
-						deptTotalNotOrgWch += pc.getNotOrganizedWeeklyClassHours(getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
-					}
+				for (int c : cube.getDepartmentClasses(d.getUniqueId())) {
+					deptTotalWch += weeklyClassHours(cube, c);
+					deptTotalWsch += weeklyStudentClassHours(cube, c);
+					deptTotalOrgWsch += cube.getOrganizedWeeklyStudentClassHours(c, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
+					deptTotalOrgWch += cube.getOrganizedWeeklyClassHours(c, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
+					deptTotalNotOrgWsch += cube.getNotOrganizedWeeklyStudentClassHours(c, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
+					deptTotalNotOrgWch += cube.getNotOrganizedWeeklyClassHours(c, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
 				}
 
 				ArrayList<String> row = new ArrayList<String>();
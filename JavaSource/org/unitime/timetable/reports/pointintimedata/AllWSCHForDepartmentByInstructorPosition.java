@@ -22,15 +22,13 @@ package org.unitime.timetable.reports.pointintimedata;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 
 import org.hibernate.Session;
 import org.unitime.timetable.model.Department;
 import org.unitime.timetable.model.PitClass;
-import org.unitime.timetable.model.PitClassInstructor;
 import org.unitime.timetable.model.PointInTimeData;
 import org.unitime.timetable.model.PositionType;
-import org.unitime.timetable.model.TeachingResponsibility;
+import org.unitime.timetable.model.dao.PositionTypeDAO;
 
 public class AllWSCHForDepartmentByInstructorPosition extends WSCHByDepartment {
 	private ArrayList<Long> iDepartmentIds;
@@ -88,52 +86,46 @@ public class AllWSCHForDepartmentByInstructorPosition extends WSCHByDepartment {
 
 	@Override
 	public void createWeeklyStudentContactHoursByDepartmentReportFor(PointInTimeData pointInTimeData, Session hibSession) {
-		HashSet<Long> processedClasses = new HashSet<Long>();
+		PointInTimeDataCube cube = PointInTimeDataCube.getInstance(pointInTimeData, hibSession);
 		for(Long deptId : getDepartmentIds()){
 			Department d =  hibSession.createQuery("from Department d where d.uniqueId = :id", Department.class).setParameter("id", deptId).setCacheable(true).uniqueResult();
-			HashMap<PositionType, PositionHours> positionClassHours = new HashMap<PositionType, PositionHours>();
-			for (Long pioUid : findAllPitInstructionalOfferingUniqueIdsForDepartment(pointInTimeData, deptId, hibSession)) {
-				for(PitClass pc : findAllPitClassesForPitInstructionalOfferingId(pointInTimeData, pioUid, hibSession)) {
-					if (processedClasses.contains(pc.getUniqueId())){
-						continue;
+			HashMap<Long, PositionHours> positionClassHours = new HashMap<Long, PositionHours>();
+			for (int c : cube.getDepartmentClasses(deptId)) {
+				if (!cube.hasInstructors(c)) {
+					PositionHours ph = positionClassHours.get(null);
+					if (ph == null) {
+						ph = new PositionHours(null, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
+						positionClassHours.put(null, ph);
 					}
-					processedClasses.add(pc.getUniqueId());
-
-					if (pc.getPitClassInstructors() == null || pc.getPitClassInstructors().isEmpty()) {
+					ph.addClassHours(cube, c, -1);
+				} else {
+					int numInstructors = 0;
+					for (int i = cube.getInstructorStart(c); i < cube.getInstructorEnd(c); i++) {
+						Long positionTypeId = (cube.getPositionTypeId(i) < 0 ? null : cube.getPositionTypeId(i));
+						PositionHours ph = positionClassHours.get(positionTypeId);
+						if (ph == null) {
+							ph = new PositionHours(positionTypeId, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
+							positionClassHours.put(positionTypeId, ph);
+						}
+						if(ph.addClassHours(cube, c, i)) {
+							numInstructors++;
+						}
+					}
+					if (numInstructors == 0){
 						PositionHours ph = positionClassHours.get(null);
 						if (ph == null) {
 							ph = new PositionHours(null, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
 							positionClassHours.put(null, ph);
 						}
-						ph.addClassHours(null, pc);
-					} else {
-						int numInstructors = 0;
-						for(PitClassInstructor pci : pc.getPitClassInstructors()) {
-							PositionHours ph = positionClassHours.get(pci.getPitDepartmentalInstructor().getPositionType());
-							if (ph == null) {
-								ph = new PositionHours(pci.getPitDepartmentalInstructor().getPositionType(), getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
-								positionClassHours.put(pci.getPitDepartmentalInstructor().getPositionType(), ph);
-							}
-							if(ph.addClassHours(pci, pc)) {
-								numInstructors++;
-							}
-						}
-						if (numInstructors == 0){
-							PositionHours ph = positionClassHours.get(null);
-							if (ph == null) {
-								ph = new PositionHours(null, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm());
-								positionClassHours.put(null, ph);
-							}
-							ph.addClassHours(null, pc);
-						}
-	
+						ph.addClassHours(cube, c, -1);
 					}
 				}
 			}
 
 			
-			for(PositionType pt : positionClassHours.keySet()) {
-				PositionHours ph = positionClassHours.get(pt);
+			for(Long ptId : positionClassHours.keySet()) {
+				PositionHours ph = positionClassHours.get(ptId);
+				PositionType pt = (ptId == null ? null : PositionTypeDAO.getInstance().get(ptId, hibSession));
 				ArrayList<String> row = new ArrayList<String>();
 				row.add(d.getDeptCode());
 				row.add(d.getAbbreviation());
@@ -168,12 +160,12 @@ public class AllWSCHForDepartmentByInstructorPosition extends WSCHByDepartment {
 		private float iWeeklyStudentClassHours = 0.0f;
 		private float iOrganizedWeeklyStudentClassHours = 0.0f;
 		private float iNotOrganizedWeeklyStudentClassHours = 0.0f;
-		private PositionType iPositionType;
+		private Long iPositionTypeId;
 		private Float iStandardMinutesInReportingHour;
 		private Float iStandardWeeksInReportingTerm;
 		
-		public PositionType getPositionType() {
-			return iPositionType;
+		public Long getPositionTypeId() {
+			return iPositionTypeId;
 		}
 
 		public float getOrganizedWeeklyClassHours() {
@@ -200,47 +192,47 @@ public class AllWSCHForDepartmentByInstructorPosition extends WSCHByDepartment {
 			return this.iWeeklyStudentClassHours;
 		}
 
-		public PositionHours(PositionType positionType, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
-			this.iPositionType = positionType;
+		public PositionHours(Long positionTypeId, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+			this.iPositionTypeId = positionTypeId;
 			this.iStandardMinutesInReportingHour = standardMinutesInReportingHour;
 			this.iStandardWeeksInReportingTerm = standardWeeksInReportingTerm;
 		}
 		
-		public boolean addClassHours(PitClassInstructor pitClassInstructor, PitClass pitClass) {
-			if (pitClassInstructor == null){
-				if (this.iPositionType == null) {
-					updateHours(pitClass, 100);
+		public boolean addClassHours(PointInTimeDataCube cube, int classIndex, int instructorIndex) {
+			if (instructorIndex < 0){
+				if (this.iPositionTypeId == null) {
+					updateHours(cube, classIndex, 100);
 					return(true);
 				}
 				return(false);
 			} else {
-				if (pitClassInstructor.getResponsibility() != null && pitClassInstructor.getResponsibility().hasOption(TeachingResponsibility.Option.auxiliary)) {
+				if (cube.isAuxiliary(instructorIndex)) {
 					return(false);
 				}
-				if (pitClassInstructor.getNormalizedPercentShare().intValue() == 0){
+				if (cube.getNormalizedPercentShare(instructorIndex) == 0){
 					return(false);
 				}
-				if (pitClassInstructor.getPitDepartmentalInstructor().getPositionType() == null) {
-					if (this.iPositionType == null) {
-						updateHours(pitClass, pitClassInstructor.getNormalizedPercentShare());
+				if (cube.getPositionTypeId(instructorIndex) < 0) {
+					if (this.iPositionTypeId == null) {
+						updateHours(cube, classIndex, cube.getNormalizedPercentShare(instructorIndex));
 						return(true);
 					}				
 					return(false);
-				} else if (pitClassInstructor.getPitDepartmentalInstructor().getPositionType().equals(getPositionType())) {
-					updateHours(pitClass, pitClassInstructor.getNormalizedPercentShare());
+				} else if (getPositionTypeId() != null && cube.getPositionTypeId(instructorIndex) == getPositionTypeId().longValue()) {
+					updateHours(cube, classIndex, cube.getNormalizedPercentShare(instructorIndex));
 					return(true);
 				}
 				return(false);
 			} 
 		}
 		
-		private void updateHours(PitClass pitClass, Integer percentShare) {
-			iWeeklyClassHours += (pitClass.getAllWeeklyClassHours(iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
-			iOrganizedWeeklyClassHours += (pitClass.getOrganizedWeeklyClassHours(iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
-			iNotOrganizedWeeklyClassHours += (pitClass.getNotOrganizedWeeklyClassHours(iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
-			iWeeklyStudentClassHours += (pitClass.getAllWeeklyStudentClassHours(iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
-			iOrganizedWeeklyStudentClassHours += (pitClass.getOrganizedWeeklyStudentClassHours(iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare  / 100.0f));
-			iNotOrganizedWeeklyStudentClassHours += (pitClass.getNotOrganizedWeeklyStudentClassHours(iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));										
+		private void updateHours(PointInTimeDataCube cube, int c, Integer percentShare) {
+			iWeeklyClassHours += (cube.getAllWeeklyClassHours(c, iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
+			iOrganizedWeeklyClassHours += (cube.getOrganizedWeeklyClassHours(c, iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
+			iNotOrganizedWeeklyClassHours += (cube.getNotOrganizedWeeklyClassHours(c, iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
+			iWeeklyStudentClassHours += (cube.getAllWeeklyStudentClassHours(c, iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));
+			iOrganizedWeeklyStudentClassHours += (cube.getOrganizedWeeklyStudentClassHours(c, iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare  / 100.0f));
+			iNotOrganizedWeeklyStudentClassHours += (cube.getNotOrganizedWeeklyStudentClassHours(c, iStandardMinutesInReportingHour, iStandardWeeksInReportingTerm) * (percentShare / 100.0f));										
 		}
 	}
 
@@ -0,0 +1,330 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.reports.pointintimedata;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.PointInTimeData;
+import org.unitime.timetable.model.TeachingResponsibility;
+import org.unitime.timetable.util.Constants;
+
+/**
+ * Columnar in-memory copy of one point-in-time data snapshot.<br>
+ * The classes of the snapshot are loaded by a handful of queries (classes, enrollment counts, utilization periods, and instructors)
+ * into primitive arrays indexed by the class index, so that a report can be computed as an aggregation over the arrays instead of
+ * walking the Hibernate graph of each class. The utilization periods and instructors of the i-th class are stored in flattened arrays
+ * between {@link PointInTimeDataCube#getPeriodStart(int)} and {@link PointInTimeDataCube#getPeriodEnd(int)}
+ * (respectively {@link PointInTimeDataCube#getInstructorStart(int)} and {@link PointInTimeDataCube#getInstructorEnd(int)}).
+ * Since a snapshot does not change once it is created, the cube is cached (softly referenced) by the snapshot unique id.
+ *
+ * @author Tomas Muller
+ */
+public class PointInTimeDataCube {
+	private static Log sLog = LogFactory.getLog(PointInTimeDataCube.class);
+	private static Map<Long, SoftReference<PointInTimeDataCube>> sCache = new ConcurrentHashMap<Long, SoftReference<PointInTimeDataCube>>();
+
+	private Long iPointInTimeDataId;
+	private int iNrClasses;
+
+	// class columns
+	private long[] iClassId, iOfferingId, iDepartmentId;
+	private boolean[] iOrganized;
+	private int[] iEnrollment, iNrUniquePeriods;
+
+	// utilization periods (within the session classes dates), flattened by class
+	private int[] iPeriodStart;
+	private long[] iPeriodTime, iPeriodLocation;
+
+	// instructors, flattened by class
+	private int[] iInstructorStart;
+	private long[] iInstructorId, iPositionTypeId;
+	private int[] iPercentShare;
+	private boolean[] iAuxiliary;
+
+	private Map<Long, int[]> iDepartmentClasses = new HashMap<Long, int[]>();
+
+	/**
+	 * Cube of the given point-in-time data, loaded when not cached
+	 */
+	public static PointInTimeDataCube getInstance(PointInTimeData pointInTimeData, org.hibernate.Session hibSession) {
+		SoftReference<PointInTimeDataCube> ref = sCache.get(pointInTimeData.getUniqueId());
+		PointInTimeDataCube cube = (ref == null ? null : ref.get());
+		if (cube == null) {
+			cube = new PointInTimeDataCube(pointInTimeData, hibSession);
+			sCache.put(pointInTimeData.getUniqueId(), new SoftReference<PointInTimeDataCube>(cube));
+		}
+		return cube;
+	}
+
+	/**
+	 * Drop the cached cube of the given point-in-time data (e.g., when the snapshot is deleted)
+	 */
+	public static void invalidate(Long pointInTimeDataId) {
+		if (pointInTimeDataId == null)
+			sCache.clear();
+		else
+			sCache.remove(pointInTimeDataId);
+	}
+
+	protected PointInTimeDataCube(PointInTimeData pointInTimeData, org.hibernate.Session hibSession) {
+		long t0 = System.currentTimeMillis();
+		iPointInTimeDataId = pointInTimeData.getUniqueId();
+
+		List<Object[]> classes = hibSession.createQuery(
+				"select distinct pc.uniqueId, pio.uniqueId, sa.department.uniqueId, it.organized" +
+				" from PitClass pc" +
+				" inner join pc.pitSchedulingSubpart as pss" +
+				" inner join pss.itype as it" +
+				" inner join pss.pitInstrOfferingConfig as pioc" +
+				" inner join pioc.pitInstructionalOffering as pio" +
+				" inner join pio.pitCourseOfferings as pco" +
+				" inner join pco.subjectArea as sa" +
+				" where pio.pointInTimeData.uniqueId = :pitdUid and pco.isControl = true" +
+				" order by pc.uniqueId", Object[].class)
+				.setParameter("pitdUid", iPointInTimeDataId)
+				.list();
+		iNrClasses = classes.size();
+		iClassId = new long[iNrClasses]; iOfferingId = new long[iNrClasses]; iDepartmentId = new long[iNrClasses];
+		iOrganized = new boolean[iNrClasses];
+		iEnrollment = new int[iNrClasses]; iNrUniquePeriods = new int[iNrClasses];
+		Map<Long, Integer> index = new HashMap<Long, Integer>();
+		Map<Long, List<Integer>> departmentClasses = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < iNrClasses; i++) {
+			Object[] o = classes.get(i);
+			iClassId[i] = (Long)o[0];
+			iOfferingId[i] = (Long)o[1];
+			iDepartmentId[i] = (Long)o[2];
+			iOrganized[i] = Boolean.TRUE.equals(o[3]);
+			index.put(iClassId[i], i);
+			List<Integer> list = departmentClasses.get(iDepartmentId[i]);
+			if (list == null) {
+				list = new ArrayList<Integer>();
+				departmentClasses.put(iDepartmentId[i], list);
+			}
+			list.add(i);
+		}
+		for (Map.Entry<Long, List<Integer>> e: departmentClasses.entrySet()) {
+			int[] idx = new int[e.getValue().size()];
+			for (int i = 0; i < idx.length; i++) idx[i] = e.getValue().get(i);
+			iDepartmentClasses.put(e.getKey(), idx);
+		}
+
+		for (Object[] o: hibSession.createQuery(
+				"select psce.pitClass.uniqueId, count(psce)" +
+				" from PitStudentClassEnrollment psce" +
+				" where psce.pitStudent.pointInTimeData.uniqueId = :pitdUid" +
+				" group by psce.pitClass.uniqueId", Object[].class)
+				.setParameter("pitdUid", iPointInTimeDataId)
+				.list()) {
+			Integer i = index.get((Long)o[0]);
+			if (i != null) iEnrollment[i] = ((Number)o[1]).intValue();
+		}
+
+		loadPeriods(pointInTimeData, index, hibSession);
+
+		loadInstructors(index, hibSession);
+
+		sLog.info("Point-in-time data " + pointInTimeData.getName() + " loaded in " + (System.currentTimeMillis() - t0) + " ms (" +
+				iNrClasses + " classes, " + iPeriodTime.length + " periods, " + iInstructorId.length + " instructors).");
+	}
+
+	private void loadPeriods(PointInTimeData pointInTimeData, Map<Long, Integer> index, org.hibernate.Session hibSession) {
+		Date begin = pointInTimeData.getSession().getSessionBeginDateTime();
+		Date end = pointInTimeData.getSession().getClassesEndDateTime();
+		List<List<long[]>> periods = new ArrayList<List<long[]>>(iNrClasses);
+		for (int i = 0; i < iNrClasses; i++) periods.add(null);
+		Calendar c = Calendar.getInstance(Locale.US);
+		int total = 0;
+		try (Stream<Object[]> stream = hibSession.createQuery(
+				"select pce.pitClass.uniqueId, pcm.meetingDate, pcm.locationPermanentId, pcmup.timeSlot" +
+				" from PitClassMeetingUtilPeriod pcmup" +
+				" inner join pcmup.pitClassMeeting as pcm" +
+				" inner join pcm.pitClassEvent as pce" +
+				" where pce.pitClass.pitSchedulingSubpart.pitInstrOfferingConfig.pitInstructionalOffering.pointInTimeData.uniqueId = :pitdUid", Object[].class)
+				.setParameter("pitdUid", iPointInTimeDataId)
+				.setFetchSize(1000)
+				.getResultStream()) {
+			for (Object[] o: (Iterable<Object[]>)stream::iterator) {
+				Integer i = index.get((Long)o[0]);
+				Date meetingDate = (Date)o[1];
+				if (i == null || begin.compareTo(meetingDate) > 0 || end.compareTo(meetingDate) < 0) continue;
+				// same as PitClassMeetingUtilPeriod.periodDateTime()
+				c.setTime(meetingDate);
+				int min = ((Integer)o[3]).intValue() * Constants.SLOT_LENGTH_MIN + Constants.FIRST_SLOT_TIME_MIN;
+				c.set(Calendar.HOUR, min / 60);
+				c.set(Calendar.MINUTE, min % 60);
+				List<long[]> list = periods.get(i);
+				if (list == null) {
+					list = new ArrayList<long[]>();
+					periods.set(i, list);
+				}
+				list.add(new long[] {c.getTimeInMillis(), o[2] == null ? -1l : ((Long)o[2]).longValue()});
+				total ++;
+			}
+		}
+
+		iPeriodStart = new int[iNrClasses + 1];
+		iPeriodTime = new long[total]; iPeriodLocation = new long[total];
+		int idx = 0;
+		Set<Long> unique = new HashSet<Long>();
+		Set<String> locationPeriods = new HashSet<String>();
+		for (int i = 0; i < iNrClasses; i++) {
+			iPeriodStart[i] = idx;
+			List<long[]> list = periods.get(i);
+			if (list == null) continue;
+			unique.clear(); locationPeriods.clear();
+			for (long[] p: list) {
+				// a period is counted once per location
+				if (!locationPeriods.add(p[1] + ":" + p[0])) continue;
+				iPeriodTime[idx] = p[0]; iPeriodLocation[idx] = p[1]; idx ++;
+				unique.add(p[0]);
+			}
+			iNrUniquePeriods[i] = unique.size();
+		}
+		iPeriodStart[iNrClasses] = idx;
+	}
+
+	private void loadInstructors(Map<Long, Integer> index, org.hibernate.Session hibSession) {
+		List<List<Object[]>> instructors = new ArrayList<List<Object[]>>(iNrClasses);
+		for (int i = 0; i < iNrClasses; i++) instructors.add(null);
+		int total = 0;
+		for (Object[] o: hibSession.createQuery(
+				"select pci.pitClassInstructing.uniqueId, pdi.uniqueId, pci.normalizedPercentShare, pt.uniqueId, r.options" +
+				" from PitClassInstructor pci" +
+				" inner join pci.pitDepartmentalInstructor as pdi" +
+				" left outer join pdi.positionType as pt" +
+				" left outer join pci.responsibility as r" +
+				" where pdi.pointInTimeData.uniqueId = :pitdUid" +
+				" order by pci.uniqueId", Object[].class)
+				.setParameter("pitdUid", iPointInTimeDataId)
+				.list()) {
+			Integer i = index.get((Long)o[0]);
+			if (i == null) continue;
+			List<Object[]> list = instructors.get(i);
+			if (list == null) {
+				list = new ArrayList<Object[]>();
+				instructors.set(i, list);
+			}
+			list.add(o);
+			total ++;
+		}
+
+		iInstructorStart = new int[iNrClasses + 1];
+		iInstructorId = new long[total]; iPositionTypeId = new long[total];
+		iPercentShare = new int[total]; iAuxiliary = new boolean[total];
+		int idx = 0;
+		for (int i = 0; i < iNrClasses; i++) {
+			iInstructorStart[i] = idx;
+			List<Object[]> list = instructors.get(i);
+			if (list == null) continue;
+			for (Object[] o: list) {
+				iInstructorId[idx] = (Long)o[1];
+				iPercentShare[idx] = (o[2] == null ? 0 : ((Number)o[2]).intValue());
+				iPositionTypeId[idx] = (o[3] == null ? -1l : ((Long)o[3]).longValue());
+				iAuxiliary[idx] = (o[4] != null && (((Number)o[4]).intValue() & TeachingResponsibility.Option.auxiliary.toggle()) != 0);
+				idx ++;
+			}
+		}
+		iInstructorStart[iNrClasses] = idx;
+	}
+
+	public Long getPointInTimeDataId() { return iPointInTimeDataId; }
+
+	/** Number of classes (class index goes from 0 to the number of classes - 1) */
+	public int getNrClasses() { return iNrClasses; }
+
+	public long getClassId(int c) { return iClassId[c]; }
+	public long getOfferingId(int c) { return iOfferingId[c]; }
+	/** Department of the controlling course of the class */
+	public long getDepartmentId(int c) { return iDepartmentId[c]; }
+	public boolean isOrganized(int c) { return iOrganized[c]; }
+	/** Number of student class enrollments */
+	public int getEnrollment(int c) { return iEnrollment[c]; }
+	/** Number of distinct utilization periods (regardless of the location) within the classes dates of the session */
+	public int getNrUniquePeriods(int c) { return iNrUniquePeriods[c]; }
+
+	/** Indexes of the classes of the given department (an empty array if the department has no classes) */
+	public int[] getDepartmentClasses(Long departmentId) {
+		int[] classes = iDepartmentClasses.get(departmentId);
+		return (classes == null ? new int[0] : classes);
+	}
+
+	public int getPeriodStart(int c) { return iPeriodStart[c]; }
+	public int getPeriodEnd(int c) { return iPeriodStart[c + 1]; }
+	/** Date and time of a utilization period, see PitClassMeetingUtilPeriod.periodDateTime() */
+	public long getPeriodTime(int p) { return iPeriodTime[p]; }
+	/** Location permanent id of a utilization period (-1 when not known) */
+	public long getPeriodLocation(int p) { return iPeriodLocation[p]; }
+
+	public int getInstructorStart(int c) { return iInstructorStart[c]; }
+	public int getInstructorEnd(int c) { return iInstructorStart[c + 1]; }
+	public boolean hasInstructors(int c) { return iInstructorStart[c] < iInstructorStart[c + 1]; }
+	public long getInstructorId(int i) { return iInstructorId[i]; }
+	/** Position type id of an instructor (-1 when the instructor has no position type) */
+	public long getPositionTypeId(int i) { return iPositionTypeId[i]; }
+	public int getNormalizedPercentShare(int i) { return iPercentShare[i]; }
+	public boolean isAuxiliary(int i) { return iAuxiliary[i]; }
+
+	/**
+	 * Weekly class hours of a class, see PitClass.getAllWeeklyClassHours(Float, Float)
+	 */
+	public float getAllWeeklyClassHours(int c, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+		float minutesInReportingHour = (standardMinutesInReportingHour == null ? ApplicationProperty.StandardMinutesInReportingHour.floatValue() : standardMinutesInReportingHour.floatValue());
+		float weeksInReportingTerm = (standardWeeksInReportingTerm == null ? ApplicationProperty.StandardWeeksInReportingTerm.floatValue() : standardWeeksInReportingTerm);
+		return((Constants.SLOT_LENGTH_MIN * 1.0f) * iNrUniquePeriods[c] / minutesInReportingHour / weeksInReportingTerm);
+	}
+
+	public float getOrganizedWeeklyClassHours(int c, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+		return(iOrganized[c] ? getAllWeeklyClassHours(c, standardMinutesInReportingHour, standardWeeksInReportingTerm) : 0f);
+	}
+
+	public float getNotOrganizedWeeklyClassHours(int c, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+		return(iOrganized[c] ? 0f : getAllWeeklyClassHours(c, standardMinutesInReportingHour, standardWeeksInReportingTerm));
+	}
+
+	/**
+	 * Weekly student class hours of a class, see PitClass.getAllWeeklyStudentClassHours(Float, Float)
+	 */
+	public float getAllWeeklyStudentClassHours(int c, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+		return(getAllWeeklyClassHours(c, standardMinutesInReportingHour, standardWeeksInReportingTerm) * iEnrollment[c]);
+	}
+
+	public float getOrganizedWeeklyStudentClassHours(int c, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+		return(iOrganized[c] ? getAllWeeklyStudentClassHours(c, standardMinutesInReportingHour, standardWeeksInReportingTerm) : 0f);
+	}
+
+	public float getNotOrganizedWeeklyStudentClassHours(int c, Float standardMinutesInReportingHour, Float standardWeeksInReportingTerm) {
+		return(iOrganized[c] ? 0f : getAllWeeklyStudentClassHours(c, standardMinutesInReportingHour, standardWeeksInReportingTerm));
+	}
+}
@@ -21,7 +21,6 @@
 package org.unitime.timetable.reports.pointintimedata;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import org.hibernate.Session;
 import org.unitime.timetable.model.Department;
@@ -48,22 +47,24 @@ public abstract class WSCHByDepartment extends BasePointInTimeDataReports {
 	protected abstract float weeklyClassHours(PitClass pitClass);
 	protected abstract float weeklyStudentClassHours(PitClass pitClass);
 
+	protected float weeklyClassHours(PointInTimeDataCube cube, int classIndex) {
+		return(cube.getAllWeeklyClassHours(classIndex, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm()));
+	}
+
+	protected float weeklyStudentClassHours(PointInTimeDataCube cube, int classIndex) {
+		return(cube.getAllWeeklyStudentClassHours(classIndex, getStandardMinutesInReportingHour(), getStandardWeeksInReportingTerm()));
+	}
+
 	public void createWeeklyStudentContactHoursByDepartmentReportFor(PointInTimeData pointInTimeData, Session hibSession) {
-		HashSet<Long> processedClasses = new HashSet<Long>();
+		PointInTimeDataCube cube = PointInTimeDataCube.getInstance(pointInTimeData, hibSession);
 		for(Department d : pointInTimeData.getSession().getDepartments()) {
 			if (!d.getSubjectAreas().isEmpty()) {
 				float deptTotalWsch = 0;
 				float deptTotalWch = 0;
 				
-				for (Long pioUid : findAllPitInstructionalOfferingUniqueIdsForDepartment(pointInTimeData, d.getUniqueId(), hibSession)) {
-					for(PitClass pc : findAllPitClassesForPitInstructionalOfferingId(pointInTimeData, pioUid, hibSession)) {
-						if (processedClasses.contains(pc.getUniqueId())){
-							continue;
-						}
-						processedClasses.add(pc.getUniqueId());
-						deptTotalWch += weeklyClassHours(pc);
-						deptTotalWsch += weeklyStudentClassHours(pc);
-					}
+				for (int c : cube.getDepartmentClasses(d.getUniqueId())) {
+					deptTotalWch += weeklyClassHours(cube, c);
+					deptTotalWsch += weeklyStudentClassHours(cube, c);
 				}
 			
 				ArrayList<String> row = new ArrayList<String>();
@@ -0,0 +1,140 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.security.evaluation;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.security.UserAuthority;
+import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.security.rights.Right;
+
+/**
+ * Request scoped cache of permission decisions, keyed by the user, the current authority, the right and the target
+ * (class name and unique id), so that a page checking the same permission for many objects (or the same object many times)
+ * does not need to load and evaluate the target over and over again.<br>
+ * Decisions depend on the state of the target, so they are only cached within a single request (between
+ * {@link PermissionCache#begin()} and {@link PermissionCache#end()}, called by the
+ * {@link org.unitime.timetable.filter.HibSessionFilter}); nothing is cached outside of a request.
+ * The cache of the current request is also cleared by {@link PermissionCache#invalidate()}, which is called
+ * whenever roles, permissions, statuses, or the lock of an offering are changed.
+ *
+ * @author Tomas Muller
+ */
+public class PermissionCache {
+	private static PermissionCache sInstance = new PermissionCache();
+	private static ThreadLocal<Decisions> sDecisions = new ThreadLocal<Decisions>();
+
+	private PermissionCache() {}
+
+	public static PermissionCache getInstance() { return sInstance; }
+
+	/**
+	 * Start caching decisions for the current thread (beginning of a request)
+	 */
+	public static void begin() {
+		if (sInstance.isEnabled())
+			sDecisions.set(new Decisions());
+		else
+			sDecisions.remove();
+	}
+
+	/**
+	 * Stop caching decisions for the current thread (end of a request)
+	 */
+	public static void end() {
+		sDecisions.remove();
+	}
+
+	/**
+	 * Drop all decisions cached by the current request. To be called after a change that may affect permissions.
+	 */
+	public static void invalidate() {
+		Decisions decisions = sDecisions.get();
+		if (decisions != null) decisions.clear();
+	}
+
+	public void clear() {
+		invalidate();
+	}
+
+	/**
+	 * Current generation, to be obtained before a decision is evaluated and passed to {@link PermissionCache#put(String, long, boolean)}.
+	 * This prevents a decision evaluated before an invalidation to be stored in the cache afterwards.
+	 */
+	public long generation() {
+		Decisions decisions = sDecisions.get();
+		return (decisions == null ? -1l : decisions.iGeneration);
+	}
+
+	public boolean isEnabled() {
+		return ApplicationProperty.PermissionCacheEnabled.isTrue();
+	}
+
+	protected int getMaxSize() {
+		Integer size = ApplicationProperty.PermissionCacheSize.intValue();
+		return (size == null ? 10000 : size.intValue());
+	}
+
+	/**
+	 * Cache key, null when the decision cannot be cached (e.g., anonymous user, missing target id, or not in a request)
+	 */
+	public String key(UserContext user, Right right, String className, Serializable targetId) {
+		if (user == null || right == null || className == null || targetId == null || sDecisions.get() == null) return null;
+		UserAuthority authority = user.getCurrentAuthority();
+		if (authority == null) return null;
+		return user.getExternalUserId() + "|" + authority.getAuthority() + "|" + authority.getUniqueId() + "|" + right.name() + "|" + className + "|" + targetId;
+	}
+
+	/**
+	 * Cached decision, null if there is no decision cached for the given key
+	 */
+	public Boolean get(String key) {
+		if (key == null) return null;
+		Decisions decisions = sDecisions.get();
+		return (decisions == null ? null : decisions.iValues.get(key));
+	}
+
+	public void put(String key, long generation, boolean value) {
+		if (key == null) return;
+		Decisions decisions = sDecisions.get();
+		if (decisions == null || decisions.iGeneration != generation) return;
+		if (decisions.iValues.size() >= getMaxSize())
+			decisions.iValues.clear();
+		decisions.iValues.put(key, value);
+	}
+
+	public int size() {
+		Decisions decisions = sDecisions.get();
+		return (decisions == null ? 0 : decisions.iValues.size());
+	}
+
+	private static class Decisions {
+		private Map<String, Boolean> iValues = new HashMap<String, Boolean>();
+		private long iGeneration = 0;
+
+		void clear() {
+			iGeneration ++;
+			iValues.clear();
+		}
+	}
+}
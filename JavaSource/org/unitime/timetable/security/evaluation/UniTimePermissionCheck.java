@@ -20,9 +20,12 @@
 package org.unitime.timetable.security.evaluation;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -70,6 +73,11 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 	@Autowired
 	PermissionSession permissionSession;
 	
+	private Map<Right, Permission<Object>> iPermissions = new EnumMap<Right, Permission<Object>>(Right.class);
+	private Map<String, Class<?>> iClasses = new ConcurrentHashMap<String, Class<?>>();
+	private Map<Class<?>, Method> iUniqueIdGetters = new ConcurrentHashMap<Class<?>, Method>();
+	private PermissionCache iCache = PermissionCache.getInstance();
+	
 	@Override
     public void checkPermission(UserContext user, Serializable targetId, String targetType, Right right) throws AccessDeniedException {
 		if (user == null)
@@ -210,10 +218,15 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
-			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
+			String cacheKey = iCache.key(user, right, className, targetId);
+			if (Boolean.TRUE.equals(iCache.get(cacheKey))) return;
+			long generation = iCache.generation();
+			
+			Object domainObject = new _RootDAO().getSession().get(getTargetClass(className), targetId);
 			if (domainObject == null)
 				throw new AccessDeniedException(MSG.domainObjectNotExists(right.toString(), targetType));
 			checkPermission(user, domainObject, right);
+			iCache.put(cacheKey, generation, true);
 		} catch (AccessDeniedException e) {
 			throw e;
 		} catch (Exception e) {
@@ -262,16 +275,28 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 			throw new AccessDeniedException(MSG.wrongDomainObject(right.toString(), domainObject.getClass().getSimpleName(), right.type().getSimpleName()));
 		}
 		
+		String cacheKey = getCacheKey(user, domainObject, right);
+		if (Boolean.TRUE.equals(iCache.get(cacheKey))) return;
+		long generation = iCache.generation();
+		try {
+			checkDomainObject(user, domainObject, right);
+			iCache.put(cacheKey, generation, true);
+		} catch (AccessDeniedException e) {
+			iCache.put(cacheKey, generation, false);
+			throw e;
+		}
+	}
+	
+	protected void checkDomainObject(UserContext user, Object domainObject, Right right) throws AccessDeniedException {
 		try {
-			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
+			Permission<Object> perm = iPermissions.get(right);
 			if (perm != null && perm.type().isInstance(domainObject)) {
-				if ((Boolean)perm.getClass().getMethod("check", UserContext.class, perm.type()).invoke(perm, user, domainObject)) {
+				if (perm.check(user, domainObject)) {
 					return;
 				} else {
 					throw new AccessDeniedException(MSG.permissionCheckFailed(right.toString(), domainObject.toString()));
 				}
 			}
-		} catch (BeansException e) {
 		} catch (AccessDeniedException e) {
 			throw e;
 		} catch (Exception e) {
@@ -296,6 +321,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public void afterPropertiesSet() throws Exception {
 		for (Right r: Right.values()) {
 			try {
@@ -304,18 +330,57 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 						Permission<?> p = (Permission<?>)applicationContext.getBean("permission" + r.name());
 						if (p == null) {
 							sLog.warn("No permission found for " + r + " (" + r.type().getSimpleName() + ").");
-						} else if (!r.type().equals(p.type())) {
-							sLog.warn("Permission " + r + " (" + r.type().getSimpleName() + ") has a wrong type (" + p.type().getSimpleName() + ").");
+						} else {
+							if (!r.type().equals(p.type()))
+								sLog.warn("Permission " + r + " (" + r.type().getSimpleName() + ") has a wrong type (" + p.type().getSimpleName() + ").");
+							iPermissions.put(r, (Permission<Object>)p);
 						}
 					} catch (BeansException e) {
 						sLog.warn("Failed to find a permission " + r + " (" + r.type().getSimpleName() + "): " + e.getMessage());
 					}
+				} else if (applicationContext.containsBean("permission" + r.name())) {
+					iPermissions.put(r, (Permission<Object>)applicationContext.getBean("permission" + r.name(), Permission.class));
 				}
 			} catch (Exception e) {
-				sLog.error("Failed to check permission " + r + " (" + r.type().getSimpleName() + "): " + e.getMessage(), e);
+				sLog.error("Failed to check permission " + r + " (" + (r.hasType() ? r.type().getSimpleName() : "no type") + "): " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	protected Class<?> getTargetClass(String className) throws ClassNotFoundException {
+		Class<?> clazz = iClasses.get(className);
+		if (clazz == null) {
+			clazz = Class.forName(className);
+			iClasses.put(className, clazz);
+		}
+		return clazz;
+	}
+	
+	protected Serializable getUniqueId(Object domainObject) {
+		Method getter = iUniqueIdGetters.get(domainObject.getClass());
+		if (getter == null) {
+			try {
+				getter = domainObject.getClass().getMethod("getUniqueId");
+			} catch (NoSuchMethodException e) {
+				return null;
 			}
+			iUniqueIdGetters.put(domainObject.getClass(), getter);
+		}
+		try {
+			Object id = getter.invoke(domainObject);
+			return (id instanceof Serializable ? (Serializable)id : null);
+		} catch (Exception e) {
+			return null;
 		}
 	}
+	
+	/**
+	 * Decision cache key for a domain object, only objects of the right's type with a unique id are cached
+	 */
+	protected String getCacheKey(UserContext user, Object domainObject, Right right) {
+		if (!right.hasType() || !iCache.isEnabled()) return null;
+		return iCache.key(user, right, right.type().getName(), getUniqueId(domainObject));
+	}
 
 	@Override
 	public void checkPermission(UserContext user, Serializable targetId, String targetType, Right right, OtherAuthority other) throws AccessDeniedException {
@@ -474,11 +539,18 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
-			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
+			String cacheKey = iCache.key(user, right, className, targetId);
+			Boolean cached = iCache.get(cacheKey);
+			if (cached != null) return cached;
+			long generation = iCache.generation();
+			
+			Object domainObject = new _RootDAO().getSession().get(getTargetClass(className), targetId);
 			if (domainObject == null)
 				return false;
 
-			return hasPermission(user, domainObject, right);
+			boolean ret = hasPermission(user, domainObject, right);
+			iCache.put(cacheKey, generation, ret);
+			return ret;
 		} catch (Exception e) {
 			return false;
 		}
@@ -513,10 +585,20 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 			return false;
 		}
 		
+		String cacheKey = getCacheKey(user, domainObject, right);
+		Boolean cached = iCache.get(cacheKey);
+		if (cached != null) return cached;
+		long generation = iCache.generation();
+		boolean ret = hasDomainObject(user, domainObject, right);
+		iCache.put(cacheKey, generation, ret);
+		return ret;
+	}
+	
+	protected boolean hasDomainObject(UserContext user, Object domainObject, Right right) {
 		try {
-			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
+			Permission<Object> perm = iPermissions.get(right);
 			if (perm != null && perm.type().isInstance(domainObject))
-				return (Boolean)perm.getClass().getMethod("check", UserContext.class, perm.type()).invoke(perm, user, domainObject);
+				return perm.check(user, domainObject);
 		} catch (Exception e) {
 			return false;
 		}
@@ -41,6 +41,7 @@ import org.unitime.timetable.gwt.shared.SimpleEditInterface.PageName;
 import org.unitime.timetable.gwt.shared.SimpleEditInterface.Record;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.security.SessionContext;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.server.admin.AdminTable.HasFilter;
 import org.unitime.timetable.server.admin.AdminTable.HasLazyFields;
 
@@ -128,6 +129,7 @@ public class AdminBackend {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				PermissionCache.invalidate();
 
 				for (Iterator<Record> i = data.getRecords().iterator(); i.hasNext(); )
 					if (i.next().getUniqueId() == null) i.remove();
@@ -168,6 +170,7 @@ public class AdminBackend {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				PermissionCache.invalidate();
 				
 				return request.getRecord();
 			} catch (PageAccessException e) {
@@ -202,6 +205,7 @@ public class AdminBackend {
 				
 				hibSession.flush();
 				tx.commit(); tx = null;
+				PermissionCache.invalidate();
 				
 				return request.getRecord();
 			} catch (PageAccessException e) {
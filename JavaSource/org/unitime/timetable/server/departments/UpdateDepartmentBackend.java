@@ -42,6 +42,7 @@ import org.unitime.timetable.model.TimePref;
 import org.unitime.timetable.model.dao.DepartmentDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.security.SessionContext;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.security.rights.Right;
 
 @GwtRpcImplements(UpdateDepartmentRequest.class)
@@ -91,6 +92,7 @@ public class UpdateDepartmentBackend implements GwtRpcImplementation<UpdateDepar
 			break;
 		}
 		hibSession.flush();
+		PermissionCache.invalidate();
 		return request.getDepartment();
 	}
 	//Edit or create a department
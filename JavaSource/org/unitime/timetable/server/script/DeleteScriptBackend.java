@@ -41,6 +41,7 @@ public class DeleteScriptBackend implements GwtRpcImplementation<DeleteScriptRpc
 		
 		Script script = ScriptDAO.getInstance().get(request.getScriptId(), hibSession);
 		hibSession.remove(script);
+		ScriptCache.getInstance().invalidate(script.getUniqueId());
 		
 		hibSession.flush();
 		
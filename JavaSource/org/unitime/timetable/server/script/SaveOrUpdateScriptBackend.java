@@ -95,6 +95,7 @@ public class SaveOrUpdateScriptBackend implements GwtRpcImplementation<SaveOrUpd
 		else
 			hibSession.merge(script);
 		hibSession.flush();
+		ScriptCache.getInstance().invalidate(script.getUniqueId());
 		
 		return LoadAllScriptsBackend.load(script, context);
 	}
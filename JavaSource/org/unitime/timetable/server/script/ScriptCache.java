@@ -0,0 +1,179 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.server.script;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pool of script engines (per engine name) with a cache of compiled scripts.<br>
+ * A script engine is borrowed by a script execution (see {@link ScriptCache#borrow(String)}), so that an engine that is not
+ * thread-safe is never used by two executions at the same time, and returned afterwards (see {@link ScriptCache#release(PooledEngine)}).
+ * Each pooled engine keeps the scripts it has compiled, keyed by the script id and checked against the script text, so that
+ * a frequently executed script (e.g., a scheduled task) is only compiled once per engine. The script executions do not share
+ * their variables: each execution uses its own script context.
+ *
+ * @author Tomas Muller
+ */
+public class ScriptCache {
+	private static Log sLog = LogFactory.getLog(ScriptCache.class);
+	private static final int MAX_IDLE_ENGINES = 4;
+	private static ScriptCache sInstance = new ScriptCache();
+
+	private ScriptEngineManager iManager = null;
+	private Map<String, Deque<PooledEngine>> iIdle = new HashMap<String, Deque<PooledEngine>>();
+	private Map<Long, Long> iInvalidated = new ConcurrentHashMap<Long, Long>();
+	private AtomicLong iGeneration = new AtomicLong(0);
+	private AtomicLong iHits = new AtomicLong(0), iMisses = new AtomicLong(0);
+
+	private ScriptCache() {}
+
+	public static ScriptCache getInstance() { return sInstance; }
+
+	protected synchronized ScriptEngineManager getManager() {
+		if (iManager == null) iManager = new ScriptEngineManager();
+		return iManager;
+	}
+
+	/**
+	 * Get an engine of the given name, an idle engine is reused when available
+	 * @return null if there is no such engine
+	 */
+	public PooledEngine borrow(String engineName) {
+		synchronized (iIdle) {
+			Deque<PooledEngine> idle = iIdle.get(engineName);
+			if (idle != null && !idle.isEmpty()) return idle.pollLast();
+		}
+		ScriptEngine engine = getManager().getEngineByName(engineName);
+		return (engine == null ? null : new PooledEngine(engineName, engine));
+	}
+
+	/**
+	 * Return an engine to the pool
+	 */
+	public void release(PooledEngine engine) {
+		if (engine == null) return;
+		synchronized (iIdle) {
+			Deque<PooledEngine> idle = iIdle.get(engine.getName());
+			if (idle == null) {
+				idle = new ArrayDeque<PooledEngine>();
+				iIdle.put(engine.getName(), idle);
+			}
+			if (idle.size() < MAX_IDLE_ENGINES) idle.addLast(engine);
+		}
+	}
+
+	/**
+	 * Drop compiled versions of the given script (to be called when a script is changed or deleted)
+	 */
+	public void invalidate(Long scriptId) {
+		if (scriptId == null) return;
+		iInvalidated.put(scriptId, iGeneration.incrementAndGet());
+	}
+
+	/**
+	 * Drop all pooled engines and compiled scripts
+	 */
+	public void clear() {
+		synchronized (iIdle) {
+			iIdle.clear();
+		}
+		iInvalidated.clear();
+	}
+
+	public long getHits() { return iHits.get(); }
+
+	public long getMisses() { return iMisses.get(); }
+
+	public class PooledEngine {
+		private String iName;
+		private ScriptEngine iEngine;
+		private Map<Long, Compiled> iCompiled = new HashMap<Long, Compiled>();
+
+		private PooledEngine(String name, ScriptEngine engine) {
+			iName = name; iEngine = engine;
+		}
+
+		public String getName() { return iName; }
+
+		public ScriptEngine getEngine() { return iEngine; }
+
+		public boolean isCompilable() { return iEngine instanceof Compilable; }
+
+		/**
+		 * Compiled script from the cache, null if the script has not been compiled by this engine yet (or it has been changed since)
+		 */
+		public CompiledScript getCompiled(Long scriptId, String script) {
+			if (scriptId == null || !isCompilable()) return null;
+			Compiled compiled = iCompiled.get(scriptId);
+			if (compiled != null) {
+				Long invalidated = iInvalidated.get(scriptId);
+				if ((invalidated == null || invalidated <= compiled.getGeneration()) && compiled.getText().equals(script)) {
+					iHits.incrementAndGet();
+					return compiled.getScript();
+				}
+				iCompiled.remove(scriptId);
+			}
+			return null;
+		}
+
+		/**
+		 * Compile the given script and store it in the cache
+		 */
+		public CompiledScript compile(Long scriptId, String script) throws ScriptException {
+			long generation = iGeneration.get();
+			CompiledScript compiled = ((Compilable)iEngine).compile(script);
+			iMisses.incrementAndGet();
+			if (scriptId != null) {
+				iCompiled.put(scriptId, new Compiled(script, compiled, generation));
+				if (sLog.isDebugEnabled())
+					sLog.debug("Script " + scriptId + " compiled (" + iName + ", " + iHits.get() + " hits, " + iMisses.get() + " misses).");
+			}
+			return compiled;
+		}
+	}
+
+	private static class Compiled {
+		private String iText;
+		private CompiledScript iScript;
+		private long iGeneration;
+
+		Compiled(String text, CompiledScript script, long generation) {
+			iText = text; iScript = script; iGeneration = generation;
+		}
+
+		String getText() { return iText; }
+		CompiledScript getScript() { return iScript; }
+		long getGeneration() { return iGeneration; }
+	}
+}
@@ -27,10 +27,11 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import javax.script.Compilable;
+import javax.script.Bindings;
 import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
+import javax.script.SimpleScriptContext;
 
 import org.apache.commons.fileupload.FileItem;
 import org.hibernate.Transaction;
@@ -168,22 +169,31 @@ public class ScriptExecution extends QueueItem {
 		org.hibernate.Session hibSession = ScriptDAO.getInstance().getSession();
 		
 		Transaction tx = hibSession.beginTransaction();
+		ScriptCache.PooledEngine pooled = null;
 		try {
 			setStatus(GWT_MSG.scriptStatusStartingUp(), 3);
 
 			Script script = ScriptDAO.getInstance().get(iRequest.getScriptId(), hibSession);
 			
-			ScriptEngineManager manager = new ScriptEngineManager();
-			ScriptEngine engine = manager.getEngineByName(script.getEngine());
-			engine.put("hibSession", hibSession);
-			engine.put("session", SessionDAO.getInstance().get(getSessionId()));
-			engine.put("log", this);
+			pooled = ScriptCache.getInstance().borrow(script.getEngine());
+			if (pooled == null)
+				throw new IllegalArgumentException("Script engine " + script.getEngine() + " is not available.");
+			ScriptEngine engine = pooled.getEngine();
+			
+			// each execution has its own context, the engine (and the compiled script) can be reused by other executions
+			ScriptContext context = new SimpleScriptContext();
+			Bindings bindings = engine.createBindings();
+			context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+			context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+			bindings.put("hibSession", hibSession);
+			bindings.put("session", SessionDAO.getInstance().get(getSessionId()));
+			bindings.put("log", this);
 			if (iUserContext != null)
-				engine.put("userContext", iUserContext);
+				bindings.put("userContext", iUserContext);
 			
 			incProgress();
 			
-			engine.getContext().setWriter(new Writer() {
+			context.setWriter(new Writer() {
 				@Override
 				public void write(char[] cbuf, int off, int len) throws IOException {
 					String line = String.valueOf(cbuf, off, len);
@@ -196,7 +206,7 @@ public class ScriptExecution extends QueueItem {
 				@Override
 				public void close() throws IOException {}
 			});
-			engine.getContext().setErrorWriter(new Writer() {
+			context.setErrorWriter(new Writer() {
 				@Override
 				public void write(char[] cbuf, int off, int len) throws IOException {
 					String line = String.valueOf(cbuf, off, len);
@@ -220,39 +230,39 @@ public class ScriptExecution extends QueueItem {
 				
 				if ("file".equals(parameter.getType()) && iFile != null) {
 					debug(parameter.getName() + ": " + iFile.getName() + " (" + iFile.getSize() + " bytes)");
-					engine.put(parameter.getName(), iFile);
+					bindings.put(parameter.getName(), iFile);
 					continue;
 				}
 				
 				if (value == null) value = parameter.getDefaultValue();
 				if (value == null) {
-					engine.put(parameter.getName(), null);
+					bindings.put(parameter.getName(), null);
 					continue;
 				}
 				debug(parameter.getName() + ": " + value);
 				
 				if (parameter.getType().equalsIgnoreCase("boolean")) {
-					engine.put(parameter.getName(), "true".equalsIgnoreCase(value));
+					bindings.put(parameter.getName(), "true".equalsIgnoreCase(value));
 				} else if (parameter.getType().equalsIgnoreCase("long")) {
-					engine.put(parameter.getName(), value == null || value.isEmpty() ? null : Long.valueOf(value));
+					bindings.put(parameter.getName(), value == null || value.isEmpty() ? null : Long.valueOf(value));
 				} else if (parameter.getType().equalsIgnoreCase("int") || parameter.getType().equalsIgnoreCase("integer") || parameter.getType().equalsIgnoreCase("time") || parameter.getType().equalsIgnoreCase("slot")) {
-					engine.put(parameter.getName(), value == null || value.isEmpty() ? null : Integer.valueOf(value));
+					bindings.put(parameter.getName(), value == null || value.isEmpty() ? null : Integer.valueOf(value));
 				} else if (parameter.getType().equalsIgnoreCase("double")) {
-					engine.put(parameter.getName(), value == null || value.isEmpty() ? null : Double.valueOf(value));
+					bindings.put(parameter.getName(), value == null || value.isEmpty() ? null : Double.valueOf(value));
 				} else if (parameter.getType().equalsIgnoreCase("float")) {
-					engine.put(parameter.getName(), value == null || value.isEmpty() ? null : Float.valueOf(value));
+					bindings.put(parameter.getName(), value == null || value.isEmpty() ? null : Float.valueOf(value));
 				} else if (parameter.getType().equalsIgnoreCase("short")) {
-					engine.put(parameter.getName(), value == null || value.isEmpty() ? null : Short.valueOf(value));
+					bindings.put(parameter.getName(), value == null || value.isEmpty() ? null : Short.valueOf(value));
 				} else if (parameter.getType().equalsIgnoreCase("byte")) {
-					engine.put(parameter.getName(), value == null || value.isEmpty() ? null : Byte.valueOf(value));
+					bindings.put(parameter.getName(), value == null || value.isEmpty() ? null : Byte.valueOf(value));
 				} else if (parameter.getType().equalsIgnoreCase("date")) {
 					Formats.Format<Date> dateFormat = Formats.getDateFormat(Formats.Pattern.DATE_EVENT);
-					engine.put(parameter.getName(), dateFormat.parse(value));
+					bindings.put(parameter.getName(), dateFormat.parse(value));
 				} else if (parameter.getType().equalsIgnoreCase("datetime") || parameter.getType().equalsIgnoreCase("timestamp")) {
 					Formats.Format<Date> dateFormat = Formats.getDateFormat(Formats.Pattern.DATE_TIME_STAMP);
-					engine.put(parameter.getName(), dateFormat.parse(value));
+					bindings.put(parameter.getName(), dateFormat.parse(value));
 				} else if (parameter.getType().equalsIgnoreCase("department")) {
-					engine.put(parameter.getName(), lookupDepartment(hibSession, value));
+					bindings.put(parameter.getName(), lookupDepartment(hibSession, value));
 				} else if (parameter.getType().equalsIgnoreCase("departments")) {
 					List<Department> departments = new ArrayList<Department>();
 					for (String id: value.split(","))
@@ -260,9 +270,9 @@ public class ScriptExecution extends QueueItem {
 							Department d = lookupDepartment(hibSession, id);
 							if (d != null) departments.add(d);
 						}
-					engine.put(parameter.getName(), departments);
+					bindings.put(parameter.getName(), departments);
 				} else if (parameter.getType().equalsIgnoreCase("subject")) {
-					engine.put(parameter.getName(), lookupSubjectArea(hibSession, value));
+					bindings.put(parameter.getName(), lookupSubjectArea(hibSession, value));
 				} else if (parameter.getType().equalsIgnoreCase("subjects")) {
 					List<SubjectArea> subjects = new ArrayList<SubjectArea>();
 					for (String id: value.split(","))
@@ -270,9 +280,9 @@ public class ScriptExecution extends QueueItem {
 							SubjectArea s = lookupSubjectArea(hibSession, id);
 							if (s != null) subjects.add(s);
 						}
-					engine.put(parameter.getName(), subjects);
+					bindings.put(parameter.getName(), subjects);
 				} else if (parameter.getType().equalsIgnoreCase("building")) {
-					engine.put(parameter.getName(), lookupBuilding(hibSession, value));
+					bindings.put(parameter.getName(), lookupBuilding(hibSession, value));
 				} else if (parameter.getType().equalsIgnoreCase("buildings")) {
 					List<Building> buildings = new ArrayList<Building>();
 					for (String id: value.split(","))
@@ -280,9 +290,9 @@ public class ScriptExecution extends QueueItem {
 							Building b = lookupBuilding(hibSession, id);
 							if (b != null) buildings.add(b);
 						}
-					engine.put(parameter.getName(), buildings);
+					bindings.put(parameter.getName(), buildings);
 				} else if (parameter.getType().equalsIgnoreCase("room")) {
-					engine.put(parameter.getName(), lookupRoom(hibSession, value));
+					bindings.put(parameter.getName(), lookupRoom(hibSession, value));
 				} else if (parameter.getType().equalsIgnoreCase("rooms")) {
 					List<Room> rooms = new ArrayList<Room>();
 					for (String id: value.split(","))
@@ -290,9 +300,9 @@ public class ScriptExecution extends QueueItem {
 							Room r = lookupRoom(hibSession, id);
 							if (r != null) rooms.add(r);
 						}
-					engine.put(parameter.getName(), rooms);
+					bindings.put(parameter.getName(), rooms);
 				} else if (parameter.getType().equalsIgnoreCase("location")) {
-					engine.put(parameter.getName(), lookupLocation(hibSession, value));
+					bindings.put(parameter.getName(), lookupLocation(hibSession, value));
 				} else if (parameter.getType().equalsIgnoreCase("locations")) {
 					List<Location> locations = new ArrayList<Location>();
 					for (String id: value.split(","))
@@ -300,23 +310,26 @@ public class ScriptExecution extends QueueItem {
 							Location l = lookupLocation(hibSession, id);
 							if (l != null) locations.add(l);
 						}
-					engine.put(parameter.getName(), locations);
+					bindings.put(parameter.getName(), locations);
 				} else {
-					engine.put(parameter.getName(), value);
+					bindings.put(parameter.getName(), value);
 				}
 			}
 			
 			incProgress();
 			
-			if (engine instanceof Compilable) {
-				setStatus(GWT_MSG.scriptStatusCompiling(), 1);
-				CompiledScript compiled = ((Compilable)engine).compile(script.getScript());
-				incProgress();
+			if (pooled.isCompilable()) {
+				CompiledScript compiled = pooled.getCompiled(script.getUniqueId(), script.getScript());
+				if (compiled == null) {
+					setStatus(GWT_MSG.scriptStatusCompiling(), 1);
+					compiled = pooled.compile(script.getUniqueId(), script.getScript());
+					incProgress();
+				}
 				setStatus(GWT_MSG.scriptStatusRunning(), 100);
-				compiled.eval();
+				compiled.eval(context);
 			} else {
 				setStatus(GWT_MSG.scriptStatusRunning(), 100);
-				engine.eval(script.getScript());
+				engine.eval(script.getScript(), context);
 			}
 			
 			hibSession.flush();
@@ -328,6 +341,7 @@ public class ScriptExecution extends QueueItem {
 			tx.rollback();
 			error(GWT_MSG.failedExecution(e.getMessage()), e);
 		} finally {
+			ScriptCache.getInstance().release(pooled);
 			hibSession.close();
 		}
 	}
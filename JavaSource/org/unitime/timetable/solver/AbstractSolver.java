@@ -22,7 +22,6 @@ package org.unitime.timetable.solver;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
@@ -60,7 +59,7 @@ import org.dom4j.io.XMLWriter;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.CPSolverMessages;
-import org.unitime.timetable.solver.remote.BackupFileFilter;
+import org.unitime.timetable.solver.remote.BackupFormat;
 import org.unitime.timetable.util.Constants;
 
 /**
@@ -420,24 +419,20 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
         Lock lock = currentSolution().getLock().readLock();
         lock.lock();
         try {
-            File outXmlFile = new File(folder, getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+            BackupFormat format = BackupFormat.getFormat(getType());
+            File outFile = format.getFile(folder, getType(), puid);
             try {
-                FileOutputStream fos = null;
-                try {
-                    fos = new FileOutputStream(outXmlFile);
-                    Document document = createCurrentSolutionBackup(false, false);
-                    saveProperties(document);
-                    (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
-                    fos.flush(); fos.close(); fos=null;
-                } finally {
-                    try {
-                        if (fos!=null) fos.close();
-                    } catch (IOException e) {}
+                Document document = createCurrentSolutionBackup(false, false);
+                saveProperties(document);
+                format.write(document, outFile);
+                for (BackupFormat other: BackupFormat.values()) {
+                	File otherFile = other.getFile(folder, getType(), puid);
+                	if (other != format && otherFile.exists()) otherFile.delete();
                 }
                 return true;
             } catch (Exception e) {
                 sLog.error(e.getMessage(),e);
-                if (outXmlFile.exists()) outXmlFile.delete();
+                if (outFile.exists()) outFile.delete();
             }
         } finally {
         	lock.unlock();
@@ -455,14 +450,18 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     @Override
     public boolean restore(File folder, String puid, boolean removeFiles) {
         sLog.debug("restore(folder="+folder+","+puid+")");
-        File inXmlFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+        File inFile = BackupFormat.findFile(folder, getType(), puid);
+        if (inFile == null) {
+        	sLog.error("No backup found for " + getType().getPrefix() + puid + " in " + folder);
+        	return false;
+        }
         
         M model = null;
         try {
             if (isRunning()) stopSolver();
             disposeNoInherit(false);
 
-            Document document = (new SAXReader()).read(inXmlFile);
+            Document document = BackupFormat.getFormat(inFile).read(inFile);
             readProperties(document);
             
             model = createModel(getProperties());
@@ -474,7 +473,10 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
             Progress.getInstance(model).setStatus(MSG.statusReady());
             
             if (removeFiles) {
-                inXmlFile.delete();
+                for (BackupFormat format: BackupFormat.values()) {
+                	File file = format.getFile(folder, getType(), puid);
+                	if (file.exists()) file.delete();
+                }
             }
             
             return true;
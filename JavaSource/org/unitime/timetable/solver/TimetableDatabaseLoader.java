@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.solver;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
@@ -36,6 +37,13 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -74,6 +82,7 @@ import org.hibernate.FlushMode;
 import org.hibernate.LazyInitializationException;
 import org.hibernate.query.Query;
 import org.hibernate.Transaction;
+import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.gwt.resources.CPSolverMessages;
@@ -216,6 +225,11 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     private String iInstructorFormat = null;
     
     private boolean iRoomAvailabilityTimeStampIsSet = false;
+    private int iRoomAvailabilityThreads = 4;
+    private AvailabilityPrefetch iAvailabilityPrefetch = null;
+    
+    private String iPhase = null;
+    private long iPhaseStart = 0;
     
     private CommittedStudentConflictsMode iCommittedStudentConflictsMode = CommittedStudentConflictsMode.Load;
     
@@ -273,6 +287,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         iInteractiveMode = getModel().getProperties().getPropertyBoolean("General.InteractiveMode", iInteractiveMode);
         iAssignSingleton = getModel().getProperties().getPropertyBoolean("General.AssignSingleton", iAssignSingleton);
         iMaxRoomCombinations = getModel().getProperties().getPropertyInt("General.MaxRoomCombinations", iMaxRoomCombinations);
+        iRoomAvailabilityThreads = getModel().getProperties().getPropertyInt("RoomAvailability.NrThreads", iRoomAvailabilityThreads);
         
         iFewerSeatsDisouraged = getModel().getProperties().getPropertyDouble("Global.FewerSeatsDisouraged", iFewerSeatsDisouraged);
         iFewerSeatsStronglyDisouraged = getModel().getProperties().getPropertyDouble("Global.FewerSeatsStronglyDisouraged", iFewerSeatsStronglyDisouraged);
@@ -2288,12 +2303,17 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		tx = hibSession.beginTransaction(); 
     		
     		load(hibSession);
+    		endPhase();
     		
     		tx.commit();
     	} catch (Exception e) {
     		iProgress.message(msglevel("loadFailed", Progress.MSGLEVEL_FATAL), MSG.fatalLoadFailed(e.getMessage()), e);
     		tx.rollback();
     	} finally {
+    		if (iAvailabilityPrefetch != null) {
+    			iAvailabilityPrefetch.shutdown();
+    			iAvailabilityPrefetch = null;
+    		}
     		// here we need to close the session since this code may run in a separate thread
     		if (hibSession!=null && hibSession.isOpen()) hibSession.close();
     	}
@@ -3001,6 +3021,9 @@ public class TimetableDatabaseLoader extends TimetableLoader {
 		
 		loadRoomAvailabilities(hibSession);
 		
+		// rooms, instructors, and date patterns are known -> start fetching room and instructor availability in the background
+		startAvailabilityPrefetch();
+		
 		setPhase(MSG.phaseLoadingOfferings(), iAllClasses.size());
     	Set<Long> loadedOfferings = new HashSet<Long>();
 		for (Class_ clazz: iAllClasses) {
@@ -3665,11 +3688,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	if (!hibSession.isOpen())
     		iProgress.message(msglevel("hibernateFailure", Progress.MSGLEVEL_FATAL), MSG.fatalHibernateSessionClosed());
     	
-    	RoomAvailabilityInterface availability = null;
-    	if (SolverServerImplementation.getInstance() != null)
-    		availability = SolverServerImplementation.getInstance().getRoomAvailability();
-    	else
-    		availability = RoomAvailability.getInstance();
+    	RoomAvailabilityInterface availability = getRoomAvailabilityService();
         if (availability != null) {
         	Date[] startEnd = initializeRoomAvailability(availability);
         	if (startEnd != null) {
@@ -3677,6 +3696,10 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         		loadInstructorAvailability(availability, startEnd);
         	}
         }
+        if (iAvailabilityPrefetch != null) {
+        	iAvailabilityPrefetch.shutdown();
+        	iAvailabilityPrefetch = null;
+        }
 
         if (!hibSession.isOpen())
             iProgress.message(msglevel("hibernateFailure", Progress.MSGLEVEL_FATAL), MSG.fatalHibernateSessionClosed());
@@ -3990,7 +4013,17 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         } 
     }
     
-    public Date[] initializeRoomAvailability(RoomAvailabilityInterface availability) {
+    protected RoomAvailabilityInterface getRoomAvailabilityService() {
+    	if (SolverServerImplementation.getInstance() != null)
+    		return SolverServerImplementation.getInstance().getRoomAvailability();
+    	else
+    		return RoomAvailability.getInstance();
+    }
+    
+    /**
+     * Room availability time frame (from the first to the last day of all the date patterns used), null when there are no date patterns
+     */
+    protected Date[] getRoomAvailabilityTimeFrame() {
     	Date startDate = null, endDate = null;
         for (Iterator i=iAllUsedDatePatterns.iterator();i.hasNext();) {
             DatePattern dp = (DatePattern)i.next();
@@ -3999,10 +4032,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
             if (endDate == null || endDate.compareTo(dp.getEndDate())<0)
                 endDate = dp.getEndDate();
         }
-        if (startDate == null || endDate == null) {
-        	iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_WARN), MSG.warnRoomAvailableServiceNoDates());
-        	return null;
-        }
+        if (startDate == null || endDate == null) return null;
         Calendar startDateCal = Calendar.getInstance(Locale.US);
         startDateCal.setTime(startDate);
         startDateCal.set(Calendar.HOUR_OF_DAY, 0);
@@ -4013,10 +4043,50 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         endDateCal.set(Calendar.HOUR_OF_DAY, 23);
         endDateCal.set(Calendar.MINUTE, 59);
         endDateCal.set(Calendar.SECOND, 59);
-        roomAvailabilityActivate(availability, startDateCal.getTime(),endDateCal.getTime());
         return new Date[] {startDateCal.getTime(), endDateCal.getTime()};
     }
     
+    public Date[] initializeRoomAvailability(RoomAvailabilityInterface availability) {
+    	Date[] startEnd = getRoomAvailabilityTimeFrame();
+        if (startEnd == null) {
+        	iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_WARN), MSG.warnRoomAvailableServiceNoDates());
+        	return null;
+        }
+        if (iAvailabilityPrefetch != null && iAvailabilityPrefetch.isApplicable(availability, startEnd)) {
+        	// already activated by the prefetch
+        	iAvailabilityPrefetch.checkActivation();
+        } else {
+        	if (iAvailabilityPrefetch != null) {
+        		iAvailabilityPrefetch.shutdown();
+        		iAvailabilityPrefetch = null;
+        	}
+        	roomAvailabilityActivate(availability, startEnd[0], startEnd[1]);
+        }
+        return startEnd;
+    }
+    
+    /**
+     * Start fetching room and instructor availability in parallel (using RoomAvailability.NrThreads threads). The availability is fetched
+     * from the room availability service while the rest of the problem is being loaded, the model is only updated later on (in the loading
+     * thread) by {@link TimetableDatabaseLoader#loadRoomAvailability(RoomAvailabilityInterface, Date[])} and
+     * {@link TimetableDatabaseLoader#loadInstructorAvailability(RoomAvailabilityInterface, Date[])}.
+     */
+    protected void startAvailabilityPrefetch() {
+    	if (iRoomAvailabilityThreads <= 1) return;
+    	RoomAvailabilityInterface availability = getRoomAvailabilityService();
+    	if (availability == null) return;
+    	Date[] startEnd = getRoomAvailabilityTimeFrame();
+    	if (startEnd == null) return;
+    	iAvailabilityPrefetch = new AvailabilityPrefetch(availability, startEnd, iRoomAvailabilityThreads);
+    	for (Enumeration e=iRooms.elements();e.hasMoreElements();) {
+            RoomConstraint room = (RoomConstraint)e.nextElement();
+            if (room.getConstraint()) iAvailabilityPrefetch.fetchRoom(room.getResourceId());
+    	}
+    	for (InstructorConstraint instructor: getModel().getInstructorConstraints())
+    		iAvailabilityPrefetch.fetchInstructor(instructor.getResourceId());
+    	iProgress.debug("Fetching availability of " + iAvailabilityPrefetch.iRoomTimes.size() + " rooms and " + iAvailabilityPrefetch.iInstructorTimes.size() + " instructors using " + iRoomAvailabilityThreads + " threads.");
+    }
+    
     public void loadRoomAvailability(RoomAvailabilityInterface availability, Date[] startEnd) {
         setPhase(MSG.phaseLoadingRoomAvailability(), iRooms.size());
         int firstDOY = iSession.getDayOfYear(1,iSession.getPatternStartMonth());
@@ -4081,7 +4151,10 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         Collection<TimeBlock> ret = null;
         String ts = null;
         try {
-            ret = availability.getRoomAvailability(room.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType);
+            if (iAvailabilityPrefetch != null && iAvailabilityPrefetch.isApplicable(availability, startTime, endTime))
+            	ret = iAvailabilityPrefetch.getRoomAvailability(room.getResourceId());
+            else
+            	ret = availability.getRoomAvailability(room.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType);
             if (!iRoomAvailabilityTimeStampIsSet) ts = availability.getTimeStamp(startTime, endTime, RoomAvailabilityInterface.sClassType);
         } catch (Exception e) {
             sLog.error(e.getMessage(),e);
@@ -4177,7 +4250,10 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         Collection<TimeBlock> ret = null;
         String ts = null;
         try {
-            ret = availability.getInstructorAvailability(instructor.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType);
+            if (iAvailabilityPrefetch != null && iAvailabilityPrefetch.isApplicable(availability, startTime, endTime))
+            	ret = iAvailabilityPrefetch.getInstructorAvailability(instructor.getResourceId());
+            else
+            	ret = availability.getInstructorAvailability(instructor.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType);
             if (!iRoomAvailabilityTimeStampIsSet) ts = availability.getTimeStamp(startTime, endTime, RoomAvailabilityInterface.sClassType);
         } catch (Exception e) {
             sLog.error(e.getMessage(),e);
@@ -4450,9 +4526,20 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     
     protected void setPhase(String phase, long progressMax) {
     	checkTermination();
+    	endPhase();
+    	iPhase = phase; iPhaseStart = System.currentTimeMillis();
     	iProgress.setPhase(phase, progressMax);
     }
     
+    /**
+     * Report the time spent in the current phase (if any)
+     */
+    protected void endPhase() {
+    	if (iPhase != null)
+    		iProgress.info(iPhase + " took " + new DecimalFormat("0.00").format((System.currentTimeMillis() - iPhaseStart) / 1000.0) + " s");
+    	iPhase = null;
+    }
+    
     protected void incProgress() {
     	checkTermination();
     	iProgress.incProgress();
@@ -4556,4 +4643,128 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		}
 		}
     }
+    
+    /**
+     * Room and instructor availability that is being fetched from the room availability service in parallel with the rest of the loading.
+     * The room availability service is activated first, then the availability of each room and instructor is retrieved using a
+     * fixed thread pool. The worker threads do not touch the model, each of them uses its own Hibernate session (if needed).
+     */
+    protected class AvailabilityPrefetch {
+    	private RoomAvailabilityInterface iAvailability;
+    	private Date[] iStartEnd;
+    	private ExecutorService iExecutor;
+    	private CompletableFuture<RuntimeException> iActivation;
+    	private Map<Long, CompletableFuture<Collection<TimeBlock>>> iRoomTimes = new HashMap<Long, CompletableFuture<Collection<TimeBlock>>>();
+    	private Map<Long, CompletableFuture<Collection<TimeBlock>>> iInstructorTimes = new HashMap<Long, CompletableFuture<Collection<TimeBlock>>>();
+    	private boolean iActivationChecked = false;
+    	private long iStartTime;
+    	private AtomicLong iEndTime = new AtomicLong(0);
+    	
+    	public AvailabilityPrefetch(final RoomAvailabilityInterface availability, Date[] startEnd, int nrThreads) {
+    		iAvailability = availability;
+    		iStartEnd = startEnd;
+    		iStartTime = System.currentTimeMillis();
+    		final AtomicInteger threadId = new AtomicInteger(0);
+    		iExecutor = Executors.newFixedThreadPool(nrThreads, r -> {
+    			Thread thread = new Thread(r);
+    			thread.setName("RoomAvailabilityLoader-" + threadId.incrementAndGet());
+    			thread.setDaemon(true);
+    			return thread;
+    		});
+    		final boolean waitForSync = ApplicationProperty.RoomAvailabilitySolverWaitForSync.isTrue();
+    		iActivation = CompletableFuture.supplyAsync(() -> {
+    			try {
+    				execute(() -> { iAvailability.activate(iSessionId, iStartEnd[0], iStartEnd[1], RoomAvailabilityInterface.sClassType, waitForSync); return null; });
+    				return null;
+    			} catch (RuntimeException e) {
+    				return e;
+    			}
+    		}, iExecutor);
+    	}
+    	
+    	protected <T> T execute(Supplier<T> job) {
+    		try {
+    			ApplicationProperties.setSessionId(iSessionId);
+    			return job.get();
+    		} finally {
+    			HibernateUtil.closeCurrentThreadSessions();
+    			ApplicationProperties.setSessionId(null);
+    			iEndTime.accumulateAndGet(System.currentTimeMillis(), Math::max);
+    		}
+    	}
+    	
+    	public void fetchRoom(final Long roomId) {
+    		if (iRoomTimes.containsKey(roomId)) return;
+    		iRoomTimes.put(roomId, iActivation.thenApplyAsync(e -> execute(() -> iAvailability.getRoomAvailability(roomId, iStartEnd[0], iStartEnd[1], RoomAvailabilityInterface.sClassType)), iExecutor));
+    	}
+    	
+    	public void fetchInstructor(final Long instructorId) {
+    		if (iInstructorTimes.containsKey(instructorId)) return;
+    		iInstructorTimes.put(instructorId, iActivation.thenApplyAsync(e -> execute(() -> iAvailability.getInstructorAvailability(instructorId, iStartEnd[0], iStartEnd[1], RoomAvailabilityInterface.sClassType)), iExecutor));
+    	}
+    	
+    	/**
+    	 * True if the prefetched data can be used: the same room availability service and the same time frame
+    	 */
+    	public boolean isApplicable(RoomAvailabilityInterface availability, Date startTime, Date endTime) {
+    		return iAvailability == availability && iStartEnd[0].equals(startTime) && iStartEnd[1].equals(endTime);
+    	}
+    	
+    	public boolean isApplicable(RoomAvailabilityInterface availability, Date[] startEnd) {
+    		return isApplicable(availability, startEnd[0], startEnd[1]);
+    	}
+    	
+    	/**
+    	 * Wait for the room availability service to be activated, report activation failure (if any)
+    	 */
+    	public void checkActivation() {
+    		if (iActivationChecked) return;
+    		iActivationChecked = true;
+    		RuntimeException e = iActivation.join();
+    		if (e != null) {
+                sLog.error(e.getMessage(),e);
+                iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_WARN), MSG.warnRoomAvailableServiceFailed(e.getMessage()));
+    		}
+    	}
+    	
+    	protected Collection<TimeBlock> get(CompletableFuture<Collection<TimeBlock>> future) {
+    		try {
+    			return future.join();
+    		} catch (CompletionException e) {
+    			if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+    			throw e;
+    		}
+    	}
+    	
+    	public Collection<TimeBlock> getRoomAvailability(Long roomId) {
+    		checkActivation();
+    		CompletableFuture<Collection<TimeBlock>> future = iRoomTimes.get(roomId);
+    		if (future == null)
+    			return iAvailability.getRoomAvailability(roomId, iStartEnd[0], iStartEnd[1], RoomAvailabilityInterface.sClassType);
+    		return get(future);
+    	}
+    	
+    	public Collection<TimeBlock> getInstructorAvailability(Long instructorId) {
+    		checkActivation();
+    		CompletableFuture<Collection<TimeBlock>> future = iInstructorTimes.get(instructorId);
+    		if (future == null)
+    			return iAvailability.getInstructorAvailability(instructorId, iStartEnd[0], iStartEnd[1], RoomAvailabilityInterface.sClassType);
+    		return get(future);
+    	}
+    	
+    	/**
+    	 * Stop the worker threads, report how long it took to fetch the prefetched availability
+    	 */
+    	public void shutdown() {
+    		iExecutor.shutdownNow();
+    		int done = 0;
+    		for (CompletableFuture<Collection<TimeBlock>> f: iRoomTimes.values())
+    			if (f.isDone()) done++;
+    		for (CompletableFuture<Collection<TimeBlock>> f: iInstructorTimes.values())
+    			if (f.isDone()) done++;
+    		long endTime = iEndTime.get();
+    		iProgress.info("Room and instructor availability: " + done + " of " + (iRoomTimes.size() + iInstructorTimes.size()) + " resources fetched in " +
+    				new DecimalFormat("0.00").format(((endTime == 0 ? System.currentTimeMillis() : endTime) - iStartTime) / 1000.0) + " s");
+    	}
+    }
 }
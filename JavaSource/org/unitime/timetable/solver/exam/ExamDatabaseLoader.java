@@ -19,8 +19,10 @@
 */
 package org.unitime.timetable.solver.exam;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -30,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.stream.Stream;
 
 
 import org.apache.commons.logging.Log;
@@ -65,7 +68,6 @@ import org.unitime.timetable.model.BuildingPref;
 import org.unitime.timetable.model.DepartmentalInstructor;
 import org.unitime.timetable.model.DistributionObject;
 import org.unitime.timetable.model.DistributionPref;
-import org.unitime.timetable.model.ExamEvent;
 import org.unitime.timetable.model.ExamPeriodPref;
 import org.unitime.timetable.model.ExamType;
 import org.unitime.timetable.model.Location;
@@ -80,7 +82,6 @@ import org.unitime.timetable.model.TravelTime;
 import org.unitime.timetable.model.dao.DistributionPrefDAO;
 import org.unitime.timetable.model.dao.EventDAO;
 import org.unitime.timetable.model.dao.ExamDAO;
-import org.unitime.timetable.model.dao.ExamEventDAO;
 import org.unitime.timetable.model.dao.ExamTypeDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.solver.jgroups.SolverServerImplementation;
@@ -109,6 +110,9 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
     private PredefinedExamRoomSharing iSharing = null;
     
     private boolean iRoomAvailabilityTimeStampIsSet = false;
+    private EnrollmentIndex iEnrollments = null;
+    private String iPhase = null;
+    private long iPhaseStart = 0;
     
     public ExamDatabaseLoader(ExamModel model, Assignment<Exam, ExamPlacement> assignment) {
         super(model, assignment);
@@ -156,6 +160,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
             getModel().clearAssignmentContexts(getAssignment());
             checkConsistency();
             assignInitial();
+            endPhase();
             tx.commit();
         } catch (Exception e) {
             iProgress.fatal("Unable to load examination problem, reason: "+e.getMessage(),e);
@@ -182,7 +187,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
     
     protected void loadPeriods() {
         Set periods = org.unitime.timetable.model.ExamPeriod.findAll(iSessionId, iExamTypeId);
-        iProgress.setPhase("Loading periods...", periods.size());
+        setPhase("Loading periods...", periods.size());
         for (Iterator i=periods.iterator();i.hasNext();) {
             iProgress.incProgress();
             org.unitime.timetable.model.ExamPeriod period = (org.unitime.timetable.model.ExamPeriod)i.next();
@@ -202,7 +207,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
     
     protected void loadRooms() {
         iAllRooms = Location.findAllExamLocations(iSessionId,iExamTypeId);
-        iProgress.setPhase("Loading rooms...", iAllRooms.size());
+        setPhase("Loading rooms...", iAllRooms.size());
         Map<Long, ExamRoom> rooms = new HashMap<Long, ExamRoom>();
         for (Iterator i=iAllRooms.iterator();i.hasNext();) {
             iProgress.incProgress();
@@ -247,7 +252,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
         Collection exams = org.unitime.timetable.model.Exam.findAll(iSessionId, iExamTypeId);
         ExamType type = ExamTypeDAO.getInstance().get(iExamTypeId);
         boolean considerLimit = ApplicationProperty.ExaminationSizeUseLimitInsteadOfEnrollment.isTrue(type.getReference(), type.getType() != ExamType.sExamTypeFinal);
-        iProgress.setPhase("Loading exams...", exams.size());
+        setPhase("Loading exams...", exams.size());
         for (Iterator i=exams.iterator();i.hasNext();) {
             iProgress.incProgress();
             org.unitime.timetable.model.Exam exam = (org.unitime.timetable.model.Exam)i.next();
@@ -534,72 +539,83 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
         return rooms;
     }
     
-    protected void loadStudents() {
-        loadStudents(
-                ExamDAO.getInstance().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.clazz c "+
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeClass+" and "+
-                "o.ownerId=c.uniqueId", Object[].class).setParameter("sessionId", iSessionId).setParameter("examTypeId", iExamTypeId).list(),
-                "class");
-        loadStudents(
-                ExamDAO.getInstance().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.clazz c " +
-                "inner join c.schedulingSubpart.instrOfferingConfig ioc " +
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeConfig+" and "+
-                "o.ownerId=ioc.uniqueId", Object[].class).setParameter("sessionId", iSessionId).setParameter("examTypeId", iExamTypeId).list(),
-                "config");
-        loadStudents(
-                ExamDAO.getInstance().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.courseOffering co " +
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeCourse+" and "+
-                "o.ownerId=co.uniqueId", Object[].class).setParameter("sessionId", iSessionId).setParameter("examTypeId", iExamTypeId).list(),
-                "course");
-        loadStudents(
-                ExamDAO.getInstance().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.courseOffering.instructionalOffering io " +
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeOffering+" and "+
-                "o.ownerId=io.uniqueId", Object[].class).setParameter("sessionId", iSessionId).setParameter("examTypeId", iExamTypeId).list(),
-                "offering");
+    /**
+     * Load all student class enrollments of the academic session in one pass, indexed by the exam owner type and id
+     */
+    protected EnrollmentIndex loadEnrollments() {
+        org.hibernate.Session hibSession = ExamDAO.getInstance().getSession();
+        Number count = hibSession.createQuery(
+                "select count(e) from StudentClassEnrollment e where e.student.session.uniqueId=:sessionId", Number.class)
+                .setParameter("sessionId", iSessionId).uniqueResult();
+        setPhase("Loading enrollments...", count == null ? 0 : count.longValue());
+        EnrollmentIndex index = new EnrollmentIndex();
+        try (Stream<Object[]> enrollments = hibSession.createQuery(
+                "select e.student.uniqueId, c.uniqueId, ioc.uniqueId, co.uniqueId, co.instructionalOffering.uniqueId from " +
+                "StudentClassEnrollment e inner join e.clazz c inner join c.schedulingSubpart.instrOfferingConfig ioc left join e.courseOffering co " +
+                "where e.student.session.uniqueId=:sessionId", Object[].class)
+                .setParameter("sessionId", iSessionId).getResultStream()) {
+            for (Iterator<Object[]> i = enrollments.iterator(); i.hasNext(); ) {
+                iProgress.incProgress();
+                Object[] o = i.next();
+                Long studentId = (Long)o[0];
+                index.add(org.unitime.timetable.model.ExamOwner.sOwnerTypeClass, (Long)o[1], studentId);
+                index.add(org.unitime.timetable.model.ExamOwner.sOwnerTypeConfig, (Long)o[2], studentId);
+                index.add(org.unitime.timetable.model.ExamOwner.sOwnerTypeCourse, (Long)o[3], studentId);
+                index.add(org.unitime.timetable.model.ExamOwner.sOwnerTypeOffering, (Long)o[4], studentId);
+            }
+        }
+        return index;
     }
     
-    protected void loadStudents(Collection<Object[]> enrl, String phase) {
+    protected void loadStudents() {
+        iEnrollments = loadEnrollments();
+        List<Object[]> owners = ExamDAO.getInstance().getSession().createQuery(
+                "select x.uniqueId, o.uniqueId, o.ownerType, o.ownerId from Exam x inner join x.owners o "+
+                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId", Object[].class)
+                .setParameter("sessionId", iSessionId).setParameter("examTypeId", iExamTypeId).list();
         HashSet notLoaded = new HashSet();
-        iProgress.setPhase("Loading students ("+phase+")...", enrl.size());
-        for (Iterator<Object[]> i=enrl.iterator();i.hasNext();) {
+        setPhase("Loading students...", owners.size());
+        for (Object[] o: owners) {
             iProgress.incProgress();
-            Object[] o = i.next();
             Long examId = (Long)o[0];
             Long ownerId = (Long)o[1];
-            Long studentId = (Long)o[2];
-            ExamStudent student = (ExamStudent)iStudents.get(studentId);
-            if (student==null) {
-                student = new ExamStudent(getModel(), studentId);
-                getModel().addConstraint(student);
-                getModel().getStudents().add(student);
-                iStudents.put(studentId, student);
-            }
+            Set<Long> studentIds = iEnrollments.getStudentIds(((Number)o[2]).intValue(), (Long)o[3]);
+            if (studentIds.isEmpty()) continue;
             Exam exam = (Exam)iExams.get(examId);
             if (exam==null) {
                 if (notLoaded.add(examId))
                     iProgress.info("Exam "+getExamLabel(ExamDAO.getInstance().get(examId))+" not loaded.");
                 continue;
             }
-            if (!student.variables().contains(exam))
-                student.addVariable(exam);
-            for (ExamOwner owner: exam.getOwners()) {
-                if (owner.getId()==ownerId) { owner.getStudents().add(student); student.getOwners().add(owner); }
+            ExamOwner owner = null;
+            for (ExamOwner eo: exam.getOwners())
+                if (eo.getId()==ownerId) { owner = eo; break; }
+            for (Long studentId: studentIds) {
+                ExamStudent student = (ExamStudent)iStudents.get(studentId);
+                if (student==null) {
+                    student = new ExamStudent(getModel(), studentId);
+                    getModel().addConstraint(student);
+                    getModel().getStudents().add(student);
+                    iStudents.put(studentId, student);
+                }
+                if (!student.variables().contains(exam))
+                    student.addVariable(exam);
+                if (owner!=null) { owner.getStudents().add(student); student.getOwners().add(owner); }
+            }
+        }
+    }
+    
+    /**
+     * Add students of the given event owners (rows of event id, owner type, and owner id) to the given table, using the enrollment index
+     */
+    protected void addStudents(Hashtable<Long, Set<ExamStudent>> students, List<Object[]> owners) {
+        for (Object[] o: owners) {
+            Long eventId = (Long)o[0];
+            Set<ExamStudent> studentsThisEvent = students.get(eventId);
+            if (studentsThisEvent==null) { studentsThisEvent=new HashSet(); students.put(eventId, studentsThisEvent); }
+            for (Long studentId: iEnrollments.getStudentIds(((Number)o[1]).intValue(), (Long)o[2])) {
+                ExamStudent student = (ExamStudent)iStudents.get(studentId);
+                if (student!=null) studentsThisEvent.add(student);
             }
         }
     }
@@ -611,7 +627,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
                 "a.solution.owner.session.uniqueId=:sessionId").
                 setParameter("sessionId", iSessionId).list();
         Set periods = org.unitime.timetable.model.ExamPeriod.findAll(iSessionId, iExamType);
-        iProgress.setPhase("Loading availabilities...", committedAssignments.size());
+        setPhase("Loading availabilities...", committedAssignments.size());
         for (Iterator i=committedAssignments.iterator();i.hasNext();) {
             iProgress.incProgress();
             Assignment a = (Assignment)i.next();
@@ -690,7 +706,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
                         .setParameter("sessionId", iSessionId)
                         .setCacheable(true)
                         .list();
-        iProgress.setPhase("Loading availabilities...", overlappingClassEvents.size()+overlappingCourseEvents.size()+overlappingExamEvents.size());
+        setPhase("Loading availabilities...", overlappingClassEvents.size()+overlappingCourseEvents.size()+overlappingExamEvents.size());
         
         Hashtable<Long, Set<ExamStudent>> students = new Hashtable();
         for (Object[] o: EventDAO.getInstance().getSession().createQuery(
@@ -729,6 +745,43 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
             instructorsThisEvent.add(instructor);
         }
         
+        addStudents(students, EventDAO.getInstance().getSession().createQuery(
+                "select distinct e.uniqueId, o.ownerType, o.ownerId from CourseEvent e inner join e.meetings m inner join e.relatedCourses o, ExamPeriod p where " +
+                "e.reqAttendance=true and m.approvalStatus = 1 and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and "+
+                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate", Object[].class)
+                .setParameter("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
+                .setParameter("examTypeId", iExamTypeId)
+                .setParameter("sessionId", iSessionId)
+                .list());
+        
+        addStudents(students, EventDAO.getInstance().getSession().createQuery(
+                "select distinct e.uniqueId, o.ownerType, o.ownerId from ExamEvent e inner join e.meetings m inner join e.exam.owners o, ExamPeriod p where " +
+                "m.approvalStatus = 1 and e.exam.examType.uniqueId != :examTypeId and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and "+
+                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate", Object[].class)
+                .setParameter("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
+                .setParameter("examTypeId", iExamTypeId)
+                .setParameter("sessionId", iSessionId)
+                .list());
+        
+        for (Object[] o: EventDAO.getInstance().getSession().createQuery(
+                "select distinct e.uniqueId, i from ExamEvent e inner join e.meetings m inner join e.exam.instructors i, ExamPeriod p where " +
+                "m.approvalStatus = 1 and e.exam.examType.uniqueId != :examTypeId and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId and "+
+                "p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+                HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate", Object[].class)
+                .setParameter("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
+                .setParameter("examTypeId", iExamTypeId)
+                .setParameter("sessionId", iSessionId)
+                .list()) {
+            Long eventId = (Long)o[0];
+            ExamInstructor instructor = getInstructor((DepartmentalInstructor)o[1]);
+            if (instructor==null) continue;
+            Set<ExamInstructor> instructorsThisEvent = instructors.get(eventId);
+            if (instructorsThisEvent==null) { instructorsThisEvent=new HashSet(); instructors.put(eventId, instructorsThisEvent); }
+            instructorsThisEvent.add(instructor);
+        }
+        
         Hashtable<Long, Hashtable<ExamPeriod,ExamResourceUnavailability>> unavailabilities = new Hashtable();
         
         for (Iterator i=overlappingClassEvents.iterator();i.hasNext();) {
@@ -797,14 +850,6 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
             if (period==null) continue;
 
             Set<ExamStudent> studentsThisEvent = students.get(eventId);
-            if (studentsThisEvent==null) {
-                studentsThisEvent = new HashSet();
-                for (Long studentId : meeting.getEvent().getStudentIds()) {
-                    ExamStudent student = (ExamStudent)iStudents.get(studentId);
-                    if (student!=null) studentsThisEvent.add(student);
-                }
-                students.put(eventId, studentsThisEvent);
-            }
 
             Set<ExamInstructor> instructorsThisEvent = instructors.get(eventId);
             
@@ -862,26 +907,8 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
             if (period==null) continue;
 
             Set<ExamStudent> studentsThisEvent = students.get(eventId);
-            if (studentsThisEvent==null) {
-                studentsThisEvent = new HashSet();
-                for (Long studentId : meeting.getEvent().getStudentIds()) {
-                    ExamStudent student = (ExamStudent)iStudents.get(studentId);
-                    if (student!=null) studentsThisEvent.add(student);
-                }
-                students.put(eventId, studentsThisEvent);
-            }
 
             Set<ExamInstructor> instructorsThisEvent = instructors.get(eventId);
-            if (instructorsThisEvent == null) {
-            	instructorsThisEvent = new HashSet<ExamInstructor>();
-            	ExamEvent event = ExamEventDAO.getInstance().get(meeting.getEvent().getUniqueId());
-            	for (DepartmentalInstructor deptInst: event.getInstructors()) {
-            		ExamInstructor instructor = getInstructor(deptInst);
-                    if (instructor!=null)
-                    	instructorsThisEvent.add(instructor);
-            	}
-            	instructors.put(eventId, instructorsThisEvent);
-            }
             
             if ((studentsThisEvent==null || studentsThisEvent.isEmpty()) && (instructorsThisEvent==null || instructorsThisEvent.isEmpty())) continue;
             
@@ -937,7 +964,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
                 "d.owner.uniqueId=:sessionId", DistributionPref.class).
                 setParameter("sessionId", iSessionId).
                 setParameter("examTypeId", iExamTypeId).list();
-        iProgress.setPhase("Loading distributions...", distPrefs.size());
+        setPhase("Loading distributions...", distPrefs.size());
         for (Iterator<DistributionPref> i=distPrefs.iterator();i.hasNext();) {
             iProgress.incProgress();
             DistributionPref pref = i.next();
@@ -987,7 +1014,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
     
     protected void assignInitial() {
         if (iLoadSolution) {
-            iProgress.setPhase("Assigning loaded solution...", getModel().variables().size());
+            setPhase("Assigning loaded solution...", getModel().variables().size());
             for (Exam exam: getModel().variables()) {
                 iProgress.incProgress();
                 ExamPlacement placement = (ExamPlacement)exam.getInitialAssignment();
@@ -1018,7 +1045,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
     }
     
     protected void checkConsistency() {
-        iProgress.setPhase("Checking consistency...", getModel().variables().size());
+        setPhase("Checking consistency...", getModel().variables().size());
         for (Exam exam: getModel().variables()) {
             iProgress.incProgress();
            if (exam.getPeriodPlacements().isEmpty()) {
@@ -1054,7 +1081,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
         ExamType type = ExamTypeDAO.getInstance().get(iExamTypeId);
         String exclude = type.getReference();
         roomAvailabilityActivate(availability, bounds[0],bounds[1],exclude);
-        iProgress.setPhase("Loading room availability...", iAllRooms.size());
+        setPhase("Loading room availability...", iAllRooms.size());
         for (Iterator i=iAllRooms.iterator();i.hasNext();) {
             iProgress.incProgress();
             Location location = (Location)i.next();
@@ -1134,7 +1161,7 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
     }
     
     public void makeupSameRoomConstraints() {
-        iProgress.setPhase("Posting same rooms...", getModel().variables().size());
+        setPhase("Posting same rooms...", getModel().variables().size());
         long dc = 0;
         for (Exam first: getModel().variables()) {
             iProgress.incProgress();
@@ -1149,4 +1176,47 @@ public class ExamDatabaseLoader extends ProblemLoader<Exam, ExamPlacement, ExamM
             }
         }
     }
+    
+    protected void setPhase(String phase, long progressMax) {
+        endPhase();
+        iPhase = phase; iPhaseStart = System.currentTimeMillis();
+        iProgress.setPhase(phase, progressMax);
+    }
+    
+    /**
+     * Report the time spent in the current phase (if any)
+     */
+    protected void endPhase() {
+        if (iPhase != null)
+            iProgress.info(iPhase + " took " + new DecimalFormat("0.00").format((System.currentTimeMillis() - iPhaseStart) / 1000.0) + " s");
+        iPhase = null;
+    }
+    
+    /**
+     * Students of the academic session by the exam owner type (class, configuration, course, offering) and the owner id
+     */
+    protected static class EnrollmentIndex {
+        private Map<Integer, Map<Long, Set<Long>>> iStudents = new HashMap<Integer, Map<Long, Set<Long>>>();
+        
+        void add(int ownerType, Long ownerId, Long studentId) {
+            if (ownerId == null) return;
+            Map<Long, Set<Long>> students = iStudents.get(ownerType);
+            if (students == null) {
+                students = new HashMap<Long, Set<Long>>();
+                iStudents.put(ownerType, students);
+            }
+            Set<Long> studentIds = students.get(ownerId);
+            if (studentIds == null) {
+                studentIds = new HashSet<Long>();
+                students.put(ownerId, studentIds);
+            }
+            studentIds.add(studentId);
+        }
+        
+        Set<Long> getStudentIds(int ownerType, Long ownerId) {
+            Map<Long, Set<Long>> students = iStudents.get(ownerType);
+            Set<Long> studentIds = (students == null ? null : students.get(ownerId));
+            return (studentIds == null ? Collections.<Long>emptySet() : studentIds);
+        }
+    }
 }
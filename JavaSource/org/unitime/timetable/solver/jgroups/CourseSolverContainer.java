@@ -107,6 +107,7 @@ public class CourseSolverContainer implements SolverContainer<SolverProxy> {
 		File[] files = folder.listFiles(filter);
 		for (int i=0;i<files.length;i++) {
 			File file = files[i];
+			if (!filter.isCurrent(file)) continue;
 			String user = filter.getUser(file);
             TimetableSolver solver = new TimetableSolver(new DataProperties(), new SolverOnDispose(user));
 			if (solver.restore(folder, user)) {
@@ -104,6 +104,7 @@ public class InstructorSchedulingContainer implements SolverContainer<Instructor
 		File[] files = folder.listFiles(filter);
 		for (int i=0;i<files.length;i++) {
 			File file = files[i];
+			if (!filter.isCurrent(file)) continue;
 			String user = filter.getUser(file);
 			InstructorSchedulingSolver solver = new InstructorSchedulingSolver(new DataProperties(), new SolverOnDispose(user));
 			if (solver.restore(folder,user)) {
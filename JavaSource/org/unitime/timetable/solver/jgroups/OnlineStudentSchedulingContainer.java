@@ -209,6 +209,12 @@ public class OnlineStudentSchedulingContainer implements SolverContainer<OnlineS
 		}
 	}
 
+	public void studentSectioningQueueChanged(Long academicSessionId) {
+		OnlineStudentSchedulingUpdater u = iUpdaters.get(academicSessionId);
+		if (u != null)
+			u.wakeUp();
+	}
+
 	@Override
 	public int getUsage() {
 		return 100 * iInstances.size();
@@ -21,7 +21,10 @@ package org.unitime.timetable.solver.jgroups;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,25 +51,37 @@ import org.unitime.timetable.onlinesectioning.updates.ReloadSchedulingRules;
 import org.unitime.timetable.onlinesectioning.updates.ReloadStudent;
 
 /**
+ * Updater of an online sectioning server: it processes the student sectioning queue of the academic session.<br>
+ * The queue is checked every unitime.sectioning.queue.updateInterval seconds, or as soon as a change is written into
+ * the queue and pushed to the updater over the cluster (see {@link OnlineStudentSchedulingUpdater#wakeUp()}).<br>
+ * Since a transaction may commit after a transaction with a later time stamp, the queue is re-read within a trailing window
+ * (unitime.sectioning.queue.trailingWindow seconds before the last processed change) and the changes that have been
+ * already processed are skipped.
+ *
  * @author Tomas Muller
  */
 public class OnlineStudentSchedulingUpdater extends Thread {
 	private Log iLog;
 	private long iSleepTimeInSeconds = 5;
 	private boolean iRun = true;
+	private Object iWakeUpLock = new Object();
+	private boolean iWakeUp = false;
 	
 	private OnlineStudentSchedulingContainer iContainer = null;
 	private AcademicSessionInfo iSession = null; 
-	private Date iLastTimeStamp = null;
+	private Date iLastTimeStamp = null, iStartTimeStamp = null;
+	private long iTrailingWindow = 60000l;
 	
 	public OnlineStudentSchedulingUpdater(OnlineStudentSchedulingContainer container, AcademicSessionInfo session, Date lastTimeStamp) {
 		super();
 		iContainer = container;
 		iSession = session;
 		iLastTimeStamp = lastTimeStamp;
+		iStartTimeStamp = lastTimeStamp;
 		setDaemon(true);
 		setName("Updater[" + getAcademicSession().toCompactString() + "]");
 		iSleepTimeInSeconds = ApplicationProperty.OnlineSchedulingQueueUpdateInterval.intValue();
+		iTrailingWindow = 1000l * ApplicationProperty.OnlineSchedulingQueueTrailingWindow.intValue();
 		iLog = LogFactory.getLog(OnlineStudentSchedulingUpdater.class.getName() + ".updater[" + getAcademicSession().toCompactString() + "]"); 
 	}
 	
@@ -77,7 +92,10 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
 			while (iRun) {
 				try {
-					sleep(iSleepTimeInSeconds * 1000);
+					synchronized (iWakeUpLock) {
+						if (!iWakeUp) iWakeUpLock.wait(iSleepTimeInSeconds * 1000);
+						iWakeUp = false;
+					}
 				} catch (InterruptedException e) {}
 				if (!iRun) break;
 				try {
@@ -100,6 +118,16 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 		}
 	}
 	
+	/**
+	 * Check the student sectioning queue now, instead of waiting for the next update interval
+	 */
+	public void wakeUp() {
+		synchronized (iWakeUpLock) {
+			iWakeUp = true;
+			iWakeUpLock.notify();
+		}
+	}
+	
 	public AcademicSessionInfo getAcademicSession() {
 		return iSession;
 	}
@@ -114,16 +142,31 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 			org.hibernate.Session hibSession = StudentSectioningQueueDAO.getInstance().createNewSession();
 			try {
 				iLastTimeStamp = server.getProperty("Updater.LastTimeStamp", iLastTimeStamp);
-				for (StudentSectioningQueue q: StudentSectioningQueue.getItems(hibSession, getAcademicSession().getUniqueId(), iLastTimeStamp)) {
+				// changes processed within the trailing window (unique id -> time stamp)
+				Map<Long, Date> processed = server.getProperty("Updater.Processed", null);
+				if (processed == null) processed = new HashMap<Long, Date>();
+				Date since = iLastTimeStamp;
+				if (since != null && iTrailingWindow > 0) {
+					since = new Date(since.getTime() - iTrailingWindow);
+					if (iStartTimeStamp != null && since.before(iStartTimeStamp)) since = iStartTimeStamp;
+					for (Iterator<Date> i = processed.values().iterator(); i.hasNext(); )
+						if (!i.next().after(since)) i.remove();
+				}
+				for (StudentSectioningQueue q: StudentSectioningQueue.getItems(hibSession, getAcademicSession().getUniqueId(), since)) {
+					if (processed.containsKey(q.getUniqueId())) continue;
 					try {
 						processChange(server, q);
 					} catch (Exception e) {
 						iLog.error("Update failed: " + e.getMessage(), e);
 					}
 					if (!iRun) break;
-					iLastTimeStamp = q.getTimeStamp();
+					if (iTrailingWindow > 0)
+						processed.put(q.getUniqueId(), q.getTimeStamp());
+					if (iLastTimeStamp == null || q.getTimeStamp().after(iLastTimeStamp))
+						iLastTimeStamp = q.getTimeStamp();
 					server.setProperty("Updater.LastTimeStamp", iLastTimeStamp);
 				}
+				server.setProperty("Updater.Processed", processed);
 			} finally {
 				hibSession.close();
 			}
@@ -88,6 +88,7 @@ public class SolverServerImplementation extends AbstractSolverServer {
 	private static SolverServerImplementation sInstance = null;
 	public static final RequestOptions sFirstResponse = new RequestOptions(ResponseMode.GET_FIRST, ApplicationProperty.SolverClusterTimeout.intValue()).setFlags(Flag.DONT_BUNDLE, Flag.OOB);
 	public static final RequestOptions sAllResponses = new RequestOptions(ResponseMode.GET_ALL, ApplicationProperty.SolverClusterTimeout.intValue()).setFlags(Flag.DONT_BUNDLE, Flag.OOB);
+	public static final RequestOptions sNoResponse = new RequestOptions(ResponseMode.GET_NONE, ApplicationProperty.SolverClusterTimeout.intValue()).setFlags(Flag.DONT_BUNDLE, Flag.OOB);
 	
 	private JChannel iChannel;
 	private ForkChannel iServerChannel;
@@ -398,6 +399,19 @@ public class SolverServerImplementation extends AbstractSolverServer {
 		}
 	}
 	
+	public void studentSectioningQueueChangedLocal(Long sessionId) {
+		super.studentSectioningQueueChanged(sessionId);
+	}
+	
+	@Override
+	public void studentSectioningQueueChanged(Long sessionId) {
+		try {
+			iDispatcher.callRemoteMethods(null, "studentSectioningQueueChangedLocal", new Object[] { sessionId }, new Class[] { Long.class }, sNoResponse);
+		} catch (Exception e) {
+			sLog.warn("Failed to notify online sectioning servers about a student sectioning queue change: " + e.getMessage());
+		}
+	}
+	
 	public Collection<XClassEnrollment> getUnavailabilitiesFromOtherSessionsLocal(AcademicSessionInfo session, String studentExternalId) {
 		return iOnlineStudentSchedulingContainer.getUnavailabilitiesFromOtherSessions(session, studentExternalId);
 	}
@@ -105,6 +105,7 @@ public class StudentSolverContainer implements SolverContainer<StudentSolverProx
 		File[] files = folder.listFiles(filter);
 		for (int i=0;i<files.length;i++) {
 			File file = files[i];
+			if (!filter.isCurrent(file)) continue;
 			String user = filter.getUser(file);
 			StudentSolver solver = new StudentSolver(new DataProperties(), new SolverOnDispose(user));
 			if (solver.restore(folder, user)) {
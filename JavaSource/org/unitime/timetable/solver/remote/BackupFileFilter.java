@@ -37,14 +37,26 @@ public class BackupFileFilter implements FileFilter {
 
 	public boolean accept(File file) {
 		if (iType != null && !file.getName().startsWith(iType.getPrefix())) return false;
-		return file.getName().endsWith(sXmlExtension);
+		return BackupFormat.getFormat(file) != null;
+	}
+
+	/**
+	 * When there are backups of the same solver in more than one format, only the one returned by
+	 * {@link BackupFormat#findFile(File, SolverType, String)} is current (and should be restored).
+	 */
+	public boolean isCurrent(File file) {
+		String user = getUser(file);
+		if (user == null) return false;
+		if (iType == null) return true;
+		return file.equals(BackupFormat.findFile(file.getParentFile(), iType, user));
 	}
 
 	public String getUser(File file) {
 		if (accept(file)) {
 			String name = file.getName();
 			if (iType != null) name = name.substring(iType.getPrefix().length());
-			if (name.endsWith(sXmlExtension)) name = name.substring(0, name.length() - sXmlExtension.length());
+			BackupFormat format = BackupFormat.getFormat(file);
+			if (format != null) name = name.substring(0, name.length() - format.getExtension().length());
 			return name;
 		} else {
 			return null;
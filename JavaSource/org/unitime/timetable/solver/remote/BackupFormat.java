@@ -0,0 +1,262 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.solver.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.SAXReader;
+import org.dom4j.io.XMLWriter;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.SolverParameterGroup.SolverType;
+
+/**
+ * Solver backup (passivation) file formats.<br>
+ * {@link BackupFormat#XML} is the original pretty-printed XML format.<br>
+ * {@link BackupFormat#BINARY} is a gzip-compressed, length-prefixed binary encoding of the same document:
+ * element and attribute names are written only once (and then referred to by their index), values are
+ * written as UTF-8 bytes prefixed by their length. This avoids the XML formatting and parsing, but the whole
+ * document is still created in memory before it is written (and after it is read).
+ *
+ * @author Tomas Muller
+ */
+public enum BackupFormat {
+	XML(".backup.xml"),
+	BINARY(".backup.bin"),
+	;
+
+	private static final int MAGIC = 0x55544244; // UTBD
+	private static final int VERSION = 1;
+	private static final byte END = 0, ELEMENT = 1, TEXT = 2;
+
+	private String iExtension;
+	BackupFormat(String extension) { iExtension = extension; }
+
+	public String getExtension() { return iExtension; }
+
+	public File getFile(File folder, SolverType type, String puid) {
+		return new File(folder, type.getPrefix() + puid + getExtension());
+	}
+
+	/**
+	 * Passivation format of the given solver type, see unitime.solver.passivation.format.[course|exam|student|instructor]
+	 */
+	public static BackupFormat getFormat(SolverType type) {
+		String format = ApplicationProperty.SolverPassivationFormatType.value(type.name().toLowerCase(), ApplicationProperty.SolverPassivationFormat.value());
+		for (BackupFormat f: values())
+			if (f.name().equalsIgnoreCase(format)) return f;
+		return XML;
+	}
+
+	/**
+	 * Find an existing backup file (of any format). When there are backups in more than one format,
+	 * the most recent one is returned (or the one in the configured format when they are equally old).
+	 */
+	public static File findFile(File folder, SolverType type, String puid) {
+		BackupFormat preferred = getFormat(type);
+		File ret = null;
+		for (BackupFormat f: values()) {
+			File file = f.getFile(folder, type, puid);
+			if (!file.exists()) continue;
+			if (ret == null || file.lastModified() > ret.lastModified() || (file.lastModified() == ret.lastModified() && f == preferred))
+				ret = file;
+		}
+		return ret;
+	}
+
+	public static BackupFormat getFormat(File file) {
+		for (BackupFormat f: values())
+			if (file.getName().endsWith(f.getExtension())) return f;
+		return null;
+	}
+
+	public void write(Document document, File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			write(document, out);
+		}
+	}
+
+	public void write(Document document, OutputStream out) throws IOException {
+		switch (this) {
+		case BINARY:
+			DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out, 65536), 65536));
+			dos.writeInt(MAGIC);
+			dos.writeByte(VERSION);
+			writeElement(dos, document.getRootElement(), new HashMap<String, Integer>());
+			dos.flush();
+			dos.close();
+			break;
+		default:
+			new XMLWriter(out, OutputFormat.createPrettyPrint()).write(document);
+			out.flush();
+		}
+	}
+
+	public Document read(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return read(in);
+		}
+	}
+
+	public Document read(InputStream in) throws IOException {
+		switch (this) {
+		case BINARY:
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 65536), 65536));
+			if (dis.readInt() != MAGIC) throw new IOException("Not a binary solver backup.");
+			int version = dis.readByte();
+			if (version != VERSION) throw new IOException("Unsupported binary solver backup version " + version + ".");
+			Document document = DocumentHelper.createDocument();
+			List<String> names = new ArrayList<String>();
+			if (dis.readByte() != ELEMENT) throw new IOException("Root element is missing.");
+			readElement(dis, document.addElement(readName(dis, names)), names);
+			return document;
+		default:
+			try {
+				return new SAXReader().read(in);
+			} catch (DocumentException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+	}
+
+	private static void writeName(DataOutputStream out, String name, Map<String, Integer> names) throws IOException {
+		Integer index = names.get(name);
+		if (index == null) {
+			names.put(name, names.size());
+			writeVarInt(out, 0);
+			writeString(out, name);
+		} else {
+			writeVarInt(out, 1 + index);
+		}
+	}
+
+	private static String readName(DataInputStream in, List<String> names) throws IOException {
+		int index = readVarInt(in);
+		if (index == 0) {
+			String name = readString(in);
+			names.add(name);
+			return name;
+		}
+		return names.get(index - 1);
+	}
+
+	private static void writeElement(DataOutputStream out, Element element, Map<String, Integer> names) throws IOException {
+		out.writeByte(ELEMENT);
+		writeName(out, element.getQualifiedName(), names);
+		writeVarInt(out, element.attributeCount());
+		for (Iterator<Attribute> i = element.attributeIterator(); i.hasNext(); ) {
+			Attribute attribute = i.next();
+			writeName(out, attribute.getQualifiedName(), names);
+			writeString(out, attribute.getValue());
+		}
+		for (Iterator<Node> i = element.nodeIterator(); i.hasNext(); ) {
+			Node node = i.next();
+			switch (node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				writeElement(out, (Element)node, names);
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				String text = node.getText();
+				if (text != null && !text.isEmpty()) {
+					out.writeByte(TEXT);
+					writeString(out, text);
+				}
+				break;
+			}
+		}
+		out.writeByte(END);
+	}
+
+	private static void readElement(DataInputStream in, Element element, List<String> names) throws IOException {
+		int attributes = readVarInt(in);
+		for (int i = 0; i < attributes; i++)
+			element.addAttribute(readName(in, names), readString(in));
+		while (true) {
+			byte type = in.readByte();
+			switch (type) {
+			case END:
+				return;
+			case ELEMENT:
+				readElement(in, element.addElement(readName(in, names)), names);
+				break;
+			case TEXT:
+				element.addText(readString(in));
+				break;
+			default:
+				throw new IOException("Unknown node type " + type + ".");
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new EOFException("Malformed variable length integer.");
+	}
+}
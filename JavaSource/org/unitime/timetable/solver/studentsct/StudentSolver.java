@@ -873,6 +873,31 @@ public class StudentSolver extends AbstractSolver<Request, Enrollment, StudentSe
 		return new XEnrollments(offeringId, getRequests(offeringId));
 	}
 
+	@Override
+	public int countEnrollmentsForSection(Long offeringId, Long sectionId) {
+		return getEnrollments(offeringId).countEnrollmentsForSection(sectionId);
+	}
+
+	@Override
+	public int countEnrollmentsForConfig(Long offeringId, Long configId) {
+		return getEnrollments(offeringId).countEnrollmentsForConfig(configId);
+	}
+
+	@Override
+	public int countEnrollmentsForCourse(Long offeringId, Long courseId) {
+		return getEnrollments(offeringId).countEnrollmentsForCourse(courseId);
+	}
+
+	@Override
+	public int countEnrollmentsForReservation(Long offeringId, Long reservationId) {
+		return getEnrollments(offeringId).countEnrollmentsForReservation(reservationId);
+	}
+
+	@Override
+	public long getEnrollmentVersion(Long offeringId) {
+		return -1;
+	}
+
 	@Override
 	public XExpectations getExpectations(Long offeringId) {
 		for (Offering offering: getModel().getOfferings())
@@ -20,16 +20,22 @@
 package org.unitime.timetable.util;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.hibernate.query.Query;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.interfaces.RoomAvailabilityInterface;
 import org.unitime.timetable.model.ClassEvent;
@@ -48,8 +54,9 @@ import org.unitime.timetable.model.dao.LocationDAO;
 /**
  * @author Tomas Muller
  */
-public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface {
-    private Vector<CacheElement> iCache = new Vector<CacheElement>();
+public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface, RoomAvailabilityInterface.MeetingChangeListener {
+    private List<CacheElement> iCache = new CopyOnWriteArrayList<CacheElement>();
+    private List<CacheElement> iPending = new CopyOnWriteArrayList<CacheElement>();
     private boolean iInstructorAvailabilityEnabled = false;
     
     public String getTimeStamp(Date startTime, Date endTime, String excludeType) {
@@ -59,105 +66,116 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
     }
     
     public CacheElement get(TimeFrame time, String excludeType) {
-        synchronized (iCache) {
-            for (CacheElement cache : iCache) if (cache.cover(time) && cache.exclude(excludeType)) return cache;
-        }
+        for (CacheElement cache : iCache) if (cache.cover(time) && cache.exclude(excludeType)) return cache;
         return null;
     }
     
+    @Override
+    public void meetingsChanged(Collection<Long> locationPermanentIds) {
+    	if (locationPermanentIds == null || locationPermanentIds.isEmpty()) return;
+    	for (CacheElement cache : iPending) cache.invalidate(locationPermanentIds);
+    	for (CacheElement cache : iCache) cache.invalidate(locationPermanentIds);
+    }
     
     public Collection<TimeBlock> getRoomAvailability(Long locationId, Date startTime, Date endTime, String excludeType) {
     	Location location = LocationDAO.getInstance().get(locationId);
         if (location == null || location.getPermanentId() == null) return null;
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(location.getSession().getUniqueId()) : null);
         TimeFrame time = new TimeFrame(startTime, endTime);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache!=null) return cache.get(location.getPermanentId(), excludeType);
-            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
-            Class<? extends Event> exclude = null;
-            ExamType examType = null;
-            if (excludeType!=null) {
-                if (sFinalExamType.equals(excludeType))
-                    exclude = FinalExamEvent.class;
-                else if (sMidtermExamType.equals(excludeType))
-                    exclude = MidtermExamEvent.class;
-                else if (sClassType.equals(excludeType))
-                    exclude = ClassEvent.class;
-                else {
-                	exclude = ExamEvent.class;
-                	examType = ExamType.findByReference(excludeType);
-                }
-            }
-            for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                    "select m from Meeting m inner join m.event e where m.locationPermanentId=:locPermId and "+
-                    "m.approvalStatus = 1 and "+
-                    "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                    "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                    (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
-                    exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
-                    .setParameter("locPermId", location.getPermanentId())
-                    .setParameter("startDate", time.getStartDate())
-                    .setParameter("endDate", time.getEndDate())
-                    .setParameter("startSlot", time.getStartSlot())
-                    .setParameter("endSlot", time.getEndSlot())
-                    .setCacheable(true).list()) {
-                MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	ret.add(block);
-            }
-            if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
-            	if (ClassEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from ClassEvent e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
-                            "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
-                            .setParameter("locPermId", location.getPermanentId())
-                            .setParameter("sessionId", location.getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from " + exclude.getSimpleName() + " e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
-                            "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                            (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Meeting.class)
-                            .setParameter("locPermId", location.getPermanentId())
-                            .setParameter("sessionId", location.getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	}
+        CacheElement cache = get(time, excludeType);
+        if (cache!=null) return cache.get(location.getPermanentId(), time, excludeType);
+        TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+        Class<? extends Event> exclude = null;
+        ExamType examType = null;
+        if (excludeType!=null) {
+            if (sFinalExamType.equals(excludeType))
+                exclude = FinalExamEvent.class;
+            else if (sMidtermExamType.equals(excludeType))
+                exclude = MidtermExamEvent.class;
+            else if (sClassType.equals(excludeType))
+                exclude = ClassEvent.class;
+            else {
+            	exclude = ExamEvent.class;
+            	examType = ExamType.findByReference(excludeType);
             }
-            return ret;
         }
+        for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                "select m from Meeting m inner join m.event e where m.locationPermanentId=:locPermId and "+
+                "m.approvalStatus = 1 and "+
+                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
+                exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
+                .setParameter("locPermId", location.getPermanentId())
+                .setParameter("startDate", time.getStartDate())
+                .setParameter("endDate", time.getEndDate())
+                .setParameter("startSlot", time.getStartSlot())
+                .setParameter("endSlot", time.getEndSlot())
+                .setCacheable(true).list()) {
+            MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+            if (block.getStartTime() != null)
+            	ret.add(block);
+        }
+        if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
+        	if (ClassEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from ClassEvent e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
+                        "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
+                        .setParameter("locPermId", location.getPermanentId())
+                        .setParameter("sessionId", location.getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
+                }
+        	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from " + exclude.getSimpleName() + " e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
+                        "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                        (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Meeting.class)
+                        .setParameter("locPermId", location.getPermanentId())
+                        .setParameter("sessionId", location.getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
+                }
+        	}
+        }
+        return ret;
     }
     public void activate(Long sessionId, Date startTime, Date endTime, String excludeType, boolean waitForSync) {
         iInstructorAvailabilityEnabled = ApplicationProperty.RoomAvailabilityIncludeInstructors.isTrue();
         TimeFrame time = new TimeFrame(startTime, endTime);
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(sessionId) : null);
-        synchronized(iCache) {
+        synchronized(this) {
             CacheElement cache = get(time, excludeType);
-            if (cache==null) {
-                cache = new CacheElement(time, excludeType);
-                iCache.insertElementAt(cache, 0);
+            // build the new cache element first, readers keep using the old one until it is replaced
+            CacheElement update = (cache == null ? new CacheElement(time, excludeType) : new CacheElement(cache.getTimeFrame(), cache.getExcludeType()));
+            // the new element is reachable by meetingsChanged until it is published, so that no invalidation is lost
+            iPending.add(update);
+            try {
+            	update.update(class2eventDateMap, sessionId, iInstructorAvailabilityEnabled);
+            	int index = (cache == null ? -1 : iCache.indexOf(cache));
+            	if (index >= 0)
+            		iCache.set(index, update);
+            	else
+            		iCache.add(0, update);
+            } finally {
+            	iPending.remove(update);
             }
-            cache.update(class2eventDateMap, sessionId, iInstructorAvailabilityEnabled);
         }
     }
     
@@ -203,34 +221,64 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
 
     public static class CacheElement{
         private TimeFrame iTime;
-        private Map<Long, TreeSet<TimeBlock>> iAvailability = new HashMap<Long, TreeSet<TimeBlock>>();
+        private Map<Long, TimeBlockIndex> iAvailability = new ConcurrentHashMap<Long, TimeBlockIndex>();
         private Map<String, TreeSet<TimeBlock>> iInstructorAvailability = new HashMap<String, TreeSet<TimeBlock>>();
+        private Set<Long> iInvalidated = ConcurrentHashMap.newKeySet();
         private String iTimestamp = null;
         private String iExcludeType = null;
+        private Long iSessionId = null;
+        private EventDateMapping.Class2EventDateMap iClass2EventDateMap = null;
         public CacheElement(TimeFrame time, String excludeType) {
             iTime = time;
             iExcludeType = excludeType;
         }
 
         public void update(EventDateMapping.Class2EventDateMap class2eventDateMap, Long sessionId, boolean includeInstructors) {
-        	iAvailability.clear();
-        	iInstructorAvailability.clear();
-            Class<? extends Event> exclude = null;
-            ExamType examType = null;
-            if (iExcludeType!=null) {
-                if (sFinalExamType.equals(iExcludeType))
-                    exclude = FinalExamEvent.class;
-                else if (sMidtermExamType.equals(iExcludeType))
-                    exclude = MidtermExamEvent.class;
-                else if (sClassType.equals(iExcludeType))
-                    exclude = ClassEvent.class;
-                else {
-                	exclude = ExamEvent.class;
-                	examType = ExamType.findByReference(iExcludeType);
-                }
-            }
-            addAll(LocationDAO.getInstance().getSession().createQuery(
-                    "select m from Meeting m inner join m.event e where m.locationPermanentId is not null and "+
+        	iSessionId = sessionId;
+        	iClass2EventDateMap = class2eventDateMap;
+        	iAvailability.putAll(load(null));
+        	if (sessionId != null && includeInstructors)
+        		loadInstructors();
+            iTimestamp = new Date().toString();
+        }
+        
+        /**
+         * Mark the availability of the given rooms as outdated, it will be reloaded on the next lookup
+         */
+        public void invalidate(Collection<Long> locationPermanentIds) {
+        	iInvalidated.addAll(locationPermanentIds);
+        }
+        
+        protected Class<? extends Event> getExcludeClass() {
+            if (iExcludeType==null) return null;
+            if (sFinalExamType.equals(iExcludeType))
+                return FinalExamEvent.class;
+            else if (sMidtermExamType.equals(iExcludeType))
+                return MidtermExamEvent.class;
+            else if (sClassType.equals(iExcludeType))
+                return ClassEvent.class;
+            else
+            	return ExamEvent.class;
+        }
+        
+        protected ExamType getExamType() {
+        	if (iExcludeType==null || sFinalExamType.equals(iExcludeType) || sMidtermExamType.equals(iExcludeType) || sClassType.equals(iExcludeType)) return null;
+        	return ExamType.findByReference(iExcludeType);
+        }
+        
+        /**
+         * Load room availability of all rooms (when locPermId is null) or of the given room
+         */
+        protected Map<Long, TimeBlockIndex> load(Long locPermId) {
+        	Map<Long, TreeSet<TimeBlock>> availability = new HashMap<Long, TreeSet<TimeBlock>>();
+        	if (locPermId != null) availability.put(locPermId, new TreeSet<TimeBlock>());
+        	Class<? extends Event> exclude = getExcludeClass();
+            ExamType examType = getExamType();
+            Long sessionId = iSessionId;
+            EventDateMapping.Class2EventDateMap class2eventDateMap = iClass2EventDateMap;
+            Query<Meeting> q = LocationDAO.getInstance().getSession().createQuery(
+                    "select m from Meeting m inner join m.event e where " +
+                    (locPermId == null ? "m.locationPermanentId is not null" : "m.locationPermanentId = :locPermId") + " and "+
                     "m.approvalStatus = 1 and "+
                     "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
                     "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" +
@@ -239,13 +287,14 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                     .setParameter("startDate", iTime.getStartDate())
                     .setParameter("endDate", iTime.getEndDate())
                     .setParameter("startSlot", iTime.getStartSlot())
-                    .setParameter("endSlot", iTime.getEndSlot())
-                    .setCacheable(true)
-                    .list(), class2eventDateMap);
+                    .setParameter("endSlot", iTime.getEndSlot());
+            if (locPermId != null) q.setParameter("locPermId", locPermId);
+            addAll(availability, q.setCacheable(true).list(), class2eventDateMap);
             if (sessionId != null && ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && exclude != null) {
             	if (ClassEvent.class.isAssignableFrom(exclude)) {
-            		addAll(LocationDAO.getInstance().getSession().createQuery(
+            		q = LocationDAO.getInstance().getSession().createQuery(
                             "select m from ClassEvent e inner join e.meetings m where m.locationPermanentId in (select l.permanentId from Location l where l.session.uniqueId = :sessionId) and "+
+                            (locPermId == null ? "" : "m.locationPermanentId = :locPermId and ") +
                             "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
                             "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
                             "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
@@ -253,11 +302,13 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                             .setParameter("startDate", iTime.getStartDate())
                             .setParameter("endDate", iTime.getEndDate())
                             .setParameter("startSlot", iTime.getStartSlot())
-                            .setParameter("endSlot", iTime.getEndSlot())
-                            .setCacheable(true).list(), class2eventDateMap);
+                            .setParameter("endSlot", iTime.getEndSlot());
+            		if (locPermId != null) q.setParameter("locPermId", locPermId);
+            		addAll(availability, q.setCacheable(true).list(), class2eventDateMap);
             	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-            		addAll(LocationDAO.getInstance().getSession().createQuery(
+            		q = LocationDAO.getInstance().getSession().createQuery(
                             "select m from " + exclude.getSimpleName() + " e inner join e.meetings m where m.locationPermanentId in (select l.permanentId from Location l where l.session.uniqueId = :sessionId) and "+
+                            (locPermId == null ? "" : "m.locationPermanentId = :locPermId and ") +
                             "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
                             "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
                             "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" +
@@ -266,71 +317,78 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                             .setParameter("startDate", iTime.getStartDate())
                             .setParameter("endDate", iTime.getEndDate())
                             .setParameter("startSlot", iTime.getStartSlot())
-                            .setParameter("endSlot", iTime.getEndSlot())
-                            .setCacheable(true).list(), class2eventDateMap);
+                            .setParameter("endSlot", iTime.getEndSlot());
+            		if (locPermId != null) q.setParameter("locPermId", locPermId);
+            		addAll(availability, q.setCacheable(true).list(), class2eventDateMap);
             	}
             }
-            if (sessionId != null && includeInstructors) {
-            	addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
-            			"select distinct m, i.externalUniqueId from Meeting m inner join m.event e left outer join m.event.additionalContacts c, DepartmentalInstructor i where " +
-                         "i.department.session.uniqueId = :sessionId and i.externalUniqueId is not null and "+
-                         "(m.event.mainContact.externalUniqueId = i.externalUniqueId or c.externalUniqueId = i.externalUniqueId) and "+
-                         "m.approvalStatus = 1 and "+
-                         "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                         "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                         (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
-                        	 exclude!=null?" and type(e)!="+exclude.getSimpleName():""), Object[].class)
-                         .setParameter("startDate", iTime.getStartDate())
-                         .setParameter("endDate", iTime.getEndDate())
-                         .setParameter("sessionId", sessionId)
-                         .setParameter("startSlot", iTime.getStartSlot())
-                         .setParameter("endSlot", iTime.getEndSlot())
-                         .setCacheable(true).list(), class2eventDateMap);
-            	if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && exclude != null) {
-            		if (ClassEvent.class.isAssignableFrom(exclude)) {
-            			addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
-                                "select m, ci.instructor.externalUniqueId from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
-                                "ci.lead = true and m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
-                                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Object[].class)
-                                .setParameter("sessionId", sessionId)
-                                .setParameter("startDate", iTime.getStartDate())
-                                .setParameter("endDate", iTime.getEndDate())
-                                .setParameter("startSlot", iTime.getStartSlot())
-                                .setParameter("endSlot", iTime.getEndSlot())
-                                .setCacheable(true).list(), class2eventDateMap);
-                	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-                		addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
-                                "select m, di.externalUniqueId from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
-                                "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
-                                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" +
-                                (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Object[].class)
-                                .setParameter("sessionId", sessionId)
-                                .setParameter("startDate", iTime.getStartDate())
-                                .setParameter("endDate", iTime.getEndDate())
-                                .setParameter("startSlot", iTime.getStartSlot())
-                                .setParameter("endSlot", iTime.getEndSlot())
-                                .setCacheable(true).list(), class2eventDateMap);
-                	}
-                }
-            }
-            iTimestamp = new Date().toString();
+            Map<Long, TimeBlockIndex> ret = new HashMap<Long, TimeBlockIndex>();
+            for (Map.Entry<Long, TreeSet<TimeBlock>> e: availability.entrySet())
+            	ret.put(e.getKey(), new TimeBlockIndex(e.getValue()));
+            return ret;
         }
         
-        private void add(Meeting m, EventDateMapping.Class2EventDateMap class2eventDateMap) {
-        	TreeSet<TimeBlock> blocks = iAvailability.get(m.getLocationPermanentId());
-            if (blocks==null) {
-                blocks = new TreeSet(); iAvailability.put(m.getLocationPermanentId(), blocks);
+        protected void loadInstructors() {
+        	Class<? extends Event> exclude = getExcludeClass();
+            ExamType examType = getExamType();
+            Long sessionId = iSessionId;
+            EventDateMapping.Class2EventDateMap class2eventDateMap = iClass2EventDateMap;
+        	addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
+        			"select distinct m, i.externalUniqueId from Meeting m inner join m.event e left outer join m.event.additionalContacts c, DepartmentalInstructor i where " +
+                     "i.department.session.uniqueId = :sessionId and i.externalUniqueId is not null and "+
+                     "(m.event.mainContact.externalUniqueId = i.externalUniqueId or c.externalUniqueId = i.externalUniqueId) and "+
+                     "m.approvalStatus = 1 and "+
+                     "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                     "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                     (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
+                    	 exclude!=null?" and type(e)!="+exclude.getSimpleName():""), Object[].class)
+                     .setParameter("startDate", iTime.getStartDate())
+                     .setParameter("endDate", iTime.getEndDate())
+                     .setParameter("sessionId", sessionId)
+                     .setParameter("startSlot", iTime.getStartSlot())
+                     .setParameter("endSlot", iTime.getEndSlot())
+                     .setCacheable(true).list(), class2eventDateMap);
+        	if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && exclude != null) {
+        		if (ClassEvent.class.isAssignableFrom(exclude)) {
+        			addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
+                            "select m, ci.instructor.externalUniqueId from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
+                            "ci.lead = true and m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
+                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Object[].class)
+                            .setParameter("sessionId", sessionId)
+                            .setParameter("startDate", iTime.getStartDate())
+                            .setParameter("endDate", iTime.getEndDate())
+                            .setParameter("startSlot", iTime.getStartSlot())
+                            .setParameter("endSlot", iTime.getEndSlot())
+                            .setCacheable(true).list(), class2eventDateMap);
+            	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
+            		addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
+                            "select m, di.externalUniqueId from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
+                            "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
+                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" +
+                            (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Object[].class)
+                            .setParameter("sessionId", sessionId)
+                            .setParameter("startDate", iTime.getStartDate())
+                            .setParameter("endDate", iTime.getEndDate())
+                            .setParameter("startSlot", iTime.getStartSlot())
+                            .setParameter("endSlot", iTime.getEndSlot())
+                            .setCacheable(true).list(), class2eventDateMap);
+            	}
             }
-            MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-            if (block.getStartTime() != null)
-            	blocks.add(block);
         }
-        private void addAll(List<Meeting> meetings, EventDateMapping.Class2EventDateMap class2eventDateMap) {
+        
+        private static void addAll(Map<Long, TreeSet<TimeBlock>> availability, List<Meeting> meetings, EventDateMapping.Class2EventDateMap class2eventDateMap) {
         	if (meetings != null)
-        		for (Meeting m: meetings)
-        			add(m, class2eventDateMap);
+        		for (Meeting m: meetings) {
+        			TreeSet<TimeBlock> blocks = availability.get(m.getLocationPermanentId());
+                    if (blocks==null) {
+                        blocks = new TreeSet<TimeBlock>(); availability.put(m.getLocationPermanentId(), blocks);
+                    }
+                    MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	blocks.add(block);
+        		}
         }
         private void add(Meeting m, String instructorExternalId, EventDateMapping.Class2EventDateMap class2eventDateMap) {
         	TreeSet<TimeBlock> blocks = iInstructorAvailability.get(instructorExternalId);
@@ -351,11 +409,20 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         }
         
         public TreeSet<TimeBlock> get(Long roomPermId, String excludeType) {
-            TreeSet<TimeBlock> roomAvailability = iAvailability.get(roomPermId);
-            if (roomAvailability==null || excludeType==null || excludeType.equals(iExcludeType)) return roomAvailability;
-            TreeSet<TimeBlock> ret = new TreeSet();
-            for (TimeBlock block : roomAvailability) {
-            	if (excludeType.equals(block.getEventType())) continue;
+            return get(roomPermId, iTime, excludeType);
+        }
+        /**
+         * Room availability within the given time frame (dates only, the time of day is not considered)
+         */
+        public TreeSet<TimeBlock> get(Long roomPermId, TimeFrame time, String excludeType) {
+        	if (iInvalidated.remove(roomPermId))
+        		iAvailability.putAll(load(roomPermId));
+        	TimeBlockIndex roomAvailability = iAvailability.get(roomPermId);
+            if (roomAvailability==null) return null;
+            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+            Calendar end = Calendar.getInstance(Locale.US); end.setTime(time.getEndDate()); end.add(Calendar.DAY_OF_YEAR, 1);
+            for (TimeBlock block : roomAvailability.overlapping(time.getStartDate(), end.getTime())) {
+            	if (excludeType != null && !excludeType.equals(iExcludeType) && excludeType.equals(block.getEventType())) continue;
                 ret.add(block);
             }
             return ret;
@@ -388,6 +455,54 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         }
     }
     
+    /**
+     * Immutable interval index of time blocks of a room: blocks are sorted by their start times,
+     * with the latest end time of all the preceding blocks kept for each position,
+     * so that the overlapping blocks can be found without scanning the whole list.
+     */
+    public static class TimeBlockIndex {
+    	private TimeBlock[] iBlocks;
+    	private long[] iStart;
+    	private long[] iMaxEnd;
+    	
+    	public TimeBlockIndex(Collection<TimeBlock> blocks) {
+    		iBlocks = blocks.toArray(new TimeBlock[blocks.size()]);
+    		Arrays.sort(iBlocks, new Comparator<TimeBlock>() {
+    			@Override
+    			public int compare(TimeBlock b1, TimeBlock b2) {
+    				return b1.getStartTime().compareTo(b2.getStartTime());
+    			}
+			});
+    		iStart = new long[iBlocks.length];
+    		iMaxEnd = new long[iBlocks.length];
+    		long maxEnd = Long.MIN_VALUE;
+    		for (int i = 0; i < iBlocks.length; i++) {
+    			iStart[i] = iBlocks[i].getStartTime().getTime();
+    			maxEnd = Math.max(maxEnd, iBlocks[i].getEndTime().getTime());
+    			iMaxEnd[i] = maxEnd;
+    		}
+    	}
+    	
+    	public int size() { return iBlocks.length; }
+    	
+    	/**
+    	 * Blocks overlapping with the interval [start, end)
+    	 */
+    	public List<TimeBlock> overlapping(Date start, Date end) {
+    		List<TimeBlock> ret = new ArrayList<TimeBlock>();
+    		long s = start.getTime(), e = end.getTime();
+    		// first block that starts at or after the end of the interval
+    		int lo = 0, hi = iStart.length;
+    		while (lo < hi) {
+    			int mid = (lo + hi) >>> 1;
+    			if (iStart[mid] < e) lo = mid + 1; else hi = mid;
+    		}
+    		for (int i = lo - 1; i >= 0 && iMaxEnd[i] > s; i--)
+    			if (iBlocks[i].getEndTime().getTime() > s) ret.add(iBlocks[i]);
+    		return ret;
+    	}
+    }
+    
     public static class MeetingTimeBlock implements TimeBlock, Comparable<TimeBlock> {
 		private static final long serialVersionUID = -5557707709984628517L;
 		Long iEventId, iMeetingId, iLocationPermanentId;
@@ -491,94 +606,92 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         }
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(instructor.getDepartment().getSession().getUniqueId()) : null);
         TimeFrame time = new TimeFrame(startTime, endTime);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache!=null) {
-            	Collection<TimeBlock> cached = cache.get(instructor.getExternalUniqueId(), excludeType);
-            	if (instructor.hasUnavailabilities()) {
-            		Collection<TimeBlock> ret = instructor.listUnavailableDays();
-            		if (cached != null) ret.addAll(cached);
-            		return ret;
-            	} else {
-            		return cached;
-            	}
+        CacheElement cache = get(time, excludeType);
+        if (cache!=null) {
+        	Collection<TimeBlock> cached = cache.get(instructor.getExternalUniqueId(), excludeType);
+        	if (instructor.hasUnavailabilities()) {
+        		Collection<TimeBlock> ret = instructor.listUnavailableDays();
+        		if (cached != null) ret.addAll(cached);
+        		return ret;
+        	} else {
+        		return cached;
+        	}
+        }
+        TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+        Class<? extends Event> exclude = null;
+        ExamType examType = null;
+        if (excludeType!=null) {
+            if (sFinalExamType.equals(excludeType))
+                exclude = FinalExamEvent.class;
+            else if (sMidtermExamType.equals(excludeType))
+                exclude = MidtermExamEvent.class;
+            else if (sClassType.equals(excludeType))
+                exclude = ClassEvent.class;
+            else {
+            	exclude = ExamEvent.class;
+            	examType = ExamType.findByReference(excludeType);
             }
-            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
-            Class<? extends Event> exclude = null;
-            ExamType examType = null;
-            if (excludeType!=null) {
-                if (sFinalExamType.equals(excludeType))
-                    exclude = FinalExamEvent.class;
-                else if (sMidtermExamType.equals(excludeType))
-                    exclude = MidtermExamEvent.class;
-                else if (sClassType.equals(excludeType))
-                    exclude = ClassEvent.class;
-                else {
-                	exclude = ExamEvent.class;
-                	examType = ExamType.findByReference(excludeType);
+        }
+        for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+        		"select m from Meeting m inner join m.event e left outer join m.event.additionalContacts c where " +
+        		"(m.event.mainContact.externalUniqueId = :user or c.externalUniqueId = :user) and "+
+        		"m.approvalStatus = 1 and "+
+                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
+                	exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
+                .setParameter("user", instructor.getExternalUniqueId())
+                .setParameter("startDate", time.getStartDate())
+                .setParameter("endDate", time.getEndDate())
+                .setParameter("startSlot", time.getStartSlot())
+                .setParameter("endSlot", time.getEndSlot())
+                .setCacheable(true).list()) {
+            MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
+            if (block.getStartTime() != null)
+            	ret.add(block);
+        }
+        if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
+        	if (ClassEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
+                        "ci.instructor.externalUniqueId = :user and ci.lead = true and "+
+                        "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
+        				.setParameter("user", instructor.getExternalUniqueId())
+                        .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
                 }
-            }
-            for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-            		"select m from Meeting m inner join m.event e left outer join m.event.additionalContacts c where " +
-            		"(m.event.mainContact.externalUniqueId = :user or c.externalUniqueId = :user) and "+
-            		"m.approvalStatus = 1 and "+
-                    "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                    "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                    (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
-                    	exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
-                    .setParameter("user", instructor.getExternalUniqueId())
-                    .setParameter("startDate", time.getStartDate())
-                    .setParameter("endDate", time.getEndDate())
-                    .setParameter("startSlot", time.getStartSlot())
-                    .setParameter("endSlot", time.getEndSlot())
-                    .setCacheable(true).list()) {
-                MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	ret.add(block);
-            }
-            if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
-            	if (ClassEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
-                            "ci.instructor.externalUniqueId = :user and ci.lead = true and "+
-                            "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
-            				.setParameter("user", instructor.getExternalUniqueId())
-                            .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
-                            "di.externalUniqueId = :user and "+
-                            "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" + 
-                            (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Meeting.class)
-            				.setParameter("user", instructor.getExternalUniqueId())
-                            .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	}
-            }
-            if (instructor.hasUnavailabilities())
-            	ret.addAll(instructor.listUnavailableDays());
-            return ret;
+        	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
+                        "di.externalUniqueId = :user and "+
+                        "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" + 
+                        (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Meeting.class)
+        				.setParameter("user", instructor.getExternalUniqueId())
+                        .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
+                }
+        	}
         }
+        if (instructor.hasUnavailabilities())
+        	ret.addAll(instructor.listUnavailableDays());
+        return ret;
 	}
 }
@@ -19,12 +19,11 @@
 */
 package org.unitime.timetable.util;
 
-import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 
 import org.apache.commons.logging.LogFactory;
 
-import org.dom4j.Document;
-import org.dom4j.io.SAXReader;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.dataexchange.DataExchangeHelper;
@@ -48,14 +47,16 @@ public class ImportXmlFile {
 	        // Configure hibernate
 	        HibernateUtil.configureHibernate(ApplicationProperties.getProperties());
 	        
-	        // Load an XML file
-	        Document document = (new SAXReader()).read(new File(args[0]));
-	        
 	        // External id of the manager doing the import (can be null)
 	        String managerId = (args.length >= 2 ? args[1] : null);
 	        
-	        // Import document
-	        DataExchangeHelper.importDocument(document, managerId, null);
+	        // Import the XML file (student and student enrollment imports can stream the file)
+	        InputStream input = new FileInputStream(args[0]);
+	        try {
+	        	DataExchangeHelper.importDocument(input, managerId, null);
+	        } finally {
+	        	input.close();
+	        }
 	        
 	        // Close hibernate
 	        HibernateUtil.closeHibernate();
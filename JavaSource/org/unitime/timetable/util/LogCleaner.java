@@ -19,10 +19,30 @@
 */
 package org.unitime.timetable.util;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Transaction;
+import org.hibernate.query.Query;
 import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.dao._RootDAO;
 
@@ -33,103 +53,23 @@ public class LogCleaner {
 	private static  Log sLog = LogFactory.getLog(LogCleaner.class);
 	
 	public static void cleanupQueryLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from QueryLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the query log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup query log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("QueryLog", "query_log", "the query log", days);
 	}
 	
 	public static void cleanupChangeLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from ChangeLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the change log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup query log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("ChangeLog", "change_log", "the change log", days);
 	}
 	
 	public static void cleanupOnlineSectioningLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from OnlineSectioningLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the online sectioning log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup query log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("OnlineSectioningLog", "sectioning_log", "the online sectioning log", days);
 	}
 	
 	public static void cleanupMessageLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from MessageLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the message log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup message log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("MessageLog", "message_log", "the message log", days);
 	}
 	
 	public static void cleanupStudentSectioningQueue(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from StudentSectioningQueue where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the student sectioning queue (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup student sectioning queue: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("StudentSectioningQueue", "sectioning_queue", "the student sectioning queue", days);
 	}
 	
 	public static void cleanupHashedQueries(int days) {
@@ -153,42 +93,163 @@ public class LogCleaner {
 	}
 	
 	public static void cleanupSctSolutionLog(int days) {
+		cleanup("SectioningSolutionLog", "sct_solution_log", "the sectioning solutions log", days);
+	}
+	
+	public static void cleanupAccessStatisticsLog(int days) {
+		cleanup("AccessStatistics", "access_stats", "the access statistics", days);
+	}
+	
+	/**
+	 * Delete all records of the given entity that are older than the given number of days.
+	 * When unitime.cleanup.batchSize is positive, the records are deleted in batches by unique id ranges (each batch in its own transaction),
+	 * with a pause of unitime.cleanup.batchPause milliseconds between the batches, and optionally archived (unitime.cleanup.archive) before deletion.
+	 */
+	protected static void cleanup(String entity, String table, String name, int days) {
 		if (days < 0) return;
+		Integer batchSize = ApplicationProperty.LogCleanupBatchSize.intValue();
+		if (batchSize != null && batchSize > 0) {
+			try {
+				int rows = cleanupInBatches(entity, table, name, days, batchSize);
+				if (rows > 0)
+					sLog.info("All records older than " + days + " days deleted from " + name + " (" + rows + " records).");
+			} catch (Throwable t) {
+				sLog.warn("Failed to cleanup " + name.replace("the ", "") + ": " + t.getMessage(), t);
+			}
+			return;
+		}
 		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
 		Transaction tx = null;
 		try {
 			tx = hibSession.beginTransaction();
 			int rows = hibSession.createMutationQuery(
-					"delete from SectioningSolutionLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
+					"delete from " + entity + " where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
 					).setParameter("days", - days).executeUpdate();
 			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the sectioning solutions log (" + rows + " records).");
+				sLog.info("All records older than " + days + " days deleted from " + name + " (" + rows + " records).");
 			tx.commit();
 		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup sectioning solutions log: " + t.getMessage(), t);
+			sLog.warn("Failed to cleanup " + name.replace("the ", "") + ": " + t.getMessage(), t);
 			if (tx != null) tx.rollback();
 		} finally {
 			hibSession.close();
 		}
 	}
 	
-	public static void cleanupAccessStatisticsLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
+	protected static int cleanupInBatches(String entity, String table, String name, int days, int batchSize) throws Exception {
+		Calendar cal = Calendar.getInstance(Locale.US);
+		cal.set(Calendar.HOUR_OF_DAY, 0); cal.set(Calendar.MINUTE, 0); cal.set(Calendar.SECOND, 0); cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.DAY_OF_YEAR, - days);
+		Date cutoff = cal.getTime();
+		Integer pause = ApplicationProperty.LogCleanupBatchPause.intValue();
+		Archive archive = (ApplicationProperty.LogCleanupArchive.isTrue() ? new Archive(table) : null);
+		long t0 = System.currentTimeMillis();
+		int total = 0, batches = 0;
+		Long lastId = null;
 		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from AccessStatistics where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the access statistics (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup access statistics: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
+			while (true) {
+				org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+				Transaction tx = null;
+				List<Long> ids = null;
+				try {
+					tx = hibSession.beginTransaction();
+					Query<Long> q = hibSession.createQuery(
+							"select uniqueId from " + entity + " where timeStamp < :date" + (lastId == null ? "" : " and uniqueId > :lastId") + " order by uniqueId", Long.class
+							).setParameter("date", cutoff).setMaxResults(batchSize);
+					if (lastId != null) q.setParameter("lastId", lastId);
+					ids = q.list();
+					if (ids.isEmpty()) {
+						tx.commit();
+						break;
+					}
+					Long first = ids.get(0), last = ids.get(ids.size() - 1);
+					if (archive != null)
+						archive.write(hibSession, first, last, cutoff);
+					int rows = hibSession.createMutationQuery(
+							"delete from " + entity + " where uniqueId >= :first and uniqueId <= :last and timeStamp < :date"
+							).setParameter("first", first).setParameter("last", last).setParameter("date", cutoff).executeUpdate();
+					tx.commit();
+					total += rows; batches ++;
+					lastId = last;
+					sLog.debug("Deleted " + rows + " records from " + name + " (batch " + batches + ", " + total + " records in " + (System.currentTimeMillis() - t0) / 1000 + " s so far).");
+				} catch (Exception e) {
+					if (tx != null && tx.isActive()) tx.rollback();
+					throw e;
+				} finally {
+					hibSession.close();
+				}
+				if (ids.size() < batchSize) break;
+				if (pause != null && pause > 0) Thread.sleep(pause);
+			}
 		} finally {
-			hibSession.close();
+			if (archive != null) archive.close();
+		}
+		if (batches > 1)
+			sLog.debug("Deleted " + total + " records from " + name + " in " + batches + " batches (" + (System.currentTimeMillis() - t0) / 1000 + " s).");
+		return total;
+	}
+	
+	/**
+	 * Compressed CSV file with the deleted records (data folder/archive/table_timestamp.csv.gz), the file is only created when there is something to archive
+	 */
+	protected static class Archive {
+		private String iTable;
+		private PrintWriter iOut = null;
+		private File iFile = null;
+		
+		Archive(String table) {
+			iTable = table;
+		}
+		
+		protected String quote(Object value) {
+			if (value == null) return "";
+			String text = (value instanceof byte[] ? Base64.getEncoder().encodeToString((byte[])value) : value.toString());
+			if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) return text;
+			return "\"" + text.replace("\"", "\"\"") + "\"";
+		}
+		
+		void write(org.hibernate.Session hibSession, final Long first, final Long last, final Date cutoff) {
+			String schema = HibernateUtil.getConfiguration().getProperty("hibernate.default_schema");
+			final String sql = "select * from " + (schema == null || schema.isEmpty() ? "" : schema + ".") + iTable +
+					" where uniqueid >= ? and uniqueid <= ? and time_stamp < ? order by uniqueid";
+			hibSession.doWork(connection -> {
+				try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+					stmt.setLong(1, first);
+					stmt.setLong(2, last);
+					stmt.setTimestamp(3, new Timestamp(cutoff.getTime()));
+					try (ResultSet rs = stmt.executeQuery()) {
+						ResultSetMetaData meta = rs.getMetaData();
+						if (iOut == null) {
+							File dir = new File(ApplicationProperties.getDataFolder(), "archive");
+							dir.mkdirs();
+							iFile = new File(dir, iTable + "_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".csv.gz");
+							try {
+								iOut = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(iFile)), "UTF-8"));
+							} catch (IOException e) {
+								throw new SQLException("Failed to create archive " + iFile + ": " + e.getMessage(), e);
+							}
+							for (int i = 1; i <= meta.getColumnCount(); i++)
+								iOut.print((i > 1 ? "," : "") + quote(meta.getColumnName(i).toLowerCase()));
+							iOut.println();
+						}
+						while (rs.next()) {
+							for (int i = 1; i <= meta.getColumnCount(); i++)
+								iOut.print((i > 1 ? "," : "") + quote(rs.getObject(i)));
+							iOut.println();
+						}
+						iOut.flush();
+						if (iOut.checkError())
+							throw new SQLException("Failed to write archive " + iFile + ".");
+					}
+				}
+			});
+		}
+		
+		void close() {
+			if (iOut != null) {
+				iOut.close();
+				sLog.info("Deleted records archived in " + iFile);
+			}
 		}
 	}
 	
@@ -0,0 +1,344 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.commons.web.WebTable;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Rolling in-memory request statistics, fed by the query log filter (pages) and the GWT RPC servlet (RPC calls).<br>
+ * For each URI (or RPC request type) there is a latency histogram for each 5 minutes of the last hour, for each of the
+ * last 24 hours, and for each of the last 8 days. The histograms have logarithmic buckets (each bucket is
+ * sqrt(2) times wider than the previous one), so that the percentiles can be estimated without keeping individual
+ * requests. The hourly and daily histograms are a compact aggregate of the request log: they are saved in the data folder
+ * every 10 minutes (and on shutdown) and loaded back on startup.<br>
+ * The URIs are normalized to the page / servlet names; requests of an unknown page (or above the limit on the number of
+ * tracked series, see unitime.stats.requests.maxSeries) are counted as {@link RequestStatistics#OTHER}.<br>
+ * The statistics are local to this application server: in a cluster, each node only counts the requests it has served
+ * (unlike the query log based charts, which are computed from the database).
+ *
+ * @author Tomas Muller
+ */
+public class RequestStatistics {
+	private static Log sLog = LogFactory.getLog(RequestStatistics.class);
+	private static final int NR_BUCKETS = 48;
+	private static final double BUCKET_FACTOR = Math.sqrt(2.0);
+	private static final long MINUTE = 60000l, FIVE_MINUTES = 5 * MINUTE, HOUR = 60 * MINUTE, DAY = 24 * HOUR;
+	private static final Pattern PAGE = Pattern.compile("[A-Za-z][A-Za-z0-9_\\-]{0,63}\\.(action|do|gwt|jsp)");
+	private static final Pattern TARGET = Pattern.compile("[A-Za-z][A-Za-z0-9_\\.\\$]{0,127}");
+	public static final String OTHER = "other";
+	/** Request attribute set once the request has been recorded, so that it is not recorded again by the query log filter */
+	public static final String RECORDED_ATTRIBUTE = "RequestStatistics.recorded";
+	private static RequestStatistics sInstance = null;
+
+	private Map<String, Series> iSeries = new ConcurrentHashMap<String, Series>();
+	private Timer iTimer = null;
+
+	private RequestStatistics() {}
+
+	public static synchronized RequestStatistics getInstance() {
+		if (sInstance == null) {
+			sInstance = new RequestStatistics();
+			sInstance.load();
+			sInstance.iTimer = new Timer("RequestStatistics", true);
+			sInstance.iTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					sInstance.save();
+				}
+			}, 10 * MINUTE, 10 * MINUTE);
+		}
+		return sInstance;
+	}
+
+	public static synchronized void shutdown() {
+		if (sInstance != null) {
+			sInstance.iTimer.cancel();
+			sInstance.save();
+			sInstance = null;
+		}
+	}
+
+	/**
+	 * Record a request
+	 * @param uri page URI (last segment of the request URI, optionally followed by a colon and the GWT call target) or RPC request type (prefixed by RPC:)
+	 * @param time time spent in milliseconds
+	 * @param error true if the request failed with an exception
+	 */
+	public void record(String uri, long time, boolean error) {
+		String key = normalize(uri);
+		if (key == null) return;
+		Series series = iSeries.get(key);
+		if (series == null) {
+			if (iSeries.size() >= getMaxSeries()) key = OTHER;
+			series = iSeries.computeIfAbsent(key, u -> new Series());
+		}
+		series.record(System.currentTimeMillis(), time, error);
+	}
+
+	protected int getMaxSeries() {
+		Integer max = ApplicationProperty.RequestStatisticsMaxSeries.intValue();
+		return (max == null ? 500 : max.intValue());
+	}
+
+	/**
+	 * Normalize the request URI to the page / servlet name, so that the URIs that are not known (e.g., made up by a client)
+	 * do not create new series.
+	 * @return {@link RequestStatistics#OTHER} when the URI does not look like a page, RPC request, or a GWT call
+	 */
+	protected static String normalize(String uri) {
+		if (uri == null) return null;
+		if (uri.startsWith("RPC:")) return uri; // RPC request type, given by the request class name
+		String page = uri, target = null;
+		int colon = uri.indexOf(": ");
+		if (colon >= 0) {
+			page = uri.substring(0, colon);
+			target = uri.substring(colon + 2);
+		}
+		int semicolon = page.indexOf(';');
+		if (semicolon >= 0) page = page.substring(0, semicolon);
+		if (!PAGE.matcher(page).matches()) return OTHER;
+		if (target != null && TARGET.matcher(target).matches())
+			return page + ": " + target;
+		return page;
+	}
+
+	protected static File getFile() {
+		return new File(ApplicationProperties.getDataFolder(), "request-stats.dat");
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void load() {
+		File file = getFile();
+		if (!file.exists()) return;
+		try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+			iSeries.putAll((Map<String, Series>)in.readObject());
+		} catch (Exception e) {
+			sLog.warn("Failed to load request statistics: " + e.getMessage());
+		}
+	}
+
+	protected void save() {
+		long now = System.currentTimeMillis();
+		HashMap<String, Series> series = new HashMap<String, Series>();
+		for (Map.Entry<String, Series> e: iSeries.entrySet()) {
+			if (e.getValue().isEmpty(now))
+				iSeries.remove(e.getKey());
+			else
+				series.put(e.getKey(), e.getValue());
+		}
+		try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(getFile()))) {
+			out.writeObject(series);
+		} catch (Exception e) {
+			sLog.warn("Failed to save request statistics: " + e.getMessage());
+		}
+	}
+
+	public static enum Window {
+		LAST_HOUR("last hour", HOUR),
+		LAST_DAY("last 24 hours", DAY),
+		LAST_WEEK("last 7 days", 7 * DAY),
+		;
+		private String iName;
+		private long iLength;
+		Window(String name, long length) { iName = name; iLength = length; }
+		public String getName() { return iName; }
+		public long getLength() { return iLength; }
+	}
+
+	/**
+	 * Statistics table: number of calls, throughput, average time, percentiles, maximal time, and error rate of each URI
+	 */
+	public WebTable getTable(Window window) {
+		WebTable table = new WebTable(10, "Page Statistics (" + window.getName() + ", this server only)", "stats.action?ord=%%",
+				new String[] {"URI", "Calls", "Calls/min", "AvgTime [ms]", "p50 [ms]", "p95 [ms]", "p99 [ms]", "MaxTime [s]", "Errors", "Error Rate"},
+				new String[] {"left", "right", "right", "right", "right", "right", "right", "right", "right", "right"},
+				new boolean[] {true, false, false, false, false, false, false, false, false, false});
+		DecimalFormat df = new DecimalFormat("#,##0.00");
+		DecimalFormat pf = new DecimalFormat("0.0");
+		long now = System.currentTimeMillis();
+		double minutes = window.getLength() / MINUTE;
+		for (Map.Entry<String, Series> e: iSeries.entrySet()) {
+			Histogram h = e.getValue().getHistogram(now, window);
+			if (h.getCount() == 0) continue;
+			double p50 = h.getPercentile(0.50), p95 = h.getPercentile(0.95), p99 = h.getPercentile(0.99);
+			double perMinute = h.getCount() / minutes, errorRate = 100.0 * h.getErrors() / h.getCount();
+			table.addLine(new String[] {
+					e.getKey(),
+					String.valueOf(h.getCount()),
+					df.format(perMinute),
+					df.format(h.getAverage()),
+					df.format(p50),
+					df.format(p95),
+					df.format(p99),
+					df.format(h.getMax() / 1000.0),
+					String.valueOf(h.getErrors()),
+					pf.format(errorRate) + "%"},
+					new Comparable[] {
+						e.getKey(),
+						h.getCount(),
+						perMinute,
+						h.getAverage(),
+						p50,
+						p95,
+						p99,
+						h.getMax(),
+						h.getErrors(),
+						errorRate});
+		}
+		return table;
+	}
+
+	protected static int bucket(long time) {
+		if (time <= 1) return 0;
+		return Math.min(NR_BUCKETS - 1, (int)Math.ceil(Math.log(time) / Math.log(BUCKET_FACTOR)));
+	}
+
+	protected static double upperBound(int bucket) {
+		return Math.pow(BUCKET_FACTOR, bucket);
+	}
+
+	protected static class Histogram implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private long iStamp = -1;
+		private long[] iCounts = null;
+		private long iCount = 0, iErrors = 0, iTotal = 0, iMax = 0;
+
+		void reset(long stamp) {
+			iStamp = stamp; iCounts = null;
+			iCount = 0; iErrors = 0; iTotal = 0; iMax = 0;
+		}
+
+		void record(long time, boolean error) {
+			if (iCounts == null) iCounts = new long[NR_BUCKETS];
+			iCounts[bucket(time)] ++;
+			iCount ++; iTotal += time;
+			if (error) iErrors ++;
+			if (time > iMax) iMax = time;
+		}
+
+		void add(Histogram h) {
+			if (h.iCount == 0) return;
+			if (iCounts == null) iCounts = new long[NR_BUCKETS];
+			for (int i = 0; i < NR_BUCKETS; i++)
+				iCounts[i] += h.iCounts[i];
+			iCount += h.iCount; iErrors += h.iErrors; iTotal += h.iTotal;
+			if (h.iMax > iMax) iMax = h.iMax;
+		}
+
+		long getCount() { return iCount; }
+		long getErrors() { return iErrors; }
+		long getMax() { return iMax; }
+		double getAverage() { return (iCount == 0 ? 0.0 : ((double)iTotal) / iCount); }
+
+		/**
+		 * Estimated percentile, linear interpolation within the matching bucket
+		 */
+		double getPercentile(double p) {
+			if (iCount == 0) return 0.0;
+			double rank = p * iCount;
+			long seen = 0;
+			for (int i = 0; i < NR_BUCKETS; i++) {
+				if (iCounts[i] == 0) continue;
+				if (seen + iCounts[i] >= rank) {
+					double lower = (i == 0 ? 0.0 : upperBound(i - 1)), upper = upperBound(i);
+					double value = lower + (upper - lower) * (rank - seen) / iCounts[i];
+					return Math.min(value, iMax);
+				}
+				seen += iCounts[i];
+			}
+			return iMax;
+		}
+	}
+
+	protected static class Series implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private Histogram[] iMinutes = new Histogram[12];
+		private Histogram[] iHours = new Histogram[24];
+		private Histogram[] iDays = new Histogram[8];
+
+		Series() {
+			for (int i = 0; i < iMinutes.length; i++) iMinutes[i] = new Histogram();
+			for (int i = 0; i < iHours.length; i++) iHours[i] = new Histogram();
+			for (int i = 0; i < iDays.length; i++) iDays[i] = new Histogram();
+		}
+
+		private static Histogram slot(Histogram[] ring, long stamp) {
+			Histogram h = ring[(int)(stamp % ring.length)];
+			if (h.iStamp != stamp) h.reset(stamp);
+			return h;
+		}
+
+		synchronized void record(long now, long time, boolean error) {
+			slot(iMinutes, now / FIVE_MINUTES).record(time, error);
+			slot(iHours, now / HOUR).record(time, error);
+			slot(iDays, now / DAY).record(time, error);
+		}
+
+		private static void add(Histogram ret, Histogram[] ring, long fromStamp, long toStamp) {
+			for (Histogram h: ring)
+				if (h.iStamp > fromStamp && h.iStamp <= toStamp) ret.add(h);
+		}
+
+		synchronized Histogram getHistogram(long now, Window window) {
+			Histogram ret = new Histogram();
+			switch (window) {
+			case LAST_HOUR:
+				add(ret, iMinutes, now / FIVE_MINUTES - 12, now / FIVE_MINUTES);
+				break;
+			case LAST_DAY:
+				add(ret, iHours, now / HOUR - 24, now / HOUR);
+				break;
+			default:
+				add(ret, iDays, now / DAY - 7, now / DAY);
+			}
+			return ret;
+		}
+
+		private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+			out.defaultWriteObject();
+		}
+
+		synchronized boolean isEmpty(long now) {
+			long day = now / DAY;
+			for (Histogram h: iDays)
+				if (h.iStamp > day - 8 && h.iCount > 0) return false;
+			return true;
+		}
+	}
+}
@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.util;
 
+import java.util.Collection;
 import java.util.Date;
 
 import javax.servlet.http.HttpServletRequest;
@@ -56,6 +57,15 @@ public class RoomAvailability {
         }
     }
     
+    /**
+     * Notify the room availability service that meetings in the given locations have changed
+     */
+    public static void meetingsChanged(Collection<Long> locationPermanentIds) {
+    	RoomAvailabilityInterface instance = getInstance();
+    	if (instance != null && instance instanceof RoomAvailabilityInterface.MeetingChangeListener)
+    		((RoomAvailabilityInterface.MeetingChangeListener)instance).meetingsChanged(locationPermanentIds);
+    }
+    
     public static void setAvailabilityWarning(HttpServletRequest request, Session acadSession, Long examType, boolean checkSolver, boolean checkAvailability) {
         if (acadSession==null || examType==null || getInstance()==null) return;
         if (checkSolver) {
@@ -22,6 +22,10 @@ package org.unitime.timetable.webutil;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import javax.servlet.ServletRequest;
 
@@ -395,7 +399,64 @@ public class RequiredTimeTable {
     	return createBufferedImage(timeVertical, false);
     }
     
+    /**
+     * Time grid image (the image is cached and shared, it must not be modified)
+     */
     public BufferedImage createBufferedImage(boolean timeVertical, boolean highlight) {
+    	if (getModel().isExactTime()) return null;
+    	return RequiredTimeTableImageCache.getInstance().getImage(this, timeVertical, highlight);
+    }
+    
+    /**
+     * Time grid image encoded as PNG (cached, see {@link RequiredTimeTableImageCache})
+     */
+    public byte[] createPngImage(boolean timeVertical, boolean highlight) throws IOException {
+    	if (getModel().isExactTime()) return null;
+    	return RequiredTimeTableImageCache.getInstance().getPng(this, timeVertical, highlight);
+    }
+    
+    /**
+     * Content key of the time grid image: digest of the orientation, the highlight, the displayed days and times, and the colors of all the cells.
+     * Two time grids with the same key produce the same image.
+     */
+    public String getImageKey(boolean timeVertical, boolean highlight) {
+    	if (getModel().isExactTime()) return null;
+    	int[] limit = getModel().getSelectionLimits(getModel().getDefaultSelection());
+    	int minTime=limit[0], maxTime=limit[1], minDay=limit[2], maxDay=limit[3];
+    	int timeStep = (limit.length >= 5 ? limit[4] : 1);
+    	StringBuffer key = new StringBuffer((timeVertical ? "V" : "H") + (highlight ? "1" : "0") + ":" + minTime + "," + maxTime + "," + minDay + "," + maxDay + "," + timeStep + ":");
+    	int day = minDay;
+    	while (true) {
+    		for (int time = minTime; time <= maxTime; time += timeStep) {
+    			String pref = iModel.getPreference(day, time);
+    			if (pref==null) pref = PreferenceLevel.sNeutral;
+    			Color color = iModel.getPreferenceColor(pref);
+    			Color borderColor = iModel.getBorder(day,time);
+    			key.append(Integer.toHexString(color.getRGB() & 0xffffff));
+    			if (borderColor != null) key.append("/" + Integer.toHexString(borderColor.getRGB() & 0xffffff));
+    			key.append(",");
+    		}
+    		if (day == maxDay) break;
+    		if (minDay <= maxDay)
+    			day ++;
+    		else
+    			day = (1 + day) % 7;
+    	}
+    	try {
+    		byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+    		StringBuffer ret = new StringBuffer();
+    		for (byte b: digest)
+    			ret.append(String.format("%02x", b));
+    		return ret.toString();
+    	} catch (NoSuchAlgorithmException e) {
+    		return key.toString();
+    	}
+    }
+    
+    /**
+     * Render the time grid image (not cached)
+     */
+    protected BufferedImage renderBufferedImage(boolean timeVertical, boolean highlight) {
     	if (getModel().isExactTime()) return null;
     	int[] limit = getModel().getSelectionLimits(getModel().getDefaultSelection());
     	int minTime=limit[0], maxTime=limit[1], minDay=limit[2], maxDay=limit[3];
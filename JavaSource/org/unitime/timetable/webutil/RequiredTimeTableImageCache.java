@@ -0,0 +1,152 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.webutil;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Bounded (least recently used) cache of the time grid images, keyed by the content key of the image
+ * (see {@link RequiredTimeTable#getImageKey(boolean, boolean)}).<br>
+ * The cache is shared by the pattern servlet (PNG images) and the PDF / XLS exports, so that the same time preferences
+ * (e.g., the same time pattern with the same preferences on many classes) are rendered and encoded only once.
+ * The PNG encoding is kept as long as the entry is in the cache, the image itself is kept in a soft reference.
+ * The number of entries is given by tmtbl.timeGrid.imageCache.size.
+ *
+ * @author Tomas Muller
+ */
+public class RequiredTimeTableImageCache {
+	private static RequiredTimeTableImageCache sInstance = new RequiredTimeTableImageCache();
+	private Map<String, Entry> iEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > getMaxSize();
+		}
+	};
+	private Map<BufferedImage, Entry> iImages = new WeakHashMap<BufferedImage, Entry>();
+	private long iHits = 0, iMisses = 0;
+
+	private RequiredTimeTableImageCache() {}
+
+	public static RequiredTimeTableImageCache getInstance() { return sInstance; }
+
+	protected int getMaxSize() {
+		Integer size = ApplicationProperty.RequiredTimeTableImageCacheSize.intValue();
+		return (size == null ? 500 : size.intValue());
+	}
+
+	protected synchronized Entry getEntry(String key) {
+		Entry entry = iEntries.get(key);
+		if (entry == null) {
+			iMisses ++;
+			entry = new Entry();
+			if (getMaxSize() > 0)
+				iEntries.put(key, entry);
+		} else {
+			iHits ++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Time grid image of the given time preferences, the returned image is shared and must not be modified
+	 */
+	public BufferedImage getImage(RequiredTimeTable rtt, boolean timeVertical, boolean highlight) {
+		if (getMaxSize() <= 0) return rtt.renderBufferedImage(timeVertical, highlight);
+		Entry entry = getEntry(rtt.getImageKey(timeVertical, highlight));
+		return entry.getImage(rtt, timeVertical, highlight);
+	}
+
+	/**
+	 * Time grid image of the given time preferences, encoded as PNG
+	 */
+	public byte[] getPng(RequiredTimeTable rtt, boolean timeVertical, boolean highlight) throws IOException {
+		if (getMaxSize() <= 0) return encode(rtt.renderBufferedImage(timeVertical, highlight));
+		Entry entry = getEntry(rtt.getImageKey(timeVertical, highlight));
+		return entry.getPng(rtt, timeVertical, highlight);
+	}
+
+	/**
+	 * PNG encoding of an image that was returned by {@link RequiredTimeTableImageCache#getImage(RequiredTimeTable, boolean, boolean)}
+	 * @return null if the image is not known to the cache
+	 */
+	public byte[] getPng(BufferedImage image) throws IOException {
+		Entry entry = null;
+		synchronized (this) {
+			entry = iImages.get(image);
+		}
+		return (entry == null ? null : entry.getPng(image));
+	}
+
+	public synchronized String getInfo() {
+		return iEntries.size() + " images, " + iHits + " hits, " + iMisses + " misses";
+	}
+
+	public synchronized void clear() {
+		iEntries.clear();
+		iImages.clear();
+	}
+
+	protected static byte[] encode(BufferedImage image) throws IOException {
+		if (image == null) return null;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ImageIO.write(image, "PNG", bytes);
+		return bytes.toByteArray();
+	}
+
+	protected class Entry {
+		private SoftReference<BufferedImage> iImage = null;
+		private byte[] iPng = null;
+
+		synchronized BufferedImage getImage(RequiredTimeTable rtt, boolean timeVertical, boolean highlight) {
+			BufferedImage image = (iImage == null ? null : iImage.get());
+			if (image == null) {
+				image = rtt.renderBufferedImage(timeVertical, highlight);
+				iImage = new SoftReference<BufferedImage>(image);
+				synchronized (RequiredTimeTableImageCache.this) {
+					iImages.put(image, this);
+				}
+			}
+			return image;
+		}
+
+		synchronized byte[] getPng(RequiredTimeTable rtt, boolean timeVertical, boolean highlight) throws IOException {
+			if (iPng == null)
+				iPng = encode(getImage(rtt, timeVertical, highlight));
+			return iPng;
+		}
+
+		synchronized byte[] getPng(BufferedImage image) throws IOException {
+			if (iPng == null)
+				iPng = encode(image);
+			return iPng;
+		}
+	}
+}
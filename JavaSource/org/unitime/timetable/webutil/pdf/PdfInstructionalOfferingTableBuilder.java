@@ -673,8 +673,7 @@ public class PdfInstructionalOfferingTableBuilder extends WebInstructionalOfferi
 					if (rtt.getModel().isExactTime()) {
 						addText(cell, rtt.exactTime(false), false, false, Element.ALIGN_LEFT, color, true);
 					} else {
-						java.awt.Image awtImage = rtt.createBufferedImage(getTimeVertival());
-						Image img = Image.getInstance(awtImage, Color.WHITE);
+						Image img = Image.getInstance(rtt.createPngImage(getTimeVertival(), false));
 						Chunk ck = new Chunk(img, 0, 0);
 						if (cell.getPhrase()==null) {
 							cell.setPhrase(new Paragraph(ck));
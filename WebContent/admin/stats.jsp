@@ -33,6 +33,13 @@
 		</tr>
 	</s:iterator>
 </table>
-<table class="unitime-MainTable">
-	<s:property value="queryTable" escapeHtml="false"/>
-</table>
\ No newline at end of file
+<s:iterator value="statsWindows" var="w">
+	<table class="unitime-MainTable">
+		<s:property value="%{getStatsTable(#w)}" escapeHtml="false"/>
+	</table>
+</s:iterator>
+<s:if test="sectioningLogTable != null">
+	<table class="unitime-MainTable">
+		<s:property value="sectioningLogTable" escapeHtml="false"/>
+	</table>
+</s:if>